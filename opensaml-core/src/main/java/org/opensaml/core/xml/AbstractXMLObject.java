@@ -41,6 +41,9 @@ import net.shibboleth.utilities.java.support.xml.XMLConstants;
 
 /**
  * An abstract implementation of XMLObject.
+ * 
+ * <p>The {@link NamespaceManager}, {@link IDIndex} and object metadata of an instance are created on first use,
+ * since most objects in a large document never need them.</p>
  */
 public abstract class AbstractXMLObject implements XMLObject {
 
@@ -68,17 +71,20 @@ public abstract class AbstractXMLObject implements XMLObject {
     /** The value of the <code>xsi:nil</code> attribute. */
     private  XSBooleanValue nil;
     
-    /** The namespace manager for this XML object. */
-    private NamespaceManager nsManager;
+    /** The namespace manager for this XML object, created on first use. */
+    @Nullable private volatile NamespaceManager nsManager;
     
-    /** The multimap holding class-indexed instances of additional info associated with this XML object. */
-    @Nonnull private final LockableClassToInstanceMultiMap<Object> objectMetadata;
+    /**
+     * The multimap holding class-indexed instances of additional info associated with this XML object,
+     * created on first use.
+     */
+    @Nullable private volatile LockableClassToInstanceMultiMap<Object> objectMetadata;
 
     /**
      * Mapping of ID attributes to XMLObjects in the subtree rooted at this object. This allows constant-time
-     * dereferencing of ID-typed attributes within the subtree.
+     * dereferencing of ID-typed attributes within the subtree. Created on first use.
      */
-    private final IDIndex idIndex;
+    @Nullable private IDIndex idIndex;
 
     /**
      * Constructor.
@@ -89,13 +95,10 @@ public abstract class AbstractXMLObject implements XMLObject {
      */
     protected AbstractXMLObject(@Nullable final String namespaceURI, @Nonnull @NotEmpty final String elementLocalName,
             @Nullable final String namespacePrefix) {
-        nsManager = new NamespaceManager(this);
-        idIndex = new IDIndex(this);
         elementQname = QNameSupport.constructQName(namespaceURI, elementLocalName, namespacePrefix);
         if(namespaceURI != null){
             setElementNamespacePrefix(namespacePrefix);
         }
-        objectMetadata = new LockableClassToInstanceMultiMap<>(true);
     }
 
     /** {@inheritDoc} */
@@ -116,12 +119,37 @@ public abstract class AbstractXMLObject implements XMLObject {
 
     /** {@inheritDoc} */
     @Nonnull public IDIndex getIDIndex() {
+        if (idIndex == null) {
+            idIndex = new IDIndex(this);
+        }
         return idIndex;
     }
     
+    /**
+     * Get whether any ID mappings are registered for the subtree rooted at this object, without creating
+     * an {@link IDIndex} if none exists yet.
+     * 
+     * @return true iff the subtree contains any ID mappings
+     */
+    public boolean hasIDMappings() {
+        return idIndex != null && !idIndex.isEmpty();
+    }
+    
     /** {@inheritDoc} */
     @Nonnull public NamespaceManager getNamespaceManager() {
-        return nsManager;
+        NamespaceManager manager = nsManager;
+        if (manager == null) {
+            synchronized (this) {
+                manager = nsManager;
+                if (manager == null) {
+                    manager = new NamespaceManager(this);
+                    manager.registerElementName(elementQname);
+                    manager.registerElementType(typeQname);
+                    nsManager = manager;
+                }
+            }
+        }
+        return manager;
     }
 
     /** {@inheritDoc} */
@@ -171,7 +199,10 @@ public abstract class AbstractXMLObject implements XMLObject {
         if (hasValue) {
             getNamespaceManager().registerAttributeName(attributeName);
         } else {
-            getNamespaceManager().deregisterAttributeName(attributeName);
+            final NamespaceManager manager = nsManager;
+            if (manager != null) {
+                manager.deregisterAttributeName(attributeName);
+            }
         }
     }
     
@@ -346,7 +377,9 @@ public abstract class AbstractXMLObject implements XMLObject {
             if (newValue != null) {
                 releaseThisandParentDOM();
                 newValue.setParent(this);
-                idIndex.registerIDMappings(newValue.getIDIndex());
+                if (IDIndex.hasIDMappings(newValue)) {
+                    getIDIndex().registerIDMappings(newValue.getIDIndex());
+                }
                 return newValue;
 
             } else {
@@ -357,10 +390,14 @@ public abstract class AbstractXMLObject implements XMLObject {
         if (!oldValue.equals(newValue)) {
             oldValue.setParent(null);
             releaseThisandParentDOM();
-            idIndex.deregisterIDMappings(oldValue.getIDIndex());
+            if (idIndex != null && IDIndex.hasIDMappings(oldValue)) {
+                idIndex.deregisterIDMappings(oldValue.getIDIndex());
+            }
             if (newValue != null) {
                 newValue.setParent(this);
-                idIndex.registerIDMappings(newValue.getIDIndex());
+                if (IDIndex.hasIDMappings(newValue)) {
+                    getIDIndex().registerIDMappings(newValue.getIDIndex());
+                }
             }
         }
 
@@ -379,12 +416,12 @@ public abstract class AbstractXMLObject implements XMLObject {
         final String newString = StringSupport.trimOrNull(newID);
 
         if (!Objects.equals(oldID, newString)) {
-            if (oldID != null) {
+            if (oldID != null && idIndex != null) {
                 idIndex.deregisterIDMapping(oldID);
             }
 
             if (newString != null) {
-                idIndex.registerIDMapping(newString, this);
+                getIDIndex().registerIDMapping(newString, this);
             }
         }
     }
@@ -409,9 +446,10 @@ public abstract class AbstractXMLObject implements XMLObject {
     public void releaseDOM() {
         log.trace("Releasing cached DOM reprsentation for {}", getElementQName());
         setDOM(null);
-        if (getObjectMetadata().containsKey(XMLObjectSource.class)) {
+        final LockableClassToInstanceMultiMap<Object> metadata = objectMetadata;
+        if (metadata != null && metadata.containsKey(XMLObjectSource.class)) {
             log.trace("Releasing cached XMLObjectSource for {}", getElementQName());
-            getObjectMetadata().remove(XMLObjectSource.class);
+            metadata.remove(XMLObjectSource.class);
         }
     }
 
@@ -452,7 +490,7 @@ public abstract class AbstractXMLObject implements XMLObject {
 
     /** {@inheritDoc} */
     @Nullable public XMLObject resolveID(@Nonnull @NotEmpty final String id) {
-        return idIndex.lookup(id);
+        return idIndex != null ? idIndex.lookup(id) : null;
     }
 
     /** {@inheritDoc} */
@@ -480,7 +518,10 @@ public abstract class AbstractXMLObject implements XMLObject {
         } else {
             elementQname = new QName(elementQname.getNamespaceURI(), elementQname.getLocalPart(), prefix);
         }
-        getNamespaceManager().registerElementName(elementQname);
+        final NamespaceManager manager = nsManager;
+        if (manager != null) {
+            manager.registerElementName(elementQname);
+        }
     }
 
     /**
@@ -491,7 +532,10 @@ public abstract class AbstractXMLObject implements XMLObject {
     protected void setElementQName(@Nonnull final QName name) {
         Constraint.isNotNull(name, "Element QName cannot be null");
         elementQname = QNameSupport.constructQName(name.getNamespaceURI(), name.getLocalPart(), name.getPrefix());
-        getNamespaceManager().registerElementName(elementQname);
+        final NamespaceManager manager = nsManager;
+        if (manager != null) {
+            manager.registerElementName(elementQname);
+        }
     }
 
     /** {@inheritDoc} */
@@ -521,7 +565,10 @@ public abstract class AbstractXMLObject implements XMLObject {
      */
     protected void setSchemaType(@Nullable final QName type) {
         typeQname = type;
-        getNamespaceManager().registerElementType(typeQname);
+        final NamespaceManager manager = nsManager;
+        if (manager != null) {
+            manager.registerElementType(typeQname);
+        }
         manageQualifiedAttributeNamespace(XMLConstants.XSI_TYPE_ATTRIB_NAME, typeQname != null);
     }
     
@@ -557,7 +604,17 @@ public abstract class AbstractXMLObject implements XMLObject {
 
     /** {@inheritDoc} */
     @Nonnull public LockableClassToInstanceMultiMap<Object> getObjectMetadata() {
-        return objectMetadata;
+        LockableClassToInstanceMultiMap<Object> metadata = objectMetadata;
+        if (metadata == null) {
+            synchronized (this) {
+                metadata = objectMetadata;
+                if (metadata == null) {
+                    metadata = new LockableClassToInstanceMultiMap<>(true);
+                    objectMetadata = metadata;
+                }
+            }
+        }
+        return metadata;
     }
 
 }
\ No newline at end of file
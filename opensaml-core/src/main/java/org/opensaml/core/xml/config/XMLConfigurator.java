@@ -45,6 +45,7 @@ import net.shibboleth.utilities.java.support.xml.XMLParserException;
 
 import org.opensaml.core.config.ConfigurationService;
 import org.opensaml.core.xml.XMLObjectBuilder;
+import org.opensaml.core.xml.io.Cloner;
 import org.opensaml.core.xml.io.Marshaller;
 import org.opensaml.core.xml.io.Unmarshaller;
 import org.slf4j.Logger;
@@ -72,6 +73,12 @@ public class XMLConfigurator {
     /** Location, on the classpath, of the XMLTooling configuration schema. */
     @Nonnull @NotEmpty public static final String XMLTOOLING_SCHEMA_LOCATION = "/schema/xmltooling-config.xsd";
 
+    /**
+     * Compiled configuration schema. A {@link Schema} is immutable and thread-safe, so it is compiled once and shared
+     * by all instances rather than once per instance.
+     */
+    @Nullable private static Schema sharedConfigurationSchema;
+
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(XMLConfigurator.class);
 
@@ -91,11 +98,8 @@ public class XMLConfigurator {
      */
     public XMLConfigurator() throws XMLConfigurationException {
         parserPool = new BasicParserPool();
-        final SchemaFactory factory = SchemaFactory.newInstance(javax.xml.XMLConstants.W3C_XML_SCHEMA_NS_URI);
-        final Source schemaSource =
-                new StreamSource(XMLConfigurator.class.getResourceAsStream(XMLTOOLING_SCHEMA_LOCATION));
         try {
-            configurationSchema = factory.newSchema(schemaSource);
+            configurationSchema = getConfigurationSchema();
 
             parserPool.setIgnoreComments(true);
             parserPool.setIgnoreElementContentWhitespace(true);
@@ -118,6 +122,23 @@ public class XMLConfigurator {
         }
     }
 
+    /**
+     * Get the compiled configuration schema, compiling it on first use.
+     * 
+     * @return the configuration schema
+     * 
+     * @throws SAXException thrown if the schema can not be compiled
+     */
+    @Nonnull private static synchronized Schema getConfigurationSchema() throws SAXException {
+        if (sharedConfigurationSchema == null) {
+            final SchemaFactory factory = SchemaFactory.newInstance(javax.xml.XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            final Source schemaSource =
+                    new StreamSource(XMLConfigurator.class.getResourceAsStream(XMLTOOLING_SCHEMA_LOCATION));
+            sharedConfigurationSchema = factory.newSchema(schemaSource);
+        }
+        return sharedConfigurationSchema;
+    }
+
     /**
      * Loads the configuration file(s) from the given file. If the file is a directory each file within the directory is
      * loaded.
@@ -159,7 +180,8 @@ public class XMLConfigurator {
     public void load(@Nonnull final InputStream configurationStream) throws XMLConfigurationException {
         try {
             final Document configuration = parserPool.parse(configurationStream);
-            load(configuration);
+            // A document validated by the parser need not be validated again
+            load(configuration, false);
         } catch (final XMLParserException e) {
             log.error("Invalid configuration file", e);
             throw new XMLConfigurationException("Unable to create DocumentBuilder", e);
@@ -174,16 +196,33 @@ public class XMLConfigurator {
      * @throws XMLConfigurationException thrown if the configuration file(s) cannot be read or invalid
      */
     public void load(@Nonnull final Document configuration) throws XMLConfigurationException {
+        load(configuration, true);
+    }
+
+    /**
+     * Loads the configuration document, optionally schema validating it first.
+     * 
+     * @param configuration the configuration document
+     * @param validate whether to schema validate the document
+     * 
+     * @throws XMLConfigurationException thrown if the configuration file(s) cannot be read or invalid
+     */
+    private void load(@Nonnull final Document configuration, final boolean validate)
+            throws XMLConfigurationException {
         final Element root = Constraint.isNotNull(configuration.getDocumentElement(),
                 "Document element cannot be null");
         
         log.debug("Loading configuration from XML Document");
-        log.trace("{}", SerializeSupport.nodeToString(root));
+        if (log.isTraceEnabled()) {
+            log.trace("{}", SerializeSupport.nodeToString(root));
+        }
 
         // Schema validation
-        log.debug("Schema validating configuration Document");
-        validateConfiguration(configuration);
-        log.debug("Configuration document validated");
+        if (validate) {
+            log.debug("Schema validating configuration Document");
+            validateConfiguration(configuration);
+            log.debug("Configuration document validated");
+        }
 
         load(root);
     }
@@ -247,7 +286,15 @@ public class XMLConfigurator {
                         .getElementsByTagNameNS(XMLTOOLING_CONFIG_NS, "UnmarshallingClass").item(0);
                 final Unmarshaller unmarshaller = (Unmarshaller) createClassInstance(configuration);
 
-                getRegistry().registerObjectProvider(objectProviderName, builder, marshaller, unmarshaller);
+                configuration = (Element) objectProvider
+                        .getElementsByTagNameNS(XMLTOOLING_CONFIG_NS, "CloningClass").item(0);
+                if (configuration != null) {
+                    final Cloner cloner = (Cloner) createClassInstance(configuration);
+                    getRegistry().registerObjectProvider(objectProviderName, builder, marshaller, unmarshaller,
+                            cloner);
+                } else {
+                    getRegistry().registerObjectProvider(objectProviderName, builder, marshaller, unmarshaller);
+                }
 
                 log.debug("{} initialized and configuration cached", objectProviderName);
             } catch (final XMLConfigurationException e) {
@@ -30,6 +30,8 @@ import net.shibboleth.utilities.java.support.xml.ParserPool;
 
 import org.opensaml.core.xml.XMLObjectBuilder;
 import org.opensaml.core.xml.XMLObjectBuilderFactory;
+import org.opensaml.core.xml.io.Cloner;
+import org.opensaml.core.xml.io.ClonerFactory;
 import org.opensaml.core.xml.io.Marshaller;
 import org.opensaml.core.xml.io.MarshallerFactory;
 import org.opensaml.core.xml.io.Unmarshaller;
@@ -40,7 +42,7 @@ import org.w3c.dom.Element;
 
 /** Configuration registry component for registering and retrieving implementation instances 
  * and related configuration relevant to working with XMLObjects, 
- * including builders, marshallers and unmarshallers.
+ * including builders, marshallers, unmarshallers and cloners.
  * 
  * <p>
  * The registry instance to use would typically be retrieved from the
@@ -69,6 +71,9 @@ public class XMLObjectProviderRegistry {
     /** Configured XMLObject unmarshaller factory. */
     private UnmarshallerFactory unmarshallerFactory;
 
+    /** Configured XMLObject cloner factory. */
+    private ClonerFactory clonerFactory;
+
     /** Configured set of attribute QNames which have been globally registered as having an ID type. */
     @Nonnull private final Set<QName> idAttributeNames;
 
@@ -81,6 +86,7 @@ public class XMLObjectProviderRegistry {
         builderFactory = new XMLObjectBuilderFactory();
         marshallerFactory = new MarshallerFactory();
         unmarshallerFactory = new UnmarshallerFactory();
+        clonerFactory = new ClonerFactory();
         idAttributeNames = new CopyOnWriteArraySet<>();
         
         registerIDAttribute(new QName(javax.xml.XMLConstants.XML_NS_URI, "id"));
@@ -115,7 +121,7 @@ public class XMLObjectProviderRegistry {
     }
 
     /**
-     * Adds an object provider to this configuration.
+     * Adds an object provider to this configuration. Any cloner previously registered for the provider is removed.
      * 
      * @param providerName the name of the object provider, corresponding to the element name or type name that the
      *            builder, marshaller, and unmarshaller operate on
@@ -129,12 +135,30 @@ public class XMLObjectProviderRegistry {
         builderFactory.registerBuilder(providerName, builder);
         marshallerFactory.registerMarshaller(providerName, marshaller);
         unmarshallerFactory.registerUnmarshaller(providerName, unmarshaller);
+        clonerFactory.deregisterCloner(providerName);
+    }
+
+    /**
+     * Adds an object provider, including a cloner, to this configuration.
+     * 
+     * @param providerName the name of the object provider, corresponding to the element name or type name that the
+     *            builder, marshaller, unmarshaller and cloner operate on
+     * @param builder the builder for that given provider
+     * @param marshaller the marshaller for the provider
+     * @param unmarshaller the unmarshaller for the provider
+     * @param cloner the cloner for the provider
+     */
+    public void registerObjectProvider(@Nonnull final QName providerName, @Nonnull final XMLObjectBuilder<?> builder,
+            @Nonnull final Marshaller marshaller, @Nonnull final Unmarshaller unmarshaller,
+            @Nonnull final Cloner cloner) {
+        registerObjectProvider(providerName, builder, marshaller, unmarshaller);
+        clonerFactory.registerCloner(providerName, cloner);
     }
 
     /**
-     * Removes the builder, marshaller, and unmarshaller registered to the given key.
+     * Removes the builder, marshaller, unmarshaller and cloner registered to the given key.
      * 
-     * @param key the key of the builder, marshaller, and unmarshaller to be removed
+     * @param key the key of the builder, marshaller, unmarshaller and cloner to be removed
      */
     public void deregisterObjectProvider(@Nonnull final QName key) {
         log.debug("Unregistering builder, marshaller, and unmarshaller for {}", key);
@@ -142,6 +166,7 @@ public class XMLObjectProviderRegistry {
         builderFactory.deregisterBuilder(key);
         marshallerFactory.deregisterMarshaller(key);
         unmarshallerFactory.deregisterUnmarshaller(key);
+        clonerFactory.deregisterCloner(key);
     }
 
     /**
@@ -172,6 +197,15 @@ public class XMLObjectProviderRegistry {
         return unmarshallerFactory;
     }
 
+    /**
+     * Gets the XMLObject cloner factory that has been configured with information from loaded configuration files.
+     * 
+     * @return the XMLObject cloner factory
+     */
+    public ClonerFactory getClonerFactory() {
+        return clonerFactory;
+    }
+
     /**
      * Register an attribute as having a type of ID.
      * 
@@ -26,6 +26,8 @@ import net.shibboleth.utilities.java.support.xml.ParserPool;
 import org.opensaml.core.config.ConfigurationService;
 import org.opensaml.core.xml.XMLObjectBuilder;
 import org.opensaml.core.xml.XMLObjectBuilderFactory;
+import org.opensaml.core.xml.io.Cloner;
+import org.opensaml.core.xml.io.ClonerFactory;
 import org.opensaml.core.xml.io.Marshaller;
 import org.opensaml.core.xml.io.MarshallerFactory;
 import org.opensaml.core.xml.io.Unmarshaller;
@@ -68,7 +70,7 @@ public class XMLObjectProviderRegistrySupport {
     }
 
     /**
-     * Adds an object provider to this configuration.
+     * Adds an object provider to this configuration. Any cloner previously registered for the provider is removed.
      * 
      * @param providerName the name of the object provider, corresponding to the element name or type name that the
      *            builder, marshaller, and unmarshaller operate on
@@ -84,18 +86,41 @@ public class XMLObjectProviderRegistrySupport {
         registry.getBuilderFactory().registerBuilder(providerName, builder);
         registry.getMarshallerFactory().registerMarshaller(providerName, marshaller);
         registry.getUnmarshallerFactory().registerUnmarshaller(providerName, unmarshaller);
+        registry.getClonerFactory().deregisterCloner(providerName);
     }
 
     /**
-     * Removes the builder, marshaller, and unmarshaller registered to the given key.
+     * Adds an object provider, including a cloner, to this configuration.
      * 
-     * @param key the key of the builder, marshaller, and unmarshaller to be removed
+     * @param providerName the name of the object provider, corresponding to the element name or type name that the
+     *            builder, marshaller, unmarshaller and cloner operate on
+     * @param builder the builder for that given provider
+     * @param marshaller the marshaller for the provider
+     * @param unmarshaller the unmarshaller for the provider
+     * @param cloner the cloner for the provider
+     */
+    public static void registerObjectProvider(@Nonnull final QName providerName,
+            @Nonnull final XMLObjectBuilder<?> builder, @Nonnull final Marshaller marshaller,
+            @Nonnull final Unmarshaller unmarshaller, @Nonnull final Cloner cloner) {
+        final XMLObjectProviderRegistry registry = ConfigurationService.get(XMLObjectProviderRegistry.class);
+        
+        registry.getBuilderFactory().registerBuilder(providerName, builder);
+        registry.getMarshallerFactory().registerMarshaller(providerName, marshaller);
+        registry.getUnmarshallerFactory().registerUnmarshaller(providerName, unmarshaller);
+        registry.getClonerFactory().registerCloner(providerName, cloner);
+    }
+
+    /**
+     * Removes the builder, marshaller, unmarshaller and cloner registered to the given key.
+     * 
+     * @param key the key of the builder, marshaller, unmarshaller and cloner to be removed
      */
     public static void deregisterObjectProvider(@Nonnull final QName key) {
         final XMLObjectProviderRegistry registry = ConfigurationService.get(XMLObjectProviderRegistry.class);
         registry.getBuilderFactory().deregisterBuilder(key);
         registry.getMarshallerFactory().deregisterMarshaller(key);
         registry.getUnmarshallerFactory().deregisterUnmarshaller(key);
+        registry.getClonerFactory().deregisterCloner(key);
     }
 
     /**
@@ -126,6 +151,15 @@ public class XMLObjectProviderRegistrySupport {
         return ConfigurationService.get(XMLObjectProviderRegistry.class).getUnmarshallerFactory();
     }
 
+    /**
+     * Gets the XMLObject cloner factory that has been configured with information from loaded configuration files.
+     * 
+     * @return the XMLObject cloner factory
+     */
+    public static ClonerFactory getClonerFactory() {
+        return ConfigurationService.get(XMLObjectProviderRegistry.class).getClonerFactory();
+    }
+
     /**
      * Register an attribute as having a type of ID.
      * 
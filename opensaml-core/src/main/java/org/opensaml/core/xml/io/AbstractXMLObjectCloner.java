@@ -0,0 +1,317 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.io;
+
+import java.util.List;
+import java.util.Map.Entry;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.namespace.QName;
+
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+import net.shibboleth.utilities.java.support.xml.NamespaceSupport;
+import net.shibboleth.utilities.java.support.xml.QNameSupport;
+import net.shibboleth.utilities.java.support.xml.XMLConstants;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+import org.opensaml.core.xml.AttributeExtensibleXMLObject;
+import org.opensaml.core.xml.Namespace;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.XMLObjectBuilder;
+import org.opensaml.core.xml.XMLObjectBuilderFactory;
+import org.opensaml.core.xml.XMLRuntimeException;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.schema.XSBooleanValue;
+import org.opensaml.core.xml.util.AttributeMap;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * A thread-safe base class for {@link Cloner}s.
+ * 
+ * <p>The clone is built with the builder registered for the schema type or element name of the original, after
+ * which namespace declarations, the XML Schema instance attributes and, for
+ * {@link AttributeExtensibleXMLObject}s, unknown attributes are copied. Subclasses copy the remaining attributes,
+ * element content and children by overriding {@link #cloneAttributes(XMLObject, XMLObject)},
+ * {@link #cloneElementContent(XMLObject, XMLObject)} and {@link #cloneChildElements(XMLObject, XMLObject)}, using
+ * {@link #cloneChild(XMLObject)} and {@link #cloneChildren(List, List)} for the children.</p>
+ */
+public abstract class AbstractXMLObjectCloner implements Cloner {
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(AbstractXMLObjectCloner.class);
+
+    /** Factory for XMLObject builders. */
+    @Nonnull private final XMLObjectBuilderFactory xmlObjectBuilderFactory;
+
+    /** Constructor. */
+    protected AbstractXMLObjectCloner() {
+        xmlObjectBuilderFactory = XMLObjectProviderRegistrySupport.getBuilderFactory();
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public XMLObject clone(@Nonnull final XMLObject xmlObject)
+            throws MarshallingException, UnmarshallingException {
+        log.trace("Cloning {}", xmlObject.getElementQName());
+
+        final XMLObject clone = buildXMLObject(xmlObject);
+
+        cloneNamespaces(xmlObject, clone);
+        cloneSchemaInstanceAttributes(xmlObject, clone);
+        if (xmlObject instanceof AttributeExtensibleXMLObject) {
+            cloneUnknownAttributes((AttributeExtensibleXMLObject) xmlObject, (AttributeExtensibleXMLObject) clone);
+        }
+        cloneAttributes(xmlObject, clone);
+        cloneElementContent(xmlObject, clone);
+        cloneChildElements(xmlObject, clone);
+
+        return clone;
+    }
+
+    /**
+     * Builds a new, empty XMLObject with the element name and schema type of the given object. The builder
+     * registered for the schema type is preferred over the one registered for the element name, falling back to the
+     * default builder, as is done during unmarshalling.
+     * 
+     * @param xmlObject the object being cloned
+     * 
+     * @return the new XMLObject
+     * 
+     * @throws UnmarshallingException thrown if no builder is available
+     */
+    @Nonnull protected XMLObject buildXMLObject(@Nonnull final XMLObject xmlObject) throws UnmarshallingException {
+        XMLObjectBuilder<?> xmlObjectBuilder = null;
+        if (xmlObject.getSchemaType() != null) {
+            xmlObjectBuilder = xmlObjectBuilderFactory.getBuilder(xmlObject.getSchemaType());
+        }
+        if (xmlObjectBuilder == null) {
+            xmlObjectBuilder = xmlObjectBuilderFactory.getBuilder(xmlObject.getElementQName());
+        }
+        if (xmlObjectBuilder == null) {
+            xmlObjectBuilder = xmlObjectBuilderFactory.getBuilder(
+                    XMLObjectProviderRegistrySupport.getDefaultProviderQName());
+            if (xmlObjectBuilder == null) {
+                final String errorMsg = "Unable to locate builder for " + xmlObject.getElementQName();
+                log.error(errorMsg);
+                throw new UnmarshallingException(errorMsg);
+            }
+        }
+
+        return xmlObjectBuilder.buildObject(xmlObject.getElementQName(), xmlObject.getSchemaType());
+    }
+
+    /**
+     * Copies the namespaces explicitly declared on the original object to the clone. Namespaces that are in use by
+     * the element name, schema type and attributes are registered by the clone itself.
+     * 
+     * @param xmlObject the object being cloned
+     * @param clone the clone
+     */
+    protected void cloneNamespaces(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject clone) {
+        for (final Namespace namespace : xmlObject.getNamespaceManager().getNamespaceDeclarations()) {
+            clone.getNamespaceManager().registerNamespaceDeclaration(namespace);
+        }
+    }
+
+    /**
+     * Copies the XML Schema instance attributes, other than xsi:type, of the original object to the clone.
+     * 
+     * @param xmlObject the object being cloned
+     * @param clone the clone
+     */
+    protected void cloneSchemaInstanceAttributes(@Nonnull final XMLObject xmlObject,
+            @Nonnull final XMLObject clone) {
+        clone.setSchemaLocation(xmlObject.getSchemaLocation());
+        clone.setNoNamespaceSchemaLocation(xmlObject.getNoNamespaceSchemaLocation());
+        clone.setNil(copyXSBooleanValue(xmlObject.isNilXSBoolean()));
+    }
+
+    /**
+     * Copies the unknown attributes of the original object to the clone, preserving their ID-ness.
+     * 
+     * @param xmlObject the object being cloned
+     * @param clone the clone
+     */
+    protected void cloneUnknownAttributes(@Nonnull final AttributeExtensibleXMLObject xmlObject,
+            @Nonnull final AttributeExtensibleXMLObject clone) {
+        final AttributeMap source = xmlObject.getUnknownAttributes();
+        final AttributeMap target = clone.getUnknownAttributes();
+        for (final Entry<QName, String> entry : source.entrySet()) {
+            if (source.isIDAttribute(entry.getKey())) {
+                target.registerID(entry.getKey());
+            }
+            target.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Clones a child of the object being cloned. The cloner registered for the child is used if there is one;
+     * otherwise the child's cached DOM is copied and unmarshalled. A child with neither is cloned via
+     * {@link XMLObjectSupport#cloneXMLObject(XMLObject)}, which marshalls it.
+     * 
+     * @param child the child to clone, may be null
+     * @param <T> the type of the child
+     * 
+     * @return the clone of the child, or null
+     * 
+     * @throws MarshallingException thrown if the child must be, but can not be, marshalled
+     * @throws UnmarshallingException thrown if the clone of the child can not be built
+     */
+    @Nullable protected <T extends XMLObject> T cloneChild(@Nullable final T child)
+            throws MarshallingException, UnmarshallingException {
+        if (child == null) {
+            return null;
+        }
+
+        final Cloner cloner = XMLObjectSupport.getCloner(child);
+        if (cloner != null) {
+            return (T) cloner.clone(child);
+        } else if (child.getDOM() != null) {
+            return (T) cloneFromDOM(child);
+        } else {
+            return XMLObjectSupport.cloneXMLObject(child);
+        }
+    }
+
+    /**
+     * Clones an object by unmarshalling a copy of its cached DOM. The copy is rooted in a new document and declares
+     * the namespaces inherited from the ancestors of the original, so that neither the original object nor its DOM
+     * is modified.
+     * 
+     * @param xmlObject the object to clone
+     * 
+     * @return the clone, without a cached DOM
+     * 
+     * @throws UnmarshallingException thrown if the copied DOM can not be unmarshalled
+     */
+    @Nonnull protected XMLObject cloneFromDOM(@Nonnull final XMLObject xmlObject) throws UnmarshallingException {
+        final Element original = xmlObject.getDOM();
+
+        final Element copy;
+        try {
+            final Document document = XMLObjectProviderRegistrySupport.getParserPool().newDocument();
+            copy = (Element) document.importNode(original, true);
+            document.appendChild(copy);
+        } catch (final XMLParserException e) {
+            throw new XMLRuntimeException("Error obtaining new Document from parser pool", e);
+        }
+
+        Node ancestor = original.getParentNode();
+        while (ancestor instanceof Element) {
+            final NamedNodeMap attributes = ancestor.getAttributes();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                final Attr attribute = (Attr) attributes.item(i);
+                if (XMLConstants.XMLNS_NS.equals(attribute.getNamespaceURI())
+                        && !copy.hasAttributeNS(XMLConstants.XMLNS_NS, attribute.getLocalName())) {
+                    final String prefix = XMLConstants.XMLNS_PREFIX.equals(attribute.getLocalName()) ? null
+                            : attribute.getLocalName();
+                    NamespaceSupport.appendNamespaceDeclaration(copy,
+                            StringSupport.trimOrNull(attribute.getValue()), prefix);
+                }
+            }
+            ancestor = ancestor.getParentNode();
+        }
+
+        final Unmarshaller unmarshaller = XMLObjectSupport.getUnmarshaller(copy);
+        if (unmarshaller == null) {
+            throw new UnmarshallingException("Unable to obtain Unmarshaller for element: "
+                    + QNameSupport.getNodeQName(copy));
+        }
+
+        final XMLObject clone = unmarshaller.unmarshall(copy);
+        clone.releaseDOM();
+        clone.releaseChildrenDOM(true);
+        return clone;
+    }
+
+    /**
+     * Clones each of the given children, in order, into the given target list.
+     * 
+     * @param children the children to clone
+     * @param target the list to add the clones to
+     * @param <T> the type of the children
+     * 
+     * @throws MarshallingException thrown if a child must be, but can not be, marshalled
+     * @throws UnmarshallingException thrown if the clone of a child can not be built
+     */
+    protected <T extends XMLObject> void cloneChildren(@Nonnull final List<T> children,
+            @Nonnull final List<T> target) throws MarshallingException, UnmarshallingException {
+        for (final T child : children) {
+            if (child != null) {
+                target.add(cloneChild(child));
+            }
+        }
+    }
+
+    /**
+     * Copies a boolean attribute value. {@link XSBooleanValue} is mutable and so may not be shared between the
+     * original and the clone.
+     * 
+     * @param value the value to copy, may be null
+     * 
+     * @return the copy, or null
+     */
+    @Nullable protected XSBooleanValue copyXSBooleanValue(@Nullable final XSBooleanValue value) {
+        if (value == null) {
+            return null;
+        }
+        return new XSBooleanValue(value.getValue(), value.isNumericRepresentation());
+    }
+
+    /**
+     * Copies the attributes of the original object to the clone. The default implementation does nothing.
+     * 
+     * @param xmlObject the object being cloned
+     * @param clone the clone
+     */
+    protected void cloneAttributes(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject clone) {
+
+    }
+
+    /**
+     * Copies the element content of the original object to the clone. The default implementation does nothing.
+     * 
+     * @param xmlObject the object being cloned
+     * @param clone the clone
+     */
+    protected void cloneElementContent(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject clone) {
+
+    }
+
+    /**
+     * Clones the children of the original object and adds them to the clone. The default implementation does
+     * nothing.
+     * 
+     * @param xmlObject the object being cloned
+     * @param clone the clone
+     * 
+     * @throws MarshallingException thrown if a child must be, but can not be, marshalled
+     * @throws UnmarshallingException thrown if the clone of a child can not be built
+     */
+    protected void cloneChildElements(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject clone)
+            throws MarshallingException, UnmarshallingException {
+
+    }
+}
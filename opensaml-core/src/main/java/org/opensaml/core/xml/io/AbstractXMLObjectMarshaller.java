@@ -23,6 +23,8 @@ import java.util.Set;
 
 import javax.annotation.Nonnull;
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import net.shibboleth.utilities.java.support.primitive.StringSupport;
 import net.shibboleth.utilities.java.support.xml.ElementSupport;
@@ -54,8 +56,13 @@ import com.google.common.base.Strings;
  * <li>Setting namespaces attributes declared for the element</li>
  * <li>Marshalling of child elements</li>
  * </ul>
+ * 
+ * <p>Marshalling directly to an {@link XMLStreamWriter} is supported by subclasses that opt in via
+ * {@link #isStreamingSupported()} and implement the {@link XMLStreamWriter} variants of
+ * {@link #marshallAttributes(XMLObject, XMLStreamWriter)} and
+ * {@link #marshallElementContent(XMLObject, XMLStreamWriter)}.</p>
  */
-public abstract class AbstractXMLObjectMarshaller implements Marshaller {
+public abstract class AbstractXMLObjectMarshaller implements StreamingMarshaller {
 
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(AbstractXMLObjectMarshaller.class);
@@ -249,23 +256,7 @@ public abstract class AbstractXMLObjectMarshaller implements Marshaller {
                     continue;
                 }
 
-                log.trace("Getting marshaller for child XMLObject {}", childXMLObject.getElementQName());
-                Marshaller marshaller = marshallerFactory.getMarshaller(childXMLObject);
-
-                if (marshaller == null) {
-                    marshaller = 
-                            marshallerFactory.getMarshaller(XMLObjectProviderRegistrySupport.getDefaultProviderQName());
-
-                    if (marshaller == null) {
-                        final String errorMsg = "No marshaller available for " + childXMLObject.getElementQName()
-                                + ", child of " + xmlObject.getElementQName();
-                        log.error(errorMsg);
-                        throw new MarshallingException(errorMsg);
-                    } else {
-                        log.trace("No marshaller was registered for {}, child of {}. Using default marshaller",
-                                childXMLObject.getElementQName(), xmlObject.getElementQName());
-                    }
-                }
+                final Marshaller marshaller = getChildMarshaller(xmlObject, childXMLObject);
 
                 log.trace("Marshalling {} and adding it to DOM", childXMLObject.getElementQName());
                 marshaller.marshall(childXMLObject, domElement);
@@ -275,6 +266,39 @@ public abstract class AbstractXMLObjectMarshaller implements Marshaller {
         }
     }
 
+    /**
+     * Get the marshaller for a child object, falling back to the default provider's marshaller.
+     * 
+     * @param xmlObject the parent XMLObject
+     * @param childXMLObject the child XMLObject
+     * 
+     * @return the marshaller for the child
+     * 
+     * @throws MarshallingException thrown if no marshaller is available
+     */
+    @Nonnull private Marshaller getChildMarshaller(@Nonnull final XMLObject xmlObject,
+            @Nonnull final XMLObject childXMLObject) throws MarshallingException {
+        log.trace("Getting marshaller for child XMLObject {}", childXMLObject.getElementQName());
+        Marshaller marshaller = marshallerFactory.getMarshaller(childXMLObject);
+
+        if (marshaller == null) {
+            marshaller = 
+                    marshallerFactory.getMarshaller(XMLObjectProviderRegistrySupport.getDefaultProviderQName());
+
+            if (marshaller == null) {
+                final String errorMsg = "No marshaller available for " + childXMLObject.getElementQName()
+                        + ", child of " + xmlObject.getElementQName();
+                log.error(errorMsg);
+                throw new MarshallingException(errorMsg);
+            } else {
+                log.trace("No marshaller was registered for {}, child of {}. Using default marshaller",
+                        childXMLObject.getElementQName(), xmlObject.getElementQName());
+            }
+        }
+        
+        return marshaller;
+    }
+
     /**
      * Creates the xmlns attributes for any namespaces set on the given XMLObject.
      * 
@@ -442,4 +466,214 @@ public abstract class AbstractXMLObjectMarshaller implements Marshaller {
         XMLObjectSupport.marshallAttributeMap(xmlObject.getUnknownAttributes(), domElement);
     }
  
+    /**
+     * Get whether this marshaller supports marshalling directly to an {@link XMLStreamWriter}.
+     * 
+     * <p>A marshaller that returns true must implement the {@link XMLStreamWriter} variants of any of
+     * {@link #marshallAttributes(XMLObject, Element)} and {@link #marshallElementContent(XMLObject, Element)}
+     * that it overrides. Since the setting is inherited, a subclass of such a marshaller that adds attributes or
+     * content must either do the same or override this method to return false.</p>
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @return true iff streaming is supported
+     */
+    protected boolean isStreamingSupported() {
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isStreamable(@Nonnull final XMLObject xmlObject) {
+        return isStreamingSupported() && xmlObject.getDOM() == null;
+    }
+
+    /** {@inheritDoc} */
+    public void marshall(@Nonnull final XMLObject xmlObject, @Nonnull final XMLStreamWriter writer)
+            throws MarshallingException {
+
+        log.trace("Starting to stream {}", xmlObject.getElementQName());
+
+        if (!isStreamable(xmlObject)) {
+            throw new MarshallingException("XMLObject " + xmlObject.getElementQName()
+                    + " cannot be marshalled to a stream");
+        }
+        
+        try {
+            final QName name = xmlObject.getElementQName();
+            final String prefix = StringSupport.trimOrNull(name.getPrefix());
+            writer.writeStartElement(prefix != null ? prefix : "", name.getLocalPart(),
+                    Strings.nullToEmpty(name.getNamespaceURI()));
+
+            marshallNamespaces(xmlObject, writer);
+
+            marshallSchemaInstanceAttributes(xmlObject, writer);
+
+            marshallAttributes(xmlObject, writer);
+
+            marshallChildElements(xmlObject, writer);
+
+            marshallElementContent(xmlObject, writer);
+            
+            writer.writeEndElement();
+        } catch (final XMLStreamException e) {
+            throw new MarshallingException("Unable to write XMLObject " + xmlObject.getElementQName()
+                    + " to stream", e);
+        }
+    }
+
+    /**
+     * Writes the child elements of the given XMLObject to a stream.
+     * 
+     * @param xmlObject the XMLObject whose children will be marshalled
+     * @param writer the stream writer
+     * 
+     * @throws MarshallingException thrown if there is a problem marshalling a child element
+     */
+    protected void marshallChildElements(@Nonnull final XMLObject xmlObject, @Nonnull final XMLStreamWriter writer)
+            throws MarshallingException {
+        log.trace("Streaming child elements for XMLObject {}", xmlObject.getElementQName());
+
+        final List<XMLObject> childXMLObjects = xmlObject.getOrderedChildren();
+        if (childXMLObjects != null) {
+            for (final XMLObject childXMLObject : childXMLObjects) {
+                if (childXMLObject == null) {
+                    continue;
+                }
+
+                final Marshaller marshaller = getChildMarshaller(xmlObject, childXMLObject);
+                if (!(marshaller instanceof StreamingMarshaller)) {
+                    throw new MarshallingException("Marshaller for " + childXMLObject.getElementQName()
+                            + ", child of " + xmlObject.getElementQName() + ", does not support streaming");
+                }
+                
+                ((StreamingMarshaller) marshaller).marshall(childXMLObject, writer);
+            }
+        }
+    }
+
+    /**
+     * Writes namespace declarations for any namespaces set on the given XMLObject that are not already in scope.
+     * 
+     * @param xmlObject the XMLObject
+     * @param writer the stream writer
+     * 
+     * @throws XMLStreamException thrown if there is a problem writing to the stream
+     */
+    protected void marshallNamespaces(@Nonnull final XMLObject xmlObject, @Nonnull final XMLStreamWriter writer)
+            throws XMLStreamException {
+        log.trace("Streaming namespace attributes for XMLObject {}", xmlObject.getElementQName());
+        
+        final Set<Namespace> declarations = xmlObject.getNamespaceManager().getNamespaceDeclarations();
+        for (final Namespace namespace : xmlObject.getNamespaces()) {
+            final String nsURI = Strings.nullToEmpty(StringSupport.trimOrNull(namespace.getNamespaceURI()));
+            final String nsPrefix = Strings.nullToEmpty(StringSupport.trimOrNull(namespace.getNamespacePrefix()));
+            
+            if (!declarations.contains(namespace)) {
+                if (XMLConstants.XML_PREFIX.equals(nsPrefix) || XMLConstants.XML_NS.equals(nsURI)) {
+                    //the "xml" namespace never needs to be declared
+                    continue;
+                }
+                
+                final String declared = Strings.nullToEmpty(writer.getNamespaceContext().getNamespaceURI(nsPrefix));
+                if (nsURI.equals(declared)) {
+                    log.trace("Namespace {} has already been declared on an ancestor of {} no need to add it here", 
+                            namespace, xmlObject.getElementQName());
+                    continue;
+                }
+            }
+            
+            log.trace("Adding namespace declaration {} to {}", namespace, xmlObject.getElementQName());
+            if (nsPrefix.isEmpty()) {
+                writer.writeDefaultNamespace(nsURI);
+                writer.setDefaultNamespace(nsURI);
+            } else {
+                writer.writeNamespace(nsPrefix, nsURI);
+                writer.setPrefix(nsPrefix, nsURI);
+            }
+        }
+    }
+
+    /**
+     * Writes the XSI type, schemaLocation, noNamespaceSchemaLocation and nil attributes for an XMLObject.
+     * 
+     * @param xmlObject the XMLObject
+     * @param writer the stream writer
+     * 
+     * @throws MarshallingException thrown if the schema type information is invalid
+     * @throws XMLStreamException thrown if there is a problem writing to the stream
+     */
+    protected void marshallSchemaInstanceAttributes(@Nonnull final XMLObject xmlObject,
+            @Nonnull final XMLStreamWriter writer) throws MarshallingException, XMLStreamException {
+
+        if (!Strings.isNullOrEmpty(xmlObject.getSchemaLocation())) {
+            writer.writeAttribute(XMLConstants.XSI_PREFIX, XMLConstants.XSI_NS, "schemaLocation",
+                    xmlObject.getSchemaLocation());
+        }
+
+        if (!Strings.isNullOrEmpty(xmlObject.getNoNamespaceSchemaLocation())) {
+            writer.writeAttribute(XMLConstants.XSI_PREFIX, XMLConstants.XSI_NS, "noNamespaceSchemaLocation",
+                    xmlObject.getNoNamespaceSchemaLocation());
+        }
+        
+        if (xmlObject.isNilXSBoolean() != null && xmlObject.isNil()) {
+            writer.writeAttribute(XMLConstants.XSI_PREFIX, XMLConstants.XSI_NS, "nil",
+                    xmlObject.isNilXSBoolean().toString());
+        }
+
+        final QName type = xmlObject.getSchemaType();
+        if (type == null) {
+            return;
+        }
+
+        final String typeLocalName = StringSupport.trimOrNull(type.getLocalPart());
+        final String typePrefix = StringSupport.trimOrNull(type.getPrefix());
+
+        if (typeLocalName == null) {
+            throw new MarshallingException("The type QName on XMLObject " + xmlObject.getElementQName()
+                    + " may not have a null local name");
+        }
+
+        if (type.getNamespaceURI() == null) {
+            throw new MarshallingException("The type URI QName on XMLObject " + xmlObject.getElementQName()
+                    + " may not have a null namespace URI");
+        }
+
+        writer.writeAttribute(XMLConstants.XSI_PREFIX, XMLConstants.XSI_NS, "type",
+                typePrefix == null ? typeLocalName : typePrefix + ":" + typeLocalName);
+    }
+
+    /**
+     * Writes the attributes of a given XMLObject to a stream. This is the streaming counterpart of
+     * {@link #marshallAttributes(XMLObject, Element)}.
+     * 
+     * This default implementation of this method is a no-op
+     * 
+     * @param xmlObject the XMLObject to marshall
+     * @param writer the stream writer
+     * 
+     * @throws MarshallingException thrown if there is a problem marshalling the element
+     * @throws XMLStreamException thrown if there is a problem writing to the stream
+     */
+    protected void marshallAttributes(@Nonnull final XMLObject xmlObject, @Nonnull final XMLStreamWriter writer)
+            throws MarshallingException, XMLStreamException {
+        
+    }
+
+    /**
+     * Writes data from the XMLObject as element content to a stream. This is the streaming counterpart of
+     * {@link #marshallElementContent(XMLObject, Element)}.
+     * 
+     * The default implementation of this method is a no-op.
+     * 
+     * @param xmlObject the XMLObject
+     * @param writer the stream writer
+     * 
+     * @throws MarshallingException thrown if the textual content can not be written
+     * @throws XMLStreamException thrown if there is a problem writing to the stream
+     */
+    protected void marshallElementContent(@Nonnull final XMLObject xmlObject, @Nonnull final XMLStreamWriter writer)
+            throws MarshallingException, XMLStreamException {
+        
+    }
+ 
 }
@@ -21,10 +21,13 @@ import java.util.Objects;
 
 import javax.annotation.Nonnull;
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
 
 import net.shibboleth.utilities.java.support.primitive.StringSupport;
 import net.shibboleth.utilities.java.support.xml.QNameSupport;
 import net.shibboleth.utilities.java.support.xml.XMLConstants;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
 
 import org.opensaml.core.xml.AttributeExtensibleXMLObject;
 import org.opensaml.core.xml.Namespace;
@@ -59,8 +62,14 @@ import org.w3c.dom.Text;
  * for your implementation.
  * 
  * Failure to adhere to this warning will very likely lead to security bugs.
+ * 
+ * <p>Unmarshalling directly from an {@link UnmarshallingStreamReader} is supported by subclasses that opt in via
+ * {@link #isStreamingSupported()} and implement the stream variants of
+ * {@link #processAttribute(XMLObject, QName, String)} and
+ * {@link #processUnknownAttribute(AttributeExtensibleXMLObject, QName, String)} where they override the DOM
+ * ones.</p>
  */
-public abstract class AbstractXMLObjectUnmarshaller implements Unmarshaller {
+public abstract class AbstractXMLObjectUnmarshaller implements StreamingUnmarshaller {
 
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(AbstractXMLObjectUnmarshaller.class);
@@ -396,4 +405,251 @@ public abstract class AbstractXMLObjectUnmarshaller implements Unmarshaller {
         // below support method.
         XMLObjectSupport.unmarshallToAttributeMap(xmlObject.getUnknownAttributes(), attribute);
     }
+
+    /**
+     * Get whether this unmarshaller supports unmarshalling directly from a stream.
+     * 
+     * <p>An unmarshaller that returns true must implement the stream variants of any of
+     * {@link #processAttribute(XMLObject, Attr)} and
+     * {@link #processUnknownAttribute(AttributeExtensibleXMLObject, Attr)} that it overrides. Since the setting is
+     * inherited, a subclass of such an unmarshaller that handles additional attributes must either do the same or
+     * override this method to return false.</p>
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @return true iff streaming is supported
+     */
+    protected boolean isStreamingSupported() {
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isStreamable(@Nonnull final UnmarshallingStreamReader reader) {
+        return isStreamingSupported() && !reader.isDOMRequired();
+    }
+
+    /** {@inheritDoc} */
+    // Checkstyle: CyclomaticComplexity OFF
+    @Nonnull public XMLObject unmarshall(@Nonnull final UnmarshallingStreamReader reader)
+            throws UnmarshallingException {
+        if (!reader.isStartElement() || !isStreamable(reader)) {
+            throw new UnmarshallingException("Reader is not positioned at an element that can be unmarshalled from "
+                    + "the stream");
+        }
+        log.trace("Starting to unmarshall stream element {}", reader.getName());
+
+        try {
+            final XMLObject xmlObject = buildXMLObject(reader);
+            
+            for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                final String prefix = StringSupport.trimOrNull(reader.getNamespacePrefix(i));
+                xmlObject.getNamespaceManager().registerNamespaceDeclaration(
+                        new Namespace(reader.getNamespaceURI(i), prefix));
+            }
+
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                unmarshallAttribute(xmlObject, reader.getAttributeName(i), reader.getAttributeValue(i));
+            }
+
+            StringBuilder textContent = null;
+            while (true) {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                        || event == XMLStreamConstants.SPACE) {
+                    if (textContent == null) {
+                        textContent = new StringBuilder();
+                    }
+                    textContent.append(reader.getText());
+                } else if (event == XMLStreamConstants.START_ELEMENT || event == XMLStreamConstants.END_ELEMENT) {
+                    if (textContent != null) {
+                        unmarshallTextContent(xmlObject, textContent.toString());
+                        textContent = null;
+                    }
+                    if (event == XMLStreamConstants.END_ELEMENT) {
+                        return xmlObject;
+                    }
+                    unmarshallChildElement(xmlObject, reader);
+                } else if (event == XMLStreamConstants.DTD || event == XMLStreamConstants.ENTITY_REFERENCE) {
+                    throw new UnmarshallingException("Saw illegal DTD or entity reference in stream, "
+                            + "likely due to improper parser configuration");
+                }
+            }
+        } catch (final XMLStreamException e) {
+            throw new UnmarshallingException("Unable to read element " + reader.getName() + " from stream", e);
+        }
+    }
+    // Checkstyle: CyclomaticComplexity ON
+
+    /**
+     * Constructs the XMLObject that the element at the reader's current position will be unmarshalled into. This is
+     * the stream counterpart of {@link #buildXMLObject(Element)}, and likewise prefers a builder registered for the
+     * element's xsi:type over one registered for its name.
+     * 
+     * @param reader the reader, positioned at the element's start tag
+     * 
+     * @return the empty XMLObject that the element can be unmarshalled into
+     * 
+     * @throws UnmarshallingException thrown if there is no XMLObjectBuilder registered for the element
+     */
+    @Nonnull protected XMLObject buildXMLObject(@Nonnull final UnmarshallingStreamReader reader)
+            throws UnmarshallingException {
+        final QName elementName = reader.getName();
+        final QName schemaType = reader.getXSIType();
+        log.trace("Building XMLObject for {}", elementName);
+
+        XMLObjectBuilder<?> xmlObjectBuilder = null;
+        if (schemaType != null) {
+            xmlObjectBuilder = xmlObjectBuilderFactory.getBuilder(schemaType);
+        }
+        if (xmlObjectBuilder == null) {
+            xmlObjectBuilder = xmlObjectBuilderFactory.getBuilder(elementName);
+        }
+        if (xmlObjectBuilder == null) {
+            xmlObjectBuilder = xmlObjectBuilderFactory.getBuilder(
+                    XMLObjectProviderRegistrySupport.getDefaultProviderQName());
+            if (xmlObjectBuilder == null) {
+                final String errorMsg = "Unable to locate builder for " + elementName;
+                log.error(errorMsg);
+                throw new UnmarshallingException(errorMsg);
+            }
+            log.trace("No builder was registered for {} but the default builder {} was available, using it.",
+                    elementName, xmlObjectBuilder.getClass().getName());
+        }
+
+        return xmlObjectBuilder.buildObject(StringSupport.trimOrNull(elementName.getNamespaceURI()),
+                elementName.getLocalPart(), StringSupport.trimOrNull(elementName.getPrefix()), schemaType);
+    }
+
+    /**
+     * Unmarshalls an attribute read from a stream. This is the stream counterpart of
+     * {@link #unmarshallAttribute(XMLObject, Attr)}; namespace declarations are not reported as attributes by StAX
+     * and are handled separately.
+     * 
+     * @param xmlObject the XMLObject that will receive the attribute
+     * @param attributeName the attribute name
+     * @param attributeValue the attribute value
+     * 
+     * @throws UnmarshallingException thrown if there is a problem unmarshalling the attribute
+     */
+    private void unmarshallAttribute(@Nonnull final XMLObject xmlObject, @Nonnull final QName attributeName,
+            @Nonnull final String attributeValue) throws UnmarshallingException {
+        log.trace("Pre-processing attribute {}", attributeName);
+        final String attributeNamespace = StringSupport.trimOrNull(attributeName.getNamespaceURI());
+
+        if (Objects.equals(attributeNamespace, XMLConstants.XSI_NS)) {
+            if (XMLConstants.XSI_SCHEMA_LOCATION_ATTRIB_NAME.getLocalPart().equals(attributeName.getLocalPart())) {
+                xmlObject.setSchemaLocation(attributeValue);
+            } else if (XMLConstants.XSI_NO_NAMESPACE_SCHEMA_LOCATION_ATTRIB_NAME.getLocalPart().equals(
+                    attributeName.getLocalPart())) {
+                xmlObject.setNoNamespaceSchemaLocation(attributeValue);
+            } else if (XMLConstants.XSI_NIL_ATTRIB_NAME.getLocalPart().equals(attributeName.getLocalPart())) {
+                xmlObject.setNil(XSBooleanValue.valueOf(attributeValue));
+            }
+        } else {
+            if (attributeNamespace != null) {
+                xmlObject.getNamespaceManager().registerAttributeName(attributeName);
+            }
+            processAttribute(xmlObject, attributeName, attributeValue);
+        }
+    }
+
+    /**
+     * Unmarshalls the child element at the reader's current position, from the stream if its unmarshaller supports
+     * it, otherwise by reading it into a DOM, and passes the result to
+     * {@link #processChildElement(XMLObject, XMLObject)}.
+     * 
+     * @param xmlObject the parent object of the unmarshalled child
+     * @param reader the reader, positioned at the child's start tag
+     * 
+     * @throws UnmarshallingException thrown if an error occurs unmarshalling the child element
+     * @throws XMLStreamException thrown if there is a problem reading the stream
+     */
+    protected void unmarshallChildElement(@Nonnull final XMLObject xmlObject,
+            @Nonnull final UnmarshallingStreamReader reader) throws UnmarshallingException, XMLStreamException {
+        final QName childName = reader.getName();
+        final QName childType = reader.getXSIType();
+
+        Unmarshaller unmarshaller = null;
+        if (childType != null) {
+            unmarshaller = unmarshallerFactory.getUnmarshaller(childType);
+        }
+        if (unmarshaller == null) {
+            unmarshaller = unmarshallerFactory.getUnmarshaller(childName);
+        }
+        if (unmarshaller == null) {
+            unmarshaller = unmarshallerFactory.getUnmarshaller(
+                    XMLObjectProviderRegistrySupport.getDefaultProviderQName());
+            if (unmarshaller == null) {
+                final String errorMsg = "No unmarshaller available for " + childName + ", child of "
+                        + xmlObject.getElementQName();
+                log.error(errorMsg);
+                throw new UnmarshallingException(errorMsg);
+            }
+            log.trace("No unmarshaller was registered for {}, child of {}. Using default unmarshaller.",
+                    childName, xmlObject.getElementQName());
+        }
+
+        if (unmarshaller instanceof StreamingUnmarshaller
+                && ((StreamingUnmarshaller) unmarshaller).isStreamable(reader)) {
+            processChildElement(xmlObject, ((StreamingUnmarshaller) unmarshaller).unmarshall(reader));
+        } else {
+            log.trace("Reading child element {} into DOM for unmarshaller {}", childName,
+                    unmarshaller.getClass().getName());
+            try {
+                final Element childElement =
+                        reader.readElement(XMLObjectProviderRegistrySupport.getParserPool().newDocument());
+                processChildElement(xmlObject, unmarshaller.unmarshall(childElement));
+            } catch (final XMLParserException e) {
+                throw new UnmarshallingException("Unable to create Document to read element " + childName + " into",
+                        e);
+            }
+        }
+    }
+
+    /**
+     * Passes text content read from a stream to {@link #processElementContent(XMLObject, String)} if it contains
+     * something other than whitespace.
+     * 
+     * @param xmlObject the XMLObject receiving the element content
+     * @param content the textual content
+     */
+    private void unmarshallTextContent(@Nonnull final XMLObject xmlObject, @Nonnull final String content) {
+        final String textContent = StringSupport.trimOrNull(content);
+        if (textContent != null) {
+            processElementContent(xmlObject, textContent);
+        }
+    }
+
+    /**
+     * Called after an attribute has been read from a stream so that it can be added to the XMLObject. This is the
+     * stream counterpart of {@link #processAttribute(XMLObject, Attr)}.
+     * 
+     * The default implementation of this method is a no-op
+     * 
+     * @param xmlObject the XMLObject
+     * @param attributeName the attribute name
+     * @param attributeValue the attribute value
+     * 
+     * @throws UnmarshallingException thrown if there is a problem adding the attribute to the XMLObject
+     */
+    protected void processAttribute(@Nonnull final XMLObject xmlObject, @Nonnull final QName attributeName,
+            @Nonnull final String attributeValue) throws UnmarshallingException {
+        log.debug("Ignoring unknown attribute {}", attributeName);
+    }
+
+    /**
+     * Called to store wildcard attributes read from a stream, if the object supports that. This is the stream
+     * counterpart of {@link #processUnknownAttribute(AttributeExtensibleXMLObject, Attr)}.
+     * 
+     * @param xmlObject The object which support anyAttribute.
+     * @param attributeName the attribute name
+     * @param attributeValue the attribute value
+     */
+    protected void processUnknownAttribute(@Nonnull final AttributeExtensibleXMLObject xmlObject,
+            @Nonnull final QName attributeName, @Nonnull final String attributeValue) {
+        xmlObject.getUnknownAttributes().put(attributeName, attributeValue);
+        if (XMLObjectProviderRegistrySupport.isIDAttribute(attributeName)) {
+            xmlObject.getUnknownAttributes().registerID(attributeName);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.io;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.core.xml.XMLObject;
+
+/**
+ * Cloners are used to create a deep copy of an {@link XMLObject} tree directly from the object graph, without
+ * marshalling the original to DOM and unmarshalling the copy again.
+ * 
+ * <p>The clone is built with the builder registered for the original object and never carries a cached DOM.
+ * Children for which no cloner is registered are copied from their cached DOM or, lacking one, via
+ * {@link org.opensaml.core.xml.util.XMLObjectSupport#cloneXMLObject(XMLObject)}, which marshalls them.</p>
+ */
+public interface Cloner {
+
+    /**
+     * Create a deep copy of the given object and its children.
+     * 
+     * @param xmlObject the object to clone
+     * 
+     * @return the clone of the given object
+     * 
+     * @throws MarshallingException thrown if a child without a registered cloner can not be marshalled
+     * @throws UnmarshallingException thrown if the clone, or a child without a registered cloner, can not be built
+     */
+    @Nonnull public XMLObject clone(@Nonnull final XMLObject xmlObject)
+            throws MarshallingException, UnmarshallingException;
+}
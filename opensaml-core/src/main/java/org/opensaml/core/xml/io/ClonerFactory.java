@@ -0,0 +1,129 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.io;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.namespace.QName;
+
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.opensaml.core.xml.XMLObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This thread-safe factory creates {@link org.opensaml.core.xml.io.Cloner}s that can be used to copy
+ * {@link org.opensaml.core.xml.XMLObject}s without a DOM round trip. Cloners are stored and retrieved by a
+ * {@link javax.xml.namespace.QName} key. This key is either the XML Schema Type or element QName of the XML element the
+ * XMLObject represents.
+ */
+public class ClonerFactory {
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(ClonerFactory.class);
+
+    /** Map of cloners to the elements they are for. */
+    private final Map<QName, Cloner> cloners;
+
+    /**
+     * Constructor.
+     */
+    public ClonerFactory() {
+        cloners = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Gets the Cloner for a particular element or null if no cloner is registered for an element.
+     * 
+     * @param key the key the cloner was registered under
+     * 
+     * @return the Cloner or null
+     */
+    @Nullable public Cloner getCloner(@Nullable final QName key) {
+        if (key == null) {
+            return null;
+        }
+
+        return cloners.get(key);
+    }
+
+    /**
+     * Retrieves the cloner for the given XMLObject. The schema type, if present, is tried first as the key with the
+     * element QName used if no schema type is present or does not have a cloner registered under it.
+     * 
+     * @param xmlObject the XMLObject to retrieve the cloner for
+     * 
+     * @return the cloner that can be used for the given XMLObject
+     */
+    @Nullable public Cloner getCloner(@Nonnull final XMLObject xmlObject) {
+        Cloner cloner;
+
+        cloner = getCloner(xmlObject.getSchemaType());
+
+        if (cloner == null) {
+            cloner = getCloner(xmlObject.getElementQName());
+        }
+
+        return cloner;
+    }
+
+    /**
+     * Gets an immutable listing of all the Cloners currently registered.
+     * 
+     * @return a listing of all the Cloners currently registered
+     */
+    @Nonnull public Map<QName, Cloner> getCloners() {
+        return Collections.unmodifiableMap(cloners);
+    }
+
+    /**
+     * Registers a Cloner with this factory. If a Cloner exist for the element name given it is replaced with
+     * the given cloner.
+     * 
+     * @param key the key the cloner was registered under
+     * @param cloner the Cloner
+     */
+    public void registerCloner(@Nonnull final QName key, @Nonnull final Cloner cloner) {
+        Constraint.isNotNull(key, "Cloner key cannot be null");
+        Constraint.isNotNull(cloner, "Cloner cannot be null");
+        log.debug("Registering cloner, {}, for object type {}", cloner.getClass().getName(), key);
+
+        cloners.put(key, cloner);
+    }
+
+    /**
+     * Deregisters the cloner for the given element.
+     * 
+     * @param key the key the cloner was registered under
+     * 
+     * @return the Cloner previously registered or null
+     */
+    @Nullable public Cloner deregisterCloner(@Nonnull final QName key) {
+        log.debug("Deregistering cloner for object type {}", key);
+        if(key != null){
+            return cloners.remove(key);
+        }
+        
+        return null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.io;
+
+import javax.annotation.Nonnull;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.opensaml.core.xml.XMLObject;
+
+/**
+ * A {@link Marshaller} that can also write an {@link XMLObject} directly to an {@link XMLStreamWriter}, without
+ * building an intermediate DOM.
+ * 
+ * <p>Streaming is an optimization for objects that are serialized once and not otherwise needed as DOM. Objects
+ * that already cache a DOM, or that must be marshalled to DOM, for example in order to be signed, are not
+ * streamable and must be marshalled via the DOM-based methods.</p>
+ */
+public interface StreamingMarshaller extends Marshaller {
+
+    /**
+     * Get whether the given object, not counting its children, can be marshalled to a stream by this marshaller.
+     * 
+     * @param xmlObject the object to check
+     * 
+     * @return true iff the object can be marshalled to a stream
+     */
+    public boolean isStreamable(@Nonnull final XMLObject xmlObject);
+
+    /**
+     * Marshall this element, and its children, to a stream writer.
+     * 
+     * <p>The writer must not be namespace repairing. Namespace declarations are written, and bound via
+     * {@link XMLStreamWriter#setPrefix(String, String)}, by the marshaller.</p>
+     * 
+     * @param xmlObject the object to marshall
+     * @param writer the writer to marshall the object to
+     * 
+     * @throws MarshallingException thrown if the object, or one of its descendants, is not streamable or if there
+     *          is a problem writing to the stream
+     */
+    public void marshall(@Nonnull final XMLObject xmlObject, @Nonnull final XMLStreamWriter writer)
+            throws MarshallingException;
+
+}
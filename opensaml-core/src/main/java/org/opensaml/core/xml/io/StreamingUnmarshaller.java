@@ -0,0 +1,59 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opensaml.core.xml.io;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.core.xml.XMLObject;
+
+/**
+ * An {@link Unmarshaller} that can also build an {@link XMLObject} directly from a StAX event stream, without
+ * first parsing the input into a DOM.
+ * 
+ * <p>Objects unmarshalled from a stream do not cache a DOM. Subtrees that the reader marks as requiring a DOM,
+ * for example those carrying an enveloped signature, or whose unmarshallers do not support streaming, are read into
+ * a DOM and handed to the DOM-based {@link #unmarshall(org.w3c.dom.Element)}.</p>
+ */
+public interface StreamingUnmarshaller extends Unmarshaller {
+
+    /**
+     * Get whether the element at the reader's current position can be unmarshalled from the stream by this
+     * unmarshaller.
+     * 
+     * @param reader the reader, positioned at the start of the element
+     * 
+     * @return true iff the element can be unmarshalled from the stream
+     */
+    public boolean isStreamable(@Nonnull final UnmarshallingStreamReader reader);
+
+    /**
+     * Unmarshall the element at the reader's current position, and its children.
+     * 
+     * <p>On entry the reader must be positioned at the element's start tag; on return it is positioned at the
+     * matching end tag.</p>
+     * 
+     * @param reader the reader to unmarshall the object from
+     * 
+     * @return the unmarshalled XMLObject
+     * 
+     * @throws UnmarshallingException thrown if the element is not streamable, if there is a problem reading the
+     *          stream, or if there is a problem unmarshalling the element or its descendants
+     */
+    @Nonnull public XMLObject unmarshall(@Nonnull final UnmarshallingStreamReader reader)
+            throws UnmarshallingException;
+
+}
@@ -0,0 +1,281 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opensaml.core.xml.io;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+import net.shibboleth.utilities.java.support.xml.NamespaceSupport;
+import net.shibboleth.utilities.java.support.xml.QNameSupport;
+import net.shibboleth.utilities.java.support.xml.XMLConstants;
+
+import org.opensaml.core.xml.Namespace;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.google.common.base.Strings;
+
+/**
+ * An {@link XMLStreamReader} wrapper used by {@link StreamingUnmarshaller}s.
+ * 
+ * <p>In addition to the underlying reader's behaviour, this tracks the namespace declarations in scope, which StAX
+ * does not expose, so that subtrees can be read into standalone DOM elements via
+ * {@link #readElement(Document)}, and knows which elements have been marked as requiring a DOM.</p>
+ * 
+ * <p>Elements are identified by their ordinal position in document order, the root element being 1.</p>
+ */
+public class UnmarshallingStreamReader extends StreamReaderDelegate {
+
+    /** Ordinals of the elements which must be unmarshalled from a DOM. */
+    @Nonnull private final Set<Integer> domElements;
+
+    /** Namespace declarations in scope, in declaration order. */
+    @Nonnull private final List<Namespace> namespaces;
+
+    /** Size of {@link #namespaces} at the start of each open element. */
+    @Nonnull private final Deque<Integer> scopes;
+
+    /** Ordinal of the most recent start element. */
+    private int elementCount;
+
+    /**
+     * Constructor.
+     * 
+     * @param reader the underlying reader
+     */
+    public UnmarshallingStreamReader(@Nonnull final XMLStreamReader reader) {
+        this(reader, null);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param reader the underlying reader
+     * @param domElementOrdinals ordinals of the elements which must be unmarshalled from a DOM
+     */
+    public UnmarshallingStreamReader(@Nonnull final XMLStreamReader reader,
+            @Nullable final Set<Integer> domElementOrdinals) {
+        super(reader);
+        domElements = domElementOrdinals != null ? domElementOrdinals : Collections.<Integer>emptySet();
+        namespaces = new ArrayList<>();
+        scopes = new ArrayDeque<>();
+        if (reader.isStartElement()) {
+            startElement();
+        }
+    }
+
+    /**
+     * Get whether the element at the current position must be unmarshalled from a DOM.
+     * 
+     * @return true iff the reader is at the start of an element marked as requiring a DOM
+     */
+    public boolean isDOMRequired() {
+        return isStartElement() && domElements.contains(elementCount);
+    }
+
+    /**
+     * Get the namespace declarations in scope at the current position, keyed by prefix. The default namespace is
+     * keyed by the empty string.
+     * 
+     * @return the in-scope namespace declarations
+     */
+    @Nonnull @NonnullElements @NotLive public Map<String, String> getNamespacesInScope() {
+        final Map<String, String> inScope = new LinkedHashMap<>();
+        for (final Namespace namespace : namespaces) {
+            inScope.put(Strings.nullToEmpty(namespace.getNamespacePrefix()),
+                    Strings.nullToEmpty(namespace.getNamespaceURI()));
+        }
+        return inScope;
+    }
+
+    /**
+     * Get the xsi:type of the element at the current position.
+     * 
+     * @return the element's xsi:type, or null if it has none
+     */
+    @Nullable public QName getXSIType() {
+        if (!isStartElement()) {
+            return null;
+        }
+        
+        final String type = StringSupport.trimOrNull(getAttributeValue(XMLConstants.XSI_NS, "type"));
+        if (type == null) {
+            return null;
+        }
+
+        final int colon = type.indexOf(':');
+        final String prefix = colon > 0 ? type.substring(0, colon) : null;
+        return QNameSupport.constructQName(getNamespaceContext().getNamespaceURI(Strings.nullToEmpty(prefix)),
+                type.substring(colon + 1), prefix);
+    }
+
+    /** {@inheritDoc} */
+    public int next() throws XMLStreamException {
+        if (isEndElement()) {
+            endElement();
+        }
+
+        final int event = super.next();
+        if (event == START_ELEMENT) {
+            startElement();
+        }
+        return event;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>Implemented in terms of {@link #next()} so that namespace scope tracking sees every element.</p>
+     */
+    public int nextTag() throws XMLStreamException {
+        int event = next();
+        while ((event == CHARACTERS || event == CDATA) && isWhiteSpace() || event == SPACE
+                || event == PROCESSING_INSTRUCTION || event == COMMENT) {
+            event = next();
+        }
+        if (event != START_ELEMENT && event != END_ELEMENT) {
+            throw new XMLStreamException("Expected start or end tag", getLocation());
+        }
+        return event;
+    }
+
+    /**
+     * Read the element at the current position, and its descendants, into a DOM.
+     * 
+     * <p>All namespace declarations in scope are declared on the returned element, so that it can stand alone. If
+     * the document has no document element, the element becomes its document element. On return the reader is
+     * positioned at the element's end tag.</p>
+     * 
+     * @param document the document with which to create the DOM nodes
+     * 
+     * @return the element
+     * 
+     * @throws XMLStreamException thrown if the reader is not at a start tag or there is a problem reading
+     */
+    @Nonnull public Element readElement(@Nonnull final Document document) throws XMLStreamException {
+        if (!isStartElement()) {
+            throw new XMLStreamException("Reader is not positioned at the start of an element", getLocation());
+        }
+
+        final Element root = createElement(document, false);
+        for (final Map.Entry<String, String> namespace : getNamespacesInScope().entrySet()) {
+            if (!namespace.getKey().isEmpty() || !namespace.getValue().isEmpty()) {
+                NamespaceSupport.appendNamespaceDeclaration(root, Strings.emptyToNull(namespace.getValue()),
+                        Strings.emptyToNull(namespace.getKey()));
+            }
+        }
+        if (document.getDocumentElement() == null) {
+            document.appendChild(root);
+        }
+
+        Element current = root;
+        int depth = 1;
+        while (depth > 0) {
+            switch (next()) {
+                case START_ELEMENT:
+                    final Element child = createElement(document, true);
+                    current.appendChild(child);
+                    current = child;
+                    depth++;
+                    break;
+                    
+                case END_ELEMENT:
+                    depth--;
+                    if (depth > 0) {
+                        current = (Element) current.getParentNode();
+                    }
+                    break;
+                    
+                case CHARACTERS:
+                case CDATA:
+                case SPACE:
+                    current.appendChild(document.createTextNode(getText()));
+                    break;
+                    
+                default:
+                    // comments and processing instructions are dropped, as by the parser pool
+                    break;
+            }
+        }
+
+        return root;
+    }
+
+    /**
+     * Create a DOM element for the start tag at the current position, with its attributes.
+     * 
+     * @param document the document with which to create the element
+     * @param declareNamespaces whether to add the namespace declarations made by this start tag
+     * 
+     * @return the element
+     */
+    @Nonnull private Element createElement(@Nonnull final Document document, final boolean declareNamespaces) {
+        final String prefix = Strings.emptyToNull(getPrefix());
+        final Element element = document.createElementNS(Strings.emptyToNull(getNamespaceURI()),
+                prefix != null ? prefix + ":" + getLocalName() : getLocalName());
+
+        if (declareNamespaces) {
+            for (int i = 0; i < getNamespaceCount(); i++) {
+                NamespaceSupport.appendNamespaceDeclaration(element, getNamespaceURI(i),
+                        Strings.emptyToNull(getNamespacePrefix(i)));
+            }
+        }
+
+        for (int i = 0; i < getAttributeCount(); i++) {
+            final String attributePrefix = Strings.emptyToNull(getAttributePrefix(i));
+            element.setAttributeNS(Strings.emptyToNull(getAttributeNamespace(i)),
+                    attributePrefix != null ? attributePrefix + ":" + getAttributeLocalName(i)
+                            : getAttributeLocalName(i), getAttributeValue(i));
+        }
+
+        return element;
+    }
+
+    /** Record the start of an element at the current position. */
+    private void startElement() {
+        elementCount++;
+        scopes.push(namespaces.size());
+        for (int i = 0; i < getNamespaceCount(); i++) {
+            namespaces.add(new Namespace(getNamespaceURI(i), Strings.emptyToNull(getNamespacePrefix(i))));
+        }
+    }
+
+    /** Record the end of the element at the current position. */
+    private void endElement() {
+        if (!scopes.isEmpty()) {
+            final int size = scopes.pop();
+            namespaces.subList(size, namespaces.size()).clear();
+        }
+    }
+
+}
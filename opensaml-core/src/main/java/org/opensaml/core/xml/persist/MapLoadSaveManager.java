@@ -36,11 +36,17 @@ import net.shibboleth.utilities.java.support.logic.Constraint;
 
 /**
  * Simple implementation of {@link XMLObjectLoadSaveManager} which uses an in-memory map.
+ * 
+ * <p>
+ * Since the saved instances themselves are stored, their object metadata, including any
+ * {@link ProcessedStateMarker}, is preserved.
+ * </p>
  *
  * @param <T> the specific base XML object type being managed
  */
 @NotThreadSafe
-public class MapLoadSaveManager<T extends XMLObject> extends AbstractConditionalLoadXMLObjectLoadSaveManager<T> {
+public class MapLoadSaveManager<T extends XMLObject> extends AbstractConditionalLoadXMLObjectLoadSaveManager<T>
+        implements ProcessedStateXMLObjectLoadSaveManager<T> {
     
     /** Logger. */
     private Logger log = LoggerFactory.getLogger(MapLoadSaveManager.class);
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.persist;
+
+import javax.annotation.Nullable;
+
+import org.opensaml.core.xml.XMLObject;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+
+/**
+ * A marker class which indicates that an {@link XMLObject} represents the already post-processed state
+ * of some original data, for example metadata which has already been run through a filter chain.
+ * 
+ * <p>
+ * It will typically be attached to an XML object via its {@link XMLObject#getObjectMetadata()} prior to
+ * the object being saved. {@link ProcessedStateXMLObjectLoadSaveManager} implementations, such as
+ * {@link SegmentFileLoadSaveManager}, persist it and re-attach it to the object when it is subsequently loaded.
+ * Other implementations simply return objects without the marker, which callers must treat as unprocessed data.
+ * </p>
+ * 
+ * <p>
+ * The marker may carry a digest of the original data from which the processed state was produced, which
+ * allows the caller to check that the processed state still corresponds to the original data before
+ * skipping processing which has already been performed. Since the processed state is trusted in place of
+ * performing that processing, callers should use a keyed digest, i.e. a MAC, which also covers the processed
+ * state itself.
+ * </p>
+ */
+public class ProcessedStateMarker {
+    
+    /** Digest of the original data. */
+    @Nullable private final String sourceDigest;
+    
+    /** Constructor. */
+    public ProcessedStateMarker() {
+        this(null);
+    }
+    
+    /**
+     * Constructor.
+     *
+     * @param digest digest of the original data, may be null
+     */
+    public ProcessedStateMarker(@Nullable final String digest) {
+        sourceDigest = digest;
+    }
+    
+    /**
+     * Get the digest of the original data from which the processed state was produced.
+     * 
+     * @return the digest, or null if none was recorded
+     */
+    @Nullable public String getSourceDigest() {
+        return sourceDigest;
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(ProcessedStateMarker.class, sourceDigest);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(final Object obj) {
+        return obj instanceof ProcessedStateMarker 
+                && Objects.equal(sourceDigest, ((ProcessedStateMarker) obj).sourceDigest);
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).add("sourceDigest", sourceDigest).toString();
+    }
+
+}
@@ -0,0 +1,1085 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.persist;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSource;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.shibboleth.utilities.java.support.annotation.ParameterName;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
+import net.shibboleth.utilities.java.support.collection.Pair;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+import net.shibboleth.utilities.java.support.xml.ParserPool;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+/**
+ * Implementation of {@link XMLObjectLoadSaveManager} which stores serialized XML in a single append-only
+ * segment file.
+ * 
+ * <p>
+ * Each save, removal or key update appends a compact binary record to the end of the file, so that
+ * persisting a large number of objects doesn't require creating and syncing a file per object.
+ * An in-memory index of the offset of the current record for each key is built when the file is opened,
+ * and the serialized data is read back via a memory-mapped view of the file.  Each record carries a SHA-256
+ * digest of its data, which is verified on load, so that individually corrupted records are rejected
+ * rather than unmarshalled.  Records left incomplete at the end of the file, for example by a crash during
+ * an append, are discarded when the file is opened.
+ * </p>
+ * 
+ * <p>
+ * The segment file is locked for exclusive use while it is open, so opening a file which is already open,
+ * in this or another process, fails.
+ * </p>
+ * 
+ * <p>
+ * Saving data identical to the current record for a key, as happens when unchanged data is saved again,
+ * appends nothing. Other superseded records are reclaimed by {@link #compact()}, which is invoked
+ * automatically once the amount of superseded data exceeds both the configured compaction threshold and
+ * the amount of live data, so the file grows to at most about twice the live data plus the threshold.
+ * </p>
+ * 
+ * <p>
+ * The file is only remapped once it has doubled in size since it was last mapped, and data appended since
+ * then is read directly from the file. Mappings which are no longer used are released by the garbage
+ * collector.
+ * </p>
+ * 
+ * <p>
+ * In addition to the serialized data, a {@link ProcessedStateMarker} present in the object metadata of a
+ * saved object is persisted along with its source digest, and re-attached to the object when it is loaded.
+ * </p>
+ * 
+ * <p>
+ * Since the file is memory-mapped, its size is limited to {@link Integer#MAX_VALUE} bytes.
+ * </p>
+ *
+ * @param <T> the specific base XML object type being managed
+ */
+@ThreadSafe
+public class SegmentFileLoadSaveManager<T extends XMLObject> extends AbstractConditionalLoadXMLObjectLoadSaveManager<T>
+        implements ProcessedStateXMLObjectLoadSaveManager<T>, Closeable {
+    
+    /** Magic number which starts a segment file, the ASCII characters "OSSF". */
+    private static final int FILE_MAGIC = 0x4F535346;
+    
+    /** Version of the segment file format. */
+    private static final int FILE_VERSION = 2;
+    
+    /** Length of the segment file header. */
+    private static final int HEADER_LENGTH = 8;
+    
+    /** Record type for a saved object. */
+    private static final byte RECORD_PUT = 1;
+    
+    /** Record type for a removed key. */
+    private static final byte RECORD_REMOVE = 2;
+    
+    /** Record flag indicating the saved object carried a {@link ProcessedStateMarker}. */
+    private static final byte FLAG_PROCESSED = 0x01;
+    
+    /** Digest algorithm used for record data. */
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    
+    /** Length of the record data digest. */
+    private static final int DIGEST_LENGTH = 32;
+    
+    /** Logger. */
+    private Logger log = LoggerFactory.getLogger(SegmentFileLoadSaveManager.class);
+    
+    /** The segment file. */
+    private File segmentFile;
+    
+    /** Parser pool instance for deserializing XML from the segment file. */
+    private ParserPool parserPool;
+    
+    /** Channel used to append to and map the segment file. */
+    private FileChannel channel;
+    
+    /** Current read-only mapping of the segment file, which may not cover data appended since it was created. */
+    private MappedByteBuffer mappedBuffer;
+    
+    /** Index of the current record for each key. */
+    private Map<String, Record> index;
+    
+    /** Total length of the current records for all keys. */
+    private long liveBytes;
+    
+    /** Total length of superseded records. */
+    private long garbageBytes;
+    
+    /** Sequence number assigned to the most recently indexed record. */
+    private long sequence;
+    
+    /** Minimum length of superseded records before compaction is triggered automatically. */
+    @NonNegative private long compactionThreshold;
+    
+    /**
+     * Constructor.
+     *
+     * @param file the segment file, must be an absolute path
+     * 
+     * @throws IOException if the segment file can not be opened or is not a valid segment file
+     */
+    public SegmentFileLoadSaveManager(
+            @ParameterName(name="file") @Nonnull final String file) throws IOException {
+        this(new File(Constraint.isNotNull(StringSupport.trimOrNull(file), 
+                "Segment file string instance was null or empty")),
+                null,
+                false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param file the segment file, must be an absolute path
+     * 
+     * @throws IOException if the segment file can not be opened or is not a valid segment file
+     */
+    public SegmentFileLoadSaveManager(
+            @ParameterName(name="fileObject") @Nonnull final File file) throws IOException {
+        this(file, null, false);
+    }
+    
+    /**
+     * Constructor.
+     *
+     * @param file the segment file, must be an absolute path
+     * @param conditionalLoad whether {@link #load(String)} should behave 
+     *      as defined in {@link ConditionalLoadXMLObjectLoadSaveManager}
+     *      
+     * @throws IOException if the segment file can not be opened or is not a valid segment file
+     */
+    public SegmentFileLoadSaveManager(
+            @ParameterName(name="fileObject") @Nonnull final File file, 
+            @ParameterName(name="conditionalLoad") final boolean conditionalLoad) throws IOException {
+        this(file, null, conditionalLoad);
+    }
+    
+    /**
+     * Constructor.
+     *
+     * @param file the segment file, must be an absolute path
+     * @param pp the parser pool instance to use
+     * @param conditionalLoad whether {@link #load(String)} should behave 
+     *      as defined in {@link ConditionalLoadXMLObjectLoadSaveManager}
+     *      
+     * @throws IOException if the segment file can not be opened or is not a valid segment file
+     */
+    public SegmentFileLoadSaveManager(
+            @ParameterName(name="fileObject") @Nonnull final File file, 
+            @ParameterName(name="parserPool") @Nullable final ParserPool pp,
+            @ParameterName(name="conditionalLoad") final boolean conditionalLoad) throws IOException {
+        
+        super(conditionalLoad);
+        
+        segmentFile = Constraint.isNotNull(file, "Segment File instance was null");
+        Constraint.isTrue(segmentFile.isAbsolute(), "Segment file specified was not an absolute path");
+        if (segmentFile.exists()) {
+            Constraint.isTrue(segmentFile.isFile(), "Existing segment file path was not a file");
+        } else {
+            final File parent = segmentFile.getParentFile();
+            if (parent != null && !parent.exists()) {
+                Constraint.isTrue(parent.mkdirs(), "Segment file directory did not exist and could not be created");
+            }
+        }
+        
+        parserPool = pp;
+        if (parserPool == null) {
+            parserPool = Constraint.isNotNull(XMLObjectProviderRegistrySupport.getParserPool(),
+                    "Specified ParserPool was null and global ParserPool was not available");
+        }
+        
+        // Default to 1 MB.
+        compactionThreshold = 1024 * 1024;
+        
+        index = new LinkedHashMap<>();
+        channel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, 
+                StandardOpenOption.WRITE);
+        lock(channel, segmentFile);
+        try {
+            if (channel.size() == 0) {
+                writeFully(channel, buildHeader(), 0);
+            } else {
+                scan();
+            }
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Get the segment file.
+     * 
+     * @return the segment file
+     */
+    @Nonnull public File getSegmentFile() {
+        return segmentFile;
+    }
+    
+    /**
+     * Get the minimum length in bytes of superseded records before compaction is triggered automatically.
+     * 
+     * @return the compaction threshold
+     */
+    @NonNegative public synchronized long getCompactionThreshold() {
+        return compactionThreshold;
+    }
+    
+    /**
+     * Set the minimum length in bytes of superseded records before compaction is triggered automatically.
+     * 
+     * <p>
+     * Compaction is only triggered once the superseded records also exceed the length of the live records.
+     * </p>
+     * 
+     * <p>Defaults to: 1 MB.</p>
+     * 
+     * @param threshold the compaction threshold
+     */
+    public synchronized void setCompactionThreshold(@NonNegative final long threshold) {
+        compactionThreshold = Constraint.isGreaterThanOrEqual(0, threshold, 
+                "Compaction threshold must be greater than or equal to 0");
+    }
+
+    /** {@inheritDoc} */
+    public synchronized Set<String> listKeys() throws IOException {
+        return Collections.unmodifiableSet(new HashSet<>(index.keySet()));
+    }
+
+    /** {@inheritDoc} */
+    public Iterable<Pair<String, T>> listAll() throws IOException {
+        return new SegmentIterable(listKeys());
+    }
+
+    /** {@inheritDoc} */
+    public synchronized boolean exists(final String key) throws IOException {
+        return index.containsKey(checkKey(key));
+    }
+
+    /** {@inheritDoc} */
+    public T load(final String key) throws IOException {
+        final byte[] source;
+        final Record record;
+        synchronized (this) {
+            record = index.get(checkKey(key));
+            if (record == null) {
+                log.debug("Segment file record with key '{}' does not exist", key);
+                clearLoadLastModified(key);
+                return null;
+            }
+            if (isLoadConditionally() && isUnmodifiedSinceLastLoad(key)) {
+                log.debug("Segment file record with key '{}' has not been modified since the last request, " 
+                        + "returning null", key);
+                return null;
+            }
+            source = readData(key, record);
+        }
+        
+        try (final ByteArrayInputStream bais = new ByteArrayInputStream(source)) {
+            final XMLObject xmlObject = XMLObjectSupport.unmarshallFromInputStream(parserPool, bais);
+            xmlObject.getObjectMetadata().put(new XMLObjectSource(source));
+            if ((record.getFlags() & FLAG_PROCESSED) != 0) {
+                xmlObject.getObjectMetadata().put(new ProcessedStateMarker(record.getSourceDigest()));
+            }
+            updateLoadLastModified(key, record.getSequence());
+            return (T) xmlObject;
+        } catch (final XMLParserException|UnmarshallingException e) {
+            throw new IOException(String.format("Error loading segment file record with key '%s' from path: %s", 
+                    key, segmentFile.getAbsolutePath()), e);
+        }
+    }
+    
+    /** {@inheritDoc} */
+    protected synchronized boolean isUnmodifiedSinceLastLoad(@Nonnull final String key) throws IOException {
+        final Record record = index.get(key);
+        final Long lastLoaded = getLoadLastModified(key);
+        return record != null && lastLoaded != null && record.getSequence() <= lastLoaded;
+    }
+
+    /** {@inheritDoc} */
+    public void save(final String key, final T xmlObject) throws IOException {
+        save(key, xmlObject, false);
+    }
+
+    /** {@inheritDoc} */
+    public void save(final String key, final T xmlObject, final boolean overwrite) throws IOException {
+        checkKey(key);
+        
+        final byte[] data;
+        final List<XMLObjectSource> sources = xmlObject.getObjectMetadata().get(XMLObjectSource.class);
+        if (sources.size() == 1) {
+            log.debug("XMLObject contained 1 XMLObjectSource instance, persisting existing byte[]");
+            data = sources.get(0).getObjectSource();
+        } else {
+            log.debug("XMLObject contained {} XMLObjectSource instances, persisting marshalled object", 
+                    sources.size());
+            try (final ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+                XMLObjectSupport.marshallToOutputStream(xmlObject, baos);
+                data = baos.toByteArray();
+            } catch (final MarshallingException e) {
+                throw new IOException(String.format("Error saving segment file record with key '%s'", key), e);
+            }
+        }
+        final List<ProcessedStateMarker> markers = xmlObject.getObjectMetadata().get(ProcessedStateMarker.class);
+        final byte flags = markers.isEmpty() ? 0 : FLAG_PROCESSED;
+        final String sourceDigest = markers.isEmpty() ? null : markers.get(0).getSourceDigest();
+        final byte[] digest = digest(data);
+        
+        synchronized (this) {
+            final Record current = index.get(key);
+            if (current != null) {
+                if (!overwrite) {
+                    throw new IOException(String.format(
+                            "Segment file record already exists for key '%s' and overwrite not indicated", key));
+                } else if (current.isSameData(digest, flags, sourceDigest)) {
+                    log.debug("Segment file record with key '{}' is unchanged, not appending", key);
+                    return;
+                }
+            }
+            indexRecord(key, appendPut(key, data, digest, flags, sourceDigest, sequence + 1));
+            compactIfNecessary();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public synchronized boolean remove(final String key) throws IOException {
+        if (!index.containsKey(checkKey(key))) {
+            return false;
+        }
+        
+        deindexRecord(key, appendRemove(key));
+        clearLoadLastModified(key);
+        compactIfNecessary();
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized boolean updateKey(final String currentKey, final String newKey) throws IOException {
+        final Record current = index.get(checkKey(currentKey));
+        if (current == null) {
+            return false;
+        }
+        if (index.containsKey(checkKey(newKey))) {
+            throw new IOException(String.format("Specified new key already exists: %s", newKey));
+        }
+        
+        // The new record retains the sequence number of the current one, as the data itself is unmodified.
+        final byte[] data = readData(currentKey, current);
+        indexRecord(newKey, appendPut(newKey, data, current.getDigest(), current.getFlags(), 
+                current.getSourceDigest(), current.getSequence()));
+        deindexRecord(currentKey, appendRemove(currentKey));
+        updateLoadLastModified(newKey, getLoadLastModified(currentKey));
+        clearLoadLastModified(currentKey);
+        compactIfNecessary();
+        return true;
+    }
+    
+    /**
+     * Rewrite the segment file so that it contains only the current record for each key.
+     * 
+     * <p>
+     * The live records are written to a temporary file alongside the segment file, which then replaces
+     * the segment file.
+     * </p>
+     * 
+     * @throws IOException if there is a fatal error rewriting the segment file
+     */
+    public synchronized void compact() throws IOException {
+        log.debug("Compacting segment file '{}', live bytes: {}, superseded bytes: {}", 
+                segmentFile.getAbsolutePath(), liveBytes, garbageBytes);
+        
+        final File tempFile = new File(segmentFile.getAbsolutePath() + ".compact");
+        final Map<String, Record> newIndex = new LinkedHashMap<>();
+        long position = HEADER_LENGTH;
+        final FileChannel out = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, 
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean replaced = false;
+        try {
+            lock(out, tempFile);
+            writeFully(out, buildHeader(), 0);
+            for (final Map.Entry<String, Record> entry : index.entrySet()) {
+                final Record record = entry.getValue();
+                writeFully(out, mappedView(record.getOffset(), record.getLength()), position);
+                newIndex.put(entry.getKey(), record.relocate(position));
+                position += record.getLength();
+            }
+            out.force(true);
+            
+            // The new file is locked before it replaces the old one, so the segment file is never left unlocked
+            Files.move(tempFile.toPath(), segmentFile.toPath(), StandardCopyOption.REPLACE_EXISTING, 
+                    StandardCopyOption.ATOMIC_MOVE);
+            replaced = true;
+        } finally {
+            if (!replaced) {
+                out.close();
+            }
+        }
+        
+        mappedBuffer = null;
+        channel.close();
+        channel = out;
+        index = newIndex;
+        liveBytes = position - HEADER_LENGTH;
+        garbageBytes = 0;
+    }
+    
+    /**
+     * Close the segment file.
+     * 
+     * <p>
+     * Any subsequent operation which accesses the segment file will fail.
+     * </p>
+     * 
+     * @throws IOException if there is an error closing the segment file
+     */
+    public synchronized void close() throws IOException {
+        mappedBuffer = null;
+        channel.close();
+    }
+    
+    /**
+     * Check that the specified key is usable.
+     * 
+     * @param key the key
+     * @return the key
+     */
+    @Nonnull private String checkKey(@Nullable final String key) {
+        Constraint.isNotNull(StringSupport.trimOrNull(key), "Input key was null or empty");
+        return key;
+    }
+    
+    /**
+     * Lock a segment file for exclusive use, closing its channel if it can not be locked.
+     * 
+     * @param target the channel of the segment file
+     * @param file the segment file
+     * @throws IOException if the segment file is already locked or can not be locked
+     */
+    private void lock(@Nonnull final FileChannel target, @Nonnull final File file) throws IOException {
+        FileLock lock = null;
+        try {
+            lock = target.tryLock();
+        } catch (final OverlappingFileLockException e) {
+            // Already locked by another channel in this process
+        } finally {
+            if (lock == null) {
+                target.close();
+            }
+        }
+        if (lock == null) {
+            throw new IOException(String.format("Segment file is in use by another manager or process: %s",
+                    file.getAbsolutePath()));
+        }
+    }
+    
+    /**
+     * Build the segment file header.
+     * 
+     * @return the header
+     */
+    @Nonnull private ByteBuffer buildHeader() {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(FILE_MAGIC);
+        header.putInt(FILE_VERSION);
+        header.flip();
+        return header;
+    }
+    
+    /**
+     * Scan the existing segment file and build the index of current records.
+     * 
+     * <p>
+     * Scanning stops at the first incomplete or invalid record, and the segment file is truncated to the
+     * end of the last valid record.
+     * </p>
+     * 
+     * @throws IOException if the segment file is not a valid segment file or can not be read
+     */
+    private void scan() throws IOException {
+        final long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(String.format("Segment file exceeds the maximum supported size: %s",
+                    segmentFile.getAbsolutePath()));
+        }
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (size < HEADER_LENGTH || buffer.getInt() != FILE_MAGIC || buffer.getInt() != FILE_VERSION) {
+            throw new IOException(String.format("File is not a valid segment file: %s", 
+                    segmentFile.getAbsolutePath()));
+        }
+        
+        long validEnd = HEADER_LENGTH;
+        try {
+            while (buffer.hasRemaining()) {
+                final int recordOffset = buffer.position();
+                final byte type = buffer.get();
+                final int keyLength = buffer.getInt();
+                if (keyLength <= 0 || keyLength > buffer.remaining()) {
+                    break;
+                }
+                final byte[] keyBytes = new byte[keyLength];
+                buffer.get(keyBytes);
+                final String key = new String(keyBytes, StandardCharsets.UTF_8);
+                if (type == RECORD_PUT) {
+                    final byte flags = buffer.get();
+                    String sourceDigest = null;
+                    if ((flags & FLAG_PROCESSED) != 0) {
+                        final int sourceDigestLength = buffer.getShort() & 0xFFFF;
+                        if (sourceDigestLength > buffer.remaining()) {
+                            break;
+                        }
+                        if (sourceDigestLength > 0) {
+                            final byte[] sourceDigestBytes = new byte[sourceDigestLength];
+                            buffer.get(sourceDigestBytes);
+                            sourceDigest = new String(sourceDigestBytes, StandardCharsets.UTF_8);
+                        }
+                    }
+                    final int dataLength = buffer.getInt();
+                    if (dataLength <= 0 || dataLength > buffer.remaining() - DIGEST_LENGTH) {
+                        break;
+                    }
+                    final byte[] digest = new byte[DIGEST_LENGTH];
+                    buffer.get(digest);
+                    final int dataOffset = buffer.position();
+                    buffer.position(dataOffset + dataLength);
+                    indexRecord(key, new Record(recordOffset, buffer.position() - recordOffset, dataOffset, 
+                            dataLength, digest, flags, sourceDigest, sequence + 1));
+                } else if (type == RECORD_REMOVE) {
+                    deindexRecord(key, buffer.position() - recordOffset);
+                } else {
+                    break;
+                }
+                validEnd = buffer.position();
+            }
+        } catch (final BufferUnderflowException e) {
+            // Incomplete trailing record, handled below.
+        }
+        
+        if (validEnd < size) {
+            log.warn("Segment file '{}' contained {} bytes of incomplete or invalid data at offset {}, discarding", 
+                    segmentFile.getAbsolutePath(), size - validEnd, validEnd);
+            channel.truncate(validEnd);
+        } else {
+            // The mapping covers the whole file, so it can be reused to read records
+            mappedBuffer = buffer;
+        }
+        log.debug("Opened segment file '{}' with {} keys, live bytes: {}, superseded bytes: {}", 
+                segmentFile.getAbsolutePath(), index.size(), liveBytes, garbageBytes);
+    }
+    
+    /**
+     * Make the specified record the current record for the specified key.
+     * 
+     * @param key the key
+     * @param record the record
+     */
+    private void indexRecord(@Nonnull final String key, @Nonnull final Record record) {
+        final Record previous = index.remove(key);
+        if (previous != null) {
+            liveBytes -= previous.getLength();
+            garbageBytes += previous.getLength();
+        }
+        index.put(key, record);
+        liveBytes += record.getLength();
+        sequence = Math.max(sequence, record.getSequence());
+    }
+    
+    /**
+     * Remove the current record for the specified key.
+     * 
+     * @param key the key
+     * @param removeLength the length of the removal record
+     */
+    private void deindexRecord(@Nonnull final String key, final long removeLength) {
+        final Record previous = index.remove(key);
+        if (previous != null) {
+            liveBytes -= previous.getLength();
+            garbageBytes += previous.getLength();
+        }
+        garbageBytes += removeLength;
+    }
+    
+    /**
+     * Compact the segment file if the superseded records exceed the compaction threshold and
+     * the live records.
+     * 
+     * @throws IOException if there is a fatal error rewriting the segment file
+     */
+    private void compactIfNecessary() throws IOException {
+        if (garbageBytes > compactionThreshold && garbageBytes > liveBytes) {
+            compact();
+        }
+    }
+    
+    /**
+     * Append a record for a saved object.
+     * 
+     * @param key the key
+     * @param data the serialized object
+     * @param digest the digest of the serialized object
+     * @param flags the record flags
+     * @param sourceDigest the source digest of the processed state, if any
+     * @param recordSequence the sequence number to assign to the record
+     * @return the appended record
+     * @throws IOException if there is a fatal error appending the record
+     */
+    @Nonnull private Record appendPut(@Nonnull final String key, @Nonnull final byte[] data, 
+            @Nonnull final byte[] digest, final byte flags, @Nullable final String sourceDigest, 
+            final long recordSequence) throws IOException {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final byte[] sourceDigestBytes = sourceDigest != null ? sourceDigest.getBytes(StandardCharsets.UTF_8) 
+                : new byte[0];
+        if (sourceDigestBytes.length > 0xFFFF) {
+            throw new IOException(String.format("Source digest for segment file record with key '%s' is too long",
+                    key));
+        }
+        final int stateLength = (flags & FLAG_PROCESSED) != 0 ? 2 + sourceDigestBytes.length : 0;
+        final int length = 1 + 4 + keyBytes.length + 1 + stateLength + 4 + DIGEST_LENGTH + data.length;
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put(RECORD_PUT);
+        buffer.putInt(keyBytes.length);
+        buffer.put(keyBytes);
+        buffer.put(flags);
+        if (stateLength > 0) {
+            buffer.putShort((short) sourceDigestBytes.length);
+            buffer.put(sourceDigestBytes);
+        }
+        buffer.putInt(data.length);
+        buffer.put(digest);
+        buffer.put(data);
+        buffer.flip();
+        
+        final long offset = append(buffer);
+        return new Record(offset, length, offset + length - data.length, data.length, digest, flags, 
+                sourceDigest, recordSequence);
+    }
+    
+    /**
+     * Append a record for a removed key.
+     * 
+     * @param key the key
+     * @return the length of the appended record
+     * @throws IOException if there is a fatal error appending the record
+     */
+    private int appendRemove(@Nonnull final String key) throws IOException {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + keyBytes.length);
+        buffer.put(RECORD_REMOVE);
+        buffer.putInt(keyBytes.length);
+        buffer.put(keyBytes);
+        buffer.flip();
+        
+        append(buffer);
+        return buffer.capacity();
+    }
+    
+    /**
+     * Append the specified data to the end of the segment file.
+     * 
+     * @param buffer the data to append
+     * @return the offset at which the data was written
+     * @throws IOException if there is a fatal error appending the data
+     */
+    private long append(@Nonnull final ByteBuffer buffer) throws IOException {
+        final long offset = channel.size();
+        if (offset + buffer.remaining() > Integer.MAX_VALUE) {
+            throw new IOException(String.format("Segment file would exceed the maximum supported size: %s",
+                    segmentFile.getAbsolutePath()));
+        }
+        writeFully(channel, buffer, offset);
+        return offset;
+    }
+    
+    /**
+     * Write the specified data to a channel at the specified position.
+     * 
+     * @param target the target channel
+     * @param buffer the data to write
+     * @param position the position at which to write
+     * @throws IOException if there is a fatal error writing the data
+     */
+    private void writeFully(@Nonnull final FileChannel target, @Nonnull final ByteBuffer buffer, 
+            final long position) throws IOException {
+        long current = position;
+        while (buffer.hasRemaining()) {
+            current += target.write(buffer, current);
+        }
+    }
+    
+    /**
+     * Get a read-only view of a region of the segment file.
+     * 
+     * <p>
+     * If the current mapping does not cover the region, the file is remapped if it has at least doubled in
+     * size since it was mapped, and otherwise the region is read directly from the file.
+     * </p>
+     * 
+     * @param offset the offset of the region
+     * @param length the length of the region
+     * @return the view of the region
+     * @throws IOException if there is a fatal error mapping or reading the segment file
+     */
+    @Nonnull private ByteBuffer mappedView(final long offset, final int length) throws IOException {
+        if (mappedBuffer == null || offset + length > mappedBuffer.capacity()) {
+            final long size = channel.size();
+            if (mappedBuffer != null && size < 2L * mappedBuffer.capacity()) {
+                final ByteBuffer buffer = ByteBuffer.allocate(length);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offset + buffer.position()) < 0) {
+                        throw new EOFException(String.format("Segment file ended unexpectedly: %s", 
+                                segmentFile.getAbsolutePath()));
+                    }
+                }
+                buffer.flip();
+                return buffer;
+            }
+            mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        final ByteBuffer view = mappedBuffer.duplicate();
+        view.position((int) offset);
+        view.limit((int) offset + length);
+        return view;
+    }
+    
+    /**
+     * Read and verify the data of the specified record.
+     * 
+     * @param key the key of the record
+     * @param record the record
+     * @return the record data
+     * @throws IOException if the data can not be read or does not match the record digest
+     */
+    @Nonnull private byte[] readData(@Nonnull final String key, @Nonnull final Record record) throws IOException {
+        final byte[] data = new byte[record.getDataLength()];
+        mappedView(record.getDataOffset(), record.getDataLength()).get(data);
+        if (!MessageDigest.isEqual(record.getDigest(), digest(data))) {
+            throw new IOException(String.format("Segment file record with key '%s' failed digest verification", 
+                    key));
+        }
+        return data;
+    }
+    
+    /**
+     * Compute the digest of the specified data.
+     * 
+     * @param data the data
+     * @return the digest
+     * @throws IOException if the digest algorithm is not available
+     */
+    @Nonnull private byte[] digest(@Nonnull final byte[] data) throws IOException {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM).digest(data);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IOException("Segment file record digest algorithm is not available", e);
+        }
+    }
+    
+    /**
+     * Location and attributes of a record in the segment file.
+     */
+    private static class Record {
+        
+        /** Offset of the record. */
+        private final long offset;
+        
+        /** Length of the record. */
+        private final int length;
+        
+        /** Offset of the record data. */
+        private final long dataOffset;
+        
+        /** Length of the record data. */
+        private final int dataLength;
+        
+        /** Digest of the record data. */
+        private final byte[] digest;
+        
+        /** Record flags. */
+        private final byte flags;
+        
+        /** Source digest of the processed state, if any. */
+        @Nullable private final String sourceDigest;
+        
+        /** Sequence number, used as the modified time for conditional loading. */
+        private final long sequence;
+        
+        /**
+         * Constructor.
+         *
+         * @param recordOffset offset of the record
+         * @param recordLength length of the record
+         * @param recordDataOffset offset of the record data
+         * @param recordDataLength length of the record data
+         * @param recordDigest digest of the record data
+         * @param recordFlags record flags
+         * @param recordSourceDigest source digest of the processed state, if any
+         * @param recordSequence sequence number
+         */
+        Record(final long recordOffset, final int recordLength, final long recordDataOffset, 
+                final int recordDataLength, @Nonnull final byte[] recordDigest, final byte recordFlags, 
+                @Nullable final String recordSourceDigest, final long recordSequence) {
+            offset = recordOffset;
+            length = recordLength;
+            dataOffset = recordDataOffset;
+            dataLength = recordDataLength;
+            digest = recordDigest;
+            flags = recordFlags;
+            sourceDigest = recordSourceDigest;
+            sequence = recordSequence;
+        }
+        
+        /**
+         * Get the offset of the record.
+         * 
+         * @return the offset
+         */
+        long getOffset() {
+            return offset;
+        }
+        
+        /**
+         * Get the length of the record.
+         * 
+         * @return the length
+         */
+        int getLength() {
+            return length;
+        }
+        
+        /**
+         * Get the offset of the record data.
+         * 
+         * @return the data offset
+         */
+        long getDataOffset() {
+            return dataOffset;
+        }
+        
+        /**
+         * Get the length of the record data.
+         * 
+         * @return the data length
+         */
+        int getDataLength() {
+            return dataLength;
+        }
+        
+        /**
+         * Get the digest of the record data.
+         * 
+         * @return the digest
+         */
+        @Nonnull byte[] getDigest() {
+            return digest;
+        }
+        
+        /**
+         * Get the record flags.
+         * 
+         * @return the flags
+         */
+        byte getFlags() {
+            return flags;
+        }
+        
+        /**
+         * Get the source digest of the processed state.
+         * 
+         * @return the source digest, or null
+         */
+        @Nullable String getSourceDigest() {
+            return sourceDigest;
+        }
+        
+        /**
+         * Get the sequence number.
+         * 
+         * @return the sequence number
+         */
+        long getSequence() {
+            return sequence;
+        }
+        
+        /**
+         * Check whether a save of the specified data would leave this record unchanged.
+         * 
+         * @param otherDigest the digest of the data
+         * @param otherFlags the record flags of the data
+         * @param otherSourceDigest the source digest of the processed state of the data, if any
+         * @return true if this record holds the same data and state
+         */
+        boolean isSameData(@Nonnull final byte[] otherDigest, final byte otherFlags, 
+                @Nullable final String otherSourceDigest) {
+            return flags == otherFlags && MessageDigest.isEqual(digest, otherDigest) 
+                    && Objects.equals(sourceDigest, otherSourceDigest);
+        }
+        
+        /**
+         * Create a copy of this record located at a new offset.
+         * 
+         * @param newOffset the new offset of the record
+         * @return the relocated record
+         */
+        @Nonnull Record relocate(final long newOffset) {
+            return new Record(newOffset, length, newOffset + (dataOffset - offset), dataLength, digest, flags, 
+                    sourceDigest, sequence);
+        }
+    }
+    
+    /**
+     * Iterable which provides lazy iteration over the managed records.
+     */
+    private class SegmentIterable implements Iterable<Pair<String, T>> {
+        
+        /** Snapshot of keys at time of construction. */
+        private Set<String> keys;
+
+        /**
+         * Constructor.
+         *
+         * @param indexKeys Snapshot of keys at time of construction
+         */
+        public SegmentIterable(@Nonnull final Collection<String> indexKeys) {
+            keys = new HashSet<>(indexKeys);
+        }
+
+        /** {@inheritDoc} */
+        public Iterator<Pair<String, T>> iterator() {
+            return new SegmentIterator(keys);
+        }
+        
+    }
+    
+    /**
+     * Iterator which provides lazy iteration over the managed records.
+     */
+    private class SegmentIterator implements Iterator<Pair<String, T>> {
+        
+        /** Iterator for the keys. */
+        private Iterator<String> keysIter;
+        
+        /** Current value to return from next(). */
+        private Pair<String, T> current;
+        
+        /**
+         * Constructor.
+         *
+         * @param indexKeys Snapshot of keys at time of construction
+         */
+        public SegmentIterator(@Nonnull final Collection<String> indexKeys) {
+            keysIter = new HashSet<>(indexKeys).iterator();
+        }
+
+        /** {@inheritDoc} */
+        public boolean hasNext() {
+            if (current != null) {
+                return true;
+            }
+            
+            current = getNext();
+            
+            return current != null;
+        }
+
+        /** {@inheritDoc} */
+        public Pair<String, T> next() {
+            if (current != null) {
+                final Pair<String, T> temp = current;
+                current = null;
+                return temp;
+            } else {
+                final Pair<String, T> temp = getNext();
+                if (temp != null) {
+                    return temp;
+                } else {
+                    throw new NoSuchElementException();
+                }
+            }
+        }
+
+        /** {@inheritDoc} */
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+        
+        /**
+         * Internal support to get the next item for iteration.
+         * 
+         * @return the next item for iteration, or null if no more items
+         */
+        private Pair<String, T> getNext() {
+            while (keysIter.hasNext()) {
+                final String key = keysIter.next();
+                try {
+                    final T xmlObject = load(key);
+                    if (xmlObject != null) {
+                        return new Pair<>(key, xmlObject);
+                    } else {
+                        log.warn("Segment file record with key '{}' was removed since iterator creation, skipping", 
+                                key);
+                    }
+                } catch (final IOException e) {
+                    log.warn("Error loading segment file record with key '{}'", key, e);
+                }
+            }
+            return null;
+        }
+        
+    }
+
+}
@@ -29,6 +29,7 @@ import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
 import net.shibboleth.utilities.java.support.collection.LazyMap;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 
+import org.opensaml.core.xml.AbstractXMLObject;
 import org.opensaml.core.xml.XMLObject;
 
 /**
@@ -58,6 +59,21 @@ public class IDIndex {
     }
     
 
+    /**
+     * Check whether an XMLObject's ID index contains any mappings, without forcing an {@link AbstractXMLObject}
+     * to create an index it does not yet have.
+     * 
+     * @param xmlObject the object to check
+     * 
+     * @return true iff the object's ID index is non-empty
+     */
+    public static boolean hasIDMappings(@Nonnull final XMLObject xmlObject) {
+        if (xmlObject instanceof AbstractXMLObject) {
+            return ((AbstractXMLObject) xmlObject).hasIDMappings();
+        }
+        return !xmlObject.getIDIndex().isEmpty();
+    }
+
     /**
      * Register an ID-to-XMLObject mapping for one of this object's owner's children.
      * 
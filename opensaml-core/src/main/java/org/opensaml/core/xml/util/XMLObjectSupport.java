@@ -17,16 +17,28 @@
 
 package org.opensaml.core.xml.util;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 import net.shibboleth.utilities.java.support.primitive.DeprecationSupport;
 import net.shibboleth.utilities.java.support.primitive.DeprecationSupport.ObjectType;
@@ -44,16 +56,22 @@ import org.opensaml.core.xml.XMLObjectBuilder;
 import org.opensaml.core.xml.XMLRuntimeException;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistry;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.Cloner;
 import org.opensaml.core.xml.io.Marshaller;
 import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.StreamingMarshaller;
+import org.opensaml.core.xml.io.StreamingUnmarshaller;
 import org.opensaml.core.xml.io.Unmarshaller;
 import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingStreamReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import com.google.common.io.ByteStreams;
+
 
 /**
  * A helper class for working with XMLObjects.
@@ -76,6 +94,29 @@ public final class XMLObjectSupport {
         UnrootedDOM,
     }
     
+    /** Name of the XML Signature element, whose parent must be unmarshalled from a DOM to be verifiable. */
+    @Nonnull private static final QName SIGNATURE_NAME = new QName("http://www.w3.org/2000/09/xmldsig#", "Signature");
+    
+    /** Factory for the stream writers used when streaming an XMLObject to an OutputStream. */
+    @Nonnull private static final XMLOutputFactory OUTPUT_FACTORY;
+    
+    /**
+     * Factory for the stream readers used when unmarshalling an XMLObject from an InputStream without DOM. As with
+     * the default parser pool configuration, DTDs and external entities are not supported and text is coalesced.
+     */
+    @Nonnull private static final XMLInputFactory INPUT_FACTORY;
+    
+    static {
+        OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+        OUTPUT_FACTORY.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, Boolean.FALSE);
+        
+        INPUT_FACTORY = XMLInputFactory.newInstance();
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+    
     /** Constructor. */
     private XMLObjectSupport() { }
     
@@ -159,6 +200,13 @@ public final class XMLObjectSupport {
      * 3) Unmarshall a new XMLObject tree around it.
      * </p>
      * 
+     * <p>
+     * If the cloned DOM is to be dropped and a {@link Cloner} is registered for the original object, the object
+     * graph is instead copied directly. Any descendant without a registered cloner must then already have a cached
+     * DOM, which is cloned as above; if that is not the case, the brute force approach is used for the whole tree so
+     * that the original is marshalled as a unit.
+     * </p>
+     * 
      * @param originalXMLObject the object to be cloned
      * @param cloneOutputOption  the option for handling the cloned object output
      * @return a clone of the original object
@@ -175,7 +223,17 @@ public final class XMLObjectSupport {
             return null;
         }
         
-        final Marshaller marshaller = getMarshaller(originalXMLObject);
+        if (CloneOutputOption.DropDOM.equals(cloneOutputOption)) {
+            final Cloner cloner = getCloner(originalXMLObject);
+            if (cloner != null && isStructurallyCloneable(originalXMLObject)) {
+                return (T) cloner.clone(originalXMLObject);
+            }
+        }
+        
+        Marshaller marshaller = getMarshaller(originalXMLObject);
+        if (marshaller == null) {
+            marshaller = getMarshaller(XMLObjectProviderRegistrySupport.getDefaultProviderQName());
+        }
         if (marshaller == null) {
             throw new MarshallingException("Unable to obtain Marshaller for XMLObject: "
                     + originalXMLObject.getElementQName());
@@ -203,7 +261,10 @@ public final class XMLObjectSupport {
                 throw new XMLRuntimeException("Saw unsupported value for CloneOutputOption enum: " + cloneOutputOption);
         }
         
-        final Unmarshaller unmarshaller = getUnmarshaller(clonedElement);
+        Unmarshaller unmarshaller = getUnmarshaller(clonedElement);
+        if (unmarshaller == null) {
+            unmarshaller = getUnmarshaller(XMLObjectProviderRegistrySupport.getDefaultProviderQName());
+        }
         if (unmarshaller == null) {
             throw new UnmarshallingException("Unable to obtain Unmarshaller for element: "
                     + QNameSupport.getNodeQName(clonedElement));
@@ -217,6 +278,29 @@ public final class XMLObjectSupport {
         return clonedXMLObject;
     }
     
+    /**
+     * Determine whether an XMLObject tree can be cloned without marshalling any part of it, that is whether every
+     * object in it either has a registered {@link Cloner} or caches a DOM.
+     * 
+     * @param xmlObject the root of the tree
+     * @return true if the tree can be cloned without marshalling
+     */
+    private static boolean isStructurallyCloneable(@Nonnull final XMLObject xmlObject) {
+        if (getCloner(xmlObject) == null) {
+            return xmlObject.getDOM() != null;
+        }
+        
+        final List<XMLObject> children = xmlObject.getOrderedChildren();
+        if (children != null) {
+            for (final XMLObject child : children) {
+                if (child != null && !isStructurallyCloneable(child)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
     /**
      * Unmarshall a Document from an InputSteam.
      * 
@@ -302,6 +386,148 @@ public final class XMLObjectSupport {
         }
     }
 
+    /**
+     * Unmarshall an XMLObject from an InputStream without first parsing it into a DOM.
+     * 
+     * <p>Elements are unmarshalled from the stream where their unmarshallers are {@link StreamingUnmarshaller}s
+     * that support it; other subtrees are read into a DOM and unmarshalled from that. The resulting objects only
+     * cache a DOM for those subtrees.</p>
+     * 
+     * <p>If <code>signedElementsAsDOM</code> is set, every element with a ds:Signature child is also read into a DOM,
+     * so that its signature can be verified. This requires the input to be buffered and scanned once before
+     * unmarshalling. It should only be unset when signatures in the input will not be verified, or when the input
+     * is known not to contain any.</p>
+     * 
+     * @param inputStream the InputStream to unmarshall
+     * @param signedElementsAsDOM whether to unmarshall elements carrying a signature from a DOM
+     * @return the unmarshalled XMLObject
+     * @throws UnmarshallingException if there is a problem reading or unmarshalling the input
+     */
+    public static XMLObject unmarshallFromInputStream(@Nonnull final InputStream inputStream,
+            final boolean signedElementsAsDOM) throws UnmarshallingException {
+        final Logger log = getLogger();
+        log.debug("Unmarshalling InputStream without DOM");
+        
+        try {
+            final UnmarshallingStreamReader reader;
+            if (signedElementsAsDOM) {
+                final byte[] data = ByteStreams.toByteArray(inputStream);
+                reader = new UnmarshallingStreamReader(
+                        INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(data)), findSignedElements(data));
+            } else {
+                reader = new UnmarshallingStreamReader(INPUT_FACTORY.createXMLStreamReader(inputStream));
+            }
+            
+            try {
+                final XMLObject message = unmarshallFromStreamReader(reader);
+                log.debug("InputStream succesfully unmarshalled");
+                return message;
+            } finally {
+                reader.close();
+            }
+        } catch (final IOException | XMLStreamException e) {
+            throw new UnmarshallingException("Unable to read XMLObject from InputStream", e);
+        } catch (final RuntimeException e) {
+            throw new UnmarshallingException("Fatal error unmarshalling XMLObject", e);
+        }
+    }
+    
+    /**
+     * Unmarshall the document element, or the element at the current position, from a stream reader.
+     * 
+     * @param reader the reader to unmarshall from
+     * @return the unmarshalled XMLObject
+     * @throws UnmarshallingException if there is a problem reading or unmarshalling the element
+     * 
+     * @see #unmarshallFromInputStream(InputStream, boolean)
+     */
+    public static XMLObject unmarshallFromStreamReader(@Nonnull final UnmarshallingStreamReader reader)
+            throws UnmarshallingException {
+        try {
+            while (!reader.isStartElement()) {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.DTD) {
+                    throw new UnmarshallingException("Saw illegal DTD in stream");
+                } else if (event == XMLStreamConstants.END_DOCUMENT) {
+                    throw new UnmarshallingException("Stream did not contain an element to unmarshall");
+                }
+            }
+            
+            Unmarshaller unmarshaller = null;
+            if (reader.getXSIType() != null) {
+                unmarshaller = getUnmarshaller(reader.getXSIType());
+            }
+            if (unmarshaller == null) {
+                unmarshaller = getUnmarshaller(reader.getName());
+            }
+            if (unmarshaller == null) {
+                throw new UnmarshallingException("Unable to unmarshall stream, no unmarshaller registered for element "
+                        + reader.getName());
+            }
+            
+            if (unmarshaller instanceof StreamingUnmarshaller
+                    && ((StreamingUnmarshaller) unmarshaller).isStreamable(reader)) {
+                return ((StreamingUnmarshaller) unmarshaller).unmarshall(reader);
+            }
+            
+            getLogger().debug("Reading element {} into DOM for unmarshalling", reader.getName());
+            final Document document = XMLObjectProviderRegistrySupport.getParserPool().newDocument();
+            return unmarshaller.unmarshall(reader.readElement(document));
+        } catch (final XMLStreamException | XMLParserException e) {
+            throw new UnmarshallingException("Unable to read XMLObject from stream", e);
+        }
+    }
+    
+    /**
+     * Create a StAX stream reader over an InputStream, configured as for the readers used by
+     * {@link #unmarshallFromInputStream(InputStream, boolean)}.
+     * 
+     * <p>As with the default parser pool configuration, DTDs and external entities are not supported and text is
+     * coalesced. Code streaming untrusted input should obtain its readers here rather than from a factory of its
+     * own.</p>
+     * 
+     * @param inputStream the InputStream to read
+     * @return the stream reader, which the caller must close
+     * @throws XMLStreamException if the reader cannot be created
+     */
+    @Nonnull public static XMLStreamReader createXMLStreamReader(@Nonnull final InputStream inputStream)
+            throws XMLStreamException {
+        return INPUT_FACTORY.createXMLStreamReader(inputStream);
+    }
+    
+    /**
+     * Scan a document for the elements that carry a ds:Signature child.
+     * 
+     * @param data the document
+     * @return the ordinal positions of the elements, as used by {@link UnmarshallingStreamReader}
+     * @throws XMLStreamException if there is a problem reading the document
+     */
+    @Nonnull private static Set<Integer> findSignedElements(@Nonnull final byte[] data) throws XMLStreamException {
+        final Set<Integer> signedElements = new HashSet<>();
+        final Deque<Integer> openElements = new ArrayDeque<>();
+        int elementCount = 0;
+        
+        final XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(data));
+        try {
+            while (reader.hasNext()) {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    elementCount++;
+                    if (SIGNATURE_NAME.equals(reader.getName()) && !openElements.isEmpty()) {
+                        signedElements.add(openElements.peek());
+                    }
+                    openElements.push(elementCount);
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    openElements.pop();
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        
+        return signedElements;
+    }
+
     /**
      * Marshall an XMLObject.  If the XMLObject already has a cached DOM via {@link XMLObject#getDOM()},
      * that Element will be returned.  Otherwise the object will be fully marshalled and that Element returned.
@@ -340,16 +566,68 @@ public final class XMLObjectSupport {
     /**
      * Marshall an XMLObject to an OutputStream.
      * 
+     * <p>If the object tree is {@link #isStreamable(XMLObject)}, it is written directly to the stream without
+     * building a DOM, and no DOM is cached on the objects afterwards. Otherwise the object is marshalled to a
+     * DOM as by {@link #marshall(XMLObject)} and that is serialized.</p>
+     * 
      * @param xmlObject the XMLObject to marshall
      * @param outputStream the OutputStream to which to marshall
      * @throws MarshallingException if there is a problem marshalling the object
      */
     public static void marshallToOutputStream(final XMLObject xmlObject, final OutputStream outputStream) 
             throws MarshallingException {
+        final Marshaller marshaller = getMarshaller(xmlObject);
+        if (marshaller instanceof StreamingMarshaller && isStreamable(xmlObject)) {
+            getLogger().debug("Streaming XMLObject {} without DOM", xmlObject.getElementQName());
+            try {
+                final XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(outputStream, "UTF-8");
+                writer.writeStartDocument("UTF-8", "1.0");
+                ((StreamingMarshaller) marshaller).marshall(xmlObject, writer);
+                writer.writeEndDocument();
+                writer.flush();
+                writer.close();
+            } catch (final XMLStreamException e) {
+                throw new MarshallingException("Unable to stream XMLObject " + xmlObject.getElementQName(), e);
+            }
+            return;
+        }
+        
         final Element element = marshall(xmlObject);
         SerializeSupport.writeNode(element, outputStream);
     }
     
+    /**
+     * Get whether an XMLObject tree can be written directly to a stream.
+     * 
+     * <p>This requires that the registered marshaller of the object, and of each of its descendants, is a
+     * {@link StreamingMarshaller} which reports the object as streamable.</p>
+     * 
+     * @param xmlObject the root of the tree to check
+     * 
+     * @return true iff the whole tree can be streamed
+     */
+    public static boolean isStreamable(@Nonnull final XMLObject xmlObject) {
+        Marshaller marshaller = getMarshaller(xmlObject);
+        if (marshaller == null) {
+            marshaller = getMarshaller(XMLObjectProviderRegistrySupport.getDefaultProviderQName());
+        }
+        if (!(marshaller instanceof StreamingMarshaller)
+                || !((StreamingMarshaller) marshaller).isStreamable(xmlObject)) {
+            return false;
+        }
+        
+        final List<XMLObject> children = xmlObject.getOrderedChildren();
+        if (children != null) {
+            for (final XMLObject child : children) {
+                if (child != null && !isStreamable(child)) {
+                    return false;
+                }
+            }
+        }
+        
+        return true;
+    }
+    
     /**
      * Get the namespace URI bound to the specified prefix within the scope of the specified
      * XMLObject.
@@ -552,6 +830,31 @@ public final class XMLObjectSupport {
         return getProviderRegistry().getUnmarshallerFactory().getUnmarshaller(element);
     }
     
+    /**
+     * Obtain an XMLObject cloner for the given XMLObject. Objects handled by the default object provider use the
+     * cloner, if any, registered for it.
+     *
+     * <p>The cloner registered for the element name is not used for an object whose schema type has a provider of
+     * its own but no cloner, as that cloner may not know about the content of the type.</p>
+     *
+     * @param xmlObject the XMLObject to be cloned
+     * @return an XMLObject cloner, or null if no cloner registered
+     */
+    public static Cloner getCloner(final XMLObject xmlObject) {
+        final XMLObjectProviderRegistry registry = getProviderRegistry();
+        final QName schemaType = xmlObject.getSchemaType();
+        if (schemaType != null && registry.getClonerFactory().getCloner(schemaType) == null
+                && registry.getMarshallerFactory().getMarshaller(schemaType) != null) {
+            return null;
+        }
+
+        Cloner cloner = registry.getClonerFactory().getCloner(xmlObject);
+        if (cloner == null && registry.getMarshallerFactory().getMarshaller(xmlObject) == null) {
+            cloner = registry.getClonerFactory().getCloner(registry.getDefaultProviderQName());
+        }
+        return cloner;
+    }
+    
     /**
      * Obtain the XMLObject provider registry.
      * 
@@ -29,6 +29,8 @@ import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import net.shibboleth.utilities.java.support.xml.XMLConstants;
+
 /**
  * Tests for {@link AbstractXMLObject}.
  */
@@ -114,4 +116,50 @@ public class AbstractXMLObjectTest extends XMLObjectBaseTestCase {
         Assert.assertNull(sxo.getDOM());
     }
 
+    /**
+     * Tests that ID mappings are tracked once an index is created on demand.
+     */
+    @Test
+    public void testLazyIDIndex() {
+        final SimpleXMLObject parent = buildXMLObject(simpleXMLObjectQName);
+        final SimpleXMLObject child1 = buildXMLObject(simpleXMLObjectQName);
+        final SimpleXMLObject child2 = buildXMLObject(simpleXMLObjectQName);
+        
+        parent.getSimpleXMLObjects().add(child1);
+        Assert.assertFalse(parent.hasIDMappings());
+        Assert.assertFalse(child1.hasIDMappings());
+        Assert.assertNull(parent.resolveID("foo"));
+        
+        child1.setId("foo");
+        Assert.assertTrue(parent.hasIDMappings());
+        Assert.assertSame(parent.resolveID("foo"), child1);
+        
+        child2.setId("bar");
+        parent.getSimpleXMLObjects().add(child2);
+        Assert.assertSame(parent.resolveID("bar"), child2);
+        
+        parent.getSimpleXMLObjects().remove(child1);
+        Assert.assertNull(parent.resolveID("foo"));
+        Assert.assertSame(parent.resolveID("bar"), child2);
+    }
+
+    /**
+     * Tests that a namespace manager created on demand reflects earlier changes to the object.
+     */
+    @Test
+    public void testLazyNamespaceManager() {
+        final SimpleXMLObject sxo = buildXMLObject(simpleXMLObjectQName);
+        sxo.setElementNamespacePrefix("foo");
+        sxo.setNil(Boolean.TRUE);
+        sxo.setNil((Boolean) null);
+        
+        Assert.assertTrue(sxo.getNamespaces().contains(new Namespace(SimpleXMLObject.NAMESPACE, "foo")));
+        Assert.assertFalse(sxo.getNamespaces().contains(
+                new Namespace(XMLConstants.XSI_NS, XMLConstants.XSI_PREFIX)));
+        
+        sxo.setElementNamespacePrefix("bar");
+        Assert.assertTrue(sxo.getNamespaces().contains(new Namespace(SimpleXMLObject.NAMESPACE, "bar")));
+        Assert.assertFalse(sxo.getNamespaces().contains(new Namespace(SimpleXMLObject.NAMESPACE, "foo")));
+    }
+
 }
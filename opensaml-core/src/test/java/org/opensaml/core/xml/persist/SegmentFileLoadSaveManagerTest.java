@@ -0,0 +1,417 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.persist;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.XMLRuntimeException;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.mock.SimpleXMLObject;
+import org.opensaml.core.xml.util.XMLObjectSource;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Sets;
+
+import net.shibboleth.utilities.java.support.collection.Pair;
+import net.shibboleth.utilities.java.support.logic.ConstraintViolationException;
+
+public class SegmentFileLoadSaveManagerTest extends XMLObjectBaseTestCase {
+    
+    private File segmentFile;
+    
+    private SegmentFileLoadSaveManager<SimpleXMLObject> manager;
+    
+    @BeforeMethod
+    public void setUp() throws IOException {
+        segmentFile = new File(System.getProperty("java.io.tmpdir"), "segment-load-save-manager-test.dat");
+        segmentFile.deleteOnExit();
+        Files.deleteIfExists(segmentFile.toPath());
+        
+        manager = new SegmentFileLoadSaveManager<>(segmentFile);
+    }
+    
+    @AfterMethod
+    public void tearDown() throws IOException {
+        manager.close();
+        Files.deleteIfExists(segmentFile.toPath());
+    }
+    
+    @Test
+    public void emptyFile() throws IOException {
+        testState(Sets.<String>newHashSet());
+    }
+    
+    @DataProvider
+    public Object[][] saveLoadUpdateRemoveParams() {
+        return new Object[][] {
+                new Object[] { Boolean.FALSE},
+                new Object[] { Boolean.TRUE },
+        };
+    }
+    
+    @Test(dataProvider="saveLoadUpdateRemoveParams")
+    public void saveLoadUpdateRemove(Boolean buildWithObjectSourceByteArray) throws IOException {
+        testState(Sets.<String>newHashSet());
+        
+        Assert.assertNull(manager.load("bogus"));
+        
+        manager.save("foo", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME, buildWithObjectSourceByteArray));
+        testState(Sets.newHashSet("foo"));
+        
+        manager.save("bar", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME, buildWithObjectSourceByteArray));
+        manager.save("baz", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME, buildWithObjectSourceByteArray));
+        testState(Sets.newHashSet("foo", "bar", "baz"));
+        
+        // Duplicate with overwrite
+        manager.save("bar", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME, buildWithObjectSourceByteArray), true);
+        testState(Sets.newHashSet("foo", "bar", "baz"));
+        
+        // Duplicate without overwrite
+        try {
+            manager.save("bar", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME, buildWithObjectSourceByteArray), false);
+            Assert.fail("Should have failed on duplicate save without overwrite");
+        } catch (IOException e) {
+            // expected, do nothing
+        }
+        testState(Sets.newHashSet("foo", "bar", "baz"));
+        
+        Assert.assertTrue(manager.updateKey("foo", "foo2"));
+        testState(Sets.newHashSet("foo2", "bar", "baz"));
+        
+        // Doesn't exist anymore
+        Assert.assertFalse(manager.updateKey("foo", "foo2"));
+        testState(Sets.newHashSet("foo2", "bar", "baz"));
+        
+        // Can't update to an existing name
+        try {
+            manager.updateKey("bar", "baz");
+            Assert.fail("updateKey should have failed to due existing new key name");
+        } catch (IOException e) {
+            // expected, do nothing
+        }
+        testState(Sets.newHashSet("foo2", "bar", "baz"));
+        
+        // Doesn't exist anymore
+        Assert.assertFalse(manager.remove("foo"));
+        testState(Sets.newHashSet("foo2", "bar", "baz"));
+        
+        Assert.assertTrue(manager.remove("foo2"));
+        testState(Sets.newHashSet("bar", "baz"));
+        
+        Assert.assertTrue(manager.remove("bar"));
+        Assert.assertTrue(manager.remove("baz"));
+        testState(Sets.<String>newHashSet());
+    }
+    
+    @Test
+    public void reopen() throws IOException {
+        manager.save("foo", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        manager.save("bar", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        manager.save("baz", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        manager.save("bar", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME), true);
+        manager.remove("baz");
+        manager.updateKey("foo", "foo2");
+        manager.close();
+        
+        manager = new SegmentFileLoadSaveManager<>(segmentFile);
+        testState(Sets.newHashSet("foo2", "bar"));
+    }
+    
+    @Test
+    public void reopenWithIncompleteRecord() throws IOException {
+        manager.save("foo", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        manager.save("bar", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        manager.close();
+        
+        // Simulate a crash part way through appending the last record
+        final long length = segmentFile.length();
+        try (RandomAccessFile raf = new RandomAccessFile(segmentFile, "rw")) {
+            raf.setLength(length - 10);
+        }
+        
+        manager = new SegmentFileLoadSaveManager<>(segmentFile);
+        testState(Sets.newHashSet("foo"));
+        
+        // Appends after the discarded data are usable
+        manager.save("bar", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        testState(Sets.newHashSet("foo", "bar"));
+    }
+    
+    @Test
+    public void corruptedRecord() throws IOException {
+        manager.save("foo", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        manager.close();
+        
+        // Flip the last byte of the record data
+        try (RandomAccessFile raf = new RandomAccessFile(segmentFile, "rw")) {
+            raf.seek(raf.length() - 1);
+            final int last = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(last ^ 0xFF);
+        }
+        
+        manager = new SegmentFileLoadSaveManager<>(segmentFile);
+        Assert.assertTrue(manager.exists("foo"));
+        try {
+            manager.load("foo");
+            Assert.fail("Load of corrupted record should have failed");
+        } catch (IOException e) {
+            // expected, do nothing
+        }
+        Assert.assertFalse(manager.listAll().iterator().hasNext());
+    }
+    
+    @Test(expectedExceptions=IOException.class)
+    public void invalidFile() throws IOException {
+        manager.close();
+        Files.write(segmentFile.toPath(), "not a segment file".getBytes());
+        manager = new SegmentFileLoadSaveManager<>(segmentFile);
+    }
+    
+    @Test
+    public void compaction() throws IOException {
+        manager.setCompactionThreshold(0);
+        
+        manager.save("foo", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        final SimpleXMLObject bar = buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        bar.setValue("x");
+        manager.save("bar", bar);
+        final long length = segmentFile.length();
+        
+        // Superseded data exceeds live data, so will be compacted
+        for (int i = 0; i < 5; i++) {
+            final SimpleXMLObject changed = buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+            changed.setValue(Integer.toString(i));
+            manager.save("bar", changed, true);
+        }
+        Assert.assertTrue(segmentFile.length() <= length * 2);
+        testState(Sets.newHashSet("foo", "bar"));
+        
+        manager.compact();
+        Assert.assertEquals(segmentFile.length(), length);
+        testState(Sets.newHashSet("foo", "bar"));
+        Assert.assertEquals(manager.load("bar").getValue(), "4");
+        
+        manager.close();
+        manager = new SegmentFileLoadSaveManager<>(segmentFile);
+        testState(Sets.newHashSet("foo", "bar"));
+    }
+    
+    @Test
+    public void unchangedSave() throws IOException {
+        manager.save("foo", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        final SimpleXMLObject processed = buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        processed.getObjectMetadata().put(new ProcessedStateMarker("abc123"));
+        manager.save("foo.processed", processed);
+        final long length = segmentFile.length();
+        
+        // Saving the same data and state again appends nothing
+        manager.save("foo", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME), true);
+        final SimpleXMLObject sameProcessed = buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        sameProcessed.getObjectMetadata().put(new ProcessedStateMarker("abc123"));
+        manager.save("foo.processed", sameProcessed, true);
+        Assert.assertEquals(segmentFile.length(), length);
+        
+        // A different processed state is a change
+        final SimpleXMLObject newProcessed = buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        newProcessed.getObjectMetadata().put(new ProcessedStateMarker("def456"));
+        manager.save("foo.processed", newProcessed, true);
+        Assert.assertTrue(segmentFile.length() > length);
+        Assert.assertEquals(manager.load("foo.processed").getObjectMetadata().get(ProcessedStateMarker.class)
+                .get(0).getSourceDigest(), "def456");
+    }
+    
+    @Test
+    public void exclusiveLock() throws IOException {
+        manager.save("foo", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        try {
+            new SegmentFileLoadSaveManager<SimpleXMLObject>(segmentFile);
+            Assert.fail("Segment file which is already open should not have been opened again");
+        } catch (IOException e) {
+            // expected, do nothing
+        }
+        
+        // Still locked once compacted
+        manager.compact();
+        try {
+            new SegmentFileLoadSaveManager<SimpleXMLObject>(segmentFile);
+            Assert.fail("Compacted segment file should not have been opened again");
+        } catch (IOException e) {
+            // expected, do nothing
+        }
+        testState(Sets.newHashSet("foo"));
+        
+        manager.close();
+        manager = new SegmentFileLoadSaveManager<>(segmentFile);
+        testState(Sets.newHashSet("foo"));
+    }
+    
+    @Test
+    public void readBeyondMapping() throws IOException {
+        manager.save("foo", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        testState(Sets.newHashSet("foo"));
+        
+        // Records appended after the file was mapped are readable whether or not the file is remapped
+        for (int i = 0; i < 20; i++) {
+            final SimpleXMLObject sxo = buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+            sxo.setValue(Integer.toString(i));
+            manager.save("foo" + i, sxo);
+            Assert.assertEquals(manager.load("foo" + i).getValue(), Integer.toString(i));
+        }
+        Assert.assertEquals(manager.listKeys().size(), 21);
+    }
+    
+    @Test
+    public void processedStateMarker() throws IOException {
+        final SimpleXMLObject processed = buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        processed.getObjectMetadata().put(new ProcessedStateMarker("abc123"));
+        manager.save("foo", processed);
+        manager.save("bar", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        final SimpleXMLObject noDigest = buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        noDigest.getObjectMetadata().put(new ProcessedStateMarker());
+        manager.save("baz", noDigest);
+        
+        Assert.assertEquals(manager.load("foo").getObjectMetadata().get(ProcessedStateMarker.class), 
+                Collections.singletonList(new ProcessedStateMarker("abc123")));
+        Assert.assertFalse(manager.load("bar").getObjectMetadata().containsKey(ProcessedStateMarker.class));
+        Assert.assertEquals(manager.load("baz").getObjectMetadata().get(ProcessedStateMarker.class), 
+                Collections.singletonList(new ProcessedStateMarker()));
+        
+        manager.updateKey("foo", "foo2");
+        manager.close();
+        manager = new SegmentFileLoadSaveManager<>(segmentFile);
+        
+        Assert.assertEquals(manager.load("foo2").getObjectMetadata().get(ProcessedStateMarker.class), 
+                Collections.singletonList(new ProcessedStateMarker("abc123")));
+        Assert.assertFalse(manager.load("bar").getObjectMetadata().containsKey(ProcessedStateMarker.class));
+        Assert.assertEquals(manager.load("baz").getObjectMetadata().get(ProcessedStateMarker.class), 
+                Collections.singletonList(new ProcessedStateMarker()));
+        
+        manager.compact();
+        Assert.assertEquals(manager.load("foo2").getObjectMetadata().get(ProcessedStateMarker.class).get(0)
+                .getSourceDigest(), "abc123");
+    }
+    
+    @Test
+    public void checkModifyTimeTracking() throws IOException {
+        manager.close();
+        manager = new SegmentFileLoadSaveManager<>(segmentFile, true);
+        
+        Assert.assertNull(manager.load("foo"));
+        Assert.assertNull(manager.getLoadLastModified("foo"));
+        
+        manager.save("foo", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME, true));
+        
+        Assert.assertNotNull(manager.load("foo"));
+        Long initialCachedModified = manager.getLoadLastModified("foo");
+        Assert.assertNotNull(initialCachedModified);
+        
+        // Hasn't changed
+        Assert.assertNull(manager.load("foo"));
+        Assert.assertEquals(manager.getLoadLastModified("foo"), initialCachedModified);
+        
+        // Saving it unchanged doesn't modify it
+        manager.save("foo", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME, true), true);
+        Assert.assertNull(manager.load("foo"));
+        
+        // Change it
+        final SimpleXMLObject changed = buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        changed.setValue("changed");
+        manager.save("foo", changed, true);
+        
+        Assert.assertNotNull(manager.load("foo"));
+        Long updatedCachedModified = manager.getLoadLastModified("foo");
+        Assert.assertNotNull(updatedCachedModified);
+        Assert.assertNotEquals(updatedCachedModified, initialCachedModified);
+        
+        // Hasn't changed (again)
+        Assert.assertNull(manager.load("foo"));
+        
+        // Test update of key
+        manager.updateKey("foo", "bar");
+        Assert.assertNull(manager.load("foo"));
+        Assert.assertNull(manager.load("bar"));
+        Assert.assertNull(manager.getLoadLastModified("foo"));
+        Assert.assertEquals(manager.getLoadLastModified("bar"), updatedCachedModified);
+        
+        // Test removal of key
+        manager.remove("bar");
+        Assert.assertNull(manager.getLoadLastModified("bar"));
+    }
+    
+    @Test(expectedExceptions=ConstraintViolationException.class)
+    public void targetKeyIsEmpty() throws IOException {
+        manager.exists("  ");
+    }
+    
+    @Test(expectedExceptions=ConstraintViolationException.class)
+    public void ctorRelativeFile() throws IOException {
+        new SegmentFileLoadSaveManager<>("my/relative/file.dat");
+    }
+    
+    
+    
+    // Helpers
+    
+    private void testState(Set<String> expectedKeys) throws IOException {
+        Assert.assertEquals(manager.listKeys(), expectedKeys);
+        for (String expectedKey : expectedKeys) {
+            Assert.assertTrue(manager.exists(expectedKey));
+            SimpleXMLObject sxo = manager.load(expectedKey);
+            Assert.assertNotNull(sxo);
+            Assert.assertEquals(sxo.getObjectMetadata().get(XMLObjectSource.class).size(), 1);
+        }
+        
+        int sawCount = 0;
+        for (Pair<String,SimpleXMLObject> entry : manager.listAll()) {
+            sawCount++;
+            Assert.assertTrue(expectedKeys.contains(entry.getFirst()));
+            Assert.assertNotNull(entry.getSecond());
+        }
+        Assert.assertEquals(sawCount, expectedKeys.size());
+    }
+    
+    protected <T extends XMLObject> T buildXMLObject(QName name, boolean withObjectSource) {
+        T xmlObject = super.buildXMLObject(name);
+        if (withObjectSource) {
+            try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+                XMLObjectSupport.marshallToOutputStream(xmlObject, baos);
+                xmlObject.getObjectMetadata().put(new XMLObjectSource(baos.toByteArray()));
+            } catch (MarshallingException | IOException e) {
+                throw new XMLRuntimeException("Error marshalling XMLObject", e);
+            }
+        }
+        return xmlObject;
+    }
+
+}
@@ -19,17 +19,25 @@ package org.opensaml.core.xml.util;
 
 import javax.xml.namespace.QName;
 
+import net.shibboleth.utilities.java.support.xml.XMLAssertTestNG;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+import org.custommonkey.xmlunit.Diff;
 import org.opensaml.core.xml.XMLObjectBaseTestCase;
 import org.opensaml.core.xml.XMLRuntimeException;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.Marshaller;
 import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.core.xml.io.UnmarshallingException;
 import org.opensaml.core.xml.mock.SimpleXMLObject;
 import org.opensaml.core.xml.mock.SimpleXMLObjectBuilder;
+import org.opensaml.core.xml.schema.XSAny;
 import org.opensaml.core.xml.schema.XSString;
 import org.opensaml.core.xml.util.XMLObjectSupport.CloneOutputOption;
 import org.testng.Assert;
 import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 
 /**
  * Tests of XMLObjectHelper utility methods.
@@ -178,4 +186,88 @@ public class XMLObjectSupportTest extends XMLObjectBaseTestCase {
         }
     }
 
-}
\ No newline at end of file
+    /** Tests reading from a stream into objects whose unmarshallers only support DOM. */
+    @Test
+    public void testUnmarshallFromInputStreamWithoutStreamingSupport() throws UnmarshallingException {
+        SimpleXMLObject sxo = (SimpleXMLObject) XMLObjectSupport.unmarshallFromInputStream(
+                XMLObjectSupportTest.class.getResourceAsStream("/org/opensaml/core/xml/SimpleXMLObjectWithChildren.xml"),
+                true);
+        
+        Assert.assertNotNull(sxo.getDOM());
+        Assert.assertEquals(sxo.getSimpleXMLObjects().size(), 2);
+        Assert.assertSame(sxo.getSimpleXMLObjects().get(0).getDOM().getParentNode(), sxo.getDOM());
+    }
+
+    /** Tests cloning an XMLObject tree with registered cloners, which does not marshall the original. */
+    @Test
+    public void testXMLObjectCloneWithCloner() throws MarshallingException, UnmarshallingException,
+            XMLParserException {
+        Document document = parserPool.parse(
+                XMLObjectSupportTest.class.getResourceAsStream("/org/opensaml/core/xml/UnknownContent.xml"));
+        XSAny original = (XSAny) unmarshallerFactory.getUnmarshaller(
+                XMLObjectProviderRegistrySupport.getDefaultProviderQName()).unmarshall(document.getDocumentElement());
+        Element originalDOM = original.getDOM();
+        
+        XSAny clone = XMLObjectSupport.cloneXMLObject(original);
+        
+        Assert.assertNotSame(clone, original);
+        Assert.assertNull(clone.getDOM(), "Cloned DOM node was not null");
+        Assert.assertSame(original.getDOM(), originalDOM, "Original DOM was replaced");
+        Assert.assertSame(original.getDOM().getOwnerDocument().getDocumentElement(), originalDOM,
+                "Original DOM was modified");
+        
+        XSAny product = (XSAny) clone.getUnknownXMLObjects().get(1);
+        Assert.assertNotSame(product, original.getUnknownXMLObjects().get(1));
+        Assert.assertSame(product.getParent(), clone);
+        Assert.assertNull(product.getDOM());
+        Assert.assertEquals(product.getUnknownAttributes().get(new QName("id")), "1166");
+        Assert.assertEquals(((XSAny) product.getUnknownXMLObjects().get(0)).getTextContent(),
+                "<strong>XSLT Perfect IDE</strong>");
+        
+        Marshaller marshaller = marshallerFactory.getMarshaller(XMLObjectProviderRegistrySupport.getDefaultProviderQName());
+        XSAny expected = XMLObjectSupport.cloneXMLObject(original, CloneOutputOption.UnrootedDOM);
+        expected.releaseDOM();
+        expected.releaseChildrenDOM(true);
+        XMLAssertTestNG.assertXMLIdentical(new Diff(marshaller.marshall(expected).getOwnerDocument(),
+                marshaller.marshall(clone).getOwnerDocument()), true);
+    }
+    
+    /** Tests cloning an XMLObject tree containing objects without a registered cloner. */
+    @Test
+    public void testXMLObjectCloneWithClonerFallback() throws MarshallingException, UnmarshallingException {
+        SimpleXMLObjectBuilder sxoBuilder = (SimpleXMLObjectBuilder) XMLObjectProviderRegistrySupport.getBuilderFactory()
+            .getBuilder(SimpleXMLObject.ELEMENT_NAME);
+        
+        XSAny origParentObj = (XSAny) XMLObjectProviderRegistrySupport.getBuilderFactory()
+                .getBuilder(XMLObjectProviderRegistrySupport.getDefaultProviderQName())
+                .buildObject(SimpleXMLObject.NAMESPACE, "Unknown", SimpleXMLObject.NAMESPACE_PREFIX);
+        XSAny origAnyChildObj = (XSAny) XMLObjectProviderRegistrySupport.getBuilderFactory()
+                .getBuilder(XMLObjectProviderRegistrySupport.getDefaultProviderQName())
+                .buildObject(SimpleXMLObject.NAMESPACE, "Unknown", SimpleXMLObject.NAMESPACE_PREFIX);
+        origAnyChildObj.setTextContent("Foo");
+        origParentObj.getUnknownXMLObjects().add(origAnyChildObj);
+        
+        XSAny clonedParentObj = XMLObjectSupport.cloneXMLObject(origParentObj);
+        Assert.assertNull(origParentObj.getDOM(), "Original parent was marshalled");
+        Assert.assertEquals(((XSAny) clonedParentObj.getUnknownXMLObjects().get(0)).getTextContent(), "Foo");
+        
+        SimpleXMLObject origChildObj = sxoBuilder.buildObject();
+        origChildObj.setValue("FooBarBaz");
+        origParentObj.getUnknownXMLObjects().add(origChildObj);
+        
+        // No cloner and no DOM for the SimpleXMLObject, so the whole tree is marshalled
+        clonedParentObj = XMLObjectSupport.cloneXMLObject(origParentObj);
+        Assert.assertNotNull(origParentObj.getDOM(), "Original parent was not marshalled");
+        Assert.assertEquals(((SimpleXMLObject) clonedParentObj.getUnknownXMLObjects().get(1)).getValue(), "FooBarBaz");
+        
+        // With a cached DOM the SimpleXMLObject is cloned from a copy of it
+        clonedParentObj = XMLObjectSupport.cloneXMLObject(origParentObj);
+        SimpleXMLObject clonedChildObj = (SimpleXMLObject) clonedParentObj.getUnknownXMLObjects().get(1);
+        Assert.assertNotSame(clonedChildObj, origChildObj);
+        Assert.assertNull(clonedChildObj.getDOM(), "Cloned child DOM node was not null");
+        Assert.assertSame(clonedChildObj.getParent(), clonedParentObj);
+        Assert.assertEquals(clonedChildObj.getValue(), "FooBarBaz");
+        Assert.assertSame(origChildObj.getDOM().getParentNode(), origParentObj.getDOM(), "Original DOM was modified");
+    }
+    
+}
@@ -17,6 +17,8 @@
 
 package org.opensaml.messaging.encoder.servlet;
 
+import java.io.ByteArrayOutputStream;
+
 import net.shibboleth.utilities.java.support.xml.SerializeSupport;
 
 import org.opensaml.core.xml.XMLObject;
@@ -103,4 +105,28 @@ public abstract class BaseHttpServletResponseXMLMessageEncoder<MessageType exten
         }
     }
 
+    /**
+     * Helper method that marshalls and serializes the given message to UTF-8 encoded bytes.
+     * 
+     * <p>Messages whose marshallers support it are streamed without building a DOM.</p>
+     * 
+     * @param message message the marshall and serialize
+     * 
+     * @return serialized message
+     * 
+     * @throws MessageEncodingException thrown if the give message can not be marshalled
+     */
+    protected byte[] serializeMessage(final XMLObject message) throws MessageEncodingException {
+        log.debug("Marshalling and serializing message");
+        
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            XMLObjectSupport.marshallToOutputStream(message, out);
+            return out.toByteArray();
+        } catch (final MarshallingException e) {
+            log.error("Error marshalling message", e);
+            throw new MessageEncodingException("Error marshalling message", e);
+        }
+    }
+
 }
@@ -65,5 +65,17 @@ public abstract class AbstractSAMLObjectMarshaller extends AbstractXMLObjectMars
         }
         return super.marshall(xmlObject, parentElement);
     }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>Objects carrying a signature are never streamable, since signature creation operates on the DOM.</p>
+     */
+    public boolean isStreamable(final XMLObject xmlObject) {
+        if (xmlObject instanceof SignableSAMLObject && ((SignableSAMLObject) xmlObject).getSignature() != null) {
+            return false;
+        }
+        return super.isStreamable(xmlObject);
+    }
        
 }
\ No newline at end of file
@@ -47,4 +47,20 @@ public abstract class AbstractSAMLObjectUnmarshaller extends AbstractXMLObjectUn
         }
     }
 
+    /**
+     * Parse {@link SAMLVersion} instance from the specified attribute value.
+     * 
+     * @param value the attribute value to process
+     * @return the parsed SAMLVersion instance
+     * @throws UnmarshallingException if a SAMLVersion instance could not be successfully parsed
+     */
+    @Nonnull protected SAMLVersion parseSAMLVersion(@Nonnull final String value) throws UnmarshallingException {
+        try {
+            return SAMLVersion.valueOf(value);
+        } catch (final RuntimeException e) {
+            throw new UnmarshallingException(String.format("Could not parse SAMLVersion from attribute value '%s'",
+                    value), e);
+        }
+    }
+
 }
\ No newline at end of file
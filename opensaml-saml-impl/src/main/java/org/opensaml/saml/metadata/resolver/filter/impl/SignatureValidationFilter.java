@@ -17,14 +17,24 @@
 
 package org.opensaml.saml.metadata.resolver.filter.impl;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.Unmarshaller;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
 import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
 import org.opensaml.saml.saml2.metadata.AffiliationDescriptor;
@@ -43,18 +53,37 @@ import org.opensaml.xmlsec.signature.support.SignaturePrevalidator;
 import org.opensaml.xmlsec.signature.support.SignatureTrustEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
 
 import com.google.common.base.Function;
 
 import net.shibboleth.utilities.java.support.annotation.ParameterName;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 import net.shibboleth.utilities.java.support.primitive.DeprecationSupport;
 import net.shibboleth.utilities.java.support.primitive.DeprecationSupport.ObjectType;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.xml.NamespaceSupport;
+import net.shibboleth.utilities.java.support.xml.XMLConstants;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
 
 /**
  * A metadata filter that validates XML signatures.
+ * 
+ * <p>
+ * If a verification {@link Executor} is configured, the signatures on the signed {@link EntityDescriptor} members
+ * of an {@link EntitiesDescriptor} group (and their signed {@link RoleDescriptor} and {@link AffiliationDescriptor}
+ * children) are verified concurrently. Each member is processed by {@link #processEntityDescriptor(EntityDescriptor)}
+ * as with serial processing, but applied to a copy of the member. Children removed from the copy, and members for
+ * which processing failed, are removed from the original after all verification tasks for the group have
+ * completed, so the resulting metadata and the order of its members are the same as with serial processing.
+ * </p>
  */
 public class SignatureValidationFilter implements MetadataFilter {
     
@@ -75,6 +104,12 @@ public class SignatureValidationFilter implements MetadataFilter {
     
     /** Strategy function for extracting dynamic trusted names from signed metadata elements. */
     @Nullable private Function<XMLObject, Set<String>> dynamicTrustedNamesStrategy;
+    
+    /** Executor used to verify group member signatures in parallel, or null for serial processing. */
+    @Nullable private Executor verificationExecutor;
+    
+    /** Maximum number of parallel verification tasks used for the members of a single group. */
+    @Positive private int verificationParallelism;
 
     /**
      * Constructor.
@@ -97,6 +132,7 @@ public class SignatureValidationFilter implements MetadataFilter {
         signatureTrustEngine = engine;
         signaturePrevalidator = new SAMLSignatureProfileValidator();
         dynamicTrustedNamesStrategy = new BasicDynamicTrustedNamesStrategy();
+        verificationParallelism = Runtime.getRuntime().availableProcessors();
     }
 
     /**
@@ -224,6 +260,59 @@ public class SignatureValidationFilter implements MetadataFilter {
         defaultCriteria = newCriteria;
     }
 
+    /**
+     * Get the executor used to verify the signatures of {@link EntitiesDescriptor} members in parallel.
+     * 
+     * <p>Defaults to: null, meaning signatures are verified serially on the calling thread.</p>
+     * 
+     * @return the verification executor, or null
+     */
+    @Nullable public Executor getVerificationExecutor() {
+        return verificationExecutor;
+    }
+
+    /**
+     * Set the executor used to verify the signatures of {@link EntitiesDescriptor} members in parallel.
+     * 
+     * <p>
+     * The configured {@link SignatureTrustEngine}, {@link SignaturePrevalidator} and dynamic trusted names
+     * strategy must be safe for concurrent use. Each member is verified against its own copy of the metadata DOM,
+     * so the parser pool used to create new documents must be available.
+     * </p>
+     * 
+     * <p>Defaults to: null, meaning signatures are verified serially on the calling thread.</p>
+     * 
+     * @param executor the verification executor, may be null
+     */
+    public void setVerificationExecutor(@Nullable final Executor executor) {
+        verificationExecutor = executor;
+    }
+
+    /**
+     * Get the maximum number of parallel verification tasks used for the members of a single group.
+     * 
+     * <p>Defaults to: the number of available processors.</p>
+     * 
+     * @return the verification parallelism
+     */
+    @Positive public int getVerificationParallelism() {
+        return verificationParallelism;
+    }
+
+    /**
+     * Set the maximum number of parallel verification tasks used for the members of a single group.
+     * 
+     * <p>Only relevant if a verification executor is configured.</p>
+     * 
+     * <p>Defaults to: the number of available processors.</p>
+     * 
+     * @param parallelism the verification parallelism
+     */
+    public void setVerificationParallelism(@Positive final int parallelism) {
+        verificationParallelism = (int) Constraint.isGreaterThan(0, parallelism,
+                "Verification parallelism must be greater than 0");
+    }
+
     /** {@inheritDoc} */
     @Override
     @Nullable public XMLObject filter(@Nullable final XMLObject metadata) throws FilterException {
@@ -264,6 +353,20 @@ public class SignatureValidationFilter implements MetadataFilter {
      *                          on the root EntityDescriptor specified
      */
     protected void processEntityDescriptor(@Nonnull final EntityDescriptor entityDescriptor) throws FilterException {
+        final EntityVerificationResult result = verifyEntityDescriptor(entityDescriptor);
+        removeFailedMembers(entityDescriptor, result);
+    }
+    
+    /**
+     * Verify the signatures on the specified EntityDescriptor and any signed children, without modifying it.
+     * 
+     * @param entityDescriptor the EntityDescriptor to be processed
+     * @return the result of verification of the signed children
+     * @throws FilterException thrown if an error occurs during the signature verification process
+     *                          on the root EntityDescriptor specified
+     */
+    @Nonnull private EntityVerificationResult verifyEntityDescriptor(@Nonnull final EntityDescriptor entityDescriptor)
+            throws FilterException {
         final String entityID = entityDescriptor.getEntityID();
         log.trace("Processing EntityDescriptor: {}", entityID);
         
@@ -271,9 +374,9 @@ public class SignatureValidationFilter implements MetadataFilter {
             verifySignature(entityDescriptor, entityID, false);
         }
         
-        final Iterator<RoleDescriptor> roleIter = entityDescriptor.getRoleDescriptors().iterator();
-        while (roleIter.hasNext()) {
-           final RoleDescriptor roleChild = roleIter.next(); 
+        final EntityVerificationResult result = new EntityVerificationResult();
+        
+        for (final RoleDescriptor roleChild : entityDescriptor.getRoleDescriptors()) {
             if (!roleChild.isSigned()) {
                 log.trace("RoleDescriptor member '{}' was not signed, skipping signature processing...",
                         roleChild.getElementQName());
@@ -289,9 +392,7 @@ public class SignatureValidationFilter implements MetadataFilter {
                 log.error("RoleDescriptor '{}' subordinate to entity '{}' failed signature verification, " 
                        + "removing from metadata provider", 
                        roleChild.getElementQName(), entityID); 
-                // Note that this is ok since we're iterating over an IndexedXMLObjectChildrenList directly,
-                // rather than a sublist like in processEntityGroup, and iterator remove() is supported there.
-                roleIter.remove();
+                result.failedRoles.add(roleChild);
             }
         }
         
@@ -309,10 +410,33 @@ public class SignatureValidationFilter implements MetadataFilter {
                     log.error("AffiliationDescriptor with owner ID '{}' subordinate to entity '{}' " + 
                             "failed signature verification, removing from metadata provider", 
                             affiliationDescriptor.getOwnerID(), entityID); 
-                    entityDescriptor.setAffiliationDescriptor(null);
+                    result.affiliationFailed = true;
                 }
             }
         }
+        
+        return result;
+    }
+    
+    /**
+     * Remove the children of an EntityDescriptor which failed signature verification.
+     * 
+     * <p>
+     * Removal modifies the ID index and DOM state of all ancestors, so this must never be run concurrently
+     * for members of the same group.
+     * </p>
+     * 
+     * @param entityDescriptor the EntityDescriptor which was processed
+     * @param result the result of verification of the EntityDescriptor's signed children
+     */
+    private void removeFailedMembers(@Nonnull final EntityDescriptor entityDescriptor,
+            @Nonnull final EntityVerificationResult result) {
+        if (!result.failedRoles.isEmpty()) {
+            entityDescriptor.getRoleDescriptors().removeAll(result.failedRoles);
+        }
+        if (result.affiliationFailed) {
+            entityDescriptor.setAffiliationDescriptor(null);
+        }
     }
  
     
@@ -337,23 +461,28 @@ public class SignatureValidationFilter implements MetadataFilter {
         // so just note them in a set and then remove after iteration has completed.
         final HashSet<XMLObject> toRemove = new HashSet<>();
         
-        final Iterator<EntityDescriptor> entityIter = entitiesDescriptor.getEntityDescriptors().iterator();
-        while (entityIter.hasNext()) {
-            final EntityDescriptor entityChild = entityIter.next();
+        final List<EntityDescriptor> signedEntities = new ArrayList<>();
+        for (final EntityDescriptor entityChild : entitiesDescriptor.getEntityDescriptors()) {
             if (!entityChild.isSigned()) {
                 log.trace("EntityDescriptor member '{}' was not signed, skipping signature processing...",
                         entityChild.getEntityID());
-                continue;
             } else {
-                log.trace("Processing signed EntityDescriptor member: {}", entityChild.getEntityID());
+                signedEntities.add(entityChild);
             }
-            
-            try {
-                processEntityDescriptor(entityChild);
-            } catch (final FilterException e) {
-               log.error("EntityDescriptor '{}' failed signature verification, removing from metadata provider", 
-                       entityChild.getEntityID()); 
-               toRemove.add(entityChild);
+        }
+        
+        if (getVerificationExecutor() != null && signedEntities.size() > 1) {
+            processEntityDescriptorsInParallel(signedEntities, toRemove);
+        } else {
+            for (final EntityDescriptor entityChild : signedEntities) {
+                log.trace("Processing signed EntityDescriptor member: {}", entityChild.getEntityID());
+                try {
+                    processEntityDescriptor(entityChild);
+                } catch (final FilterException e) {
+                   log.error("EntityDescriptor '{}' failed signature verification, removing from metadata provider", 
+                           entityChild.getEntityID()); 
+                   toRemove.add(entityChild);
+                }
             }
         }
 
@@ -381,6 +510,236 @@ public class SignatureValidationFilter implements MetadataFilter {
         }
     }
     
+    /**
+     * Verify the signatures on the specified signed EntityDescriptor group members in parallel using the
+     * configured verification executor.
+     * 
+     * <p>
+     * The members of a group share a single DOM, which may not be read concurrently, so each member's DOM is first
+     * copied into a document of its own on the calling thread. The copies are then partitioned into at most
+     * {@link #getVerificationParallelism()} tasks, one of which is run on the calling thread, and each task
+     * unmarshalls and processes only its own copies. Children which failed verification are removed from the original
+     * EntityDescriptor only after all tasks have completed, in document order. If any task can not be scheduled or
+     * fails, the tasks which have not yet completed are cancelled.
+     * </p>
+     * 
+     * @param signedEntities the signed EntityDescriptor members of a group, in document order
+     * @param toRemove the set to which members failing verification will be added
+     * @throws FilterException thrown if the members could not be copied for verification, or the verification
+     *                          tasks could not be scheduled
+     */
+    private void processEntityDescriptorsInParallel(@Nonnull final List<EntityDescriptor> signedEntities,
+            @Nonnull final Set<XMLObject> toRemove) throws FilterException {
+        
+        final EntityVerificationResult[] results = new EntityVerificationResult[signedEntities.size()];
+        
+        final Element[] copies = new Element[signedEntities.size()];
+        for (int i = 0; i < copies.length; i++) {
+            final EntityDescriptor entityChild = signedEntities.get(i);
+            copies[i] = copyEntityDescriptorDOM(entityChild);
+            if (copies[i] == null) {
+                // Nothing shared to copy, so process it here, ahead of the other members.
+                log.trace("Processing signed EntityDescriptor member: {}", entityChild.getEntityID());
+                try {
+                    processEntityDescriptor(entityChild);
+                    results[i] = new EntityVerificationResult();
+                } catch (final FilterException e) {
+                    results[i] = null;
+                }
+            }
+        }
+        
+        final int numTasks = Math.min(getVerificationParallelism(), signedEntities.size());
+        log.debug("Verifying signatures on {} EntityDescriptor members using {} parallel tasks",
+                signedEntities.size(), numTasks);
+        
+        
+        final List<FutureTask<Void>> tasks = new ArrayList<>(numTasks - 1);
+        boolean completed = false;
+        boolean interrupted = false;
+        try {
+            for (int task = 1; task < numTasks; task++) {
+                final int offset = task;
+                final FutureTask<Void> futureTask = new FutureTask<Void>(new Runnable() {
+                    /** {@inheritDoc} */
+                    @Override public void run() {
+                        verifyEntityDescriptors(copies, offset, numTasks, results);
+                    }
+                }, null);
+                tasks.add(futureTask);
+                try {
+                    getVerificationExecutor().execute(futureTask);
+                } catch (final RejectedExecutionException e) {
+                    throw new FilterException("Unable to schedule signature verification task", e);
+                }
+            }
+            verifyEntityDescriptors(copies, 0, numTasks, results);
+            
+            for (final FutureTask<Void> futureTask : tasks) {
+                while (true) {
+                    try {
+                        futureTask.get();
+                        break;
+                    } catch (final InterruptedException e) {
+                        interrupted = true;
+                    } catch (final ExecutionException e) {
+                        if (e.getCause() instanceof RuntimeException) {
+                            throw (RuntimeException) e.getCause();
+                        } else if (e.getCause() instanceof Error) {
+                            throw (Error) e.getCause();
+                        }
+                        throw new IllegalStateException("Signature verification task failed", e.getCause());
+                    }
+                }
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                for (final FutureTask<Void> futureTask : tasks) {
+                    futureTask.cancel(false);
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        for (int i = 0; i < results.length; i++) {
+            final EntityDescriptor entityChild = signedEntities.get(i);
+            if (results[i] == null) {
+               log.error("EntityDescriptor '{}' failed signature verification, removing from metadata provider", 
+                       entityChild.getEntityID()); 
+               toRemove.add(entityChild);
+            } else {
+                removeFailedMembers(entityChild, mapVerificationResult(entityChild, results[i]));
+            }
+        }
+    }
+    
+    /**
+     * Copy the DOM of a signed EntityDescriptor group member into a new document, so that it may be verified
+     * independently of the other members of its group.
+     * 
+     * <p>
+     * The namespace declarations in scope on the original element are declared on the copy, so that the
+     * canonical form of the copy is the same as that of the original.
+     * </p>
+     * 
+     * @param entityDescriptor the EntityDescriptor to copy
+     * @return the root element of the copy, or null if the EntityDescriptor has no cached DOM
+     * @throws FilterException thrown if a new document can not be created
+     */
+    @Nullable private Element copyEntityDescriptorDOM(@Nonnull final EntityDescriptor entityDescriptor)
+            throws FilterException {
+        final Element original = entityDescriptor.getDOM();
+        if (original == null) {
+            return null;
+        }
+        
+        final Element copy;
+        try {
+            final Document document = XMLObjectProviderRegistrySupport.getParserPool().newDocument();
+            copy = (Element) document.importNode(original, true);
+            document.appendChild(copy);
+        } catch (final XMLParserException e) {
+            throw new FilterException("Unable to create document for signature verification", e);
+        }
+        
+        Node ancestor = original.getParentNode();
+        while (ancestor instanceof Element) {
+            final NamedNodeMap attributes = ancestor.getAttributes();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                final Attr attribute = (Attr) attributes.item(i);
+                if (XMLConstants.XMLNS_NS.equals(attribute.getNamespaceURI())
+                        && !copy.hasAttributeNS(XMLConstants.XMLNS_NS, attribute.getLocalName())) {
+                    final String prefix = XMLConstants.XMLNS_PREFIX.equals(attribute.getLocalName()) ? null
+                            : attribute.getLocalName();
+                    NamespaceSupport.appendNamespaceDeclaration(copy,
+                            StringSupport.trimOrNull(attribute.getValue()), prefix);
+                }
+            }
+            ancestor = ancestor.getParentNode();
+        }
+        
+        return copy;
+    }
+    
+    /**
+     * Unmarshall and process every <code>stride</code>'th copied member, starting at <code>offset</code>, storing
+     * the result at the member's index. Members for which processing failed, or whose copy could not be
+     * unmarshalled, get a null result. Members without a copy are skipped.
+     * 
+     * @param copies the copied DOMs, or nulls, of the signed EntityDescriptor members of a group
+     * @param offset index of the first member to process
+     * @param stride distance between members to process
+     * @param results the array in which to store the results
+     */
+    private void verifyEntityDescriptors(@Nonnull final Element[] copies, final int offset, final int stride,
+            @Nonnull final EntityVerificationResult[] results) {
+        for (int i = offset; i < copies.length; i += stride) {
+            if (copies[i] == null) {
+                continue;
+            }
+            final EntityDescriptor copy;
+            try {
+                final Unmarshaller unmarshaller = XMLObjectSupport.getUnmarshaller(copies[i]);
+                if (unmarshaller == null) {
+                    throw new UnmarshallingException("Unable to obtain Unmarshaller for EntityDescriptor");
+                }
+                copy = (EntityDescriptor) unmarshaller.unmarshall(copies[i]);
+            } catch (final UnmarshallingException e) {
+                log.error("Unable to unmarshall copy of EntityDescriptor for signature verification", e);
+                results[i] = null;
+                continue;
+            }
+            log.trace("Processing signed EntityDescriptor member: {}", copy.getEntityID());
+            results[i] = processEntityDescriptorCopy(copy);
+        }
+    }
+    
+    /**
+     * Process a copy of an EntityDescriptor with {@link #processEntityDescriptor(EntityDescriptor)}, and record
+     * the positions of the children which were removed from it.
+     * 
+     * @param copy the copy to process
+     * @return the positions of the children removed from the copy, or null if processing failed
+     */
+    @Nullable private EntityVerificationResult processEntityDescriptorCopy(@Nonnull final EntityDescriptor copy) {
+        final List<RoleDescriptor> roles = new ArrayList<>(copy.getRoleDescriptors());
+        final boolean hadAffiliation = copy.getAffiliationDescriptor() != null;
+        try {
+            processEntityDescriptor(copy);
+        } catch (final FilterException e) {
+            return null;
+        }
+        
+        final EntityVerificationResult result = new EntityVerificationResult();
+        for (int i = 0; i < roles.size(); i++) {
+            if (!copy.getRoleDescriptors().contains(roles.get(i))) {
+                result.failedRoleIndexes.add(i);
+            }
+        }
+        result.affiliationFailed = hadAffiliation && copy.getAffiliationDescriptor() == null;
+        return result;
+    }
+    
+    /**
+     * Map the positions of the children removed from the copy of an EntityDescriptor onto the original.
+     * 
+     * @param original the original EntityDescriptor
+     * @param result the result of processing the copy
+     * @return the equivalent result for the original
+     */
+    @Nonnull private EntityVerificationResult mapVerificationResult(@Nonnull final EntityDescriptor original,
+            @Nonnull final EntityVerificationResult result) {
+        final EntityVerificationResult mapped = new EntityVerificationResult();
+        for (final Integer index : result.failedRoleIndexes) {
+            mapped.failedRoles.add(original.getRoleDescriptors().get(index));
+        }
+        mapped.affiliationFailed = result.affiliationFailed;
+        return mapped;
+    }
+    
     /**
      * Evaluate the signature on the signed metadata instance.
      * 
@@ -520,4 +879,20 @@ public class SignatureValidationFilter implements MetadataFilter {
         return "(unnamed)";
     }
     
-}
\ No newline at end of file
+    /**
+     * The children of an EntityDescriptor which failed signature verification.
+     */
+    private static class EntityVerificationResult {
+        
+        /** Signed RoleDescriptor children which failed verification. */
+        @Nonnull private final List<RoleDescriptor> failedRoles = new ArrayList<>();
+        
+        /** Positions of the RoleDescriptor children which were removed from a copy of the EntityDescriptor. */
+        @Nonnull private final List<Integer> failedRoleIndexes = new ArrayList<>();
+        
+        /** Whether the signed AffiliationDescriptor child failed verification. */
+        private boolean affiliationFailed;
+        
+    }
+
+}
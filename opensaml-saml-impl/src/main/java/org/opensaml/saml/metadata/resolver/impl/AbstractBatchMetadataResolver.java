@@ -18,8 +18,10 @@
 package org.opensaml.saml.metadata.resolver.impl;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
@@ -344,6 +346,9 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
         /** Manager for secondary indexes. */
         private MetadataIndexManager<EntityDescriptor> secondaryIndexManager;
         
+        /** Fingerprints of source EntityDescriptors, mapped to the corresponding filtered descriptors. */
+        private Map<String, EntityDescriptor> entityFingerprints;
+        
         /**
          * Constructor.
          *
@@ -354,6 +359,7 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
             super();
             secondaryIndexManager = new MetadataIndexManager(initIndexes, 
                     new MetadataIndexManager.IdentityExtractionFunction());
+            entityFingerprints = new HashMap<>();
         }
 
         /**
@@ -401,6 +407,19 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
             return secondaryIndexManager;
         }
         
+        /**
+         * Get the map of source EntityDescriptor fingerprints to the corresponding filtered descriptors.
+         * 
+         * <p>
+         * Only populated by resolvers which support delta refresh.
+         * </p>
+         * 
+         * @return the fingerprint map
+         */
+        @Nonnull public Map<String, EntityDescriptor> getEntityFingerprints() {
+            return entityFingerprints;
+        }
+        
     }
 
 }
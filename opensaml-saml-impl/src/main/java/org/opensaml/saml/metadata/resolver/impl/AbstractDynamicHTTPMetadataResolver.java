@@ -23,9 +23,14 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -61,8 +66,11 @@ import com.google.common.collect.Collections2;
 import com.google.common.io.ByteStreams;
 import com.google.common.net.MediaType;
 
+import net.shibboleth.utilities.java.support.annotation.Duration;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
 import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
 import net.shibboleth.utilities.java.support.collection.LazySet;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
@@ -121,6 +129,18 @@ public abstract class AbstractDynamicHTTPMetadataResolver extends AbstractDynami
     /** Optional HttpClient security parameters.*/
     @Nullable private HttpClientSecurityParameters httpClientSecurityParameters;
     
+    /** Maximum number of concurrent requests to each origin host, or 0 if unlimited. */
+    @NonNegative private int maxConcurrentRequestsPerHost;
+    
+    /** Maximum time in milliseconds to wait for a request to an origin host to be permitted. */
+    @Duration @NonNegative private long requestPermitTimeout;
+    
+    /**
+     * Permits for concurrent requests, by origin host, holding only hosts with requests in progress or
+     * waiting to proceed.
+     */
+    @Nonnull private final Map<String, HostRequestPermits> hostRequestPermits;
+    
     /**
      * Constructor.
      *
@@ -144,6 +164,11 @@ public abstract class AbstractDynamicHTTPMetadataResolver extends AbstractDynami
         
         // The default handler
         responseHandler = new BasicMetadataResponseHandler();
+        
+        hostRequestPermits = new HashMap<>();
+        
+        // Default to 10 seconds.
+        requestPermitTimeout = 10*1000L;
     }
     
     /**
@@ -284,6 +309,64 @@ public abstract class AbstractDynamicHTTPMetadataResolver extends AbstractDynami
         httpClientSecurityParameters = params;
     }
     
+    /**
+     * Get the maximum number of concurrent requests to each origin host.
+     * 
+     * <p>Defaults to: 0, meaning unlimited.</p>
+     * 
+     * @return the maximum number of concurrent requests, or 0 if unlimited
+     */
+    @NonNegative public int getMaxConcurrentRequestsPerHost() {
+        return maxConcurrentRequestsPerHost;
+    }
+    
+    /**
+     * Set the maximum number of concurrent requests to each origin host.
+     * 
+     * <p>
+     * Requests beyond this limit wait for up to {@link #getRequestPermitTimeout()} for an earlier request to
+     * the same host to complete, and are otherwise treated as having failed. This bounds the number of
+     * threads which a slow origin host can tie up.
+     * </p>
+     * 
+     * <p>Defaults to: 0, meaning unlimited.</p>
+     * 
+     * @param max the maximum number of concurrent requests, or 0 if unlimited
+     */
+    public void setMaxConcurrentRequestsPerHost(@NonNegative final int max) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        maxConcurrentRequestsPerHost = (int) Constraint.isGreaterThanOrEqual(0, max, 
+                "Maximum concurrent requests per host must be greater than or equal to 0");
+    }
+    
+    /**
+     * Get the maximum time to wait for a request to an origin host to be permitted when 
+     * {@link #getMaxConcurrentRequestsPerHost()} requests to it are already in progress.
+     * 
+     * <p>Defaults to: 10 seconds.</p>
+     * 
+     * @return the maximum time to wait, in milliseconds
+     */
+    @Duration @NonNegative public long getRequestPermitTimeout() {
+        return requestPermitTimeout;
+    }
+    
+    /**
+     * Set the maximum time to wait for a request to an origin host to be permitted when 
+     * {@link #getMaxConcurrentRequestsPerHost()} requests to it are already in progress.
+     * 
+     * <p>Defaults to: 10 seconds.</p>
+     * 
+     * @param timeout the maximum time to wait, in milliseconds
+     */
+    public void setRequestPermitTimeout(@Duration @NonNegative final long timeout) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        requestPermitTimeout = Constraint.isGreaterThanOrEqual(0, timeout, 
+                "Request permit timeout must be greater than or equal to 0");
+    }
+    
     /**
      * Get the list of supported MIME {@link MediaType} instances used in validation of 
      * the response Content-Type header.
@@ -327,7 +410,7 @@ public abstract class AbstractDynamicHTTPMetadataResolver extends AbstractDynami
                     new Function<String,String>() {
                         @Override
                         @Nullable public String apply(@Nullable final String input) {
-                            return input == null ? null : input.toLowerCase();
+                            return input == null ? null : input.toLowerCase(Locale.ROOT);
                         }
                     }
                     ));
@@ -384,6 +467,7 @@ public abstract class AbstractDynamicHTTPMetadataResolver extends AbstractDynami
         
         final HttpClientContext context = buildHttpClientContext(request);
         
+        final HostRequestPermits permits = acquireRequestPermit(request);
         try {
             MDC.put(MDC_ATTRIB_CURRENT_REQUEST_URI, request.getURI().toString());
             final XMLObject result = httpClient.execute(request, responseHandler, context);
@@ -391,6 +475,71 @@ public abstract class AbstractDynamicHTTPMetadataResolver extends AbstractDynami
             return result;
         } finally {
             MDC.remove(MDC_ATTRIB_CURRENT_REQUEST_URI);
+            if (permits != null) {
+                releaseRequestPermit(permits, true);
+            }
+        }
+    }
+    
+    /**
+     * Acquire a permit for a request to the origin host, if the number of concurrent requests to each host
+     * is limited.
+     * 
+     * @param request the HTTP URI request
+     * @return the permits from which one was acquired, to which it must be released, or null if unlimited
+     * @throws IOException if a permit could not be acquired within the configured timeout
+     */
+    @Nullable private HostRequestPermits acquireRequestPermit(@Nonnull final HttpUriRequest request)
+            throws IOException {
+        if (maxConcurrentRequestsPerHost <= 0) {
+            return null;
+        }
+        
+        final String host = Strings.nullToEmpty(request.getURI().getHost()).toLowerCase(Locale.ROOT);
+        HostRequestPermits permits;
+        synchronized (hostRequestPermits) {
+            permits = hostRequestPermits.get(host);
+            if (permits == null) {
+                permits = new HostRequestPermits(host, maxConcurrentRequestsPerHost);
+                hostRequestPermits.put(host, permits);
+            }
+            permits.users++;
+        }
+        
+        boolean acquired = false;
+        try {
+            acquired = permits.semaphore.tryAcquire(requestPermitTimeout, TimeUnit.MILLISECONDS);
+            if (!acquired) {
+                log.warn("{} Timed out waiting for one of {} concurrent requests to host '{}' to complete", 
+                        getLogPrefix(), maxConcurrentRequestsPerHost, host);
+                throw new IOException("Timed out waiting for permit for request to host: " + host);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for permit for request to host: " + host, e);
+        } finally {
+            if (!acquired) {
+                releaseRequestPermit(permits, false);
+            }
+        }
+        return permits;
+    }
+    
+    /**
+     * Release a permit for a request to the origin host, discarding the host's permits once no request to
+     * it is in progress or waiting, so that only hosts currently being contacted are tracked.
+     * 
+     * @param permits the permits for the origin host
+     * @param acquired whether a permit was acquired and must be returned
+     */
+    private void releaseRequestPermit(@Nonnull final HostRequestPermits permits, final boolean acquired) {
+        if (acquired) {
+            permits.semaphore.release();
+        }
+        synchronized (hostRequestPermits) {
+            if (--permits.users == 0) {
+                hostRequestPermits.remove(permits.host);
+            }
         }
     }
     
@@ -558,5 +707,33 @@ public abstract class AbstractDynamicHTTPMetadataResolver extends AbstractDynami
         }
             
     }
+    
+    /**
+     * Permits for concurrent requests to an origin host.
+     * 
+     * <p>The count of users is guarded by the map holding the instance.</p>
+     */
+    private static final class HostRequestPermits {
+        
+        /** The origin host. */
+        @Nonnull private final String host;
+        
+        /** The permits. */
+        @Nonnull private final Semaphore semaphore;
+        
+        /** Number of requests holding or waiting for a permit. */
+        private int users;
+        
+        /**
+         * Constructor.
+         *
+         * @param originHost the origin host
+         * @param max the maximum number of concurrent requests
+         */
+        HostRequestPermits(@Nonnull final String originHost, @Positive final int max) {
+            host = originHost;
+            semaphore = new Semaphore(max, true);
+        }
+    }
 
-}
\ No newline at end of file
+}
@@ -18,6 +18,9 @@
 package org.opensaml.saml.metadata.resolver.impl;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -28,14 +31,30 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
 
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.joda.time.DateTime;
 import org.joda.time.chrono.ISOChronology;
 import org.opensaml.core.criterion.EntityIdCriterion;
@@ -43,22 +62,28 @@ import org.opensaml.core.metrics.MetricsSupport;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.persist.ProcessedStateMarker;
+import org.opensaml.core.xml.persist.ProcessedStateXMLObjectLoadSaveManager;
 import org.opensaml.core.xml.persist.XMLObjectLoadSaveManager;
 import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.opensaml.core.xml.util.XMLObjectSupport.CloneOutputOption;
 import org.opensaml.saml.metadata.resolver.ClearableMetadataResolver;
 import org.opensaml.saml.metadata.resolver.DynamicMetadataResolver;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilterChain;
 import org.opensaml.saml.metadata.resolver.index.MetadataIndex;
 import org.opensaml.saml.metadata.resolver.index.impl.LockableMetadataIndexManager;
 import org.opensaml.saml.saml2.common.SAML2Support;
 import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.opensaml.security.crypto.JCAConstants;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.RatioGauge;
 import com.codahale.metrics.Timer.Context;
@@ -69,6 +94,8 @@ import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import net.shibboleth.utilities.java.support.annotation.Duration;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
@@ -76,6 +103,7 @@ import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElemen
 import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
 import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
 import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+import net.shibboleth.utilities.java.support.codec.Base64Support;
 import net.shibboleth.utilities.java.support.codec.StringDigester;
 import net.shibboleth.utilities.java.support.codec.StringDigester.OutputFormat;
 import net.shibboleth.utilities.java.support.collection.Pair;
@@ -98,6 +126,10 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     /** Metric name for the timer for {@link #fetchFromOriginSource(CriteriaSet)}. */
     public static final String METRIC_TIMER_FETCH_FROM_ORIGIN_SOURCE = "timer.fetchFromOriginSource";
     
+    /** Metric name for the timer for {@link #fetchFromOriginSource(CriteriaSet)} when refreshing ahead. */
+    public static final String METRIC_TIMER_REFRESH_AHEAD_FETCH_FROM_ORIGIN_SOURCE = 
+            "timer.refreshAheadFetchFromOriginSource";
+    
     /** Metric name for the timer for {@link #resolve(CriteriaSet)}. */
     public static final String METRIC_TIMER_RESOLVE = "timer.resolve";
     
@@ -110,6 +142,16 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     /** Metric name for the gauge of the persistent cache initialization metrics. */
     public static final String METRIC_GAUGE_PERSISTENT_CACHE_INIT = "gauge.persistentCacheInitialization";
     
+    /** Metric name for the gauge of the refresh-ahead metrics. */
+    public static final String METRIC_GAUGE_REFRESH_AHEAD = "gauge.refreshAhead";
+    
+    /** Metric name for the meter of origin source fetches avoided by sharing another thread's fetch. */
+    public static final String METRIC_METER_COALESCED_FETCH_FROM_ORIGIN_SOURCE = 
+            "meter.coalescedFetchFromOriginSource";
+    
+    /** Suffix appended to an entity's persistent cache key to form the key of its filtered state. */
+    private static final String PROCESSED_STATE_KEY_SUFFIX = ".processed";
+    
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(AbstractDynamicMetadataResolver.class);
     
@@ -122,6 +164,9 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     /** Metrics Timer for {@link #fetchFromOriginSource(CriteriaSet)}. */
     @Nullable private com.codahale.metrics.Timer timerFetchFromOriginSource;
     
+    /** Metrics Timer for {@link #fetchFromOriginSource(CriteriaSet)} when refreshing ahead. */
+    @Nullable private com.codahale.metrics.Timer timerRefreshAheadFetchFromOriginSource;
+    
     /** Metrics RatioGauge for count of origin fetches to resolves.*/
     @Nullable private RatioGauge ratioGaugeFetchToResolve;
     
@@ -131,6 +176,15 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     /** Metrics Gauge for the persistent cache initialization.*/
     @Nullable private Gauge<PersistentCacheInitializationMetrics> gaugePersistentCacheInit;
     
+    /** Metrics Gauge for the refresh-ahead metrics.*/
+    @Nullable private Gauge<RefreshAheadMetrics> gaugeRefreshAhead;
+    
+    /** Metrics Meter for origin source fetches avoided by sharing another thread's fetch. */
+    @Nullable private Meter meterCoalescedFetchFromOriginSource;
+    
+    /** Origin source fetches by non-entityID criteria currently in progress. */
+    @Nonnull private final ConcurrentMap<CriteriaSet, FutureTask<Iterable<EntityDescriptor>>> inProgressFetches;
+    
     /** Timer used to schedule background metadata update tasks. */
     private Timer taskTimer;
     
@@ -166,6 +220,21 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     /** The backing store cleanup sweeper background task. */
     private BackingStoreCleanupSweeper cleanupTask;
     
+    /** Flag indicating whether frequently accessed metadata should be refreshed ahead of its refresh trigger time. */
+    private boolean refreshAhead;
+    
+    /** The interval in milliseconds at which the refresh-ahead task should run. */
+    @Duration @Positive private Long refreshAheadTaskInterval;
+    
+    /** The minimum number of accesses since the refresh-ahead task last ran for metadata to be refreshed ahead. */
+    @Positive private int refreshAheadAccessThreshold;
+    
+    /** The refresh-ahead background task. */
+    private RefreshAheadSweeper refreshAheadTask;
+    
+    /** Object tracking metrics related to refresh-ahead. */
+    @Nonnull private final RefreshAheadMetrics refreshAheadMetrics;
+    
     /** The manager for the persistent cache store for resolved metadata. */
     private XMLObjectLoadSaveManager<EntityDescriptor> persistentCacheManager;
     
@@ -175,6 +244,15 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     /** Flag indicating whether should initialize from the persistent cache in the background. */
     private boolean initializeFromPersistentCacheInBackground;
     
+    /** Flag indicating whether the filtered metadata is stored in the persistent cache. */
+    private boolean persistFilteredMetadata;
+    
+    /** Key used to authenticate the filtered metadata stored in the persistent cache. */
+    @Nullable private SecretKey processedStateKey;
+    
+    /** The number of worker threads used to initialize from the persistent cache. */
+    @Positive private int persistentCacheInitializationThreads;
+    
     /** The delay in milliseconds after which to schedule the background initialization from the persistent cache. */
     @Duration @Positive private Long backgroundInitializationFromCacheDelay;
     
@@ -188,6 +266,9 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     /** The set of indexes configured. */
     private Set<MetadataIndex> indexes;
     
+    /** Executor used to perform resolution requested via {@link #resolveAsync(CriteriaSet)}. */
+    @Nullable private Executor resolveExecutor;
+    
     /** Flag used to track state of whether currently initializing or not. */
     private boolean initializing;
     
@@ -201,6 +282,10 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         
         indexes = Collections.emptySet();
         
+        inProgressFetches = new ConcurrentHashMap<>();
+        
+        refreshAheadMetrics = new RefreshAheadMetrics();
+        
         if (backgroundTaskTimer == null) {
             taskTimer = new Timer(TimerSupport.getTimerName(this), true);
             createdOwnTaskTimer = true;
@@ -228,6 +313,11 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         // Default to 8 hours.
         maxIdleEntityData = 8*60*60*1000L;
         
+        // Default to 1 minute.
+        refreshAheadTaskInterval = 60*1000L;
+        
+        refreshAheadAccessThreshold = 5;
+        
         // Default to removing idle metadata
         removeIdleEntityData = true;
         
@@ -236,6 +326,8 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         
         // Default to 2 seconds.
         backgroundInitializationFromCacheDelay = 2*1000L;
+        
+        persistentCacheInitializationThreads = 1;
     }
     
     /**
@@ -262,6 +354,113 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         initializeFromPersistentCacheInBackground = flag;
     }
 
+    /**
+     * Get the flag indicating whether the filtered metadata is stored in the persistent cache, in addition to
+     * the original metadata.
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @return true if the filtered metadata is stored, false otherwise
+     */
+    public boolean isPersistFilteredMetadata() {
+        return persistFilteredMetadata;
+    }
+
+    /**
+     * Set the flag indicating whether the filtered metadata is stored in the persistent cache, in addition to
+     * the original metadata.
+     * 
+     * <p>
+     * If true, a copy of the filtered metadata is stored alongside the original metadata, marked with a
+     * {@link ProcessedStateMarker} carrying a MAC, computed with the {@link #getProcessedStateKey()}, over the
+     * original metadata, the filtered copy and a fingerprint of the metadata filter. When initializing from the
+     * persistent cache, the filtered copy is used in place of running the original through the metadata filter
+     * again, which avoids re-validating signatures, but only if the MAC verifies against the cached original
+     * and the current metadata filter; otherwise the original is filtered as usual. This requires a processed
+     * state key and a persistent cache manager which preserves the marker, i.e. a
+     * {@link ProcessedStateXMLObjectLoadSaveManager} such as
+     * {@link org.opensaml.core.xml.persist.SegmentFileLoadSaveManager}, and initialization fails without them.
+     * </p>
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @param flag true if the filtered metadata should be stored, false otherwise
+     */
+    public void setPersistFilteredMetadata(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        persistFilteredMetadata = flag;
+    }
+
+    /**
+     * Get the key used to authenticate the filtered metadata stored in the persistent cache.
+     * 
+     * @return the key, or null
+     */
+    @Nullable public SecretKey getProcessedStateKey() {
+        return processedStateKey;
+    }
+
+    /**
+     * Set the key used to authenticate the filtered metadata stored in the persistent cache.
+     * 
+     * <p>
+     * The key is used with {@value JCAConstants#HMAC_SHA256} and is required if
+     * {@link #isPersistFilteredMetadata()} is true. The fingerprint of the metadata filter covered by the MAC
+     * only reflects the types of the filters and the structure of any {@link MetadataFilterChain}, as
+     * returned by {@link #computeMetadataFilterFingerprint(MetadataFilter)}, so the key should be changed,
+     * which discards all stored filtered metadata, whenever the configuration of the filters changes in
+     * other respects, for example their trust anchors.
+     * </p>
+     * 
+     * @param key the key
+     */
+    public void setProcessedStateKey(@Nullable final SecretKey key) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        processedStateKey = key;
+    }
+
+    /**
+     * Get the number of worker threads used to initialize from the persistent cache.
+     * 
+     * <p>Defaults to: 1.</p>
+     * 
+     * @return the number of worker threads
+     */
+    @Positive public int getPersistentCacheInitializationThreads() {
+        return persistentCacheInitializationThreads;
+    }
+
+    /**
+     * Set the number of worker threads used to initialize from the persistent cache.
+     * 
+     * <p>
+     * If greater than 1, the keys in the persistent cache are partitioned across a pool of this many threads,
+     * each of which loads, filters and indexes the entries in its partition. The pool only exists for the
+     * duration of the initialization. Otherwise the entries are processed sequentially.
+     * </p>
+     * 
+     * <p>Defaults to: 1.</p>
+     * 
+     * @param threads the number of worker threads
+     */
+    public void setPersistentCacheInitializationThreads(@Positive final int threads) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        persistentCacheInitializationThreads = (int) Constraint.isGreaterThan(0, threads, 
+                "Persistent cache initialization threads must be greater than 0");
+    }
+
+    /**
+     * Get the metrics related to the initialization from the persistent cache.
+     * 
+     * @return the persistent cache initialization metrics, or null if the resolver is not initialized
+     */
+    @NonnullAfterInit public PersistentCacheInitializationMetrics getPersistentCacheInitializationMetrics() {
+        return persistentCacheInitMetrics;
+    }
+
     /**
      * Get the delay in milliseconds after which to schedule the background initialization from the persistent cache.
      * 
@@ -559,6 +758,104 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         cleanupTaskInterval = Constraint.isNotNull(interval, "Cleanup task interval may not be null");
     }
 
+    /**
+     * Get whether frequently accessed metadata should be refreshed in the background ahead of its
+     * refresh trigger time.
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @return true if refresh-ahead is enabled, false otherwise
+     */
+    public boolean isRefreshAhead() {
+        return refreshAhead;
+    }
+    
+    /**
+     * Set whether frequently accessed metadata should be refreshed in the background ahead of its
+     * refresh trigger time.
+     * 
+     * <p>
+     * If enabled, a background task runs every {@link #getRefreshAheadTaskInterval()} and refreshes the
+     * metadata of each entity which was accessed at least {@link #getRefreshAheadAccessThreshold()} times since
+     * the task last ran, and whose refresh trigger time will have passed by the time the task next runs.
+     * The current metadata continues to be served while the refresh is in progress. The refresh is performed
+     * by the resolve executor, which must be configured, so that a slow origin source does not hold up the
+     * shared background task timer.
+     * </p>
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @param flag true if refresh-ahead is enabled, false otherwise
+     */
+    public void setRefreshAhead(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        refreshAhead = flag;
+    }
+    
+    /**
+     * Get the interval in milliseconds at which the refresh-ahead task should run.
+     * 
+     * <p>Defaults to: 1 minute.</p>
+     * 
+     * @return the interval, in milliseconds
+     */
+    @Nonnull public Long getRefreshAheadTaskInterval() {
+        return refreshAheadTaskInterval;
+    }
+    
+    /**
+     * Set the interval in milliseconds at which the refresh-ahead task should run.
+     * 
+     * <p>Defaults to: 1 minute.</p>
+     * 
+     * @param interval the interval to set, in milliseconds
+     */
+    public void setRefreshAheadTaskInterval(@Nonnull @Duration @Positive final Long interval) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        refreshAheadTaskInterval = Constraint.isNotNull(interval, "Refresh-ahead task interval may not be null");
+        if (refreshAheadTaskInterval <= 0) {
+            throw new IllegalArgumentException("Refresh-ahead task interval must be greater than 0");
+        }
+    }
+    
+    /**
+     * Get the minimum number of accesses to an entity's metadata since the refresh-ahead task last ran
+     * for it to be refreshed ahead.
+     * 
+     * <p>Defaults to: 5.</p>
+     * 
+     * @return the access threshold
+     */
+    @Positive public int getRefreshAheadAccessThreshold() {
+        return refreshAheadAccessThreshold;
+    }
+    
+    /**
+     * Set the minimum number of accesses to an entity's metadata since the refresh-ahead task last ran
+     * for it to be refreshed ahead.
+     * 
+     * <p>Defaults to: 5.</p>
+     * 
+     * @param threshold the access threshold
+     */
+    public void setRefreshAheadAccessThreshold(@Positive final int threshold) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        refreshAheadAccessThreshold = (int) Constraint.isGreaterThan(0, threshold, 
+                "Refresh-ahead access threshold must be greater than 0");
+    }
+    
+    /**
+     * Get the metrics related to refresh-ahead.
+     * 
+     * @return the refresh-ahead metrics
+     */
+    @Nonnull public RefreshAheadMetrics getRefreshAheadMetrics() {
+        return refreshAheadMetrics;
+    }
+
     /**
      * Get the base name for Metrics instrumentation.
      * 
@@ -603,6 +900,32 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         }
     }
     
+    /**
+     * Get the executor used to perform resolution requested via {@link #resolveAsync(CriteriaSet)}.
+     * 
+     * @return the executor, or null if such resolution is performed by the calling thread
+     */
+    @Nullable public Executor getResolveExecutor() {
+        return resolveExecutor;
+    }
+    
+    /**
+     * Set the executor used to perform resolution requested via {@link #resolveAsync(CriteriaSet)}.
+     * 
+     * <p>
+     * The executor's threads may block for the duration of a fetch from the origin source, so it should be
+     * sized, and its queue bounded, according to the number of concurrent fetches which are acceptable.
+     * It is also used to perform refresh-ahead, which requires it.
+     * </p>
+     * 
+     * @param executor the executor, or null if such resolution is to be performed by the calling thread
+     */
+    public void setResolveExecutor(@Nullable final Executor executor) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        resolveExecutor = executor;
+    }
+    
     /**
      * Return whether secondary indexing is effectively active.
      * 
@@ -661,36 +984,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             final String entityID = resolveEntityID(criteria);
             if (entityID != null) {
                 log.debug("{} Resolved criteria to entityID: {}", getLogPrefix(), entityID);
-
-                final EntityManagementData mgmtData = getBackingStore().getManagementData(entityID);
-                final Lock readLock = mgmtData.getReadWriteLock().readLock();
-                try {
-                    readLock.lock();
-
-                    final List<EntityDescriptor> descriptors = lookupEntityID(entityID);
-                    if (descriptors.isEmpty()) {
-                        if (mgmtData.isNegativeLookupCacheActive()) {
-                            log.debug("{} Did not find requested metadata in backing store, " 
-                                    + "and negative lookup cache is active, returning empty result", 
-                                    getLogPrefix());
-                            return Collections.emptyList();
-                        } else {
-                            log.debug("{} Did not find requested metadata in backing store, " 
-                                    + "attempting to resolve dynamically", 
-                                    getLogPrefix());
-                        }
-                    } else {
-                        if (shouldAttemptRefresh(mgmtData)) {
-                            log.debug("{} Metadata was indicated to be refreshed based on refresh trigger time", 
-                                    getLogPrefix());
-                        } else {
-                            log.debug("{} Found requested metadata in backing store", getLogPrefix());
-                            candidates = descriptors;
-                        }
-                    }
-                } finally {
-                    readLock.unlock();
-                }
+                candidates = lookupLiveEntityID(entityID);
             } else {
                 log.debug("{} Single entityID unresolveable from criteria, will resolve from origin by criteria only",
                         getLogPrefix());
@@ -706,6 +1000,111 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         }
     }
     
+    /**
+     * Resolve metadata as for {@link #resolve(CriteriaSet)}, without waiting for any fetch from the origin source
+     * which may be required.
+     * 
+     * <p>
+     * If the metadata can be resolved from the backing store, or no resolve executor is configured, resolution is
+     * performed by the calling thread and the returned future is already complete. Otherwise resolution is performed
+     * by the configured resolve executor.
+     * </p>
+     * 
+     * @param criteria the criteria to evaluate or process
+     * @return a future from which the resolved metadata may be obtained
+     * @throws ResolverException if the resolution can not be started
+     */
+    @Nonnull public Future<Iterable<EntityDescriptor>> resolveAsync(@Nonnull final CriteriaSet criteria)
+            throws ResolverException {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        
+        final FutureTask<Iterable<EntityDescriptor>> resolution = new FutureTask<Iterable<EntityDescriptor>>(
+                new Callable<Iterable<EntityDescriptor>>() {
+                    public Iterable<EntityDescriptor> call() throws ResolverException {
+                        return resolve(criteria);
+                    }
+                });
+        
+        final Executor executor = getResolveExecutor();
+        if (executor == null) {
+            resolution.run();
+            return resolution;
+        }
+        
+        final String entityID = resolveEntityID(criteria);
+        final List<EntityDescriptor> descriptors = entityID != null ? lookupLiveEntityID(entityID) : null;
+        if (descriptors != null) {
+            log.debug("{} Metadata for entityID '{}' is in backing store, resolving synchronously", 
+                    getLogPrefix(), entityID);
+            final FutureTask<Iterable<EntityDescriptor>> lookup = new FutureTask<Iterable<EntityDescriptor>>(
+                    new Callable<Iterable<EntityDescriptor>>() {
+                        public Iterable<EntityDescriptor> call() throws ResolverException {
+                            final Context contextResolve = MetricsSupport.startTimer(timerResolve);
+                            try {
+                                return predicateFilterCandidates(descriptors, criteria, false);
+                            } finally {
+                                MetricsSupport.stopTimer(contextResolve);
+                            }
+                        }
+                    });
+            lookup.run();
+            return lookup;
+        }
+        
+        try {
+            executor.execute(resolution);
+        } catch (final RejectedExecutionException e) {
+            throw new ResolverException("Resolve executor rejected metadata resolution", e);
+        }
+        return resolution;
+    }
+    
+    /**
+     * Lookup the live metadata for the specified entityID in the backing store.
+     * 
+     * @param entityID the entityID
+     * @return the metadata, which is empty if the negative lookup cache is active for the entityID, or null
+     *          if the metadata must be resolved from the origin source
+     * @throws ResolverException if there is a problem looking up the metadata
+     */
+    @Nullable @NonnullElements private List<EntityDescriptor> lookupLiveEntityID(@Nonnull final String entityID)
+            throws ResolverException {
+        final EntityManagementData mgmtData = getBackingStore().getManagementData(entityID);
+        final Lock readLock = mgmtData.getReadWriteLock().readLock();
+        try {
+            readLock.lock();
+
+            final List<EntityDescriptor> descriptors = lookupEntityID(entityID);
+            if (descriptors.isEmpty()) {
+                if (mgmtData.isNegativeLookupCacheActive()) {
+                    log.debug("{} Did not find requested metadata in backing store, " 
+                            + "and negative lookup cache is active, returning empty result", 
+                            getLogPrefix());
+                    return Collections.emptyList();
+                } else {
+                    log.debug("{} Did not find requested metadata in backing store, " 
+                            + "attempting to resolve dynamically", 
+                            getLogPrefix());
+                }
+            } else {
+                if (shouldAttemptRefresh(mgmtData)) {
+                    log.debug("{} Metadata was indicated to be refreshed based on refresh trigger time", 
+                            getLogPrefix());
+                } else {
+                    log.debug("{} Found requested metadata in backing store", getLogPrefix());
+                    if (mgmtData.isRefreshedAhead()) {
+                        refreshAheadMetrics.hits.incrementAndGet();
+                    }
+                    return descriptors;
+                }
+            }
+            return null;
+        } finally {
+            readLock.unlock();
+        }
+    }
+    
     /**
     * Attempt to resolve the single entityID for the operation from the criteria set.
     * 
@@ -753,14 +1152,8 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             return Collections.emptySet();
         }
 
-        Optional<Set<String>> indexedResult = null;
-        final Lock readLock = getBackingStore().getSecondaryIndexManager().getReadWriteLock().readLock();
-        try {
-            readLock.lock();
-            indexedResult = getBackingStore().getSecondaryIndexManager().lookupIndexedItems(criteria);
-        } finally {
-            readLock.unlock();
-        }
+        final Optional<Set<String>> indexedResult = 
+                getBackingStore().getSecondaryIndexManager().lookupIndexedItems(criteria);
 
         if (indexedResult.isPresent()) {
             final Set<String> entityIDs = indexedResult.get();
@@ -851,6 +1244,12 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             if (!descriptors.isEmpty() && !shouldAttemptRefresh(mgmtData)) {
                 log.debug("{} Metadata was resolved and stored by another thread " 
                         + "while this thread was waiting on the write lock", getLogPrefix());
+                markCoalescedFetch();
+                return descriptors;
+            } else if (descriptors.isEmpty() && mgmtData.isNegativeLookupCacheActive()) {
+                log.debug("{} Metadata was found not to exist by another thread " 
+                        + "while this thread was waiting on the write lock", getLogPrefix());
+                markCoalescedFetch();
                 return descriptors;
             } else {
                 log.debug("{} Resolving metadata dynamically for entity ID: {}", getLogPrefix(), entityID);
@@ -876,6 +1275,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                 }
             } else {
                 mgmtData.clearNegativeLookupCache();
+                mgmtData.setRefreshedAhead(false);
                 try {
                     processNewMetadata(root, entityID);
                 } catch (final FilterException e) {
@@ -906,6 +1306,85 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     protected Iterable<EntityDescriptor> resolveFromOriginSourceWithoutEntityID(@Nonnull final CriteriaSet criteria) 
             throws ResolverException {
         
+        // Threads requesting equal criteria while a fetch is in progress share its result
+        // rather than each fetching the same metadata from the origin source.
+        final CriteriaSet fetchKey = new CriteriaSet();
+        fetchKey.addAll(criteria);
+        
+        final FutureTask<Iterable<EntityDescriptor>> fetch = new FutureTask<Iterable<EntityDescriptor>>(
+                new Callable<Iterable<EntityDescriptor>>() {
+                    public Iterable<EntityDescriptor> call() throws ResolverException {
+                        return fetchAndProcessFromOriginSourceWithoutEntityID(criteria);
+                    }
+                });
+        
+        final FutureTask<Iterable<EntityDescriptor>> inProgressFetch = inProgressFetches.putIfAbsent(fetchKey, fetch);
+        if (inProgressFetch != null) {
+            log.debug("{} Fetch from origin source for equivalent criteria is in progress, awaiting its result", 
+                    getLogPrefix());
+            markCoalescedFetch();
+            return getFetchResult(inProgressFetch);
+        }
+        
+        try {
+            fetch.run();
+        } finally {
+            inProgressFetches.remove(fetchKey, fetch);
+        }
+        return getFetchResult(fetch);
+    }
+    
+    /**
+     * Get the result of a fetch from the origin source based on non-entityID criteria, waiting for it to
+     * complete if necessary.
+     * 
+     * @param fetch the fetch
+     * @return the resolved metadata
+     * @throws ResolverException if the fetch failed, or the wait for it was interrupted
+     */
+    @Nonnull @NonnullElements private Iterable<EntityDescriptor> getFetchResult(
+            @Nonnull final FutureTask<Iterable<EntityDescriptor>> fetch) throws ResolverException {
+        try {
+            return fetch.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResolverException("Interrupted while awaiting fetch from origin source", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof ResolverException) {
+                throw (ResolverException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                // The fetch is a Callable, so anything else it throws is a checked Exception
+                throw new ResolverException("Error fetching metadata from origin source", (Exception) cause);
+            }
+        }
+    }
+    
+    /**
+     * Record that a resolve request was satisfied by the origin source fetch of another thread.
+     */
+    private void markCoalescedFetch() {
+        if (meterCoalescedFetchFromOriginSource != null) {
+            meterCoalescedFetchFromOriginSource.mark();
+        }
+    }
+    
+    /**
+     * Fetch metadata from an origin source based on the input criteria when the entityID is not known,
+     * store it in the backing store and then return it.
+     * 
+     * @param criteria the input criteria set
+     * @return the resolved metadata
+     * @throws ResolverException if there is a fatal error attempting to resolve the metadata
+     */
+    @Nonnull @NonnullElements 
+    private Iterable<EntityDescriptor> fetchAndProcessFromOriginSourceWithoutEntityID(
+            @Nonnull final CriteriaSet criteria) throws ResolverException {
+        
         XMLObject root = null;
         final Context contextFetchFromOriginSource = MetricsSupport.startTimer(timerFetchFromOriginSource);
         try {
@@ -1070,7 +1549,19 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     @Nonnull protected void processNewMetadata(@Nonnull final XMLObject root, @Nonnull final String expectedEntityID,
             final boolean fromPersistentCache) throws FilterException, ResolverException {
         
-        final XMLObject filteredMetadata = filterMetadata(prepareForFiltering(root));
+        EntityDescriptor processedState = null;
+        if (fromPersistentCache && isPersistFilteredMetadata() && root instanceof EntityDescriptor) {
+            processedState = loadProcessedState((EntityDescriptor) root);
+        }
+        
+        final XMLObject filteredMetadata;
+        if (processedState != null) {
+            log.debug("{} Metadata loaded from persistent cache was already filtered, skipping filtering", 
+                    getLogPrefix());
+            filteredMetadata = processedState;
+        } else {
+            filteredMetadata = filterMetadata(prepareForFiltering(root));
+        }
         
         if (filteredMetadata == null) {
             log.info("{} Metadata filtering process produced a null document, resulting in an empty data set", 
@@ -1095,27 +1586,39 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                 }
             }
             
+            // The filtered state must be copied before it is indexed, after which it may be read concurrently.
+            EntityDescriptor processedStateCopy = null;
+            if (isPersistentCachingEnabled() && isPersistFilteredMetadata() && !fromPersistentCache 
+                    && (root instanceof EntityDescriptor)) {
+                processedStateCopy = buildProcessedState(entityDescriptor, (EntityDescriptor) root);
+            }
+            
             preProcessEntityDescriptor(entityDescriptor, getBackingStore());
             
             log.info("{} Successfully loaded new EntityDescriptor with entityID '{}' from {}",
                     getLogPrefix(), entityDescriptor.getEntityID(), 
                     fromPersistentCache ? "persistent cache" : "origin source");
             
-            // Note: we store in the cache the original input XMLObject, not the filtered one
+            // Note: we store in the cache the original input XMLObject, not the filtered one, 
+            // which is stored separately if so configured
             if (isPersistentCachingEnabled() && !fromPersistentCache && (root instanceof EntityDescriptor)) {
-                final EntityDescriptor origDescriptor = (EntityDescriptor) root;
-                final String key = getPersistentCacheKeyGenerator().apply(origDescriptor);
+                final EntityDescriptor cacheDescriptor = (EntityDescriptor) root;
+                final String key = getPersistentCacheKeyGenerator().apply(cacheDescriptor);
                 log.trace("{} Storing resolved EntityDescriptor '{}' in persistent cache with key '{}'", 
-                        getLogPrefix(), origDescriptor.getEntityID(), key);
+                        getLogPrefix(), cacheDescriptor.getEntityID(), key);
                 if (key == null) {
                     log.warn("{} Could not generate cache storage key for EntityDescriptor '{}', skipping caching", 
-                            getLogPrefix(), origDescriptor.getEntityID());
+                            getLogPrefix(), cacheDescriptor.getEntityID());
                 } else {
                     try {
-                        getPersistentCacheManager().save(key, origDescriptor, true);
+                        getPersistentCacheManager().save(key, cacheDescriptor, true);
+                        if (processedStateCopy != null) {
+                            getPersistentCacheManager().save(key + PROCESSED_STATE_KEY_SUFFIX, processedStateCopy, 
+                                    true);
+                        }
                     } catch (final IOException e) {
                         log.warn("{} Error saving EntityDescriptor '{}' to cache store with key {}'", 
-                                getLogPrefix(), origDescriptor.getEntityID(), key);
+                                getLogPrefix(), cacheDescriptor.getEntityID(), key);
                     }
                 }
             }
@@ -1154,17 +1657,162 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         }
     }
     
-    /** {@inheritDoc} */
-    @Override
-    protected void preProcessEntityDescriptor(@Nonnull final EntityDescriptor entityDescriptor, 
-            @Nonnull final EntityBackingStore backingStore) {
-        
-        final String entityID = StringSupport.trimOrNull(entityDescriptor.getEntityID());
-        
-        removeByEntityID(entityID, backingStore);
-        
-        super.preProcessEntityDescriptor(entityDescriptor, backingStore);
-        
+    /**
+     * Build the copy of the filtered metadata to be stored in the persistent cache, marked with a MAC which binds
+     * it to the original metadata from which it was produced and to the metadata filter.
+     * 
+     * <p>This must be called before the filtered metadata is indexed.</p>
+     * 
+     * @param filtered the filtered metadata
+     * @param source the original metadata
+     * 
+     * @return the marked copy, or null if it could not be built
+     */
+    @Nullable private EntityDescriptor buildProcessedState(@Nonnull final EntityDescriptor filtered, 
+            @Nonnull final EntityDescriptor source) {
+        try {
+            final EntityDescriptor copy = XMLObjectSupport.cloneXMLObject(filtered);
+            // The MAC covers the DOM from which the copy is serialized when it is saved
+            final String mac = computeProcessedStateMAC(source, copy);
+            if (mac == null) {
+                return null;
+            }
+            copy.getObjectMetadata().put(new ProcessedStateMarker(mac));
+            return copy;
+        } catch (final MarshallingException | UnmarshallingException e) {
+            log.warn("{} Error copying filtered EntityDescriptor '{}', it will not be cached", 
+                    getLogPrefix(), filtered.getEntityID(), e);
+            return null;
+        }
+    }
+    
+    /**
+     * Load the filtered state of an entity from the persistent cache, if it was produced from the specified
+     * original metadata loaded from the cache by the current metadata filter.
+     * 
+     * @param source the original metadata
+     * 
+     * @return the filtered state, or null if there is none which matches the original metadata
+     */
+    @Nullable private EntityDescriptor loadProcessedState(@Nonnull final EntityDescriptor source) {
+        final String key = getPersistentCacheKeyGenerator().apply(source);
+        if (key == null) {
+            return null;
+        }
+        
+        final EntityDescriptor processed;
+        try {
+            processed = getPersistentCacheManager().load(key + PROCESSED_STATE_KEY_SUFFIX);
+        } catch (final IOException e) {
+            log.warn("{} Error loading filtered EntityDescriptor '{}' from cache store with key '{}'", 
+                    getLogPrefix(), source.getEntityID(), key + PROCESSED_STATE_KEY_SUFFIX, e);
+            return null;
+        }
+        if (processed == null) {
+            log.trace("{} No filtered EntityDescriptor '{}' in persistent cache", getLogPrefix(), 
+                    source.getEntityID());
+            return null;
+        }
+        
+        final List<ProcessedStateMarker> markers = processed.getObjectMetadata().get(ProcessedStateMarker.class);
+        final String mac = markers.isEmpty() ? null : markers.get(0).getSourceDigest();
+        final String expectedMAC = mac != null ? computeProcessedStateMAC(source, processed) : null;
+        if (expectedMAC == null || !MessageDigest.isEqual(expectedMAC.getBytes(StandardCharsets.UTF_8), 
+                mac.getBytes(StandardCharsets.UTF_8))) {
+            log.debug("{} Filtered EntityDescriptor '{}' in persistent cache was not produced from the cached " 
+                    + "original by the current metadata filter, ignoring it", getLogPrefix(), 
+                    source.getEntityID());
+            releaseMetadataDOM(processed);
+            return null;
+        }
+        return processed;
+    }
+    
+    /**
+     * Compute the MAC which binds the filtered state of an entity to its original metadata and to the
+     * metadata filter, marshalling either if it has no DOM.
+     * 
+     * <p>
+     * The MAC is computed with the {@link #getProcessedStateKey()} over the fingerprint of the metadata
+     * filter and the exclusive canonicalization of the original metadata and the filtered state.
+     * </p>
+     * 
+     * @param source the original metadata
+     * @param processed the filtered state
+     * 
+     * @return the MAC, or null if none could be computed
+     */
+    @Nullable private String computeProcessedStateMAC(@Nonnull final EntityDescriptor source, 
+            @Nonnull final EntityDescriptor processed) {
+        final SecretKey key = getProcessedStateKey();
+        if (key == null) {
+            return null;
+        }
+        
+        try {
+            final Canonicalizer canonicalizer = 
+                    Canonicalizer.getInstance(SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+            final Mac mac = Mac.getInstance(JCAConstants.HMAC_SHA256);
+            mac.init(key);
+            mac.update(computeMetadataFilterFingerprint(getMetadataFilter()).getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            mac.update(canonicalizer.canonicalizeSubtree(
+                    source.getDOM() != null ? source.getDOM() : XMLObjectSupport.marshall(source)));
+            mac.update((byte) 0);
+            mac.update(canonicalizer.canonicalizeSubtree(
+                    processed.getDOM() != null ? processed.getDOM() : XMLObjectSupport.marshall(processed)));
+            return Base64Support.encode(mac.doFinal(), Base64Support.UNCHUNKED);
+        } catch (final MarshallingException e) {
+            log.warn("{} Error marshalling EntityDescriptor '{}' to compute the MAC of its filtered state", 
+                    getLogPrefix(), source.getEntityID(), e);
+            return null;
+        } catch (final NoSuchAlgorithmException | InvalidKeyException | XMLSecurityException e) {
+            log.warn("{} Unable to compute the MAC of the filtered state of EntityDescriptor '{}'", 
+                    getLogPrefix(), source.getEntityID(), e);
+            return null;
+        }
+    }
+    
+    /**
+     * Compute the fingerprint of a metadata filter, which is covered by the MAC of the filtered metadata stored
+     * in the persistent cache, so that the stored metadata is only used with the filter which produced it.
+     * 
+     * <p>
+     * The default implementation returns the class name of the filter, or for a {@link MetadataFilterChain}
+     * the fingerprints of its members in order.
+     * </p>
+     * 
+     * @param filter the metadata filter, may be null
+     * 
+     * @return the fingerprint
+     */
+    @Nonnull protected String computeMetadataFilterFingerprint(@Nullable final MetadataFilter filter) {
+        if (filter == null) {
+            return "";
+        } else if (filter instanceof MetadataFilterChain) {
+            final StringBuilder builder = new StringBuilder(filter.getClass().getName()).append('[');
+            for (final MetadataFilter member : ((MetadataFilterChain) filter).getFilters()) {
+                builder.append(computeMetadataFilterFingerprint(member)).append(';');
+            }
+            return builder.append(']').toString();
+        } else {
+            return filter.getClass().getName();
+        }
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    protected void preProcessEntityDescriptor(@Nonnull final EntityDescriptor entityDescriptor, 
+            @Nonnull final EntityBackingStore backingStore) {
+        
+        final String entityID = StringSupport.trimOrNull(entityDescriptor.getEntityID());
+        
+        removeByEntityID(entityID, backingStore);
+        
+        // The ordered descriptor list is deliberately not maintained: it isn't used by dynamic resolvers,
+        // and it would otherwise be shared by threads holding the write locks of different entities.
+        indexEntityDescriptor(entityDescriptor, backingStore);
+        
         final DynamicEntityBackingStore dynamicBackingStore = (DynamicEntityBackingStore) backingStore;
         final EntityManagementData mgmtData = dynamicBackingStore.getManagementData(entityID);
         
@@ -1292,6 +1940,23 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             
             super.initMetadataResolver();
             
+            if (isPersistFilteredMetadata() && isPersistentCachingEnabled() 
+                    && !(getPersistentCacheManager() instanceof ProcessedStateXMLObjectLoadSaveManager)) {
+                throw new ComponentInitializationException(getLogPrefix() 
+                        + " Persisting filtered metadata requires a persistent cache manager which preserves " 
+                        + "the processed state");
+            }
+            
+            if (isPersistFilteredMetadata() && isPersistentCachingEnabled() && getProcessedStateKey() == null) {
+                throw new ComponentInitializationException(getLogPrefix() 
+                        + " Persisting filtered metadata requires a processed state key");
+            }
+            
+            if (isRefreshAhead() && getResolveExecutor() == null) {
+                throw new ComponentInitializationException(getLogPrefix() 
+                        + " Refresh-ahead requires a resolve executor");
+            }
+            
             initializeMetricsInstrumentation();
             
             setBackingStore(createNewBackingStore());
@@ -1325,6 +1990,11 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             cleanupTask = new BackingStoreCleanupSweeper();
             // Start with a delay of 1 minute, run at the user-specified interval
             taskTimer.schedule(cleanupTask, 1*60*1000, getCleanupTaskInterval());
+            
+            if (isRefreshAhead()) {
+                refreshAheadTask = new RefreshAheadSweeper();
+                taskTimer.schedule(refreshAheadTask, getRefreshAheadTaskInterval(), getRefreshAheadTaskInterval());
+            }
 
         } finally {
             initializing = false;
@@ -1345,6 +2015,10 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                     MetricRegistry.name(getMetricsBaseName(), METRIC_TIMER_RESOLVE));
             timerFetchFromOriginSource = metricRegistry.timer(
                     MetricRegistry.name(getMetricsBaseName(), METRIC_TIMER_FETCH_FROM_ORIGIN_SOURCE));
+            timerRefreshAheadFetchFromOriginSource = metricRegistry.timer(
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_TIMER_REFRESH_AHEAD_FETCH_FROM_ORIGIN_SOURCE));
+            meterCoalescedFetchFromOriginSource = metricRegistry.meter(
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_METER_COALESCED_FETCH_FROM_ORIGIN_SOURCE));
 
             // Note that these gauges must use the support method to register in a synchronized fashion,
             // and also must store off the instances for later use in destroy.
@@ -1372,6 +2046,14 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                             return persistentCacheInitMetrics;
                         }},
                     true);
+            
+            gaugeRefreshAhead = MetricsSupport.register(
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_GAUGE_REFRESH_AHEAD),
+                    new Gauge<RefreshAheadMetrics>() {
+                        public RefreshAheadMetrics getValue() {
+                            return refreshAheadMetrics;
+                        }},
+                    true);
         }
     }
     
@@ -1387,43 +2069,141 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         }
         
         final long start = System.nanoTime();
+        persistentCacheInitMetrics.inProgress = true;
         try {
-            for (final Pair<String, EntityDescriptor> cacheEntry: getPersistentCacheManager().listAll()) {
-                persistentCacheInitMetrics.entriesTotal++;
-                final EntityDescriptor descriptor = cacheEntry.getSecond();
-                final String currentKey = cacheEntry.getFirst();
-                log.trace("{} Loaded EntityDescriptor from cache store with entityID '{}' and storage key '{}'", 
-                        getLogPrefix(), descriptor.getEntityID(), currentKey);
-                
-                final String entityID = StringSupport.trimOrNull(descriptor.getEntityID());
-                final EntityManagementData mgmtData = getBackingStore().getManagementData(entityID);
-                final Lock writeLock = mgmtData.getReadWriteLock().writeLock(); 
-                
-                try {
-                    writeLock.lock();
-                    
-                    // This can happen if we init from the persistent cache in a background thread,
-                    // and metadata for this entityID was resolved before we hit this cache entry.
-                    if (!lookupIndexedEntityID(entityID).isEmpty()) {
-                        log.trace("{} Metadata for entityID '{}' found in persistent cache was already live, " 
-                                + "ignoring cached entry", getLogPrefix(), entityID);
-                        persistentCacheInitMetrics.entriesSkippedAlreadyLive++;
-                        continue;
+            if (getPersistentCacheInitializationThreads() > 1) {
+                initializeFromPersistentCacheInParallel();
+            } else if (isPersistFilteredMetadata()) {
+                // Filtered state is loaded along with the corresponding original, so is not listed itself.
+                for (final String key : getPersistentCacheManager().listKeys()) {
+                    if (!key.endsWith(PROCESSED_STATE_KEY_SUFFIX)) {
+                        initializeFromPersistentCacheKey(key);
+                    }
+                }
+            } else {
+                for (final Pair<String, EntityDescriptor> cacheEntry: getPersistentCacheManager().listAll()) {
+                    if (!cacheEntry.getFirst().endsWith(PROCESSED_STATE_KEY_SUFFIX)) {
+                        initializeFromPersistentCacheEntry(cacheEntry.getFirst(), cacheEntry.getSecond());
                     }
-                
-                    processPersistentCacheEntry(currentKey, descriptor);
-                    
-                } finally {
-                    writeLock.unlock();
                 }
             }
         } catch (final IOException e) {
             log.warn("{} Error loading EntityDescriptors from cache", getLogPrefix(), e);
         } finally {
             persistentCacheInitMetrics.processingTime = System.nanoTime() - start; 
+            persistentCacheInitMetrics.inProgress = false;
             log.debug("{} Persistent cache initialization metrics: {}", getLogPrefix(), persistentCacheInitMetrics);
         }
     }
+    
+    /**
+     * Initialize the resolver with data from the persistent cache manager, partitioning the cache keys
+     * across a pool of worker threads.
+     * 
+     * @throws IOException if the cache keys can not be listed
+     */
+    private void initializeFromPersistentCacheInParallel() throws IOException {
+        final List<String> keys = new ArrayList<>();
+        for (final String key : getPersistentCacheManager().listKeys()) {
+            if (!key.endsWith(PROCESSED_STATE_KEY_SUFFIX)) {
+                keys.add(key);
+            }
+        }
+        persistentCacheInitMetrics.entriesExpected = keys.size();
+        if (keys.isEmpty()) {
+            return;
+        }
+        
+        final int threads = Math.min(getPersistentCacheInitializationThreads(), keys.size());
+        persistentCacheInitMetrics.workerThreads = threads;
+        log.debug("{} Initializing {} entries from the persistent cache using {} threads", 
+                getLogPrefix(), keys.size(), threads);
+        
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("PersistentCacheInit-" + getId() + "-%d")
+                .build());
+        try {
+            final List<Future<Void>> futures = new ArrayList<>(threads);
+            for (final List<String> partition : Lists.partition(keys, (keys.size() + threads - 1) / threads)) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() {
+                        for (final String key : partition) {
+                            initializeFromPersistentCacheKey(key);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            
+            for (final Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (final ExecutionException e) {
+                    log.warn("{} Error initializing from the persistent cache", getLogPrefix(), e.getCause());
+                }
+            }
+        } catch (final InterruptedException e) {
+            log.warn("{} Interrupted while initializing from the persistent cache", getLogPrefix());
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Initialize the resolver with the entry with the specified key in the persistent cache.
+     * 
+     * @param key the persistent cache key
+     */
+    private void initializeFromPersistentCacheKey(@Nonnull final String key) {
+        try {
+            final EntityDescriptor descriptor = getPersistentCacheManager().load(key);
+            if (descriptor != null) {
+                initializeFromPersistentCacheEntry(key, descriptor);
+            } else {
+                log.debug("{} Cache entry with storage key '{}' was no longer available", getLogPrefix(), key);
+            }
+        } catch (final IOException e) {
+            log.warn("{} Error loading EntityDescriptor from cache with storage key '{}'", getLogPrefix(), key, e);
+        }
+    }
+    
+    /**
+     * Initialize the resolver with an entry loaded from the persistent cache, unless metadata for the entity
+     * is already live.
+     * 
+     * @param currentKey the current persistent cache key
+     * @param descriptor the entity descriptor loaded from the cache
+     */
+    private void initializeFromPersistentCacheEntry(@Nonnull final String currentKey, 
+            @Nonnull final EntityDescriptor descriptor) {
+        persistentCacheInitMetrics.entriesTotal.incrementAndGet();
+        log.trace("{} Loaded EntityDescriptor from cache store with entityID '{}' and storage key '{}'", 
+                getLogPrefix(), descriptor.getEntityID(), currentKey);
+        
+        final String entityID = StringSupport.trimOrNull(descriptor.getEntityID());
+        final EntityManagementData mgmtData = getBackingStore().getManagementData(entityID);
+        final Lock writeLock = mgmtData.getReadWriteLock().writeLock(); 
+        
+        try {
+            writeLock.lock();
+            
+            // This can happen if we init from the persistent cache in a background thread,
+            // and metadata for this entityID was resolved before we hit this cache entry.
+            if (!lookupIndexedEntityID(entityID).isEmpty()) {
+                log.trace("{} Metadata for entityID '{}' found in persistent cache was already live, " 
+                        + "ignoring cached entry", getLogPrefix(), entityID);
+                persistentCacheInitMetrics.entriesSkippedAlreadyLive.incrementAndGet();
+                return;
+            }
+        
+            processPersistentCacheEntry(currentKey, descriptor);
+            
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
     /**
      * Process an entry loaded from the persistent cache.
@@ -1440,17 +2220,17 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                     processNewMetadata(descriptor, descriptor.getEntityID(), true);
                     log.trace("{} Successfully processed EntityDescriptor with entityID '{}' from cache", 
                             getLogPrefix(), descriptor.getEntityID());
-                    persistentCacheInitMetrics.entriesLoaded++;
+                    persistentCacheInitMetrics.entriesLoaded.incrementAndGet();
                 } catch (final FilterException | ResolverException e) {
                     log.warn("{} Error processing EntityDescriptor '{}' from cache with storage key '{}'", 
                             getLogPrefix(), descriptor.getEntityID(), currentKey, e);
-                    persistentCacheInitMetrics.entriesSkippedProcessingException++;
+                    persistentCacheInitMetrics.entriesSkippedProcessingException.incrementAndGet();
                 }
             } else {
                 log.trace("{} Cache initialization predicate indicated to not process EntityDescriptor " 
                         + "with entityID '{}' and cache storage key '{}'",
                         getLogPrefix(), descriptor.getEntityID(), currentKey);
-                persistentCacheInitMetrics.entriesSkippedFailedPredicate++;
+                persistentCacheInitMetrics.entriesSkippedFailedPredicate.incrementAndGet();
             }
             
             // Update storage key if necessary, e.g. if cache key generator impl has changed.
@@ -1460,6 +2240,10 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                     log.trace("{} Current cache storage key '{}' differs from expected key '{}', updating",
                             getLogPrefix(), currentKey, expectedKey);
                     getPersistentCacheManager().updateKey(currentKey, expectedKey);
+                    if (isPersistFilteredMetadata()) {
+                        getPersistentCacheManager().updateKey(currentKey + PROCESSED_STATE_KEY_SUFFIX, 
+                                expectedKey + PROCESSED_STATE_KEY_SUFFIX);
+                    }
                     log.trace("{} Successfully updated cache storage key '{}' to '{}'", 
                             getLogPrefix(), currentKey, expectedKey);
                 }
@@ -1471,9 +2255,10 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         } else {
             log.trace("{} EntityDescriptor with entityID '{}' and storaage key '{}' in cache was " 
                     + "not valid, skipping and removing", getLogPrefix(), descriptor.getEntityID(), currentKey);
-            persistentCacheInitMetrics.entriesSkippedInvalid++;
+            persistentCacheInitMetrics.entriesSkippedInvalid.incrementAndGet();
             try {
                 getPersistentCacheManager().remove(currentKey);
+                getPersistentCacheManager().remove(currentKey + PROCESSED_STATE_KEY_SUFFIX);
             } catch (final IOException e) {
                 log.warn("{} Error removing invalid EntityDescriptor '{}' from persistent cache with key '{}'",
                         getLogPrefix(), descriptor.getEntityID(), currentKey);
@@ -1490,20 +2275,14 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
 
                 if (indexesEnabled()) {
                     final DynamicEntityBackingStore dynamicStore = (DynamicEntityBackingStore) backingStore;
-
-                    final Lock writeLock = dynamicStore.getSecondaryIndexManager().getReadWriteLock().writeLock();
-                    try {
-                        writeLock.lock();
-                        dynamicStore.getSecondaryIndexManager().deindexEntityDescriptor(descriptor);
-                    } finally {
-                        writeLock.unlock();
-                    }
+                    dynamicStore.getSecondaryIndexManager().deindexEntityDescriptor(descriptor);
                 }
                 
                 if (isPersistentCachingEnabled()) {
                     final String key = getPersistentCacheKeyGenerator().apply(descriptor);
                     try {
                         getPersistentCacheManager().remove(key);
+                        getPersistentCacheManager().remove(key + PROCESSED_STATE_KEY_SUFFIX);
                     } catch (final IOException e) {
                         log.warn("{} Error removing EntityDescriptor '{}' from cache store with key '{}'", 
                                 getLogPrefix(), descriptor.getEntityID(), key);
@@ -1522,10 +2301,14 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         if (cleanupTask != null) {
             cleanupTask.cancel();
         }
+        if (refreshAheadTask != null) {
+            refreshAheadTask.cancel();
+        }
         if (createdOwnTaskTimer) {
             taskTimer.cancel();
         }
         cleanupTask = null;
+        refreshAheadTask = null;
         taskTimer = null;
         
         if (ratioGaugeFetchToResolve != null) {
@@ -1540,11 +2323,18 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             MetricsSupport.remove(MetricRegistry.name(getMetricsBaseName(), METRIC_GAUGE_PERSISTENT_CACHE_INIT), 
                     gaugePersistentCacheInit);
         }
+        if (gaugeRefreshAhead != null) {
+            MetricsSupport.remove(MetricRegistry.name(getMetricsBaseName(), METRIC_GAUGE_REFRESH_AHEAD), 
+                    gaugeRefreshAhead);
+        }
         ratioGaugeFetchToResolve = null;
         gaugeNumLiveEntityIDs = null;
         gaugePersistentCacheInit = null;
+        gaugeRefreshAhead = null;
         timerFetchFromOriginSource = null;
+        timerRefreshAheadFetchFromOriginSource = null;
         timerResolve = null;
+        meterCoalescedFetchFromOriginSource = null;
         
         super.doDestroy();
     }
@@ -1556,14 +2346,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         
         if (indexesEnabled()) {
             final DynamicEntityBackingStore dynamicStore = (DynamicEntityBackingStore) backingStore;
-
-            final Lock writeLock = dynamicStore.getSecondaryIndexManager().getReadWriteLock().writeLock();
-            try {
-                writeLock.lock();
-                dynamicStore.getSecondaryIndexManager().indexEntityDescriptor(entityDescriptor);
-            } finally {
-                writeLock.unlock();
-            }
+            dynamicStore.getSecondaryIndexManager().indexEntityDescriptor(entityDescriptor);
         }
     }
 
@@ -1573,7 +2356,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     protected class DynamicEntityBackingStore extends EntityBackingStore {
         
         /** Map holding management data for each entityID. */
-        private Map<String, EntityManagementData> mgmtDataMap;
+        private ConcurrentMap<String, EntityManagementData> mgmtDataMap;
         
         /** Manager for secondary indexes. */
         private LockableMetadataIndexManager<String> secondaryIndexManager;
@@ -1609,23 +2392,15 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
          */
         @Nonnull public EntityManagementData getManagementData(@Nonnull final String entityID) {
             Constraint.isNotNull(entityID, "EntityID may not be null");
-            EntityManagementData entityData = mgmtDataMap.get(entityID);
+            final EntityManagementData entityData = mgmtDataMap.get(entityID);
             if (entityData != null) {
                 return entityData;
             }
             
-            // TODO use intern-ed String here for monitor target?
-            synchronized (this) {
-                // Check again in case another thread beat us into the monitor
-                entityData = mgmtDataMap.get(entityID);
-                if (entityData != null) {
-                    return entityData;
-                } else {
-                    entityData = new EntityManagementData(entityID);
-                    mgmtDataMap.put(entityID, entityData);
-                    return entityData;
-                }
-            }
+            // Another thread may have beaten us to it, in which case its instance wins.
+            final EntityManagementData newEntityData = new EntityManagementData(entityID);
+            final EntityManagementData existingEntityData = mgmtDataMap.putIfAbsent(entityID, newEntityData);
+            return existingEntityData != null ? existingEntityData : newEntityData;
         }
         
         /**
@@ -1635,10 +2410,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
          */
         public void removeManagementData(@Nonnull final String entityID) {
             Constraint.isNotNull(entityID, "EntityID may not be null");
-            // TODO use intern-ed String here for monitor target?
-            synchronized (this) {
-                mgmtDataMap.remove(entityID);
-            }
+            mgmtDataMap.remove(entityID);
         }
         
     }
@@ -1669,6 +2441,15 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         /** Read-write lock instance which governs access to the entity's backing store data. */
         private ReadWriteLock readWriteLock;
         
+        /** The number of accesses of the entity's backing store data since the count was last reset. */
+        private final AtomicInteger accessCount;
+        
+        /** Whether the entity's current metadata was loaded by a refresh ahead of its refresh trigger time. */
+        private volatile boolean refreshedAhead;
+        
+        /** Whether a refresh ahead of the refresh trigger time is in progress. */
+        private final AtomicBoolean refreshAheadInProgress;
+        
         /** Constructor. 
          * 
          * @param id the entity ID managed by this instance
@@ -1680,6 +2461,8 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             refreshTriggerTime = now.plus(getMaxCacheDuration());
             lastAccessedTime = now;
             readWriteLock = new ReentrantReadWriteLock(true);
+            accessCount = new AtomicInteger();
+            refreshAheadInProgress = new AtomicBoolean();
         }
         
         /**
@@ -1759,6 +2542,35 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
          */
         public void recordEntityAccess() {
             lastAccessedTime = new DateTime(ISOChronology.getInstanceUTC());
+            accessCount.incrementAndGet();
+        }
+        
+        /**
+         * Get the number of accesses of the entity's backing store data since the count was last reset,
+         * and reset it.
+         * 
+         * @return the number of accesses
+         */
+        public int getAndResetAccessCount() {
+            return accessCount.getAndSet(0);
+        }
+        
+        /**
+         * Get whether the entity's current metadata was loaded by a refresh ahead of its refresh trigger time.
+         * 
+         * @return true if the metadata was refreshed ahead, false otherwise
+         */
+        public boolean isRefreshedAhead() {
+            return refreshedAhead;
+        }
+        
+        /**
+         * Set whether the entity's current metadata was loaded by a refresh ahead of its refresh trigger time.
+         * 
+         * @param flag true if the metadata was refreshed ahead, false otherwise
+         */
+        public void setRefreshedAhead(final boolean flag) {
+            refreshedAhead = flag;
         }
         
         /**
@@ -1877,6 +2689,122 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         
     }
     
+    /**
+     * Background task which refreshes frequently accessed metadata ahead of its refresh trigger time.
+     */
+    protected class RefreshAheadSweeper extends TimerTask {
+        
+        /** Logger. */
+        private final Logger log = LoggerFactory.getLogger(RefreshAheadSweeper.class);
+
+        /** {@inheritDoc} */
+        @Override
+        public void run() {
+            if (isDestroyed() || !isInitialized()) {
+                log.debug("{} RefreshAheadSweeper will not run because: inited: {}, destroyed: {}",
+                        getLogPrefix(), isInitialized(), isDestroyed());
+                return;
+            }
+            
+            final DateTime horizon = new DateTime(ISOChronology.getInstanceUTC()).plus(getRefreshAheadTaskInterval());
+            final DynamicEntityBackingStore backingStore = getBackingStore();
+            
+            for (final String entityID : backingStore.getIndexedDescriptors().keySet()) {
+                final EntityManagementData mgmtData = backingStore.getManagementData(entityID);
+                final int accessCount = mgmtData.getAndResetAccessCount();
+                if (accessCount >= getRefreshAheadAccessThreshold() 
+                        && mgmtData.getRefreshTriggerTime().isBefore(horizon)
+                        && mgmtData.refreshAheadInProgress.compareAndSet(false, true)) {
+                    log.debug("{} Entity accessed {} times, refreshing ahead of refresh trigger time {}: {}", 
+                            getLogPrefix(), accessCount, mgmtData.getRefreshTriggerTime(), entityID);
+                    scheduleRefresh(mgmtData);
+                }
+            }
+        }
+        
+        /**
+         * Refresh the entity's metadata using the resolve executor.
+         * 
+         * @param mgmtData the management data instance for the entity
+         */
+        private void scheduleRefresh(@Nonnull final EntityManagementData mgmtData) {
+            final Runnable refresh = new Runnable() {
+                public void run() {
+                    try {
+                        refreshAhead(mgmtData);
+                    } finally {
+                        mgmtData.refreshAheadInProgress.set(false);
+                    }
+                }
+            };
+            
+            try {
+                getResolveExecutor().execute(refresh);
+            } catch (final RejectedExecutionException e) {
+                log.debug("{} Resolve executor rejected refresh-ahead of entity: {}", 
+                        getLogPrefix(), mgmtData.getEntityID());
+                mgmtData.refreshAheadInProgress.set(false);
+            }
+        }
+        
+        /**
+         * Refresh the entity's metadata. The metadata is fetched from the origin source without holding the entity's
+         * write lock, so the current metadata continues to be served while the fetch is in progress.
+         * 
+         * @param mgmtData the management data instance for the entity
+         */
+        private void refreshAhead(@Nonnull final EntityManagementData mgmtData) {
+            final String entityID = mgmtData.getEntityID();
+            refreshAheadMetrics.attempted.incrementAndGet();
+            
+            XMLObject root = null;
+            final Context contextFetchFromOriginSource = 
+                    MetricsSupport.startTimer(timerRefreshAheadFetchFromOriginSource);
+            try {
+                root = fetchFromOriginSource(new CriteriaSet(new EntityIdCriterion(entityID)));
+            } catch (final IOException e) {
+                log.warn("{} Error fetching metadata from origin source for refresh-ahead of entity: {}", 
+                        getLogPrefix(), entityID, e);
+                refreshAheadMetrics.failed.incrementAndGet();
+                return;
+            } finally {
+                MetricsSupport.stopTimer(contextFetchFromOriginSource);
+            }
+            
+            final DynamicEntityBackingStore backingStore = getBackingStore();
+            final Lock writeLock = mgmtData.getReadWriteLock().writeLock();
+            try {
+                writeLock.lock();
+                
+                if (!backingStore.getIndexedDescriptors().containsKey(entityID)) {
+                    log.debug("{} Entity was removed during refresh-ahead, discarding: {}", getLogPrefix(), entityID);
+                    return;
+                }
+                
+                if (root == null) {
+                    // Advance the trigger as a foreground fetch would, rather than retrying on every run.
+                    mgmtData.setRefreshTriggerTime(computeRefreshTriggerTime(mgmtData.getExpirationTime(), 
+                            new DateTime(ISOChronology.getInstanceUTC())));
+                    log.debug("{} No metadata was fetched from the origin source for refresh-ahead of entity: {}, "
+                            + "recalculated refresh trigger time as: {}", 
+                            getLogPrefix(), entityID, mgmtData.getRefreshTriggerTime());
+                    refreshAheadMetrics.failed.incrementAndGet();
+                    return;
+                }
+                
+                processNewMetadata(root, entityID);
+                mgmtData.setRefreshedAhead(true);
+                refreshAheadMetrics.succeeded.incrementAndGet();
+            } catch (final FilterException e) {
+                log.error("{} Metadata filtering problem processing refreshed-ahead metadata", getLogPrefix(), e);
+                refreshAheadMetrics.failed.incrementAndGet();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        
+    }
+    
     /**
      * Default function for generating a cache key for loading and saving an {@link EntityDescriptor}
      * using a {@link XMLObjectLoadSaveManager}.
@@ -1918,29 +2846,39 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     public static class PersistentCacheInitializationMetrics {
         
         /** Whether or not persistent caching was enabled. */
-        private boolean enabled;
+        private volatile boolean enabled;
+        
+        /** Whether or not the initialization from the persistent cache is currently in progress. */
+        private volatile boolean inProgress;
         
         /** Total processing time for the persistent cache, in nanoseconds. */
-        private long processingTime;
+        private volatile long processingTime;
+        
+        /** Number of worker threads used, if initializing in parallel. */
+        private volatile int workerThreads;
+        
+        /** Entries listed in the persistent cache at the start of the initialization, 
+         * if initializing in parallel. */
+        private volatile int entriesExpected;
         
         /** Total entries seen in the persistent cache. */
-        private int entriesTotal;
+        private final AtomicInteger entriesTotal = new AtomicInteger();
         
         /** Entries which were successfully loaded and made live. */
-        private int entriesLoaded;
+        private final AtomicInteger entriesLoaded = new AtomicInteger();
         
         /** Entries which were skipped because they were already live by the time they were processed, 
          * generally only seen when initializing from the persistent cache in a background thread. */
-        private int entriesSkippedAlreadyLive;
+        private final AtomicInteger entriesSkippedAlreadyLive = new AtomicInteger();
         
         /** Entries which were skipped because they were determined to be invalid. */
-        private int entriesSkippedInvalid;
+        private final AtomicInteger entriesSkippedInvalid = new AtomicInteger();
         
         /** Entries which were skipped because they failed the persistent cache predicate evaluation. */
-        private int entriesSkippedFailedPredicate;
+        private final AtomicInteger entriesSkippedFailedPredicate = new AtomicInteger();
         
         /** Entries which were skipped due to a processing exception. */
-        private int entriesSkippedProcessingException;
+        private final AtomicInteger entriesSkippedProcessingException = new AtomicInteger();
         
         /**
          * Get whether or not persistent caching was enabled. 
@@ -1949,6 +2887,31 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         public boolean isEnabled() {
             return enabled;
         }
+        
+        /**
+         * Get whether or not the initialization from the persistent cache is currently in progress.
+         * @return Returns the inProgress.
+         */
+        public boolean isInProgress() {
+            return inProgress;
+        }
+        
+        /**
+         * Get number of worker threads used, if initializing in parallel.
+         * @return Returns the workerThreads.
+         */
+        public int getWorkerThreads() {
+            return workerThreads;
+        }
+        
+        /**
+         * Get entries listed in the persistent cache at the start of the initialization, 
+         * if initializing in parallel.
+         * @return Returns the entriesExpected.
+         */
+        public int getEntriesExpected() {
+            return entriesExpected;
+        }
 
         /**
          * Get total processing time for the persistent cache, in nanoseconds.
@@ -1963,7 +2926,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
          * @return Returns the entriesTotal.
          */
         public int getEntriesTotal() {
-            return entriesTotal;
+            return entriesTotal.get();
         }
 
         /**
@@ -1971,7 +2934,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
          * @return Returns the entriesLoaded.
          */
         public int getEntriesLoaded() {
-            return entriesLoaded;
+            return entriesLoaded.get();
         }
 
         /**
@@ -1980,7 +2943,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
          * @return Returns the entriesSkippedAlreadyLive.
          */
         public int getEntriesSkippedAlreadyLive() {
-            return entriesSkippedAlreadyLive;
+            return entriesSkippedAlreadyLive.get();
         }
 
         /**
@@ -1988,7 +2951,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
          * @return Returns the entriesSkippedInvalid.
          */
         public int getEntriesSkippedInvalid() {
-            return entriesSkippedInvalid;
+            return entriesSkippedInvalid.get();
         }
 
         /**
@@ -1996,7 +2959,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
          * @return Returns the entriesSkippedFailedPredicate.
          */
         public int getEntriesSkippedFailedPredicate() {
-            return entriesSkippedFailedPredicate;
+            return entriesSkippedFailedPredicate.get();
         }
 
         /**
@@ -2004,14 +2967,17 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
          * @return Returns the entriesSkippedProcessingException.
          */
         public int getEntriesSkippedProcessingException() {
-            return entriesSkippedProcessingException;
+            return entriesSkippedProcessingException.get();
         }
 
         /** {@inheritDoc} */
         public String toString() {
             return MoreObjects.toStringHelper(this)
                     .add("enabled", enabled)
+                    .add("inProgress", inProgress)
                     .add("processingTime", processingTime)
+                    .add("workerThreads", workerThreads)
+                    .add("entriesExpected", entriesExpected)
                     .add("entriesTotal", entriesTotal)
                     .add("entriesLoaded", entriesLoaded)
                     .add("entriesSkippedAlreadyLive", entriesSkippedAlreadyLive)
@@ -2022,5 +2988,66 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         }
         
     }
+    
+    /**
+     * Class used to track metrics related to refreshing metadata ahead of its refresh trigger time.
+     */
+    public static class RefreshAheadMetrics {
+        
+        /** Refreshes attempted. */
+        private final AtomicLong attempted = new AtomicLong();
+        
+        /** Refreshes which succeeded in loading new metadata. */
+        private final AtomicLong succeeded = new AtomicLong();
+        
+        /** Refreshes which failed to load new metadata. */
+        private final AtomicLong failed = new AtomicLong();
+        
+        /** Resolutions served from metadata loaded by a refresh-ahead. */
+        private final AtomicLong hits = new AtomicLong();
+        
+        /**
+         * Get refreshes attempted.
+         * @return Returns the attempted.
+         */
+        public long getAttempted() {
+            return attempted.get();
+        }
+        
+        /**
+         * Get refreshes which succeeded in loading new metadata.
+         * @return Returns the succeeded.
+         */
+        public long getSucceeded() {
+            return succeeded.get();
+        }
+        
+        /**
+         * Get refreshes which failed to load new metadata.
+         * @return Returns the failed.
+         */
+        public long getFailed() {
+            return failed.get();
+        }
+        
+        /**
+         * Get resolutions served from metadata loaded by a refresh-ahead.
+         * @return Returns the hits.
+         */
+        public long getHits() {
+            return hits.get();
+        }
+        
+        /** {@inheritDoc} */
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("attempted", attempted)
+                    .add("succeeded", succeeded)
+                    .add("failed", failed)
+                    .add("hits", hits)
+                    .toString();
+        }
+        
+    }
 
 }
@@ -21,31 +21,66 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.locks.ReadWriteLock;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.chrono.ISOChronology;
 import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.Unmarshaller;
 import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.opensaml.saml.metadata.resolver.ExtendedRefreshableMetadataResolver;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
 import org.opensaml.saml.saml2.common.SAML2Support;
 import org.opensaml.saml.saml2.common.TimeBoundSAMLObject;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.Extensions;
+import org.opensaml.security.crypto.JCAConstants;
+import org.opensaml.xmlsec.signature.Signature;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.google.common.base.Strings;
 
 import net.shibboleth.utilities.java.support.annotation.Duration;
 import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.codec.Base64Support;
+import net.shibboleth.utilities.java.support.collection.LockableClassToInstanceMultiMap;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.primitive.TimerSupport;
 import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import net.shibboleth.utilities.java.support.xml.QNameSupport;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
 
 /**
  * Base class for metadata providers that cache and periodically refresh their metadata.
@@ -60,6 +95,37 @@ import net.shibboleth.utilities.java.support.resolver.ResolverException;
  * cache actually expires, allowing a some room for error and recovery. Assuming the factor is not exceedingly close to
  * 1.0 and a min refresh delay that is not overly large, this refresh will likely occur a few times before the cache
  * expires.
+ * 
+ * <p>
+ * If delta refresh is enabled, each EntityDescriptor in newly fetched metadata is fingerprinted using a digest
+ * of its canonicalized form and the names of its enclosing groups. EntityDescriptors whose fingerprint matches
+ * one which survived filtering on the previous refresh are not filtered again; a copy of the previously filtered
+ * instance is used in their place. The instances in the current metadata are never modified, so they remain
+ * unchanged for concurrent readers and if the refresh fails. This assumes the outcome of filtering an
+ * EntityDescriptor depends only on the EntityDescriptor itself and its enclosing groups, which holds for all the
+ * filters supplied with this library.
+ * </p>
+ * 
+ * <p>
+ * If streaming ingestion is enabled, a new metadata document whose root is an EntitiesDescriptor is read with
+ * a StAX parser rather than being parsed into a DOM in its entirety. Each EntityDescriptor is parsed, unmarshalled
+ * and filtered individually, so peak memory use is bounded by the size of the largest EntityDescriptor plus the
+ * resulting filtered metadata. In this mode the metadata filter is applied to the root once for each
+ * EntityDescriptor, with that EntityDescriptor in its enclosing groups but without the document's other
+ * EntityDescriptors, so filters which examine the root see it just as when the whole document is processed. The root
+ * is filtered even if no EntityDescriptor needs to be. An EntityDescriptor which the filter removes is dropped, and
+ * if the filter fails the whole refresh fails and the current metadata is retained. Filters which need the DOM of
+ * the whole document, such as schema validation, can't be used in this mode. Groups are retained even if filtering
+ * leaves them empty.
+ * </p>
+ * 
+ * <p>
+ * Only documents whose root is an unsigned EntitiesDescriptor, and which contain no signed EntitiesDescriptor, are
+ * streamed. A signature
+ * on a group covers all of its members and can only be verified against the group's complete DOM, which is what
+ * streaming avoids building, so any other document is processed in its entirety as usual. In particular, a signed
+ * aggregate gains nothing from streaming ingestion.
+ * </p>
  */
 public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMetadataResolver 
         implements ExtendedRefreshableMetadataResolver {
@@ -113,6 +179,11 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
     /** Internal flag for tracking success during the refresh operation. */
     private boolean trackRefreshSuccess;
     
+    /** Flag indicating whether unchanged EntityDescriptors are reused rather than filtered again on refresh. */
+    private boolean deltaRefresh;
+    
+    /** Flag indicating whether new metadata is processed one EntityDescriptor at a time using a StAX parser. */
+    private boolean streamingIngestion;
 
 
     /** Constructor. */
@@ -287,6 +358,65 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
         minRefreshDelay = delay;
     }
 
+    /**
+     * Get whether unchanged EntityDescriptors from the previous refresh are reused rather than filtered again.
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @return true if delta refresh is enabled, false otherwise
+     */
+    public boolean isDeltaRefresh() {
+        return deltaRefresh;
+    }
+
+    /**
+     * Set whether unchanged EntityDescriptors from the previous refresh are reused rather than filtered again.
+     * 
+     * <p>
+     * This only avoids the cost of filtering the unchanged EntityDescriptors. The new document is still parsed,
+     * unmarshalled and canonicalized in its entirety to detect which EntityDescriptors are unchanged, and any
+     * signature over the whole document is still verified.
+     * </p>
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @param flag true if delta refresh is enabled, false otherwise
+     */
+    public void setDeltaRefresh(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        deltaRefresh = flag;
+    }
+
+    /**
+     * Get whether new metadata is processed one EntityDescriptor at a time using a StAX parser.
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @return true if streaming ingestion is enabled, false otherwise
+     */
+    public boolean isStreamingIngestion() {
+        return streamingIngestion;
+    }
+
+    /**
+     * Set whether new metadata is processed one EntityDescriptor at a time using a StAX parser.
+     * 
+     * <p>
+     * Only documents whose root is an EntitiesDescriptor, and which contain no signed EntitiesDescriptor, are
+     * streamed. Any other document is processed in its entirety.
+     * </p>
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @param flag true if streaming ingestion is enabled, false otherwise
+     */
+    public void setStreamingIngestion(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        streamingIngestion = flag;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void doDestroy() {
@@ -484,6 +614,10 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
      */
     protected void processNewMetadata(final String metadataIdentifier, final DateTime refreshStart,
             final byte[] metadataBytes) throws ResolverException {
+        if (isStreamingIngestion() && processNewMetadataStreaming(metadataIdentifier, refreshStart, metadataBytes)) {
+            return;
+        }
+        
         log.debug("{} Unmarshalling metadata from '{}'", getLogPrefix(), metadataIdentifier);
         final XMLObject metadata = unmarshallMetadata(metadataBytes);
 
@@ -531,13 +665,41 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
         log.debug("{} Preprocessing metadata from '{}'", getLogPrefix(), metadataIdentifier);
         BatchEntityBackingStore newBackingStore = null;
         try {
-            newBackingStore = preProcessNewMetadata(metadata);
+            if (isDeltaRefresh()) {
+                newBackingStore = preProcessNewMetadataDelta(metadata);
+                if (newBackingStore == null) {
+                    log.warn("{} Delta refresh of metadata from '{}' was not possible, reprocessing entire document",
+                            getLogPrefix(), metadataIdentifier);
+                    newBackingStore = preProcessNewMetadata(unmarshallMetadata(metadataBytes));
+                }
+            } else {
+                newBackingStore = preProcessNewMetadata(metadata);
+            }
         } catch (final FilterException e) {
             final String errMsg = "Error filtering metadata from " + metadataIdentifier;
             log.error("{} " + errMsg, getLogPrefix(), e);
             throw new ResolverException(errMsg, e);
         }
 
+        installNewMetadata(metadataIdentifier, refreshStart, metadataBytes, metadataDom, newBackingStore);
+    }
+    
+    /**
+     * Post-process the new backing store, compute the expiration time of its metadata, and make it the effective
+     * backing store.
+     * 
+     * @param metadataIdentifier identifier of the metadata source
+     * @param refreshStart when the current refresh cycle started
+     * @param metadataBytes raw bytes of the new metadata document
+     * @param metadataDom the new metadata document parsed into a DOM document, or null if it was streamed
+     * @param newBackingStore the new backing store
+     * 
+     * @throws ResolverException thrown if there is a problem post-processing the metadata
+     */
+    private void installNewMetadata(final String metadataIdentifier, final DateTime refreshStart,
+            final byte[] metadataBytes, @Nullable final Document metadataDom, 
+            @Nonnull final BatchEntityBackingStore newBackingStore) throws ResolverException {
+
         log.debug("{} Releasing cached DOM for metadata from '{}'", getLogPrefix(), metadataIdentifier);
         releaseMetadataDOM(newBackingStore.getCachedOriginalMetadata());
         releaseMetadataDOM(newBackingStore.getCachedFilteredMetadata());
@@ -574,6 +736,718 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
         log.info("{} New metadata successfully loaded for '{}'", getLogPrefix(), getMetadataIdentifier());
     }
 
+    /**
+     * Process a new metadata document using a StAX parser, one EntityDescriptor at a time, as described for
+     * {@link #setStreamingIngestion(boolean)}.
+     * 
+     * @param metadataIdentifier identifier of the metadata source
+     * @param refreshStart when the current refresh cycle started
+     * @param metadataBytes raw bytes of the new metadata document
+     * 
+     * @return true if the document was processed, false if it must instead be processed in its entirety
+     * 
+     * @throws ResolverException thrown if there is a problem parsing, unmarshalling or filtering the new metadata
+     */
+    protected boolean processNewMetadataStreaming(final String metadataIdentifier, final DateTime refreshStart,
+            final byte[] metadataBytes) throws ResolverException {
+        log.debug("{} Streaming metadata from '{}'", getLogPrefix(), metadataIdentifier);
+        
+        final BatchEntityBackingStore newBackingStore = createNewBackingStore();
+        final StreamingResult result;
+        try {
+            result = streamNewMetadata(new ByteArrayInputStream(metadataBytes), newBackingStore);
+        } catch (final XMLStreamException | XMLParserException | UnmarshallingException e) {
+            final String errorMsg = "Unable to unmarshall metadata";
+            log.error("{} " + errorMsg, getLogPrefix());
+            throw new ResolverException(errorMsg, e);
+        } catch (final FilterException e) {
+            final String errMsg = "Error filtering metadata from " + metadataIdentifier;
+            log.error("{} " + errMsg, getLogPrefix(), e);
+            throw new ResolverException(errMsg, e);
+        }
+        
+        switch (result) {
+            case INVALID_ROOT:
+                processPreExpiredMetadata(metadataIdentifier, refreshStart, metadataBytes, 
+                        newBackingStore.getCachedOriginalMetadata());
+                return true;
+            case COMPLETE:
+                installNewMetadata(metadataIdentifier, refreshStart, metadataBytes, null, newBackingStore);
+                return true;
+            default:
+                log.info("{} Metadata from '{}' can not be streamed, processing entire document", 
+                        getLogPrefix(), metadataIdentifier);
+                return false;
+        }
+    }
+    
+    /**
+     * Get whether a metadata document with the specified root element may be processed using streaming ingestion.
+     * 
+     * <p>
+     * Only an EntitiesDescriptor root can be streamed. A document consisting of a single EntityDescriptor gains
+     * nothing from being streamed.
+     * </p>
+     * 
+     * @param rootName the name of the document's root element
+     * 
+     * @return true if the document may be streamed, false if it must be processed in its entirety
+     */
+    private boolean isStreamable(@Nonnull final QName rootName) {
+        return EntitiesDescriptor.ELEMENT_QNAME.equals(rootName);
+    }
+    
+    /**
+     * Read the new metadata document from a StAX parser, populating the new backing store.
+     * 
+     * <p>
+     * The EntityDescriptors which survive filtering, and the reused EntityDescriptors, which are copies of those in
+     * the current metadata, are only inserted into the new metadata once the whole document has been read and
+     * filtered successfully.
+     * </p>
+     * 
+     * @param input the new metadata document
+     * @param newBackingStore the backing store to populate
+     * 
+     * @return the result of processing
+     * 
+     * @throws XMLStreamException if the document can not be parsed
+     * @throws XMLParserException if a DOM document for an EntityDescriptor can not be created
+     * @throws UnmarshallingException if an element of the document can not be unmarshalled
+     * @throws FilterException if there is a problem filtering the metadata
+     */
+    @Nonnull private StreamingResult streamNewMetadata(@Nonnull final InputStream input,
+            @Nonnull final BatchEntityBackingStore newBackingStore)
+                    throws XMLStreamException, XMLParserException, UnmarshallingException, FilterException {
+        
+        final XMLStreamReader reader = XMLObjectSupport.createXMLStreamReader(input);
+        try {
+            reader.nextTag();
+            if (!isStreamable(reader.getName())) {
+                log.info("{} Metadata root element {} can not be streamed", getLogPrefix(), reader.getName());
+                return StreamingResult.UNSUPPORTED;
+            }
+            
+            final Map<String, String> namespaces = new LinkedHashMap<>();
+            final EntitiesDescriptor root = readGroup(reader, namespaces);
+            newBackingStore.setCachedOriginalMetadata(root);
+            newBackingStore.setCachedFilteredMetadata(root);
+            if (!isValid(root)) {
+                return StreamingResult.INVALID_ROOT;
+            }
+            
+            final StreamingState state = new StreamingState(root, getBackingStore().getEntityFingerprints(), 
+                    newBackingStore.getEntityFingerprints());
+            final StreamingResult result = streamGroupMembers(reader, root, 
+                    "/" + Strings.nullToEmpty(root.getName()), namespaces, state);
+            if (result != StreamingResult.COMPLETE) {
+                return result;
+            }
+            
+            if (state.filteredCount == 0) {
+                // The root must be filtered regardless, just as when the whole document is processed.
+                final XMLObject filteredRoot = filterMetadata(root);
+                if (filteredRoot != root) {
+                    log.debug("{} Metadata filtering removed or replaced the document root", getLogPrefix());
+                    return StreamingResult.UNSUPPORTED;
+                }
+            }
+            
+            for (final Map.Entry<EntitiesDescriptor, List<EntitiesDescriptor>> groups 
+                    : state.childGroups.entrySet()) {
+                groups.getKey().getEntitiesDescriptors().clear();
+                groups.getKey().getEntitiesDescriptors().addAll(groups.getValue());
+            }
+            for (final Map.Entry<EntitiesDescriptor, List<EntityDescriptor>> members 
+                    : state.groupMembers.entrySet()) {
+                replaceGroupMembers(members.getKey(), members.getValue());
+            }
+            preProcessEntitiesDescriptor(root, newBackingStore);
+            log.debug("{} Streamed {} EntityDescriptors, reusing {} from previous refresh", 
+                    getLogPrefix(), newBackingStore.getOrderedDescriptors().size(), state.reusedCount);
+            
+            return StreamingResult.COMPLETE;
+        } finally {
+            reader.close();
+        }
+    }
+    
+    /**
+     * Process the children of an EntitiesDescriptor, leaving the reader positioned at its end element.
+     * 
+     * @param reader the reader, positioned at the start element of the group
+     * @param group the group being processed
+     * @param groupNames the names of the group and its enclosing groups
+     * @param namespaces the namespace declarations in scope for the group's children
+     * @param state the state of processing
+     * 
+     * @return the result of processing
+     * 
+     * @throws XMLStreamException if the document can not be parsed
+     * @throws XMLParserException if a DOM document for an element can not be created
+     * @throws UnmarshallingException if an element can not be unmarshalled
+     * @throws FilterException if there is a problem filtering the metadata
+     */
+    @Nonnull private StreamingResult streamGroupMembers(@Nonnull final XMLStreamReader reader, 
+            @Nonnull final EntitiesDescriptor group, @Nonnull final String groupNames, 
+            @Nonnull final Map<String, String> namespaces, @Nonnull final StreamingState state) 
+                    throws XMLStreamException, XMLParserException, UnmarshallingException, FilterException {
+        
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            
+            final QName name = reader.getName();
+            if (EntityDescriptor.ELEMENT_QNAME.equals(name)) {
+                final StreamingResult result = streamEntityDescriptor(reader, group, groupNames, namespaces, state);
+                if (result != StreamingResult.COMPLETE) {
+                    return result;
+                }
+            } else if (EntitiesDescriptor.ELEMENT_QNAME.equals(name)) {
+                final Map<String, String> childNamespaces = new LinkedHashMap<>(namespaces);
+                final EntitiesDescriptor childGroup = readGroup(reader, childNamespaces);
+                group.getEntitiesDescriptors().add(childGroup);
+                state.addGroup(group, childGroup);
+                final StreamingResult result = streamGroupMembers(reader, childGroup, 
+                        groupNames + "/" + Strings.nullToEmpty(childGroup.getName()), childNamespaces, state);
+                if (result != StreamingResult.COMPLETE) {
+                    return result;
+                }
+            } else if (Signature.DEFAULT_ELEMENT_NAME.equals(name)) {
+                // A group's signature covers all of its members, so can only be verified against the DOM of the
+                // complete group, and the members may not be filtered or indexed before it has been verified.
+                log.info("{} EntitiesDescriptor '{}' is signed, its signature can not be evaluated when streaming",
+                        getLogPrefix(), group.getName());
+                return StreamingResult.UNSUPPORTED;
+            } else if (Extensions.DEFAULT_ELEMENT_NAME.equals(name)) {
+                final XMLObject extensions = unmarshallElement(readElement(reader, namespaces));
+                releaseMetadataDOM(extensions);
+                group.setExtensions((Extensions) extensions);
+            } else {
+                log.warn("{} Ignoring unexpected element {} in EntitiesDescriptor '{}'", 
+                        getLogPrefix(), name, group.getName());
+                readElement(reader, namespaces);
+            }
+        }
+        
+        return StreamingResult.COMPLETE;
+    }
+    
+    /**
+     * Process an EntityDescriptor, reusing the previously filtered instance if delta refresh is enabled
+     * and it is unchanged, or otherwise unmarshalling and filtering it and recording the result as a member of
+     * the group.
+     * 
+     * <p>
+     * The EntityDescriptor is filtered by filtering the document root with the EntityDescriptor as the only
+     * EntityDescriptor in the document. It survives filtering if it is still part of the document afterwards,
+     * and is then detached again, so the next EntityDescriptor is filtered on its own.
+     * </p>
+     * 
+     * @param reader the reader, positioned at the start element of the EntityDescriptor
+     * @param group the group containing the EntityDescriptor
+     * @param groupNames the names of the group and its enclosing groups
+     * @param namespaces the namespace declarations in scope for the EntityDescriptor
+     * @param state the state of processing
+     * 
+     * @return the result of processing
+     * 
+     * @throws XMLStreamException if the document can not be parsed
+     * @throws XMLParserException if a DOM document for the EntityDescriptor can not be created
+     * @throws UnmarshallingException if the EntityDescriptor can not be unmarshalled
+     * @throws FilterException if there is a problem filtering the metadata
+     */
+    @Nonnull private StreamingResult streamEntityDescriptor(@Nonnull final XMLStreamReader reader, 
+            @Nonnull final EntitiesDescriptor group, @Nonnull final String groupNames, 
+            @Nonnull final Map<String, String> namespaces, @Nonnull final StreamingState state)
+                    throws XMLStreamException, XMLParserException, UnmarshallingException, FilterException {
+        
+        final Element dom = readElement(reader, namespaces);
+        
+        String fingerprint = null;
+        if (isDeltaRefresh()) {
+            fingerprint = computeEntityFingerprint(dom, groupNames);
+            if (fingerprint != null && state.seenFingerprints.add(fingerprint)) {
+                final EntityDescriptor previous = state.previousFingerprints.get(fingerprint);
+                final EntityDescriptor reused = previous != null ? copyReusedEntityDescriptor(previous) : null;
+                if (reused != null) {
+                    state.addMember(group, reused);
+                    state.fingerprints.put(fingerprint, reused);
+                    state.reusedCount++;
+                    return StreamingResult.COMPLETE;
+                }
+            }
+        }
+        
+        final EntityDescriptor entityDescriptor = (EntityDescriptor) unmarshallElement(dom);
+        
+        // Filtering may have removed groups which had no EntityDescriptor at the time.
+        EntitiesDescriptor child = group;
+        EntitiesDescriptor parent = state.groupParents.get(child);
+        while (parent != null) {
+            if (child.getParent() != parent) {
+                parent.getEntitiesDescriptors().add(child);
+            }
+            child = parent;
+            parent = state.groupParents.get(child);
+        }
+        group.getEntityDescriptors().add(entityDescriptor);
+        
+        final XMLObject filteredRoot = filterMetadata(state.root);
+        state.filteredCount++;
+        if (filteredRoot != null && filteredRoot != state.root) {
+            log.debug("{} Metadata filtering replaced the document root", getLogPrefix());
+            return StreamingResult.UNSUPPORTED;
+        }
+        
+        final boolean retained = filteredRoot != null && isDescendantOf(entityDescriptor, state.root);
+        if (entityDescriptor.getParent() instanceof EntitiesDescriptor) {
+            ((EntitiesDescriptor) entityDescriptor.getParent()).getEntityDescriptors().remove(entityDescriptor);
+        }
+        
+        if (retained) {
+            releaseMetadataDOM(entityDescriptor);
+            state.addMember(group, entityDescriptor);
+            if (fingerprint != null) {
+                state.fingerprints.put(fingerprint, entityDescriptor);
+            }
+        } else {
+            log.debug("{} EntityDescriptor '{}' was removed by metadata filtering", 
+                    getLogPrefix(), entityDescriptor.getEntityID());
+        }
+        
+        return StreamingResult.COMPLETE;
+    }
+    
+    /**
+     * Read the start element of an EntitiesDescriptor and unmarshall it as an empty group.
+     * 
+     * @param reader the reader, positioned at the start element of the group
+     * @param namespaces the namespace declarations in scope for the group, to which the group's own
+     *          declarations are added
+     * 
+     * @return the unmarshalled group, without any children
+     * 
+     * @throws XMLParserException if a DOM document for the element can not be created
+     * @throws UnmarshallingException if the element can not be unmarshalled
+     */
+    @Nonnull private EntitiesDescriptor readGroup(@Nonnull final XMLStreamReader reader, 
+            @Nonnull final Map<String, String> namespaces) throws XMLParserException, UnmarshallingException {
+        final Document document = getParserPool().newDocument();
+        final Element element = createElement(reader, document, namespaces);
+        document.appendChild(element);
+        
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            namespaces.put(Strings.nullToEmpty(reader.getNamespacePrefix(i)), 
+                    Strings.nullToEmpty(reader.getNamespaceURI(i)));
+        }
+        
+        final XMLObject group = unmarshallElement(element);
+        group.releaseDOM();
+        return (EntitiesDescriptor) group;
+    }
+    
+    /**
+     * Read an element and its content into a new DOM document, leaving the reader positioned at its end element.
+     * 
+     * @param reader the reader, positioned at the start element
+     * @param namespaces the namespace declarations in scope for the element
+     * 
+     * @return the DOM element
+     * 
+     * @throws XMLStreamException if the document can not be parsed
+     * @throws XMLParserException if a DOM document for the element can not be created
+     */
+    @Nonnull private Element readElement(@Nonnull final XMLStreamReader reader, 
+            @Nonnull final Map<String, String> namespaces) throws XMLStreamException, XMLParserException {
+        final Document document = getParserPool().newDocument();
+        final Element root = createElement(reader, document, namespaces);
+        document.appendChild(root);
+        
+        Node current = root;
+        int depth = 1;
+        while (depth > 0) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    final Element child = createElement(reader, document, null);
+                    current.appendChild(child);
+                    current = child;
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    current = current.getParentNode();
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    current.appendChild(document.createTextNode(reader.getText()));
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    current.appendChild(document.createComment(reader.getText()));
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    current.appendChild(document.createProcessingInstruction(reader.getPITarget(), 
+                            reader.getPIData()));
+                    break;
+                default:
+                    break;
+            }
+        }
+        
+        return root;
+    }
+    
+    /**
+     * Create a DOM element, with its attributes and namespace declarations, from the current start element.
+     * 
+     * @param reader the reader, positioned at a start element
+     * @param document the document in which to create the element
+     * @param inheritedNamespaces the namespace declarations of the element's ancestors to be declared on the
+     *          element, or null
+     * 
+     * @return the new element
+     */
+    @Nonnull private Element createElement(@Nonnull final XMLStreamReader reader, @Nonnull final Document document,
+            @Nullable final Map<String, String> inheritedNamespaces) {
+        final Element element = document.createElementNS(Strings.emptyToNull(reader.getNamespaceURI()),
+                buildQualifiedName(reader.getPrefix(), reader.getLocalName()));
+        
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, 
+                    buildQualifiedName(XMLConstants.XMLNS_ATTRIBUTE, reader.getNamespacePrefix(i)),
+                    Strings.nullToEmpty(reader.getNamespaceURI(i)));
+        }
+        
+        if (inheritedNamespaces != null) {
+            for (final Map.Entry<String, String> namespace : inheritedNamespaces.entrySet()) {
+                final String localName = namespace.getKey().isEmpty() ? XMLConstants.XMLNS_ATTRIBUTE 
+                        : namespace.getKey();
+                if (!element.hasAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, localName)) {
+                    element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, 
+                            buildQualifiedName(XMLConstants.XMLNS_ATTRIBUTE, namespace.getKey()), 
+                            namespace.getValue());
+                }
+            }
+        }
+        
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            element.setAttributeNS(Strings.emptyToNull(reader.getAttributeNamespace(i)), 
+                    buildQualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                    reader.getAttributeValue(i));
+        }
+        
+        return element;
+    }
+    
+    /**
+     * Build a qualified name from an optional prefix and a local name.
+     * 
+     * @param prefix the prefix, may be null or empty
+     * @param localName the local name, may be null or empty only if the prefix is not
+     * 
+     * @return the qualified name
+     */
+    @Nonnull private String buildQualifiedName(@Nullable final String prefix, @Nullable final String localName) {
+        if (Strings.isNullOrEmpty(prefix)) {
+            return localName;
+        } else if (Strings.isNullOrEmpty(localName)) {
+            return prefix;
+        } else {
+            return prefix + ":" + localName;
+        }
+    }
+    
+    /**
+     * Unmarshall a DOM element.
+     * 
+     * @param element the element to unmarshall
+     * 
+     * @return the unmarshalled object
+     * 
+     * @throws UnmarshallingException if no unmarshaller is registered for the element, or unmarshalling fails
+     */
+    @Nonnull private XMLObject unmarshallElement(@Nonnull final Element element) throws UnmarshallingException {
+        final Unmarshaller unmarshaller = getUnmarshallerFactory().getUnmarshaller(element);
+        if (unmarshaller == null) {
+            throw new UnmarshallingException("No unmarshaller registered for element " 
+                    + QNameSupport.getNodeQName(element));
+        }
+        return unmarshaller.unmarshall(element);
+    }
+    
+    /**
+     * Process the specified new metadata document as for {@link #preProcessNewMetadata(XMLObject)}, but reusing
+     * the filtered EntityDescriptors of the current backing store for those entities which have not changed.
+     * 
+     * <p>
+     * Unchanged EntityDescriptors are removed from the new document prior to filtering, with the DOM of the
+     * enclosing groups retained so that any signature over the whole document is still evaluated against
+     * the complete document. After filtering, copies of the previously filtered instances are inserted into the
+     * corresponding groups of the new document.
+     * </p>
+     * 
+     * @param root the root of the new metadata document being processed
+     * 
+     * @return the new backing store instance, or null if the filtered document could not be reconciled
+     *          with the reused EntityDescriptors, in which case the new document will have been modified
+     *          and must be discarded
+     * 
+     * @throws FilterException if there is a problem filtering the metadata
+     */
+    @Nullable protected BatchEntityBackingStore preProcessNewMetadataDelta(@Nonnull final XMLObject root)
+            throws FilterException {
+        
+        final Map<String, EntityDescriptor> previousFingerprints = getBackingStore().getEntityFingerprints();
+        
+        final List<DeltaEntry> entries = new ArrayList<>();
+        final Map<EntitiesDescriptor, Element> groupDOMs = new LinkedHashMap<>();
+        collectDeltaEntries(root, null, "", entries, groupDOMs);
+        
+        final Set<String> seenFingerprints = new HashSet<>();
+        int reusedCount = 0;
+        for (final DeltaEntry entry : entries) {
+            if (entry.parent != null && entry.fingerprint != null && seenFingerprints.add(entry.fingerprint)) {
+                final EntityDescriptor previous = previousFingerprints.get(entry.fingerprint);
+                if (previous != null) {
+                    entry.reused = copyReusedEntityDescriptor(previous);
+                    if (entry.reused != null) {
+                        entry.parent.getEntityDescriptors().remove(entry.source);
+                        reusedCount++;
+                    }
+                }
+            }
+        }
+        
+        if (reusedCount > 0) {
+            // Removal of children released the DOM of all enclosing groups, which is needed to evaluate signatures.
+            for (final Map.Entry<EntitiesDescriptor, Element> groupDOM : groupDOMs.entrySet()) {
+                groupDOM.getKey().setDOM(groupDOM.getValue());
+            }
+        }
+        log.debug("{} Delta refresh reusing {} of {} EntityDescriptors from previous refresh", 
+                getLogPrefix(), reusedCount, entries.size());
+        
+        final XMLObject filteredMetadata = filterMetadata(root);
+        
+        if (reusedCount > 0 && filteredMetadata != null && filteredMetadata != root) {
+            log.debug("{} Metadata filtering replaced the document root, unable to reuse EntityDescriptors", 
+                    getLogPrefix());
+            return null;
+        }
+        
+        final BatchEntityBackingStore newBackingStore = createNewBackingStore();
+        newBackingStore.setCachedOriginalMetadata(root);
+        newBackingStore.setCachedFilteredMetadata(filteredMetadata);
+        
+        if (filteredMetadata == null) {
+            log.info("{} Metadata filtering process produced a null document, resulting in an empty data set", 
+                    getLogPrefix());
+            return newBackingStore;
+        }
+        
+        if (reusedCount > 0) {
+            reinsertReusedEntities(entries, filteredMetadata);
+        }
+        
+        if (filteredMetadata instanceof EntityDescriptor) {
+            preProcessEntityDescriptor((EntityDescriptor)filteredMetadata, newBackingStore);
+        } else if (filteredMetadata instanceof EntitiesDescriptor) {
+            preProcessEntitiesDescriptor((EntitiesDescriptor)filteredMetadata, newBackingStore);
+        } else {
+            log.warn("{} Document root was neither an EntityDescriptor nor an EntitiesDescriptor: {}", 
+                    getLogPrefix(), root.getClass().getName());
+        }
+        
+        for (final DeltaEntry entry : entries) {
+            final EntityDescriptor result = entry.reused != null ? entry.reused : entry.source;
+            if (entry.fingerprint != null && isDescendantOf(result, filteredMetadata)) {
+                newBackingStore.getEntityFingerprints().put(entry.fingerprint, result);
+            }
+        }
+        
+        return newBackingStore;
+    }
+    
+    /**
+     * Compute the fingerprint of an unfiltered EntityDescriptor, used to detect whether it has changed since
+     * the previous refresh.
+     * 
+     * <p>
+     * The default implementation computes a SHA-256 digest of the names of the enclosing groups and the
+     * exclusive canonicalization of the EntityDescriptor's DOM.
+     * </p>
+     * 
+     * @param entityElement the DOM of the EntityDescriptor
+     * @param groupNames the names of the enclosing groups
+     * 
+     * @return the fingerprint, or null if none could be computed, in which case the entity is treated as changed
+     */
+    @Nullable protected String computeEntityFingerprint(@Nonnull final Element entityElement,
+            @Nonnull final String groupNames) {
+        try {
+            final MessageDigest digester = MessageDigest.getInstance(JCAConstants.DIGEST_SHA256);
+            digester.update(groupNames.getBytes(StandardCharsets.UTF_8));
+            digester.update((byte) 0);
+            digester.update(Canonicalizer.getInstance(SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS)
+                    .canonicalizeSubtree(entityElement));
+            return Base64Support.encode(digester.digest(), Base64Support.UNCHUNKED);
+        } catch (final NoSuchAlgorithmException | XMLSecurityException e) {
+            log.warn("{} Unable to compute fingerprint of EntityDescriptor '{}'", getLogPrefix(),
+                    entityElement.getAttributeNS(null, EntityDescriptor.ENTITY_ID_ATTRIB_NAME), e);
+            return null;
+        }
+    }
+    
+    /**
+     * Walk the unfiltered metadata, recording each EntityDescriptor along with its fingerprint and parent, 
+     * and the DOM of each EntitiesDescriptor.
+     * 
+     * @param node the current node being processed
+     * @param parent the EntitiesDescriptor containing the current node, if any
+     * @param groupNames the names of the groups enclosing the current node
+     * @param entries the list to which entries are added, in document order
+     * @param groupDOMs the map to which the DOM of each EntitiesDescriptor is added
+     */
+    private void collectDeltaEntries(@Nonnull final XMLObject node, @Nullable final EntitiesDescriptor parent,
+            @Nonnull final String groupNames, @Nonnull final List<DeltaEntry> entries,
+            @Nonnull final Map<EntitiesDescriptor, Element> groupDOMs) {
+        if (node instanceof EntityDescriptor) {
+            final EntityDescriptor entityDescriptor = (EntityDescriptor) node;
+            final Element dom = entityDescriptor.getDOM();
+            entries.add(new DeltaEntry(entityDescriptor, parent, 
+                    dom != null ? computeEntityFingerprint(dom, groupNames) : null));
+        } else if (node instanceof EntitiesDescriptor) {
+            final EntitiesDescriptor group = (EntitiesDescriptor) node;
+            groupDOMs.put(group, group.getDOM());
+            final String childGroupNames = groupNames + "/" + Strings.nullToEmpty(group.getName());
+            for (final XMLObject child : group.getOrderedChildren()) {
+                if (child != null) {
+                    collectDeltaEntries(child, group, childGroupNames, entries, groupDOMs);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Copy a previously filtered EntityDescriptor for reuse in new metadata, along with its object metadata.
+     * 
+     * <p>
+     * The previous instance belongs to the current metadata, which is in use by other threads and must remain
+     * effective if the refresh fails, so it is never itself moved into the new metadata.
+     * </p>
+     * 
+     * <p>
+     * Copying marshalls the previous instance if it has no cached DOM, and then releases the DOM again. This does
+     * not change its content, so is safe with respect to threads reading the current metadata, but it is not safe
+     * with respect to another thread marshalling the same instance at the same time. The copy is therefore made
+     * while synchronized on the previous instance, and callers which marshall resolved metadata must likewise
+     * synchronize on the instance being marshalled.
+     * </p>
+     * 
+     * @param previous the previously filtered EntityDescriptor
+     * 
+     * @return the copy, or null if it could not be made, in which case the EntityDescriptor must be filtered again
+     */
+    @Nullable private EntityDescriptor copyReusedEntityDescriptor(@Nonnull final EntityDescriptor previous) {
+        final EntityDescriptor copy;
+        synchronized (previous) {
+            final boolean hadDOM = previous.getDOM() != null;
+            try {
+                copy = XMLObjectSupport.cloneXMLObject(previous);
+            } catch (final MarshallingException | UnmarshallingException e) {
+                log.warn("{} Unable to copy EntityDescriptor '{}' for reuse, it will be filtered again", 
+                        getLogPrefix(), previous.getEntityID(), e);
+                return null;
+            } finally {
+                if (!hadDOM) {
+                    releaseMetadataDOM(previous);
+                }
+            }
+        }
+        
+        final LockableClassToInstanceMultiMap<Object> objectMetadata = previous.getObjectMetadata();
+        final ReadWriteLock rwlock = objectMetadata.getReadWriteLock();
+        try {
+            rwlock.readLock().lock();
+            copy.getObjectMetadata().putAll(objectMetadata.values());
+        } finally {
+            rwlock.readLock().unlock();
+        }
+        
+        return copy;
+    }
+    
+    /**
+     * Insert the reused EntityDescriptors into the groups of the filtered document which correspond to the groups
+     * their sources were removed from, preserving document order among each group's EntityDescriptors.
+     * 
+     * <p>
+     * Entries whose group was itself removed by filtering are dropped.
+     * </p>
+     * 
+     * @param entries the entries collected from the new document
+     * @param filteredRoot the root of the filtered document
+     */
+    private void reinsertReusedEntities(@Nonnull final List<DeltaEntry> entries, 
+            @Nonnull final XMLObject filteredRoot) {
+        final Map<EntitiesDescriptor, List<EntityDescriptor>> groupMembers = new LinkedHashMap<>();
+        final Set<EntitiesDescriptor> modifiedGroups = new HashSet<>();
+        
+        for (final DeltaEntry entry : entries) {
+            if (entry.parent == null || !isDescendantOf(entry.parent, filteredRoot)) {
+                continue;
+            }
+            List<EntityDescriptor> members = groupMembers.get(entry.parent);
+            if (members == null) {
+                members = new ArrayList<>();
+                groupMembers.put(entry.parent, members);
+            }
+            if (entry.reused != null) {
+                members.add(entry.reused);
+                modifiedGroups.add(entry.parent);
+            } else if (entry.source.getParent() == entry.parent) {
+                members.add(entry.source);
+            }
+        }
+        
+        for (final EntitiesDescriptor group : modifiedGroups) {
+            replaceGroupMembers(group, groupMembers.get(group));
+        }
+    }
+    
+    /**
+     * Replace the EntityDescriptor members of a group.
+     * 
+     * @param group the group to modify
+     * @param members the new members of the group, in order, each either a current member or without a parent
+     */
+    private void replaceGroupMembers(@Nonnull final EntitiesDescriptor group, 
+            @Nonnull final List<EntityDescriptor> members) {
+        group.getEntityDescriptors().clear();
+        group.getEntityDescriptors().addAll(members);
+    }
+    
+    /**
+     * Check whether an object is the specified root or one of its descendants.
+     * 
+     * @param xmlObject the object to check
+     * @param root the root object
+     * 
+     * @return true if the object is contained within the tree of the root, false otherwise
+     */
+    private boolean isDescendantOf(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject root) {
+        XMLObject current = xmlObject;
+        while (current != null) {
+            if (current == root) {
+                return true;
+            }
+            current = current.getParent();
+        }
+        return false;
+    }
+
     /**
      * Post-processing hook called after new metadata has been unmarshalled, filtered, and the DOM released (from the
      * {@link XMLObject}) but before the metadata is saved off. Any exception thrown by this hook will cause the
@@ -582,13 +1456,14 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
      * The default implementation of this method is a no-op
      * 
      * @param metadataBytes original raw metadata bytes retrieved via {@link #fetchMetadata}
-     * @param metadataDom original metadata after it has been parsed in to a DOM document
+     * @param metadataDom original metadata after it has been parsed in to a DOM document, or null if the metadata
+     *          was processed using streaming ingestion
      * @param originalMetadata original metadata prior to being filtered, with its DOM released
      * @param filteredMetadata metadata after it has been run through all registered filters and its DOM released
      * 
      * @throws ResolverException thrown if there is a problem with the provided data
      */
-    protected void postProcessMetadata(final byte[] metadataBytes, final Document metadataDom,
+    protected void postProcessMetadata(final byte[] metadataBytes, @Nullable final Document metadataDom,
             final XMLObject originalMetadata, final XMLObject filteredMetadata) throws ResolverException {
 
     }
@@ -646,6 +1521,135 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
         }
     }
 
+    /** Result of streaming a metadata document. */
+    private enum StreamingResult {
+        
+        /** The document was processed. */
+        COMPLETE,
+        
+        /** The document root was not valid, processing was abandoned. */
+        INVALID_ROOT,
+        
+        /** 
+         * The document can not be streamed, because of its root element or a signed group, and processing was
+         * abandoned.
+         */
+        UNSUPPORTED,
+    }
+    
+    /** State of streaming a metadata document. */
+    private static class StreamingState {
+        
+        /** The root of the document. */
+        @Nonnull private final EntitiesDescriptor root;
+        
+        /** Fingerprints of the EntityDescriptors of the previous refresh. */
+        @Nonnull private final Map<String, EntityDescriptor> previousFingerprints;
+        
+        /** Fingerprints of the EntityDescriptors of the new document. */
+        @Nonnull private final Map<String, EntityDescriptor> fingerprints;
+        
+        /** Fingerprints seen so far. */
+        @Nonnull private final Set<String> seenFingerprints;
+        
+        /** The filtered and reused EntityDescriptor members of each group, in document order. */
+        @Nonnull private final Map<EntitiesDescriptor, List<EntityDescriptor>> groupMembers;
+        
+        /** The EntitiesDescriptor members of each group, in document order. */
+        @Nonnull private final Map<EntitiesDescriptor, List<EntitiesDescriptor>> childGroups;
+        
+        /** The group containing each EntitiesDescriptor other than the root. */
+        @Nonnull private final Map<EntitiesDescriptor, EntitiesDescriptor> groupParents;
+        
+        /** Number of EntityDescriptors reused. */
+        private int reusedCount;
+        
+        /** Number of EntityDescriptors filtered. */
+        private int filteredCount;
+        
+        /**
+         * Constructor.
+         *
+         * @param documentRoot the root of the document
+         * @param previous fingerprints of the EntityDescriptors of the previous refresh
+         * @param current map to populate with the fingerprints of the EntityDescriptors of the new document
+         */
+        StreamingState(@Nonnull final EntitiesDescriptor documentRoot, 
+                @Nonnull final Map<String, EntityDescriptor> previous, 
+                @Nonnull final Map<String, EntityDescriptor> current) {
+            root = documentRoot;
+            previousFingerprints = previous;
+            fingerprints = current;
+            seenFingerprints = new HashSet<>();
+            groupMembers = new LinkedHashMap<>();
+            childGroups = new LinkedHashMap<>();
+            groupParents = new HashMap<>();
+        }
+        
+        /**
+         * Record an EntitiesDescriptor member of a group.
+         * 
+         * @param group the group
+         * @param member the member
+         */
+        void addGroup(@Nonnull final EntitiesDescriptor group, @Nonnull final EntitiesDescriptor member) {
+            List<EntitiesDescriptor> members = childGroups.get(group);
+            if (members == null) {
+                members = new ArrayList<>();
+                childGroups.put(group, members);
+            }
+            members.add(member);
+            groupParents.put(member, group);
+        }
+        
+        /**
+         * Record an EntityDescriptor member of a group.
+         * 
+         * @param group the group
+         * @param member the member
+         */
+        void addMember(@Nonnull final EntitiesDescriptor group, @Nonnull final EntityDescriptor member) {
+            List<EntityDescriptor> members = groupMembers.get(group);
+            if (members == null) {
+                members = new ArrayList<>();
+                groupMembers.put(group, members);
+            }
+            members.add(member);
+        }
+        
+    }
+    
+    /** An EntityDescriptor of a newly fetched document being processed for delta refresh. */
+    private static class DeltaEntry {
+        
+        /** The unfiltered EntityDescriptor from the new document. */
+        @Nonnull private final EntityDescriptor source;
+        
+        /** The EntitiesDescriptor containing the EntityDescriptor in the new document, if any. */
+        @Nullable private final EntitiesDescriptor parent;
+        
+        /** The EntityDescriptor's fingerprint, if one could be computed. */
+        @Nullable private final String fingerprint;
+        
+        /** A copy of the previously filtered EntityDescriptor to be used in place of the source, if unchanged. */
+        @Nullable private EntityDescriptor reused;
+        
+        /**
+         * Constructor.
+         *
+         * @param sourceDescriptor the unfiltered EntityDescriptor
+         * @param parentDescriptor the containing EntitiesDescriptor
+         * @param sourceFingerprint the EntityDescriptor's fingerprint
+         */
+        DeltaEntry(@Nonnull final EntityDescriptor sourceDescriptor, 
+                @Nullable final EntitiesDescriptor parentDescriptor, @Nullable final String sourceFingerprint) {
+            source = sourceDescriptor;
+            parent = parentDescriptor;
+            fingerprint = sourceFingerprint;
+        }
+        
+    }
+
     /** Background task that refreshes metadata. */
     private class RefreshMetadataTask extends TimerTask {
 
@@ -65,6 +65,12 @@ public class LockableMetadataIndexManager<T> extends MetadataIndexManager<T> {
      * for reading and/or writing, based on application use cases.
      * </p>
      * 
+     * <p>
+     * Individual lookup, index and de-index operations are thread-safe without locking, since the
+     * underlying {@link MetadataIndexStore} instances are, so the lock need only be used by callers
+     * which require several operations to be performed atomically.
+     * </p>
+     * 
      * @return Returns the rwlock.
      */
     @Nonnull public ReadWriteLock getReadWriteLock() {
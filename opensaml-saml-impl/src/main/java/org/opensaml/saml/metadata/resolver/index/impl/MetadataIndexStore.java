@@ -18,16 +18,16 @@
 package org.opensaml.saml.metadata.resolver.index.impl;
 
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.Nonnull;
 
 import org.opensaml.saml.metadata.resolver.index.MetadataIndexKey;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
 
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
@@ -39,12 +39,18 @@ import net.shibboleth.utilities.java.support.logic.Constraint;
  * for example {@link org.opensaml.saml.saml2.metadata.EntityDescriptor},
  * under one or more instances of {@link MetadataIndexKey}.
  * 
+ * <p>
+ * The data items indexed under each key are held as an immutable set which is replaced atomically
+ * on each modification. The store is therefore thread-safe without external locking: lookups neither
+ * block nor allocate, and always observe a consistent set of the items indexed under a given key.
+ * </p>
+ * 
  * @param <T> the type of data being indexed
  */
 public class MetadataIndexStore<T> {
     
     /** The indexed storage of data. */
-    @Nonnull private Map<MetadataIndexKey, Set<T>> index;
+    @Nonnull private ConcurrentMap<MetadataIndexKey, ImmutableSet<T>> index;
     
     /**
      * Constructor.
@@ -76,7 +82,7 @@ public class MetadataIndexStore<T> {
         if (items == null) {
             return Collections.emptySet();
         } else {
-            return ImmutableSet.copyOf(items);
+            return items;
         }
     }
     
@@ -89,12 +95,21 @@ public class MetadataIndexStore<T> {
     public void add(final MetadataIndexKey key, final T item) {
         Constraint.isNotNull(key, "IndexKey was null");
         Constraint.isNotNull(item, "The indexed data element was null");
-        Set<T> items = index.get(key);
-        if (items == null) {
-            items = new HashSet<>();
-            index.put(key, items);
+        while (true) {
+            final ImmutableSet<T> items = index.get(key);
+            if (items == null) {
+                if (index.putIfAbsent(key, ImmutableSet.of(item)) == null) {
+                    return;
+                }
+            } else if (items.contains(item)) {
+                return;
+            } else {
+                final ImmutableSet<T> newItems = ImmutableSet.<T>builder().addAll(items).add(item).build();
+                if (index.replace(key, items, newItems)) {
+                    return;
+                }
+            }
         }
-        items.add(item);
     }
     
     /**
@@ -106,11 +121,22 @@ public class MetadataIndexStore<T> {
     public void remove(final MetadataIndexKey key, final T item) {
         Constraint.isNotNull(key, "IndexKey was null");
         Constraint.isNotNull(item, "The indexed data element was null");
-        final Set<T> items = index.get(key);
-        if (items == null) {
-            return;
+        while (true) {
+            final ImmutableSet<T> items = index.get(key);
+            if (items == null || !items.contains(item)) {
+                return;
+            } else if (items.size() == 1) {
+                if (index.remove(key, items)) {
+                    return;
+                }
+            } else {
+                final ImmutableSet<T> newItems = 
+                        ImmutableSet.copyOf(Sets.difference(items, Collections.singleton(item)));
+                if (index.replace(key, items, newItems)) {
+                    return;
+                }
+            }
         }
-        items.remove(item);
     }
     
     /**
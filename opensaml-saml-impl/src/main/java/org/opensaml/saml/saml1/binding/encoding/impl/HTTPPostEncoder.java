@@ -28,7 +28,6 @@ import net.shibboleth.utilities.java.support.codec.HTMLEncoder;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.net.HttpServletSupport;
-import net.shibboleth.utilities.java.support.xml.SerializeSupport;
 
 import org.apache.velocity.VelocityContext;
 import org.apache.velocity.app.VelocityEngine;
@@ -165,8 +164,7 @@ public class HTTPPostEncoder extends BaseSAML1MessageEncoder {
             context.put("binding", getBindingURI());
 
             log.debug("Marshalling and Base64 encoding SAML message");
-            final String messageXML = SerializeSupport.nodeToString(marshallMessage(message));
-            final String encodedMessage = Base64Support.encode(messageXML.getBytes("UTF-8"), Base64Support.UNCHUNKED);
+            final String encodedMessage = Base64Support.encode(serializeMessage(message), Base64Support.UNCHUNKED);
             context.put("SAMLResponse", encodedMessage);
 
             final String relayState = SAMLBindingSupport.getRelayState(messageContext);
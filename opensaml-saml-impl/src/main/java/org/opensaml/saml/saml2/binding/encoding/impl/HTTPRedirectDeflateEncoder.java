@@ -35,7 +35,6 @@ import net.shibboleth.utilities.java.support.collection.Pair;
 import net.shibboleth.utilities.java.support.net.HttpServletSupport;
 import net.shibboleth.utilities.java.support.net.URLBuilder;
 import net.shibboleth.utilities.java.support.primitive.StringSupport;
-import net.shibboleth.utilities.java.support.xml.SerializeSupport;
 
 import org.opensaml.messaging.context.MessageContext;
 import org.opensaml.messaging.encoder.MessageEncodingException;
@@ -131,12 +130,12 @@ public class HTTPRedirectDeflateEncoder extends BaseSAML2MessageEncoder {
     protected String deflateAndBase64Encode(final SAMLObject message) throws MessageEncodingException {
         log.debug("Deflating and Base64 encoding SAML message");
         try {
-            final String messageStr = SerializeSupport.nodeToString(marshallMessage(message));
+            final byte[] messageBytes = serializeMessage(message);
 
             final ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
             final Deflater deflater = new Deflater(Deflater.DEFLATED, true);
             final DeflaterOutputStream deflaterStream = new DeflaterOutputStream(bytesOut, deflater);
-            deflaterStream.write(messageStr.getBytes("UTF-8"));
+            deflaterStream.write(messageBytes);
             deflaterStream.finish();
 
             return Base64Support.encode(bytesOut.toByteArray(), Base64Support.UNCHUNKED);
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opensaml.saml.saml2.core.impl;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.AbstractXMLObjectCloner;
+import org.opensaml.saml.saml2.core.NameIDType;
+
+/**
+ * Abstract cloner for {@link org.opensaml.saml.saml2.core.NameIDType} objects.
+ */
+public abstract class AbstractNameIDTypeCloner extends AbstractXMLObjectCloner {
+
+    /** {@inheritDoc} */
+    protected void cloneAttributes(final XMLObject samlObject, final XMLObject clone) {
+        final NameIDType nameID = (NameIDType) samlObject;
+        final NameIDType nameIDClone = (NameIDType) clone;
+
+        nameIDClone.setNameQualifier(nameID.getNameQualifier());
+        nameIDClone.setSPNameQualifier(nameID.getSPNameQualifier());
+        nameIDClone.setFormat(nameID.getFormat());
+        nameIDClone.setSPProvidedID(nameID.getSPProvidedID());
+    }
+
+    /** {@inheritDoc} */
+    protected void cloneElementContent(final XMLObject samlObject, final XMLObject clone) {
+        ((NameIDType) clone).setValue(((NameIDType) samlObject).getValue());
+    }
+}
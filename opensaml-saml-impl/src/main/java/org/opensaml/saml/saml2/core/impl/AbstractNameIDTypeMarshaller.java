@@ -17,6 +17,9 @@
 
 package org.opensaml.saml.saml2.core.impl;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
 import net.shibboleth.utilities.java.support.xml.ElementSupport;
 
 import org.opensaml.core.xml.XMLObject;
@@ -59,4 +62,35 @@ public abstract class AbstractNameIDTypeMarshaller extends AbstractSAMLObjectMar
         final NameIDType nameID = (NameIDType) samlObject;
         ElementSupport.appendTextContent(domElement, nameID.getValue());
     }
+
+    /** {@inheritDoc} */
+    protected void marshallAttributes(final XMLObject samlObject, final XMLStreamWriter writer)
+            throws MarshallingException, XMLStreamException {
+        final NameIDType nameID = (NameIDType) samlObject;
+
+        if (nameID.getNameQualifier() != null) {
+            writer.writeAttribute(NameID.NAME_QUALIFIER_ATTRIB_NAME, nameID.getNameQualifier());
+        }
+
+        if (nameID.getSPNameQualifier() != null) {
+            writer.writeAttribute(NameID.SP_NAME_QUALIFIER_ATTRIB_NAME, nameID.getSPNameQualifier());
+        }
+
+        if (nameID.getFormat() != null) {
+            writer.writeAttribute(NameID.FORMAT_ATTRIB_NAME, nameID.getFormat());
+        }
+
+        if (nameID.getSPProvidedID() != null) {
+            writer.writeAttribute(NameID.SPPROVIDED_ID_ATTRIB_NAME, nameID.getSPProvidedID());
+        }
+    }
+
+    /** {@inheritDoc} */
+    protected void marshallElementContent(final XMLObject samlObject, final XMLStreamWriter writer)
+            throws MarshallingException, XMLStreamException {
+        final NameIDType nameID = (NameIDType) samlObject;
+        if (nameID.getValue() != null) {
+            writer.writeCharacters(nameID.getValue());
+        }
+    }
 }
\ No newline at end of file
@@ -17,6 +17,8 @@
 
 package org.opensaml.saml.saml2.core.impl;
 
+import javax.xml.namespace.QName;
+
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.io.UnmarshallingException;
 import org.opensaml.saml.common.AbstractSAMLObjectUnmarshaller;
@@ -55,4 +57,27 @@ public abstract class AbstractNameIDTypeUnmarshaller extends AbstractSAMLObjectU
             super.processAttribute(samlObject, attribute);
         }
     }
+
+    /** {@inheritDoc} */
+    protected void processAttribute(final XMLObject samlObject, final QName attributeName, final String attributeValue)
+            throws UnmarshallingException {
+        final NameIDType nameID = (NameIDType) samlObject;
+        
+        if (attributeName.getNamespaceURI().isEmpty()) {
+            if (attributeName.getLocalPart().equals(NameID.NAME_QUALIFIER_ATTRIB_NAME)) {
+                nameID.setNameQualifier(attributeValue);
+            } else if (attributeName.getLocalPart().equals(NameID.SP_NAME_QUALIFIER_ATTRIB_NAME)) {
+                nameID.setSPNameQualifier(attributeValue);
+            } else if (attributeName.getLocalPart().equals(NameID.FORMAT_ATTRIB_NAME)) {
+                nameID.setFormat(attributeValue);
+            } else if (attributeName.getLocalPart().equals(NameID.SPPROVIDED_ID_ATTRIB_NAME)) {
+                nameID.setSPProvidedID(attributeValue);
+            } else {
+                super.processAttribute(samlObject, attributeName, attributeValue);
+            }
+        } else {
+            super.processAttribute(samlObject, attributeName, attributeValue);
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.core.impl;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.AbstractXMLObjectCloner;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.saml.saml2.core.Attribute;
+import org.opensaml.saml.saml2.core.AttributeStatement;
+import org.opensaml.saml.saml2.core.EncryptedAttribute;
+
+/**
+ * A thread safe Cloner for {@link org.opensaml.saml.saml2.core.AttributeStatement} objects.
+ */
+public class AttributeStatementCloner extends AbstractXMLObjectCloner {
+
+    /** {@inheritDoc} */
+    protected void cloneChildElements(final XMLObject samlObject, final XMLObject clone)
+            throws MarshallingException, UnmarshallingException {
+        final AttributeStatement statementClone = (AttributeStatement) clone;
+
+        // Attributes and encrypted attributes share a list, so clone them in document order.
+        for (final XMLObject child : samlObject.getOrderedChildren()) {
+            if (child instanceof Attribute) {
+                statementClone.getAttributes().add(cloneChild((Attribute) child));
+            } else if (child instanceof EncryptedAttribute) {
+                statementClone.getEncryptedAttributes().add(cloneChild((EncryptedAttribute) child));
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opensaml.saml.saml2.core.impl;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.saml.saml2.core.AuthnRequest;
+
+/**
+ * A thread safe Cloner for {@link org.opensaml.saml.saml2.core.AuthnRequest} objects.
+ */
+public class AuthnRequestCloner extends RequestAbstractTypeCloner {
+
+    /** {@inheritDoc} */
+    protected void cloneAttributes(final XMLObject samlObject, final XMLObject clone) {
+        final AuthnRequest req = (AuthnRequest) samlObject;
+        final AuthnRequest reqClone = (AuthnRequest) clone;
+
+        reqClone.setForceAuthn(copyXSBooleanValue(req.isForceAuthnXSBoolean()));
+        reqClone.setIsPassive(copyXSBooleanValue(req.isPassiveXSBoolean()));
+        reqClone.setProtocolBinding(req.getProtocolBinding());
+        reqClone.setAssertionConsumerServiceIndex(req.getAssertionConsumerServiceIndex());
+        reqClone.setAssertionConsumerServiceURL(req.getAssertionConsumerServiceURL());
+        reqClone.setAttributeConsumingServiceIndex(req.getAttributeConsumingServiceIndex());
+        reqClone.setProviderName(req.getProviderName());
+
+        super.cloneAttributes(samlObject, clone);
+    }
+
+    /** {@inheritDoc} */
+    protected void cloneChildElements(final XMLObject samlObject, final XMLObject clone)
+            throws MarshallingException, UnmarshallingException {
+        final AuthnRequest req = (AuthnRequest) samlObject;
+        final AuthnRequest reqClone = (AuthnRequest) clone;
+
+        super.cloneChildElements(samlObject, clone);
+
+        reqClone.setSubject(cloneChild(req.getSubject()));
+        reqClone.setNameIDPolicy(cloneChild(req.getNameIDPolicy()));
+        reqClone.setConditions(cloneChild(req.getConditions()));
+        reqClone.setRequestedAuthnContext(cloneChild(req.getRequestedAuthnContext()));
+        reqClone.setScoping(cloneChild(req.getScoping()));
+    }
+}
@@ -21,6 +21,9 @@
 
 package org.opensaml.saml.saml2.core.impl;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.saml.saml2.core.AuthnRequest;
@@ -70,4 +73,48 @@ public class AuthnRequestMarshaller extends RequestAbstractTypeMarshaller {
 
         super.marshallAttributes(samlObject, domElement);
     }
+
+    /** {@inheritDoc} */
+    protected boolean isStreamingSupported() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    protected void marshallAttributes(final XMLObject samlObject, final XMLStreamWriter writer)
+            throws MarshallingException, XMLStreamException {
+        final AuthnRequest req = (AuthnRequest) samlObject;
+
+        if (req.isForceAuthnXSBoolean() != null) {
+            writer.writeAttribute(AuthnRequest.FORCE_AUTHN_ATTRIB_NAME, req.isForceAuthnXSBoolean().toString());
+        }
+
+        if (req.isPassiveXSBoolean() != null) {
+            writer.writeAttribute(AuthnRequest.IS_PASSIVE_ATTRIB_NAME, req.isPassiveXSBoolean().toString());
+        }
+
+        if (req.getProtocolBinding() != null) {
+            writer.writeAttribute(AuthnRequest.PROTOCOL_BINDING_ATTRIB_NAME, req.getProtocolBinding());
+        }
+
+        if (req.getAssertionConsumerServiceIndex() != null) {
+            writer.writeAttribute(AuthnRequest.ASSERTION_CONSUMER_SERVICE_INDEX_ATTRIB_NAME,
+                    req.getAssertionConsumerServiceIndex().toString());
+        }
+
+        if (req.getAssertionConsumerServiceURL() != null) {
+            writer.writeAttribute(AuthnRequest.ASSERTION_CONSUMER_SERVICE_URL_ATTRIB_NAME,
+                    req.getAssertionConsumerServiceURL());
+        }
+
+        if (req.getAttributeConsumingServiceIndex() != null) {
+            writer.writeAttribute(AuthnRequest.ATTRIBUTE_CONSUMING_SERVICE_INDEX_ATTRIB_NAME,
+                    req.getAttributeConsumingServiceIndex().toString());
+        }
+
+        if (req.getProviderName() != null) {
+            writer.writeAttribute(AuthnRequest.PROVIDER_NAME_ATTRIB_NAME, req.getProviderName());
+        }
+
+        super.marshallAttributes(samlObject, writer);
+    }
 }
\ No newline at end of file
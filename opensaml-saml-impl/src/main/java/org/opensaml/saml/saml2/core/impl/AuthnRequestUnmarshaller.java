@@ -21,6 +21,8 @@
 
 package org.opensaml.saml.saml2.core.impl;
 
+import javax.xml.namespace.QName;
+
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.io.UnmarshallingException;
 import org.opensaml.core.xml.schema.XSBooleanValue;
@@ -83,5 +85,38 @@ public class AuthnRequestUnmarshaller extends RequestAbstractTypeUnmarshaller {
             super.processAttribute(samlObject, attribute);
         }
     }
-    
+
+    /** {@inheritDoc} */
+    protected boolean isStreamingSupported() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    protected void processAttribute(final XMLObject samlObject, final QName attributeName, final String attributeValue)
+            throws UnmarshallingException {
+        final AuthnRequest req = (AuthnRequest) samlObject;
+        if (attributeName.getNamespaceURI().isEmpty()) {
+            final String name = attributeName.getLocalPart();
+            if (name.equals(AuthnRequest.FORCE_AUTHN_ATTRIB_NAME)) {
+                req.setForceAuthn(XSBooleanValue.valueOf(attributeValue));
+            } else if (name.equals(AuthnRequest.IS_PASSIVE_ATTRIB_NAME)) {
+                req.setIsPassive(XSBooleanValue.valueOf(attributeValue));
+            } else if (name.equals(AuthnRequest.PROTOCOL_BINDING_ATTRIB_NAME)) {
+                req.setProtocolBinding(attributeValue);
+            } else if (name.equals(AuthnRequest.ASSERTION_CONSUMER_SERVICE_INDEX_ATTRIB_NAME)) {
+                req.setAssertionConsumerServiceIndex(Integer.valueOf(attributeValue));
+            } else if (name.equals(AuthnRequest.ASSERTION_CONSUMER_SERVICE_URL_ATTRIB_NAME)) {
+                req.setAssertionConsumerServiceURL(attributeValue);
+            } else if (name.equals(AuthnRequest.ATTRIBUTE_CONSUMING_SERVICE_INDEX_ATTRIB_NAME)) {
+                req.setAttributeConsumingServiceIndex(Integer.valueOf(attributeValue));
+            } else if (name.equals(AuthnRequest.PROVIDER_NAME_ATTRIB_NAME)) {
+                req.setProviderName(attributeValue);
+            } else {
+                super.processAttribute(samlObject, attributeName, attributeValue);
+            }
+        } else {
+            super.processAttribute(samlObject, attributeName, attributeValue);
+        }
+    }
+
 }
\ No newline at end of file
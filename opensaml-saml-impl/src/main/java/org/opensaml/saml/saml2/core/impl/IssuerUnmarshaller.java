@@ -22,4 +22,9 @@ package org.opensaml.saml.saml2.core.impl;
  */
 public class IssuerUnmarshaller extends AbstractNameIDTypeUnmarshaller {
 
+    /** {@inheritDoc} */
+    protected boolean isStreamingSupported() {
+        return true;
+    }
+
 }
\ No newline at end of file
@@ -21,6 +21,9 @@
 
 package org.opensaml.saml.saml2.core.impl;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.saml.config.SAMLConfigurationSupport;
@@ -49,4 +52,25 @@ public class LogoutRequestMarshaller extends RequestAbstractTypeMarshaller {
         super.marshallAttributes(samlObject, domElement);
     }
 
+    /** {@inheritDoc} */
+    protected boolean isStreamingSupported() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    protected void marshallAttributes(final XMLObject samlObject, final XMLStreamWriter writer)
+            throws MarshallingException, XMLStreamException {
+        final LogoutRequest req = (LogoutRequest) samlObject;
+
+        if (req.getReason() != null) {
+            writer.writeAttribute(LogoutRequest.REASON_ATTRIB_NAME, req.getReason());
+        }
+
+        if (req.getNotOnOrAfter() != null) {
+            final String noaStr = SAMLConfigurationSupport.getSAMLDateFormatter().print(req.getNotOnOrAfter());
+            writer.writeAttribute(LogoutRequest.NOT_ON_OR_AFTER_ATTRIB_NAME, noaStr);
+        }
+
+        super.marshallAttributes(samlObject, writer);
+    }
 }
@@ -17,6 +17,8 @@
 
 package org.opensaml.saml.saml2.core.impl;
 
+import javax.xml.namespace.QName;
+
 import org.joda.time.DateTime;
 import org.joda.time.chrono.ISOChronology;
 import org.opensaml.core.xml.XMLObject;
@@ -70,5 +72,28 @@ public class LogoutRequestUnmarshaller extends RequestAbstractTypeUnmarshaller {
             super.processAttribute(samlObject, attribute);
         }
     }
-    
+
+    /** {@inheritDoc} */
+    protected boolean isStreamingSupported() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    protected void processAttribute(final XMLObject samlObject, final QName attributeName, final String attributeValue)
+            throws UnmarshallingException {
+        final LogoutRequest req = (LogoutRequest) samlObject;
+        if (attributeName.getNamespaceURI().isEmpty()) {
+            if (attributeName.getLocalPart().equals(LogoutRequest.REASON_ATTRIB_NAME)) {
+                req.setReason(attributeValue);
+            } else if (attributeName.getLocalPart().equals(LogoutRequest.NOT_ON_OR_AFTER_ATTRIB_NAME)
+                    && !Strings.isNullOrEmpty(attributeValue)) {
+                req.setNotOnOrAfter(new DateTime(attributeValue, ISOChronology.getInstanceUTC()));
+            } else {
+                super.processAttribute(samlObject, attributeName, attributeValue);
+            }
+        } else {
+            super.processAttribute(samlObject, attributeName, attributeValue);
+        }
+    }
+
 }
\ No newline at end of file
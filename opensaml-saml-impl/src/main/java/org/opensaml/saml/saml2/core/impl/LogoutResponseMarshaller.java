@@ -26,4 +26,9 @@ package org.opensaml.saml.saml2.core.impl;
  */
 public class LogoutResponseMarshaller extends StatusResponseTypeMarshaller {
 
+    /** {@inheritDoc} */
+    protected boolean isStreamingSupported() {
+        return true;
+    }
+
 }
\ No newline at end of file
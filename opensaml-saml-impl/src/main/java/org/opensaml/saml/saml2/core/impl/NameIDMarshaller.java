@@ -22,4 +22,9 @@ package org.opensaml.saml.saml2.core.impl;
  */
 public class NameIDMarshaller extends AbstractNameIDTypeMarshaller {
 
+    /** {@inheritDoc} */
+    protected boolean isStreamingSupported() {
+        return true;
+    }
+
 }
\ No newline at end of file
@@ -21,6 +21,9 @@
 
 package org.opensaml.saml.saml2.core.impl;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.saml.common.AbstractSAMLObjectMarshaller;
@@ -50,4 +53,27 @@ public class NameIDPolicyMarshaller extends AbstractSAMLObjectMarshaller {
                     .toString());
         }
     }
+
+    /** {@inheritDoc} */
+    protected boolean isStreamingSupported() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    protected void marshallAttributes(final XMLObject samlObject, final XMLStreamWriter writer)
+            throws MarshallingException, XMLStreamException {
+        final NameIDPolicy policy = (NameIDPolicy) samlObject;
+
+        if (policy.getFormat() != null) {
+            writer.writeAttribute(NameIDPolicy.FORMAT_ATTRIB_NAME, policy.getFormat());
+        }
+
+        if (policy.getSPNameQualifier() != null) {
+            writer.writeAttribute(NameIDPolicy.SP_NAME_QUALIFIER_ATTRIB_NAME, policy.getSPNameQualifier());
+        }
+
+        if (policy.getAllowCreateXSBoolean() != null) {
+            writer.writeAttribute(NameIDPolicy.ALLOW_CREATE_ATTRIB_NAME, policy.getAllowCreateXSBoolean().toString());
+        }
+    }
 }
\ No newline at end of file
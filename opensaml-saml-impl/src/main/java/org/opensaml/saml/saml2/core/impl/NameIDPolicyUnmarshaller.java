@@ -21,6 +21,8 @@
 
 package org.opensaml.saml.saml2.core.impl;
 
+import javax.xml.namespace.QName;
+
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.io.UnmarshallingException;
 import org.opensaml.core.xml.schema.XSBooleanValue;
@@ -53,5 +55,29 @@ public class NameIDPolicyUnmarshaller extends AbstractSAMLObjectUnmarshaller {
             super.processAttribute(samlObject, attribute);
         }
     }
-    
+
+    /** {@inheritDoc} */
+    protected boolean isStreamingSupported() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    protected void processAttribute(final XMLObject samlObject, final QName attributeName, final String attributeValue)
+            throws UnmarshallingException {
+        final NameIDPolicy policy = (NameIDPolicy) samlObject;
+        if (attributeName.getNamespaceURI().isEmpty()) {
+            if (attributeName.getLocalPart().equals(NameIDPolicy.FORMAT_ATTRIB_NAME)) {
+                policy.setFormat(attributeValue);
+            } else if (attributeName.getLocalPart().equals(NameIDPolicy.SP_NAME_QUALIFIER_ATTRIB_NAME)) {
+                policy.setSPNameQualifier(attributeValue);
+            } else if (attributeName.getLocalPart().equals(NameIDPolicy.ALLOW_CREATE_ATTRIB_NAME)) {
+                policy.setAllowCreate(XSBooleanValue.valueOf(attributeValue));
+            } else {
+                super.processAttribute(samlObject, attributeName, attributeValue);
+            }
+        } else {
+            super.processAttribute(samlObject, attributeName, attributeValue);
+        }
+    }
+
 }
\ No newline at end of file
@@ -23,4 +23,9 @@ package org.opensaml.saml.saml2.core.impl;
  */
 public class NameIDUnmarshaller extends AbstractNameIDTypeUnmarshaller {
 
+    /** {@inheritDoc} */
+    protected boolean isStreamingSupported() {
+        return true;
+    }
+
 }
\ No newline at end of file
@@ -21,6 +21,9 @@
 
 package org.opensaml.saml.saml2.core.impl;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.saml.common.AbstractSAMLObjectMarshaller;
@@ -64,4 +67,31 @@ public abstract class RequestAbstractTypeMarshaller extends AbstractSAMLObjectMa
             domElement.setAttributeNS(null, RequestAbstractType.CONSENT_ATTRIB_NAME, req.getConsent());
         }
     }
+
+    /** {@inheritDoc} */
+    protected void marshallAttributes(final XMLObject samlObject, final XMLStreamWriter writer)
+            throws MarshallingException, XMLStreamException {
+        final RequestAbstractType req = (RequestAbstractType) samlObject;
+
+        if (req.getID() != null) {
+            writer.writeAttribute(RequestAbstractType.ID_ATTRIB_NAME, req.getID());
+        }
+
+        if (req.getVersion() != null) {
+            writer.writeAttribute(RequestAbstractType.VERSION_ATTRIB_NAME, req.getVersion().toString());
+        }
+
+        if (req.getIssueInstant() != null) {
+            final String iiStr = SAMLConfigurationSupport.getSAMLDateFormatter().print(req.getIssueInstant());
+            writer.writeAttribute(RequestAbstractType.ISSUE_INSTANT_ATTRIB_NAME, iiStr);
+        }
+
+        if (req.getDestination() != null) {
+            writer.writeAttribute(RequestAbstractType.DESTINATION_ATTRIB_NAME, req.getDestination());
+        }
+
+        if (req.getConsent() != null) {
+            writer.writeAttribute(RequestAbstractType.CONSENT_ATTRIB_NAME, req.getConsent());
+        }
+    }
 }
\ No newline at end of file
@@ -21,6 +21,8 @@
 
 package org.opensaml.saml.saml2.core.impl;
 
+import javax.xml.namespace.QName;
+
 import org.joda.time.DateTime;
 import org.joda.time.chrono.ISOChronology;
 import org.opensaml.core.xml.XMLObject;
@@ -79,5 +81,29 @@ public abstract class RequestAbstractTypeUnmarshaller extends AbstractSAMLObject
             super.processAttribute(samlObject, attribute);
         }
     }
-    
+
+    /** {@inheritDoc} */
+    protected void processAttribute(final XMLObject samlObject, final QName attributeName, final String attributeValue)
+            throws UnmarshallingException {
+        final RequestAbstractType req = (RequestAbstractType) samlObject;
+        if (attributeName.getNamespaceURI().isEmpty()) {
+            if (attributeName.getLocalPart().equals(RequestAbstractType.VERSION_ATTRIB_NAME)) {
+                req.setVersion(parseSAMLVersion(attributeValue));
+            } else if (attributeName.getLocalPart().equals(RequestAbstractType.ID_ATTRIB_NAME)) {
+                req.setID(attributeValue);
+            } else if (attributeName.getLocalPart().equals(RequestAbstractType.ISSUE_INSTANT_ATTRIB_NAME)
+                    && !Strings.isNullOrEmpty(attributeValue)) {
+                req.setIssueInstant(new DateTime(attributeValue, ISOChronology.getInstanceUTC()));
+            } else if (attributeName.getLocalPart().equals(RequestAbstractType.DESTINATION_ATTRIB_NAME)) {
+                req.setDestination(attributeValue);
+            } else if (attributeName.getLocalPart().equals(RequestAbstractType.CONSENT_ATTRIB_NAME)) {
+                req.setConsent(attributeValue);
+            } else {
+                super.processAttribute(samlObject, attributeName, attributeValue);
+            }
+        } else {
+            super.processAttribute(samlObject, attributeName, attributeValue);
+        }
+    }
+
 }
\ No newline at end of file
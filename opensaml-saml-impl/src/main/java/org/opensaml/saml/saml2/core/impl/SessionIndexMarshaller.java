@@ -21,6 +21,9 @@
 
 package org.opensaml.saml.saml2.core.impl;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
 import net.shibboleth.utilities.java.support.xml.ElementSupport;
 
 import org.opensaml.core.xml.XMLObject;
@@ -43,4 +46,18 @@ public class SessionIndexMarshaller extends AbstractSAMLObjectMarshaller {
             ElementSupport.appendTextContent(domElement, si.getSessionIndex());
         }
     }
+
+    /** {@inheritDoc} */
+    protected boolean isStreamingSupported() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    protected void marshallElementContent(final XMLObject samlObject, final XMLStreamWriter writer)
+            throws MarshallingException, XMLStreamException {
+        final SessionIndex si = (SessionIndex) samlObject;
+        if (si.getSessionIndex() != null) {
+            writer.writeCharacters(si.getSessionIndex());
+        }
+    }
 }
\ No newline at end of file
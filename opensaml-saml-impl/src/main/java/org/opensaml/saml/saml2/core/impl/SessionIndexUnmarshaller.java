@@ -36,4 +36,10 @@ public class SessionIndexUnmarshaller extends AbstractSAMLObjectUnmarshaller {
 
         si.setSessionIndex(elementContent);
     }
+
+    /** {@inheritDoc} */
+    protected boolean isStreamingSupported() {
+        return true;
+    }
+
 }
\ No newline at end of file
@@ -21,6 +21,9 @@
 
 package org.opensaml.saml.saml2.core.impl;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.saml.common.AbstractSAMLObjectMarshaller;
@@ -43,4 +46,18 @@ public class StatusCodeMarshaller extends AbstractSAMLObjectMarshaller {
 
     }
 
+    /** {@inheritDoc} */
+    protected boolean isStreamingSupported() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    protected void marshallAttributes(final XMLObject samlObject, final XMLStreamWriter writer)
+            throws MarshallingException, XMLStreamException {
+        final StatusCode statusCode = (StatusCode) samlObject;
+
+        if (statusCode.getValue() != null) {
+            writer.writeAttribute(StatusCode.VALUE_ATTRIB_NAME, statusCode.getValue());
+        }
+    }
 }
@@ -28,4 +28,9 @@ import org.opensaml.saml.common.AbstractSAMLObjectMarshaller;
  */
 public class StatusMarshaller extends AbstractSAMLObjectMarshaller {
 
+    /** {@inheritDoc} */
+    protected boolean isStreamingSupported() {
+        return true;
+    }
+
 }
\ No newline at end of file
@@ -21,6 +21,9 @@
 
 package org.opensaml.saml.saml2.core.impl;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
 import net.shibboleth.utilities.java.support.xml.ElementSupport;
 
 import org.opensaml.core.xml.XMLObject;
@@ -43,4 +46,18 @@ public class StatusMessageMarshaller extends AbstractSAMLObjectMarshaller {
             ElementSupport.appendTextContent(domElement, message.getMessage());
         }
     }
+
+    /** {@inheritDoc} */
+    protected boolean isStreamingSupported() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    protected void marshallElementContent(final XMLObject samlObject, final XMLStreamWriter writer)
+            throws MarshallingException, XMLStreamException {
+        final StatusMessage message = (StatusMessage) samlObject;
+        if (message.getMessage() != null) {
+            writer.writeCharacters(message.getMessage());
+        }
+    }
 }
\ No newline at end of file
@@ -37,4 +37,10 @@ public class StatusMessageUnmarshaller extends AbstractSAMLObjectUnmarshaller {
 
         message.setMessage(elementContent);
     }
+
+    /** {@inheritDoc} */
+    protected boolean isStreamingSupported() {
+        return true;
+    }
+
 }
\ No newline at end of file
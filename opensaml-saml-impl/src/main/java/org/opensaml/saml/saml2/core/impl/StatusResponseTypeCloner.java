@@ -0,0 +1,56 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opensaml.saml.saml2.core.impl;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.AbstractXMLObjectCloner;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.saml.saml2.core.StatusResponseType;
+
+/**
+ * A thread safe Cloner for {@link org.opensaml.saml.saml2.core.StatusResponseType} objects.
+ */
+public abstract class StatusResponseTypeCloner extends AbstractXMLObjectCloner {
+
+    /** {@inheritDoc} */
+    protected void cloneAttributes(final XMLObject samlObject, final XMLObject clone) {
+        final StatusResponseType sr = (StatusResponseType) samlObject;
+        final StatusResponseType srClone = (StatusResponseType) clone;
+
+        srClone.setVersion(sr.getVersion());
+        srClone.setID(sr.getID());
+        srClone.setInResponseTo(sr.getInResponseTo());
+        srClone.setIssueInstant(sr.getIssueInstant());
+        srClone.setDestination(sr.getDestination());
+        srClone.setConsent(sr.getConsent());
+    }
+
+    /** {@inheritDoc} */
+    protected void cloneChildElements(final XMLObject samlObject, final XMLObject clone)
+            throws MarshallingException, UnmarshallingException {
+        final StatusResponseType sr = (StatusResponseType) samlObject;
+        final StatusResponseType srClone = (StatusResponseType) clone;
+
+        srClone.setIssuer(cloneChild(sr.getIssuer()));
+        srClone.setSignature(cloneChild(sr.getSignature()));
+        srClone.setExtensions(cloneChild(sr.getExtensions()));
+        srClone.setStatus(cloneChild(sr.getStatus()));
+    }
+}
@@ -21,6 +21,9 @@
 
 package org.opensaml.saml.saml2.core.impl;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.saml.common.AbstractSAMLObjectMarshaller;
@@ -68,4 +71,35 @@ public abstract class StatusResponseTypeMarshaller extends AbstractSAMLObjectMar
             domElement.setAttributeNS(null, StatusResponseType.CONSENT_ATTRIB_NAME, sr.getConsent());
         }
     }
+
+    /** {@inheritDoc} */
+    protected void marshallAttributes(final XMLObject samlObject, final XMLStreamWriter writer)
+            throws MarshallingException, XMLStreamException {
+        final StatusResponseType sr = (StatusResponseType) samlObject;
+
+        if (sr.getID() != null) {
+            writer.writeAttribute(StatusResponseType.ID_ATTRIB_NAME, sr.getID());
+        }
+
+        if (sr.getInResponseTo() != null) {
+            writer.writeAttribute(StatusResponseType.IN_RESPONSE_TO_ATTRIB_NAME, sr.getInResponseTo());
+        }
+
+        if (sr.getVersion() != null) {
+            writer.writeAttribute(StatusResponseType.VERSION_ATTRIB_NAME, sr.getVersion().toString());
+        }
+
+        if (sr.getIssueInstant() != null) {
+            final String iiStr = SAMLConfigurationSupport.getSAMLDateFormatter().print(sr.getIssueInstant());
+            writer.writeAttribute(StatusResponseType.ISSUE_INSTANT_ATTRIB_NAME, iiStr);
+        }
+
+        if (sr.getDestination() != null) {
+            writer.writeAttribute(StatusResponseType.DESTINATION_ATTRIB_NAME, sr.getDestination());
+        }
+
+        if (sr.getConsent() != null) {
+            writer.writeAttribute(StatusResponseType.CONSENT_ATTRIB_NAME, sr.getConsent());
+        }
+    }
 }
\ No newline at end of file
@@ -21,6 +21,8 @@
 
 package org.opensaml.saml.saml2.core.impl;
 
+import javax.xml.namespace.QName;
+
 import org.joda.time.DateTime;
 import org.joda.time.chrono.ISOChronology;
 import org.opensaml.core.xml.XMLObject;
@@ -84,5 +86,31 @@ public abstract class StatusResponseTypeUnmarshaller extends AbstractSAMLObjectU
             super.processAttribute(samlObject, attribute);
         }
     }
-    
+
+    /** {@inheritDoc} */
+    protected void processAttribute(final XMLObject samlObject, final QName attributeName, final String attributeValue)
+            throws UnmarshallingException {
+        final StatusResponseType sr = (StatusResponseType) samlObject;
+        if (attributeName.getNamespaceURI().isEmpty()) {
+            if (attributeName.getLocalPart().equals(StatusResponseType.VERSION_ATTRIB_NAME)) {
+                sr.setVersion(parseSAMLVersion(attributeValue));
+            } else if (attributeName.getLocalPart().equals(StatusResponseType.ID_ATTRIB_NAME)) {
+                sr.setID(attributeValue);
+            } else if (attributeName.getLocalPart().equals(StatusResponseType.IN_RESPONSE_TO_ATTRIB_NAME)) {
+                sr.setInResponseTo(attributeValue);
+            } else if (attributeName.getLocalPart().equals(StatusResponseType.ISSUE_INSTANT_ATTRIB_NAME)
+                    && !Strings.isNullOrEmpty(attributeValue)) {
+                sr.setIssueInstant(new DateTime(attributeValue, ISOChronology.getInstanceUTC()));
+            } else if (attributeName.getLocalPart().equals(StatusResponseType.DESTINATION_ATTRIB_NAME)) {
+                sr.setDestination(attributeValue);
+            } else if (attributeName.getLocalPart().equals(StatusResponseType.CONSENT_ATTRIB_NAME)) {
+                sr.setConsent(attributeValue);
+            } else {
+                super.processAttribute(samlObject, attributeName, attributeValue);
+            }
+        } else {
+            super.processAttribute(samlObject, attributeName, attributeValue);
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.metadata.impl;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.AbstractXMLObjectCloner;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.saml.saml2.metadata.ContactPerson;
+
+/**
+ * A thread safe Cloner for {@link org.opensaml.saml.saml2.metadata.ContactPerson} objects.
+ */
+public class ContactPersonCloner extends AbstractXMLObjectCloner {
+
+    /** {@inheritDoc} */
+    protected void cloneAttributes(final XMLObject samlObject, final XMLObject clone) {
+        ((ContactPerson) clone).setType(((ContactPerson) samlObject).getType());
+    }
+
+    /** {@inheritDoc} */
+    protected void cloneChildElements(final XMLObject samlObject, final XMLObject clone)
+            throws MarshallingException, UnmarshallingException {
+        final ContactPerson person = (ContactPerson) samlObject;
+        final ContactPerson personClone = (ContactPerson) clone;
+
+        personClone.setExtensions(cloneChild(person.getExtensions()));
+        personClone.setCompany(cloneChild(person.getCompany()));
+        personClone.setGivenName(cloneChild(person.getGivenName()));
+        personClone.setSurName(cloneChild(person.getSurName()));
+        cloneChildren(person.getEmailAddresses(), personClone.getEmailAddresses());
+        cloneChildren(person.getTelephoneNumbers(), personClone.getTelephoneNumbers());
+    }
+}
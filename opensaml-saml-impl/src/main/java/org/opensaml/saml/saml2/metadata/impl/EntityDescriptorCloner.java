@@ -0,0 +1,56 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.metadata.impl;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.AbstractXMLObjectCloner;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+
+/**
+ * A thread safe Cloner for {@link org.opensaml.saml.saml2.metadata.EntityDescriptor} objects.
+ */
+public class EntityDescriptorCloner extends AbstractXMLObjectCloner {
+
+    /** {@inheritDoc} */
+    protected void cloneAttributes(final XMLObject samlObject, final XMLObject clone) {
+        final EntityDescriptor descriptor = (EntityDescriptor) samlObject;
+        final EntityDescriptor descriptorClone = (EntityDescriptor) clone;
+
+        descriptorClone.setEntityID(descriptor.getEntityID());
+        descriptorClone.setID(descriptor.getID());
+        descriptorClone.setValidUntil(descriptor.getValidUntil());
+        descriptorClone.setCacheDuration(descriptor.getCacheDuration());
+    }
+
+    /** {@inheritDoc} */
+    protected void cloneChildElements(final XMLObject samlObject, final XMLObject clone)
+            throws MarshallingException, UnmarshallingException {
+        final EntityDescriptor descriptor = (EntityDescriptor) samlObject;
+        final EntityDescriptor descriptorClone = (EntityDescriptor) clone;
+
+        descriptorClone.setSignature(cloneChild(descriptor.getSignature()));
+        descriptorClone.setExtensions(cloneChild(descriptor.getExtensions()));
+        cloneChildren(descriptor.getRoleDescriptors(), descriptorClone.getRoleDescriptors());
+        descriptorClone.setAffiliationDescriptor(cloneChild(descriptor.getAffiliationDescriptor()));
+        descriptorClone.setOrganization(cloneChild(descriptor.getOrganization()));
+        cloneChildren(descriptor.getContactPersons(), descriptorClone.getContactPersons());
+        cloneChildren(descriptor.getAdditionalMetadataLocations(), descriptorClone.getAdditionalMetadataLocations());
+    }
+}
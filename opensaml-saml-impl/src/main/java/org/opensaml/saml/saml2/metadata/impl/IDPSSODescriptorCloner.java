@@ -0,0 +1,52 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.metadata.impl;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
+
+/**
+ * A thread safe Cloner for {@link org.opensaml.saml.saml2.metadata.IDPSSODescriptor} objects.
+ */
+public class IDPSSODescriptorCloner extends SSODescriptorCloner {
+
+    /** {@inheritDoc} */
+    protected void cloneAttributes(final XMLObject samlObject, final XMLObject clone) {
+        ((IDPSSODescriptor) clone).setWantAuthnRequestsSigned(
+                copyXSBooleanValue(((IDPSSODescriptor) samlObject).getWantAuthnRequestsSignedXSBoolean()));
+
+        super.cloneAttributes(samlObject, clone);
+    }
+
+    /** {@inheritDoc} */
+    protected void cloneChildElements(final XMLObject samlObject, final XMLObject clone)
+            throws MarshallingException, UnmarshallingException {
+        final IDPSSODescriptor descriptor = (IDPSSODescriptor) samlObject;
+        final IDPSSODescriptor descriptorClone = (IDPSSODescriptor) clone;
+
+        super.cloneChildElements(samlObject, clone);
+
+        cloneChildren(descriptor.getSingleSignOnServices(), descriptorClone.getSingleSignOnServices());
+        cloneChildren(descriptor.getNameIDMappingServices(), descriptorClone.getNameIDMappingServices());
+        cloneChildren(descriptor.getAssertionIDRequestServices(), descriptorClone.getAssertionIDRequestServices());
+        cloneChildren(descriptor.getAttributeProfiles(), descriptorClone.getAttributeProfiles());
+        cloneChildren(descriptor.getAttributes(), descriptorClone.getAttributes());
+    }
+}
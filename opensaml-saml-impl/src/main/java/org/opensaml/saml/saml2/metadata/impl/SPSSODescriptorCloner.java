@@ -0,0 +1,52 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.metadata.impl;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
+
+/**
+ * A thread safe Cloner for {@link org.opensaml.saml.saml2.metadata.SPSSODescriptor} objects.
+ */
+public class SPSSODescriptorCloner extends SSODescriptorCloner {
+
+    /** {@inheritDoc} */
+    protected void cloneAttributes(final XMLObject samlObject, final XMLObject clone) {
+        final SPSSODescriptor descriptor = (SPSSODescriptor) samlObject;
+        final SPSSODescriptor descriptorClone = (SPSSODescriptor) clone;
+
+        descriptorClone.setAuthnRequestsSigned(copyXSBooleanValue(descriptor.isAuthnRequestsSignedXSBoolean()));
+        descriptorClone.setWantAssertionsSigned(copyXSBooleanValue(descriptor.getWantAssertionsSignedXSBoolean()));
+
+        super.cloneAttributes(samlObject, clone);
+    }
+
+    /** {@inheritDoc} */
+    protected void cloneChildElements(final XMLObject samlObject, final XMLObject clone)
+            throws MarshallingException, UnmarshallingException {
+        final SPSSODescriptor descriptor = (SPSSODescriptor) samlObject;
+        final SPSSODescriptor descriptorClone = (SPSSODescriptor) clone;
+
+        super.cloneChildElements(samlObject, clone);
+
+        cloneChildren(descriptor.getAssertionConsumerServices(), descriptorClone.getAssertionConsumerServices());
+        cloneChildren(descriptor.getAttributeConsumingServices(), descriptorClone.getAttributeConsumingServices());
+    }
+}
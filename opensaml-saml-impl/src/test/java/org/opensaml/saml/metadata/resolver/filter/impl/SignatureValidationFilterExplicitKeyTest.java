@@ -17,28 +17,52 @@
 
 package org.opensaml.saml.metadata.resolver.filter.impl;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.security.KeyPair;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.Nonnull;
 
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.xml.SerializeSupport;
 import net.shibboleth.utilities.java.support.xml.XMLParserException;
 
+import org.opensaml.core.criterion.EntityIdCriterion;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.XMLObjectBaseTestCase;
 import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
 import org.opensaml.saml.metadata.resolver.impl.DOMMetadataResolver;
+import org.opensaml.saml.metadata.resolver.impl.FilesystemMetadataResolver;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.RoleDescriptor;
+import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
+import org.opensaml.security.credential.Credential;
 import org.opensaml.security.credential.CredentialSupport;
 import org.opensaml.security.credential.impl.StaticCredentialResolver;
+import org.opensaml.security.crypto.JCAConstants;
+import org.opensaml.security.crypto.KeySupport;
 import org.opensaml.security.x509.X509Credential;
 import org.opensaml.security.x509.X509Support;
+import org.opensaml.xmlsec.SignatureSigningParameters;
 import org.opensaml.xmlsec.SignatureValidationParameters;
 import org.opensaml.xmlsec.config.impl.DefaultSecurityConfigurationBootstrap;
 import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
 import org.opensaml.xmlsec.signature.support.SignatureConstants;
+import org.opensaml.xmlsec.signature.support.SignatureSupport;
 import org.opensaml.xmlsec.signature.support.SignatureTrustEngine;
 import org.opensaml.xmlsec.signature.support.SignatureValidationParametersCriterion;
 import org.opensaml.xmlsec.signature.support.impl.ExplicitKeySignatureTrustEngine;
@@ -249,4 +273,221 @@ public class SignatureValidationFilterExplicitKeyTest extends XMLObjectBaseTestC
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testSWITCHStreamingIngestion() throws Exception {
+        File mdFile = new File(SignatureValidationFilterExplicitKeyTest.class.getResource(switchMDFileValid).toURI());
+        
+        FilesystemMetadataResolver mdProvider = new FilesystemMetadataResolver(mdFile);
+        mdProvider.setParserPool(parserPool);
+        mdProvider.setId("test");
+        mdProvider.setRequireValidMetadata(false);
+        mdProvider.setStreamingIngestion(true);
+        mdProvider.setMetadataFilter(new SignatureValidationFilter(switchSigTrustEngine));
+        try {
+            mdProvider.initialize();
+            
+            // The signed aggregate can't be streamed, so is processed in its entirety and its signature verified.
+            final EntityDescriptor entity = mdProvider.resolveSingle(
+                    new CriteriaSet(new EntityIdCriterion("urn:mace:switch.ch:aaitest:dukono.switch.ch")));
+            Assert.assertNotNull(entity);
+            XMLObject root = entity;
+            while (root.getParent() != null) {
+                root = root.getParent();
+            }
+            Assert.assertNotNull(((EntitiesDescriptor) root).getSignature());
+        } finally {
+            mdProvider.destroy();
+        }
+    }
+    
+    @Test
+    public void testInvalidSWITCHStreamingIngestion() throws Exception {
+        File mdFile = new File(SignatureValidationFilterExplicitKeyTest.class.getResource(switchMDFileInvalid).toURI());
+        
+        FilesystemMetadataResolver mdProvider = new FilesystemMetadataResolver(mdFile);
+        mdProvider.setParserPool(parserPool);
+        mdProvider.setId("test");
+        mdProvider.setRequireValidMetadata(false);
+        mdProvider.setStreamingIngestion(true);
+        mdProvider.setMetadataFilter(new SignatureValidationFilter(switchSigTrustEngine));
+        try {
+            mdProvider.initialize();
+            Assert.fail("Metadata signature was invalid, provider initialization should have failed");
+        } catch (ComponentInitializationException e) {
+            // do nothing, failure expected
+        } finally {
+            mdProvider.destroy();
+        }
+    }
+    
+    @Test
+    public void testEntitiesDescriptorParallel() throws Exception {
+        X509Certificate cert = X509Support.decodeCertificate(openIDCertBase64);
+        X509Credential cred = CredentialSupport.getSimpleCredential(cert, null);
+        StaticCredentialResolver credResolver = new StaticCredentialResolver(cred);
+        SignatureTrustEngine trustEngine = new ExplicitKeySignatureTrustEngine(credResolver, kiResolver);
+        
+        EntitiesDescriptor group = buildXMLObject(EntitiesDescriptor.DEFAULT_ELEMENT_NAME);
+        EntityDescriptor valid1 = unmarshallEntityDescriptor(openIDFileValid);
+        EntityDescriptor invalid = unmarshallEntityDescriptor(openIDFileInvalid);
+        EntityDescriptor valid2 = unmarshallEntityDescriptor(openIDFileValid);
+        group.getEntityDescriptors().add(valid1);
+        group.getEntityDescriptors().add(invalid);
+        group.getEntityDescriptors().add(valid2);
+        
+        SignatureValidationFilter filter = new SignatureValidationFilter(trustEngine);
+        filter.setRequireSignedRoot(false);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            filter.setVerificationExecutor(executor);
+            filter.setVerificationParallelism(3);
+            filter.filter(group);
+        } finally {
+            executor.shutdownNow();
+        }
+        
+        Assert.assertEquals(group.getEntityDescriptors().size(), 2);
+        Assert.assertSame(group.getEntityDescriptors().get(0), valid1);
+        Assert.assertSame(group.getEntityDescriptors().get(1), valid2);
+    }
+    
+    @Test
+    public void testEntitiesDescriptorParallelSharedDocument() throws Exception {
+        KeyPair kp = KeySupport.generateKeyPair(JCAConstants.KEY_ALGO_RSA, 1024, null);
+        Credential signingCred = CredentialSupport.getSimpleCredential(kp.getPublic(), kp.getPrivate());
+        
+        SignatureSigningParameters signingParams = new SignatureSigningParameters();
+        signingParams.setSigningCredential(signingCred);
+        signingParams.setSignatureAlgorithm(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256);
+        signingParams.setSignatureCanonicalizationAlgorithm(SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+        signingParams.setSignatureReferenceDigestMethod(SignatureConstants.ALGO_ID_DIGEST_SHA256);
+        
+        SignatureTrustEngine trustEngine = new ExplicitKeySignatureTrustEngine(
+                new StaticCredentialResolver(signingCred), kiResolver);
+        
+        EntitiesDescriptor source = buildXMLObject(EntitiesDescriptor.DEFAULT_ELEMENT_NAME);
+        for (int i = 0; i < 16; i++) {
+            EntityDescriptor entity = buildXMLObject(EntityDescriptor.DEFAULT_ELEMENT_NAME);
+            entity.setID("_entity" + i);
+            entity.setEntityID("urn:test:entity:" + i);
+            entity.getRoleDescriptors().add((RoleDescriptor) buildXMLObject(SPSSODescriptor.DEFAULT_ELEMENT_NAME));
+            SignatureSupport.signObject(entity, signingParams);
+            source.getEntityDescriptors().add(entity);
+        }
+        
+        // Tamper with two members after signing, then re-parse so that all members share one document.
+        String serialized = SerializeSupport.nodeToString(XMLObjectSupport.marshall(source))
+                .replace("\"urn:test:entity:3\"", "\"urn:test:entity:3:INVALID\"")
+                .replace("\"urn:test:entity:12\"", "\"urn:test:entity:12:INVALID\"");
+        Document mdDoc = parserPool.parse(new ByteArrayInputStream(serialized.getBytes("UTF-8")));
+        EntitiesDescriptor group = (EntitiesDescriptor) unmarshallerFactory.getUnmarshaller(
+                mdDoc.getDocumentElement()).unmarshall(mdDoc.getDocumentElement());
+        
+        SignatureValidationFilter filter = new SignatureValidationFilter(trustEngine);
+        filter.setRequireSignedRoot(false);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            filter.setVerificationExecutor(executor);
+            filter.setVerificationParallelism(4);
+            filter.filter(group);
+        } finally {
+            executor.shutdownNow();
+        }
+        
+        Assert.assertEquals(group.getEntityDescriptors().size(), 14);
+        int index = 0;
+        for (int i = 0; i < 16; i++) {
+            if (i == 3 || i == 12) {
+                continue;
+            }
+            EntityDescriptor entity = group.getEntityDescriptors().get(index++);
+            Assert.assertEquals(entity.getEntityID(), "urn:test:entity:" + i);
+            Assert.assertSame(entity.getDOM().getOwnerDocument(), mdDoc);
+            Assert.assertEquals(entity.getRoleDescriptors().size(), 1);
+        }
+    }
+    
+    @Test
+    public void testEntitiesDescriptorParallelProcessingHook() throws Exception {
+        X509Certificate cert = X509Support.decodeCertificate(openIDCertBase64);
+        X509Credential cred = CredentialSupport.getSimpleCredential(cert, null);
+        StaticCredentialResolver credResolver = new StaticCredentialResolver(cred);
+        SignatureTrustEngine trustEngine = new ExplicitKeySignatureTrustEngine(credResolver, kiResolver);
+        
+        EntitiesDescriptor group = buildXMLObject(EntitiesDescriptor.DEFAULT_ELEMENT_NAME);
+        group.getEntityDescriptors().add(unmarshallEntityDescriptor(openIDFileValid));
+        group.getEntityDescriptors().add(unmarshallEntityDescriptor(openIDFileValid));
+        group.getEntityDescriptors().add(unmarshallEntityDescriptor(openIDFileValid));
+        
+        // Rejects every member, even though all of their signatures are valid.
+        final List<EntityDescriptor> processed = Collections.synchronizedList(new ArrayList<EntityDescriptor>());
+        SignatureValidationFilter filter = new SignatureValidationFilter(trustEngine) {
+            protected void processEntityDescriptor(@Nonnull final EntityDescriptor entityDescriptor)
+                    throws FilterException {
+                super.processEntityDescriptor(entityDescriptor);
+                processed.add(entityDescriptor);
+                throw new FilterException("Rejected by subclass");
+            }
+        };
+        filter.setRequireSignedRoot(false);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            filter.setVerificationExecutor(executor);
+            filter.setVerificationParallelism(3);
+            filter.filter(group);
+        } finally {
+            executor.shutdownNow();
+        }
+        
+        Assert.assertEquals(processed.size(), 3);
+        Assert.assertTrue(group.getEntityDescriptors().isEmpty());
+    }
+    
+    @Test
+    public void testEntitiesDescriptorParallelRejected() throws Exception {
+        X509Certificate cert = X509Support.decodeCertificate(openIDCertBase64);
+        X509Credential cred = CredentialSupport.getSimpleCredential(cert, null);
+        StaticCredentialResolver credResolver = new StaticCredentialResolver(cred);
+        SignatureTrustEngine trustEngine = new ExplicitKeySignatureTrustEngine(credResolver, kiResolver);
+        
+        EntitiesDescriptor group = buildXMLObject(EntitiesDescriptor.DEFAULT_ELEMENT_NAME);
+        group.getEntityDescriptors().add(unmarshallEntityDescriptor(openIDFileValid));
+        group.getEntityDescriptors().add(unmarshallEntityDescriptor(openIDFileValid));
+        group.getEntityDescriptors().add(unmarshallEntityDescriptor(openIDFileValid));
+        
+        // Accepts the first task without running it, then rejects the next.
+        final List<Runnable> accepted = new ArrayList<>();
+        Executor executor = new Executor() {
+            public void execute(final Runnable command) {
+                if (!accepted.isEmpty()) {
+                    throw new RejectedExecutionException("Saturated");
+                }
+                accepted.add(command);
+            }
+        };
+        
+        SignatureValidationFilter filter = new SignatureValidationFilter(trustEngine);
+        filter.setRequireSignedRoot(false);
+        filter.setVerificationExecutor(executor);
+        filter.setVerificationParallelism(3);
+        try {
+            filter.filter(group);
+            Assert.fail("Rejected verification task should have failed the filter");
+        } catch (final FilterException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        
+        Assert.assertEquals(accepted.size(), 1);
+        Assert.assertTrue(((Future<?>) accepted.get(0)).isCancelled());
+    }
+    
+    private EntityDescriptor unmarshallEntityDescriptor(String path) throws XMLParserException, UnmarshallingException {
+        Document mdDoc = parserPool.parse(SignatureValidationFilterExplicitKeyTest.class.getResourceAsStream(path));
+        return (EntityDescriptor) unmarshallerFactory.getUnmarshaller(mdDoc.getDocumentElement())
+                .unmarshall(mdDoc.getDocumentElement());
+    }
+
+}
@@ -18,15 +18,30 @@
 package org.opensaml.saml.metadata.resolver.impl;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
 import org.apache.http.HttpStatus;
 import org.apache.http.ProtocolVersion;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.message.BasicHeader;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
 import org.opensaml.core.criterion.EntityIdCriterion;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.XMLObjectBaseTestCase;
@@ -134,6 +149,78 @@ public class AbstractDynamicHTTPMetadataResolverTest extends XMLObjectBaseTestCa
         Assert.assertNull(result);
     }
     
+    @Test
+    public void testRequestPermitsSaturated() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final CloseableHttpClient blockingClient = new CloseableHttpClient() {
+            protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context)
+                    throws IOException {
+                entered.countDown();
+                try {
+                    proceed.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IOException("Request to " + target.getHostName() + " completed");
+            }
+            public void close() {
+            }
+            public HttpParams getParams() {
+                return null;
+            }
+            public ClientConnectionManager getConnectionManager() {
+                return null;
+            }
+        };
+        
+        final MockDynamicHTTPMetadataResolver limited = new MockDynamicHTTPMetadataResolver(blockingClient);
+        limited.setId("limitedResolver");
+        limited.setParserPool(parserPool);
+        limited.setMaxConcurrentRequestsPerHost(1);
+        limited.setRequestPermitTimeout(100);
+        limited.initialize();
+        
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<XMLObject> first = executor.submit(new Callable<XMLObject>() {
+                public XMLObject call() throws Exception {
+                    return limited.fetchFromOriginSource(
+                            new CriteriaSet(new RequestURLCriterion("http://example.org/first")));
+                }
+            });
+            Assert.assertTrue(entered.await(10, TimeUnit.SECONDS));
+            
+            // The only permit for the host is held, regardless of the case of the host name.
+            try {
+                limited.fetchFromOriginSource(new CriteriaSet(new RequestURLCriterion("http://EXAMPLE.org/second")));
+                Assert.fail("Request should have timed out waiting for a permit");
+            } catch (final IOException e) {
+                Assert.assertTrue(e.getMessage().startsWith("Timed out waiting for permit"), e.getMessage());
+            }
+            
+            proceed.countDown();
+            try {
+                first.get(10, TimeUnit.SECONDS);
+                Assert.fail("Blocked request should have failed");
+            } catch (final ExecutionException e) {
+                Assert.assertEquals(e.getCause().getMessage(), "Request to example.org completed");
+            }
+            
+            // Once released, the permit is available again.
+            try {
+                limited.fetchFromOriginSource(new CriteriaSet(new RequestURLCriterion("http://example.org/third")));
+                Assert.fail("Request should have reached the client");
+            } catch (final IOException e) {
+                Assert.assertEquals(e.getMessage(), "Request to example.org completed");
+            }
+        } finally {
+            proceed.countDown();
+            executor.shutdownNow();
+            limited.destroy();
+        }
+    }
+    
     
     
     // Helpers
@@ -18,27 +18,53 @@
 package org.opensaml.saml.metadata.resolver.impl;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.security.KeyPair;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.SecretKey;
+import org.joda.time.DateTime;
+import org.joda.time.chrono.ISOChronology;
+import org.opensaml.core.config.ConfigurationService;
 import org.opensaml.core.criterion.EntityIdCriterion;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.XMLObjectBaseTestCase;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.persist.FilesystemLoadSaveManager;
 import org.opensaml.core.xml.persist.MapLoadSaveManager;
+import org.opensaml.core.xml.persist.ProcessedStateMarker;
+import org.opensaml.core.xml.persist.SegmentFileLoadSaveManager;
 import org.opensaml.core.xml.persist.XMLObjectLoadSaveManager;
 import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.opensaml.saml.criterion.EntityRoleCriterion;
+import org.opensaml.saml.metadata.resolver.filter.FilterException;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilterChain;
 import org.opensaml.saml.metadata.resolver.filter.impl.SignatureValidationFilter;
 import org.opensaml.saml.metadata.resolver.impl.AbstractDynamicMetadataResolver.DynamicEntityBackingStore;
+import org.opensaml.saml.metadata.resolver.impl.AbstractDynamicMetadataResolver.EntityManagementData;
 import org.opensaml.saml.metadata.resolver.index.MetadataIndex;
 import org.opensaml.saml.metadata.resolver.index.impl.FunctionDrivenMetadataIndex;
 import org.opensaml.saml.metadata.resolver.index.impl.RoleMetadataIndex;
@@ -68,6 +94,8 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
@@ -503,6 +531,166 @@ public class AbstractDynamicMetadataResolverTest extends XMLObjectBaseTestCase {
         Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id3))), ed3);
     }
     
+    @Test
+    public void testInitFromPersistentCacheInParallel() throws ComponentInitializationException, ResolverException, IOException {
+        persistentCacheKeyGenerator = new AbstractDynamicMetadataResolver.DefaultCacheKeyGenerator();
+        persistentCacheManager.save(persistentCacheKeyGenerator.apply(ed1), ed1);
+        persistentCacheManager.save(persistentCacheKeyGenerator.apply(ed2), ed2);
+        persistentCacheManager.save(persistentCacheKeyGenerator.apply(ed3), ed3);
+        
+        resolver.setPersistentCacheManager(persistentCacheManager);
+        resolver.setPersistentCacheKeyGenerator(persistentCacheKeyGenerator);
+        resolver.setInitializeFromPersistentCacheInBackground(false);
+        resolver.setPersistentCacheInitializationThreads(2);
+        
+        resolver.initialize();
+        
+        DynamicEntityBackingStore backingStore = resolver.getBackingStore();
+        
+        // These will be there before any resolve() calls, loaded from the persistent cache
+        for (String entityID : Lists.newArrayList(id1, id2, id3)) {
+            Assert.assertTrue(backingStore.getIndexedDescriptors().containsKey(entityID));
+            Assert.assertEquals(backingStore.getIndexedDescriptors().get(entityID).size(), 1);
+        }
+        
+        AbstractDynamicMetadataResolver.PersistentCacheInitializationMetrics metrics = 
+                resolver.getPersistentCacheInitializationMetrics();
+        Assert.assertFalse(metrics.isInProgress());
+        Assert.assertEquals(metrics.getWorkerThreads(), 2);
+        Assert.assertEquals(metrics.getEntriesExpected(), 3);
+        Assert.assertEquals(metrics.getEntriesTotal(), 3);
+        Assert.assertEquals(metrics.getEntriesLoaded(), 3);
+        
+        Assert.assertTrue(sourceMap.isEmpty());
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))), ed1);
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id2))), ed2);
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id3))), ed3);
+    }
+    
+    @Test
+    public void testPersistFilteredMetadata() throws ComponentInitializationException, ResolverException, IOException, 
+            MarshallingException, UnmarshallingException, NoSuchAlgorithmException, NoSuchProviderException {
+        final AtomicInteger filterCount = new AtomicInteger();
+        final MetadataFilter countingFilter = new MetadataFilter() {
+            public XMLObject filter(XMLObject metadata) throws FilterException {
+                filterCount.incrementAndGet();
+                return metadata;
+            }
+        };
+        final SecretKey key = KeySupport.generateKey(JCAConstants.KEY_ALGO_AES, 128, null);
+        
+        final File cacheDir = Files.createTempDirectory("filtered-cache").toFile();
+        cacheDir.deleteOnExit();
+        final File cacheFile = new File(cacheDir, "cache.seg");
+        cacheFile.deleteOnExit();
+        final SegmentFileLoadSaveManager<EntityDescriptor> segmentManager = 
+                new SegmentFileLoadSaveManager<>(cacheFile);
+        
+        try {
+            sourceMap.put(id1, ed1);
+            
+            resolver.setPersistentCacheManager(segmentManager);
+            resolver.setMetadataFilter(countingFilter);
+            resolver.setPersistFilteredMetadata(true);
+            resolver.setProcessedStateKey(key);
+            resolver.initialize();
+            
+            final EntityDescriptor live = resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1)));
+            Assert.assertNotNull(live);
+            Assert.assertEquals(filterCount.get(), 1);
+            
+            // The original is stored as usual, and a marked copy of the filtered metadata alongside it
+            final String cacheKey = resolver.getPersistentCacheKeyGenerator().apply(ed1);
+            Assert.assertFalse(
+                    segmentManager.load(cacheKey).getObjectMetadata().containsKey(ProcessedStateMarker.class));
+            final EntityDescriptor processed = segmentManager.load(cacheKey + ".processed");
+            Assert.assertNotNull(processed);
+            final String mac = processed.getObjectMetadata().get(ProcessedStateMarker.class).get(0).getSourceDigest();
+            Assert.assertNotNull(mac);
+            Assert.assertFalse(live.getObjectMetadata().containsKey(ProcessedStateMarker.class));
+            
+            // An entry without filtered state, e.g. from an earlier version or with the option disabled
+            segmentManager.save(resolver.getPersistentCacheKeyGenerator().apply(ed2), ed2);
+            
+            // An entry whose filtered state carries a MAC computed over other content
+            final EntityDescriptor ed3Processed = XMLObjectSupport.cloneXMLObject(ed3);
+            ed3Processed.getObjectMetadata().put(new ProcessedStateMarker(mac));
+            segmentManager.save(resolver.getPersistentCacheKeyGenerator().apply(ed3), ed3);
+            segmentManager.save(resolver.getPersistentCacheKeyGenerator().apply(ed3) + ".processed", 
+                    ed3Processed);
+            
+            resolver.destroy();
+            
+            // Only the entries without matching filtered state are filtered again
+            filterCount.set(0);
+            resolver = buildPersistedStateResolver(segmentManager, countingFilter, key);
+            Assert.assertEquals(filterCount.get(), 2);
+            Assert.assertEquals(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))).getEntityID(), 
+                    id1);
+            Assert.assertNotNull(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id2))));
+            Assert.assertNotNull(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id3))));
+            Assert.assertEquals(filterCount.get(), 2);
+            resolver.destroy();
+            
+            // A different filter, or a different key, invalidates all the filtered state
+            filterCount.set(0);
+            final MetadataFilterChain chain = new MetadataFilterChain();
+            chain.setFilters(Collections.singletonList(countingFilter));
+            resolver = buildPersistedStateResolver(segmentManager, chain, key);
+            Assert.assertEquals(filterCount.get(), 3);
+            resolver.destroy();
+            
+            filterCount.set(0);
+            resolver = buildPersistedStateResolver(segmentManager, countingFilter, 
+                    KeySupport.generateKey(JCAConstants.KEY_ALGO_AES, 128, null));
+            Assert.assertEquals(filterCount.get(), 3);
+        } finally {
+            segmentManager.close();
+        }
+    }
+    
+    @Test(expectedExceptions=ComponentInitializationException.class)
+    public void testPersistFilteredMetadataNoKey() throws ComponentInitializationException {
+        resolver.setPersistentCacheManager(persistentCacheManager);
+        resolver.setPersistFilteredMetadata(true);
+        resolver.initialize();
+    }
+    
+    @Test(expectedExceptions=ComponentInitializationException.class)
+    public void testPersistFilteredMetadataUnsupportedManager() throws ComponentInitializationException, IOException {
+        final File cacheDir = Files.createTempDirectory("filtered-cache").toFile();
+        cacheDir.deleteOnExit();
+        
+        resolver.setPersistentCacheManager(new FilesystemLoadSaveManager<EntityDescriptor>(cacheDir));
+        resolver.setPersistFilteredMetadata(true);
+        resolver.initialize();
+    }
+    
+    /**
+     * Build and initialize a resolver which persists filtered metadata, initializing from the persistent cache in
+     * the foreground.
+     * 
+     * @param manager the persistent cache manager
+     * @param filter the metadata filter
+     * @param key the processed state key
+     * @return the resolver
+     * @throws ComponentInitializationException if the resolver can not be initialized
+     */
+    private MockDynamicResolver buildPersistedStateResolver(final XMLObjectLoadSaveManager<EntityDescriptor> manager,
+            final MetadataFilter filter, final SecretKey key) throws ComponentInitializationException {
+        final MockDynamicResolver persistedStateResolver = 
+                new MockDynamicResolver(new HashMap<String, EntityDescriptor>());
+        persistedStateResolver.setId("test456");
+        persistedStateResolver.setParserPool(XMLObjectProviderRegistrySupport.getParserPool());
+        persistedStateResolver.setPersistentCacheManager(manager);
+        persistedStateResolver.setMetadataFilter(filter);
+        persistedStateResolver.setPersistFilteredMetadata(true);
+        persistedStateResolver.setProcessedStateKey(key);
+        persistedStateResolver.setInitializeFromPersistentCacheInBackground(false);
+        persistedStateResolver.initialize();
+        return persistedStateResolver;
+    }
+    
     @Test
     public void testSecondaryIndexAfterEntityIDResolution() throws ComponentInitializationException, ResolverException {
         sourceMap.put(id1, ed1);
@@ -600,6 +788,240 @@ public class AbstractDynamicMetadataResolverTest extends XMLObjectBaseTestCase {
         Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))), ed1);
     }
     
+    @Test
+    public void testResolveAsync() throws ComponentInitializationException, ResolverException, 
+            InterruptedException, ExecutionException, TimeoutException {
+        sourceMap.put(id1, ed1);
+        sourceMap.put(id2, ed2);
+        
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            resolver.setResolveExecutor(executor);
+            resolver.initialize();
+            
+            Future<Iterable<EntityDescriptor>> result = 
+                    resolver.resolveAsync(new CriteriaSet(new EntityIdCriterion(id1)));
+            Assert.assertSame(Iterables.getOnlyElement(result.get(10, TimeUnit.SECONDS)), ed1);
+            
+            // Now in the backing store, so resolved synchronously
+            result = resolver.resolveAsync(new CriteriaSet(new EntityIdCriterion(id1)));
+            Assert.assertTrue(result.isDone());
+            Assert.assertSame(Iterables.getOnlyElement(result.get()), ed1);
+            
+            result = resolver.resolveAsync(new CriteriaSet(new EntityIdCriterion(id3)));
+            Assert.assertTrue(Iterables.isEmpty(result.get(10, TimeUnit.SECONDS)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void testResolveAsyncNoExecutor() throws ComponentInitializationException, ResolverException, 
+            InterruptedException, ExecutionException {
+        sourceMap.put(id1, ed1);
+        
+        resolver.initialize();
+        
+        final Future<Iterable<EntityDescriptor>> result = 
+                resolver.resolveAsync(new CriteriaSet(new EntityIdCriterion(id1)));
+        Assert.assertTrue(result.isDone());
+        Assert.assertSame(Iterables.getOnlyElement(result.get()), ed1);
+    }
+    
+    @Test
+    public void testRefreshAhead() throws ComponentInitializationException, ResolverException {
+        sourceMap.put(id1, ed1);
+        sourceMap.put(id2, ed2);
+        
+        resolver.setRefreshAhead(true);
+        resolver.setResolveExecutor(new Executor() {
+            public void execute(final Runnable command) {
+                command.run();
+            }
+        });
+        resolver.setRefreshAheadAccessThreshold(2);
+        // Longer than the refresh trigger time, so any sufficiently accessed entity qualifies.
+        resolver.setRefreshAheadTaskInterval(24*60*60*1000L);
+        resolver.initialize();
+        
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))), ed1);
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))), ed1);
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id2))), ed2);
+        
+        // Reset the access counts from the initial resolution
+        resolver.getBackingStore().getManagementData(id1).getAndResetAccessCount();
+        resolver.getBackingStore().getManagementData(id2).getAndResetAccessCount();
+        
+        EntityDescriptor ed1Refreshed = buildXMLObject(EntityDescriptor.DEFAULT_ELEMENT_NAME);
+        ed1Refreshed.setEntityID(id1);
+        ed1Refreshed.getRoleDescriptors().add((RoleDescriptor) buildXMLObject(SPSSODescriptor.DEFAULT_ELEMENT_NAME));
+        sourceMap.put(id1, ed1Refreshed);
+        
+        EntityDescriptor ed2Refreshed = buildXMLObject(EntityDescriptor.DEFAULT_ELEMENT_NAME);
+        ed2Refreshed.setEntityID(id2);
+        ed2Refreshed.getRoleDescriptors().add((RoleDescriptor) buildXMLObject(SPSSODescriptor.DEFAULT_ELEMENT_NAME));
+        sourceMap.put(id2, ed2Refreshed);
+        
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))), ed1);
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))), ed1);
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id2))), ed2);
+        
+        resolver.new RefreshAheadSweeper().run();
+        
+        // Only the frequently accessed entity is refreshed
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))), ed1Refreshed);
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id2))), ed2);
+        
+        Assert.assertEquals(resolver.getRefreshAheadMetrics().getAttempted(), 1);
+        Assert.assertEquals(resolver.getRefreshAheadMetrics().getSucceeded(), 1);
+        Assert.assertEquals(resolver.getRefreshAheadMetrics().getFailed(), 0);
+        Assert.assertEquals(resolver.getRefreshAheadMetrics().getHits(), 1);
+    }
+    
+    @Test(expectedExceptions=ComponentInitializationException.class)
+    public void testRefreshAheadNoExecutor() throws ComponentInitializationException {
+        resolver.setRefreshAhead(true);
+        resolver.initialize();
+    }
+    
+    @Test
+    public void testRefreshAheadNoMetadata() throws ComponentInitializationException, ResolverException {
+        sourceMap.put(id1, ed1);
+        
+        resolver.setRefreshAhead(true);
+        resolver.setResolveExecutor(new Executor() {
+            public void execute(final Runnable command) {
+                command.run();
+            }
+        });
+        resolver.setRefreshAheadAccessThreshold(1);
+        resolver.setRefreshAheadTaskInterval(24*60*60*1000L);
+        resolver.initialize();
+        
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))), ed1);
+        
+        final EntityManagementData mgmtData = resolver.getBackingStore().getManagementData(id1);
+        final DateTime originalTrigger = new DateTime(ISOChronology.getInstanceUTC()).minusSeconds(1);
+        mgmtData.setRefreshTriggerTime(originalTrigger);
+        
+        sourceMap.remove(id1);
+        
+        resolver.new RefreshAheadSweeper().run();
+        
+        // The trigger is advanced so the next run doesn't retry immediately, and the current metadata is kept.
+        Assert.assertTrue(mgmtData.getRefreshTriggerTime().isAfter(originalTrigger));
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))), ed1);
+        Assert.assertEquals(resolver.getRefreshAheadMetrics().getAttempted(), 1);
+        Assert.assertEquals(resolver.getRefreshAheadMetrics().getFailed(), 1);
+    }
+    
+    @Test
+    public void testConcurrentResolution() throws ComponentInitializationException, InterruptedException, 
+            ExecutionException, ResolverException {
+        final int numEntities = 200;
+        for (int i = 0; i < numEntities; i++) {
+            EntityDescriptor ed = buildXMLObject(EntityDescriptor.DEFAULT_ELEMENT_NAME);
+            ed.setEntityID("urn:test:concurrent:" + i);
+            ed.getRoleDescriptors().add((RoleDescriptor) buildXMLObject(SPSSODescriptor.DEFAULT_ELEMENT_NAME));
+            sourceMap.put(ed.getEntityID(), ed);
+        }
+        
+        resolver.setIndexes(Collections.<MetadataIndex>singleton(new RoleMetadataIndex()));
+        resolver.initialize();
+        
+        final ExecutorService executor = Executors.newFixedThreadPool(32);
+        try {
+            final List<Future<EntityDescriptor>> results = new ArrayList<>();
+            for (int round = 0; round < 4; round++) {
+                for (int i = 0; i < numEntities; i++) {
+                    final String entityID = "urn:test:concurrent:" + i;
+                    results.add(executor.submit(new Callable<EntityDescriptor>() {
+                        public EntityDescriptor call() throws ResolverException {
+                            return resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(entityID)));
+                        }
+                    }));
+                }
+            }
+            
+            for (int i = 0; i < results.size(); i++) {
+                Assert.assertSame(results.get(i).get(), sourceMap.get("urn:test:concurrent:" + (i % numEntities)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        
+        DynamicEntityBackingStore backingStore = resolver.getBackingStore();
+        Assert.assertEquals(backingStore.getIndexedDescriptors().size(), numEntities);
+        for (final List<EntityDescriptor> descriptors : backingStore.getIndexedDescriptors().values()) {
+            Assert.assertEquals(descriptors.size(), 1);
+        }
+        Assert.assertEquals(Iterables.size(resolver.resolve(
+                new CriteriaSet(new EntityRoleCriterion(SPSSODescriptor.DEFAULT_ELEMENT_NAME)))), numEntities);
+    }
+    
+    @Test
+    public void testCoalescedSecondaryLookup() throws ComponentInitializationException, InterruptedException, 
+            ExecutionException, TimeoutException {
+        sourceMap.put(id1.toUpperCase(), ed1);
+        
+        final BlockingMockDynamicResolver blockingResolver = new BlockingMockDynamicResolver(sourceMap);
+        blockingResolver.setId("test456");
+        blockingResolver.setParserPool(XMLObjectProviderRegistrySupport.getParserPool());
+        blockingResolver.setSecondaryLookup(true);
+        
+        HashSet<MetadataIndex> indexes = new HashSet<>();
+        indexes.add(new FunctionDrivenMetadataIndex(new UppercaseEntityIdDescriptorFunction(), new SimpleStringCriteriaFunction()));
+        blockingResolver.setIndexes(indexes);
+        
+        // The second request marks the coalesced fetch meter once it has found the fetch in progress.
+        final CountDownLatch coalesced = new CountDownLatch(1);
+        final MetricRegistry registry = new MetricRegistry();
+        blockingResolver.setMetricsBaseName("test456");
+        registry.register(MetricRegistry.name("test456", 
+                AbstractDynamicMetadataResolver.METRIC_METER_COALESCED_FETCH_FROM_ORIGIN_SOURCE), 
+                new Meter() {
+                    public void mark(long n) {
+                        super.mark(n);
+                        coalesced.countDown();
+                    }
+                });
+        final MetricRegistry previousRegistry = ConfigurationService.get(MetricRegistry.class);
+        ConfigurationService.register(MetricRegistry.class, registry);
+        try {
+            blockingResolver.initialize();
+        } finally {
+            if (previousRegistry != null) {
+                ConfigurationService.register(MetricRegistry.class, previousRegistry);
+            } else {
+                ConfigurationService.deregister(MetricRegistry.class);
+            }
+        }
+        
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Callable<EntityDescriptor> resolveTask = new Callable<EntityDescriptor>() {
+                public EntityDescriptor call() throws ResolverException {
+                    return blockingResolver.resolveSingle(
+                            new CriteriaSet(new SimpleStringCriterion(id1.toUpperCase())));
+                }
+            };
+            
+            final Future<EntityDescriptor> first = executor.submit(resolveTask);
+            Assert.assertTrue(blockingResolver.fetchStarted.await(10, TimeUnit.SECONDS));
+            final Future<EntityDescriptor> second = executor.submit(resolveTask);
+            
+            Assert.assertTrue(coalesced.await(10, TimeUnit.SECONDS));
+            blockingResolver.fetchRelease.countDown();
+            
+            Assert.assertSame(first.get(10, TimeUnit.SECONDS), ed1);
+            Assert.assertSame(second.get(10, TimeUnit.SECONDS), ed1);
+            Assert.assertEquals(blockingResolver.fetchCount.get(), 1);
+        } finally {
+            executor.shutdownNow();
+            blockingResolver.destroy();
+        }
+    }
+    
     // Helper classes
     
     private static class MockDynamicResolver extends AbstractDynamicMetadataResolver {
@@ -633,4 +1055,29 @@ public class AbstractDynamicMetadataResolverTest extends XMLObjectBaseTestCase {
 
     }
     
+    private static class BlockingMockDynamicResolver extends MockDynamicResolver {
+        
+        private final AtomicInteger fetchCount = new AtomicInteger();
+        
+        private final CountDownLatch fetchStarted = new CountDownLatch(1);
+        
+        private final CountDownLatch fetchRelease = new CountDownLatch(1);
+
+        public BlockingMockDynamicResolver(Map<String, EntityDescriptor> map) {
+            super(map);
+        }
+        
+        protected XMLObject fetchFromOriginSource(CriteriaSet criteria) throws IOException {
+            fetchCount.incrementAndGet();
+            fetchStarted.countDown();
+            try {
+                fetchRelease.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return super.fetchFromOriginSource(criteria);
+        }
+        
+    }
+    
 }
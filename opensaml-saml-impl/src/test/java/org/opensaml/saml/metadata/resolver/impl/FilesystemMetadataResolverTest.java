@@ -21,18 +21,34 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import net.shibboleth.utilities.java.support.resolver.ResolverException;
 
 import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.saml.common.profile.logic.EntityIdPredicate;
+import org.opensaml.saml.metadata.resolver.filter.FilterException;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
+import org.opensaml.saml.metadata.resolver.filter.impl.PredicateFilter;
+import org.opensaml.saml.metadata.resolver.filter.impl.PredicateFilter.Direction;
+import org.opensaml.saml.metadata.resolver.filter.impl.RequiredValidUntilFilter;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.google.common.collect.Iterators;
 import com.google.common.io.Files;
 
 public class FilesystemMetadataResolverTest extends XMLObjectBaseTestCase {
@@ -234,4 +250,355 @@ public class FilesystemMetadataResolverTest extends XMLObjectBaseTestCase {
         EntityDescriptor entity = metadataProvider.resolveSingle(new CriteriaSet(new EntityIdCriterion("https://idp.example.org")));
         Assert.assertNull(entity);
     }
-}
\ No newline at end of file
+    
+    @Test
+    public void testDeltaRefresh() throws IOException, ComponentInitializationException, ResolverException {
+        File targetFile = File.createTempFile("filesystem-md-provider-test", ".xml");
+        String original = Files.toString(mdFile, StandardCharsets.UTF_8);
+        Files.write(original, targetFile, StandardCharsets.UTF_8);
+        
+        try {
+            metadataProvider = new FilesystemMetadataResolver(targetFile);
+            metadataProvider.setParserPool(parserPool);
+            metadataProvider.setId("test");
+            metadataProvider.setDeltaRefresh(true);
+            metadataProvider.initialize();
+            
+            int entityCount = Iterators.size(metadataProvider.iterator());
+            XMLObject previousRoot = metadataProvider.getCachedFilteredMetadata();
+            EntityDescriptor unchanged = metadataProvider.resolveSingle(criteriaSet);
+            Assert.assertNotNull(unchanged);
+            Assert.assertNotNull(metadataProvider.resolveSingle(
+                    new CriteriaSet(new EntityIdCriterion("urn:mace:incommon:osu.edu"))));
+            
+            Files.write(original.replace("urn:mace:incommon:osu.edu", "urn:mace:incommon:osu.edu:changed"),
+                    targetFile, StandardCharsets.UTF_8);
+            Assert.assertTrue(targetFile.setLastModified(System.currentTimeMillis() + 60000));
+            metadataProvider.refresh();
+            
+            Assert.assertEquals(Iterators.size(metadataProvider.iterator()), entityCount);
+            EntityDescriptor reused = metadataProvider.resolveSingle(criteriaSet);
+            Assert.assertNotNull(reused);
+            Assert.assertNotSame(reused, unchanged);
+            Assert.assertEquals(reused.getEntityID(), entityID);
+            Assert.assertSame(reused.getParent(), metadataProvider.getCachedFilteredMetadata());
+            Assert.assertSame(unchanged.getParent(), previousRoot);
+            Assert.assertNull(metadataProvider.resolveSingle(
+                    new CriteriaSet(new EntityIdCriterion("urn:mace:incommon:osu.edu"))));
+            Assert.assertNotNull(metadataProvider.resolveSingle(
+                    new CriteriaSet(new EntityIdCriterion("urn:mace:incommon:osu.edu:changed"))));
+        } finally {
+            targetFile.delete();
+        }
+    }
+    
+    @Test
+    public void testDeltaRefreshUnchanged() throws IOException, ComponentInitializationException, ResolverException {
+        File targetFile = File.createTempFile("filesystem-md-provider-test", ".xml");
+        Files.copy(mdFile, targetFile);
+        
+        final AtomicInteger filterCalls = new AtomicInteger();
+        final AtomicInteger filteredEntities = new AtomicInteger();
+        
+        try {
+            metadataProvider = new FilesystemMetadataResolver(targetFile);
+            metadataProvider.setParserPool(parserPool);
+            metadataProvider.setId("test");
+            metadataProvider.setDeltaRefresh(true);
+            metadataProvider.setMetadataFilter(new MetadataFilter() {
+                public XMLObject filter(XMLObject metadata) throws FilterException {
+                    filterCalls.incrementAndGet();
+                    filteredEntities.addAndGet(countEntityDescriptors(metadata));
+                    return metadata;
+                }
+            });
+            metadataProvider.initialize();
+            
+            int entityCount = Iterators.size(metadataProvider.iterator());
+            Assert.assertEquals(filterCalls.get(), 1);
+            Assert.assertEquals(filteredEntities.get(), entityCount);
+            
+            Assert.assertTrue(targetFile.setLastModified(System.currentTimeMillis() + 60000));
+            metadataProvider.refresh();
+            
+            // The document is filtered again, but with every unchanged EntityDescriptor removed from it.
+            Assert.assertEquals(filterCalls.get(), 2);
+            Assert.assertEquals(filteredEntities.get(), entityCount);
+            Assert.assertEquals(Iterators.size(metadataProvider.iterator()), entityCount);
+            Assert.assertNotNull(metadataProvider.resolveSingle(criteriaSet));
+        } finally {
+            targetFile.delete();
+        }
+    }
+    
+    @Test
+    public void testDeltaRefreshConcurrentResolve() throws Exception {
+        File targetFile = File.createTempFile("filesystem-md-provider-test", ".xml");
+        String original = Files.toString(mdFile, StandardCharsets.UTF_8);
+        Files.write(original, targetFile, StandardCharsets.UTF_8);
+        
+        final CountDownLatch filtering = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final AtomicInteger filterCalls = new AtomicInteger();
+        
+        try {
+            metadataProvider = new FilesystemMetadataResolver(targetFile);
+            metadataProvider.setParserPool(parserPool);
+            metadataProvider.setId("test");
+            metadataProvider.setDeltaRefresh(true);
+            metadataProvider.setMetadataFilter(new MetadataFilter() {
+                public XMLObject filter(XMLObject metadata) throws FilterException {
+                    if (filterCalls.incrementAndGet() > 1) {
+                        filtering.countDown();
+                        try {
+                            proceed.await();
+                        } catch (InterruptedException e) {
+                            throw new FilterException(e);
+                        }
+                    }
+                    return metadata;
+                }
+            });
+            metadataProvider.initialize();
+            
+            final XMLObject previousRoot = metadataProvider.getCachedFilteredMetadata();
+            final EntityDescriptor unchanged = metadataProvider.resolveSingle(criteriaSet);
+            Assert.assertSame(unchanged.getParent(), previousRoot);
+            
+            Files.write(original.replace("urn:mace:incommon:osu.edu", "urn:mace:incommon:osu.edu:changed"),
+                    targetFile, StandardCharsets.UTF_8);
+            Assert.assertTrue(targetFile.setLastModified(System.currentTimeMillis() + 60000));
+            
+            final AtomicReference<Exception> refreshFailure = new AtomicReference<>();
+            Thread refresher = new Thread() {
+                public void run() {
+                    try {
+                        metadataProvider.refresh();
+                    } catch (ResolverException e) {
+                        refreshFailure.set(e);
+                    }
+                }
+            };
+            refresher.start();
+            
+            try {
+                // The unchanged entity has been matched for reuse, and the new document is being filtered.
+                Assert.assertTrue(filtering.await(30, TimeUnit.SECONDS));
+                EntityDescriptor resolved = metadataProvider.resolveSingle(criteriaSet);
+                Assert.assertSame(resolved, unchanged);
+                Assert.assertSame(resolved.getParent(), previousRoot);
+                Assert.assertTrue(((EntitiesDescriptor) previousRoot).getEntityDescriptors().contains(resolved));
+            } finally {
+                proceed.countDown();
+                refresher.join(30000);
+            }
+            
+            Assert.assertNull(refreshFailure.get());
+            EntityDescriptor refreshed = metadataProvider.resolveSingle(criteriaSet);
+            Assert.assertNotSame(refreshed, unchanged);
+            Assert.assertSame(refreshed.getParent(), metadataProvider.getCachedFilteredMetadata());
+            Assert.assertSame(unchanged.getParent(), previousRoot);
+        } finally {
+            targetFile.delete();
+        }
+    }
+    
+    @Test
+    public void testDeltaRefreshFailureAfterReuse() throws IOException, ComponentInitializationException,
+            ResolverException {
+        File targetFile = File.createTempFile("filesystem-md-provider-test", ".xml");
+        String original = Files.toString(mdFile, StandardCharsets.UTF_8);
+        Files.write(original, targetFile, StandardCharsets.UTF_8);
+        
+        final AtomicInteger filterCalls = new AtomicInteger();
+        
+        try {
+            metadataProvider = new FilesystemMetadataResolver(targetFile);
+            metadataProvider.setParserPool(parserPool);
+            metadataProvider.setId("test");
+            metadataProvider.setDeltaRefresh(true);
+            metadataProvider.setMetadataFilter(new MetadataFilter() {
+                public XMLObject filter(XMLObject metadata) throws FilterException {
+                    if (filterCalls.incrementAndGet() > 1) {
+                        throw new FilterException("Refresh fails after EntityDescriptors were matched for reuse");
+                    }
+                    return metadata;
+                }
+            });
+            metadataProvider.initialize();
+            
+            int entityCount = Iterators.size(metadataProvider.iterator());
+            EntitiesDescriptor previousRoot = (EntitiesDescriptor) metadataProvider.getCachedFilteredMetadata();
+            int memberCount = previousRoot.getEntityDescriptors().size();
+            EntityDescriptor unchanged = metadataProvider.resolveSingle(criteriaSet);
+            
+            Files.write(original.replace("urn:mace:incommon:osu.edu", "urn:mace:incommon:osu.edu:changed"),
+                    targetFile, StandardCharsets.UTF_8);
+            Assert.assertTrue(targetFile.setLastModified(System.currentTimeMillis() + 60000));
+            try {
+                metadataProvider.refresh();
+                Assert.fail("Refresh should have failed");
+            } catch (ResolverException e) {
+                // expected
+            }
+            
+            Assert.assertSame(metadataProvider.getCachedFilteredMetadata(), previousRoot);
+            Assert.assertEquals(previousRoot.getEntityDescriptors().size(), memberCount);
+            Assert.assertEquals(Iterators.size(metadataProvider.iterator()), entityCount);
+            Assert.assertSame(metadataProvider.resolveSingle(criteriaSet), unchanged);
+            Assert.assertSame(unchanged.getParent(), previousRoot);
+        } finally {
+            targetFile.delete();
+        }
+    }
+    
+    @Test
+    public void testStreamingIngestion() throws URISyntaxException, ComponentInitializationException, 
+            ResolverException {
+        URL mdURL = FilesystemMetadataResolverTest.class
+                .getResource("/org/opensaml/saml/metadata/resolver/filter/impl/EntitiesDescriptor-Name-metadata.xml");
+        File groupFile = new File(mdURL.toURI());
+        
+        metadataProvider = new FilesystemMetadataResolver(groupFile);
+        metadataProvider.setParserPool(parserPool);
+        metadataProvider.setId("test");
+        metadataProvider.setStreamingIngestion(true);
+        metadataProvider.initialize();
+        
+        Assert.assertEquals(Iterators.size(metadataProvider.iterator()), 5);
+        
+        EntitiesDescriptor root = (EntitiesDescriptor) metadataProvider.getCachedFilteredMetadata();
+        Assert.assertEquals(root.getName(), "GroupTop");
+        Assert.assertNotNull(root.getExtensions());
+        Assert.assertNull(root.getDOM());
+        
+        EntityDescriptor sub1 = metadataProvider.resolveSingle(
+                new CriteriaSet(new EntityIdCriterion("https://idp-sub1.example.org")));
+        Assert.assertNotNull(sub1);
+        Assert.assertNotNull(sub1.getExtensions());
+        Assert.assertEquals(((EntitiesDescriptor) sub1.getParent()).getName(), "GroupSub1");
+        Assert.assertSame(sub1.getParent().getParent(), root);
+        
+        EntityDescriptor sub2a = metadataProvider.resolveSingle(
+                new CriteriaSet(new EntityIdCriterion("https://idp-sub2a.example.org")));
+        Assert.assertNotNull(sub2a);
+        Assert.assertEquals(((EntitiesDescriptor) sub2a.getParent()).getName(), "GroupSub2A");
+        Assert.assertEquals(((EntitiesDescriptor) sub2a.getParent().getParent()).getName(), "GroupSub2");
+    }
+    
+    @Test
+    public void testStreamingIngestionFiltersRoot() throws URISyntaxException, ComponentInitializationException,
+            ResolverException {
+        URL mdURL = FilesystemMetadataResolverTest.class
+                .getResource("/org/opensaml/saml/metadata/resolver/filter/impl/EntitiesDescriptor-Name-metadata.xml");
+        File groupFile = new File(mdURL.toURI());
+        
+        // The groups carry a validUntil attribute, the EntityDescriptors do not.
+        metadataProvider = new FilesystemMetadataResolver(groupFile);
+        metadataProvider.setParserPool(parserPool);
+        metadataProvider.setId("test");
+        metadataProvider.setStreamingIngestion(true);
+        metadataProvider.setMetadataFilter(new RequiredValidUntilFilter());
+        metadataProvider.initialize();
+        
+        Assert.assertEquals(Iterators.size(metadataProvider.iterator()), 5);
+        
+        metadataProvider = new FilesystemMetadataResolver(groupFile);
+        metadataProvider.setParserPool(parserPool);
+        metadataProvider.setId("test");
+        metadataProvider.setStreamingIngestion(true);
+        metadataProvider.setMetadataFilter(new RequiredValidUntilFilter(24 * 60 * 60));
+        try {
+            metadataProvider.initialize();
+            Assert.fail("Root validUntil exceeds the maximum validity interval, initialization should have failed");
+        } catch (ComponentInitializationException e) {
+            // expected
+        }
+    }
+    
+    @Test
+    public void testStreamingIngestionRemovedEntity() throws URISyntaxException, ComponentInitializationException,
+            ResolverException {
+        URL mdURL = FilesystemMetadataResolverTest.class
+                .getResource("/org/opensaml/saml/metadata/resolver/filter/impl/EntitiesDescriptor-Name-metadata.xml");
+        File groupFile = new File(mdURL.toURI());
+        
+        metadataProvider = new FilesystemMetadataResolver(groupFile);
+        metadataProvider.setParserPool(parserPool);
+        metadataProvider.setId("test");
+        metadataProvider.setStreamingIngestion(true);
+        metadataProvider.setMetadataFilter(new PredicateFilter(Direction.EXCLUDE,
+                new EntityIdPredicate(Collections.singleton("https://idp-sub2.example.org"))));
+        metadataProvider.initialize();
+        
+        Assert.assertEquals(Iterators.size(metadataProvider.iterator()), 4);
+        Assert.assertNull(metadataProvider.resolveSingle(
+                new CriteriaSet(new EntityIdCriterion("https://idp-sub2.example.org"))));
+        
+        // GroupSub2 was empty once its only EntityDescriptor was removed, but still contains GroupSub2A.
+        EntityDescriptor sub2a = metadataProvider.resolveSingle(
+                new CriteriaSet(new EntityIdCriterion("https://idp-sub2a.example.org")));
+        Assert.assertNotNull(sub2a);
+        Assert.assertEquals(((EntitiesDescriptor) sub2a.getParent().getParent()).getName(), "GroupSub2");
+        Assert.assertSame(sub2a.getParent().getParent().getParent(), metadataProvider.getCachedFilteredMetadata());
+    }
+    
+    @Test
+    public void testStreamingIngestionFilterFailure() throws IOException, URISyntaxException,
+            ComponentInitializationException, ResolverException {
+        URL mdURL = FilesystemMetadataResolverTest.class
+                .getResource("/org/opensaml/saml/metadata/resolver/filter/impl/EntitiesDescriptor-Name-metadata.xml");
+        File targetFile = File.createTempFile("filesystem-md-provider-test", ".xml");
+        Files.copy(new File(mdURL.toURI()), targetFile);
+        
+        final AtomicBoolean failing = new AtomicBoolean();
+        
+        try {
+            metadataProvider = new FilesystemMetadataResolver(targetFile);
+            metadataProvider.setParserPool(parserPool);
+            metadataProvider.setId("test");
+            metadataProvider.setStreamingIngestion(true);
+            metadataProvider.setMetadataFilter(new MetadataFilter() {
+                public XMLObject filter(XMLObject metadata) throws FilterException {
+                    if (failing.get() && !((EntitiesDescriptor) metadata).getEntitiesDescriptors().isEmpty()) {
+                        throw new FilterException("Filtering fails once the document has a nested group");
+                    }
+                    return metadata;
+                }
+            });
+            metadataProvider.initialize();
+            
+            XMLObject previousRoot = metadataProvider.getCachedFilteredMetadata();
+            Assert.assertEquals(Iterators.size(metadataProvider.iterator()), 5);
+            
+            failing.set(true);
+            Assert.assertTrue(targetFile.setLastModified(System.currentTimeMillis() + 60000));
+            try {
+                metadataProvider.refresh();
+                Assert.fail("Refresh should have failed");
+            } catch (ResolverException e) {
+                // expected
+            }
+            
+            Assert.assertSame(metadataProvider.getCachedFilteredMetadata(), previousRoot);
+            Assert.assertEquals(Iterators.size(metadataProvider.iterator()), 5);
+            Assert.assertNotNull(metadataProvider.resolveSingle(
+                    new CriteriaSet(new EntityIdCriterion("https://idp-top.example.org"))));
+        } finally {
+            targetFile.delete();
+        }
+    }
+    
+    private static int countEntityDescriptors(XMLObject metadata) {
+        if (metadata instanceof EntityDescriptor) {
+            return 1;
+        } else if (metadata instanceof EntitiesDescriptor) {
+            int count = 0;
+            for (XMLObject child : metadata.getOrderedChildren()) {
+                count += countEntityDescriptors(child);
+            }
+            return count;
+        }
+        return 0;
+    }
+}
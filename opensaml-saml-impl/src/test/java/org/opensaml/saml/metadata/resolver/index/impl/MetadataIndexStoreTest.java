@@ -162,4 +162,32 @@ public class MetadataIndexStoreTest extends OpenSAMLInitBaseTestCase {
         Assert.assertTrue(store.lookup(key2).isEmpty());
     }
 
+    @Test
+    public void testLookupSnapshot() {
+        store.add(key1, a);
+        store.add(key1, b);
+        result = store.lookup(key1);
+        Assert.assertSame(store.lookup(key1), result);
+        
+        store.add(key1, c);
+        store.remove(key1, a);
+        Assert.assertEquals(result.size(), 2);
+        Assert.assertTrue(result.contains(a));
+        Assert.assertTrue(result.contains(b));
+        Assert.assertEquals(store.lookup(key1).size(), 2);
+        Assert.assertTrue(store.lookup(key1).contains(b));
+        Assert.assertTrue(store.lookup(key1).contains(c));
+    }
+    
+    @Test
+    public void testRemoveLastItem() {
+        store.add(key1, a);
+        store.add(key2, b);
+        
+        store.remove(key1, a);
+        Assert.assertTrue(store.lookup(key1).isEmpty());
+        Assert.assertEquals(store.getKeys().size(), 1);
+        Assert.assertTrue(store.getKeys().contains(key2));
+    }
+
 }
@@ -23,12 +23,14 @@ import net.shibboleth.utilities.java.support.xml.XMLParserException;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.Assert;
+import org.w3c.dom.Element;
 import javax.xml.namespace.QName;
 
 import org.joda.time.DateTime;
 import org.joda.time.chrono.ISOChronology;
 import org.opensaml.core.xml.XMLObjectProviderBaseTestCase;
 import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.opensaml.saml.common.SAMLVersion;
 import org.opensaml.saml.common.xml.SAMLConstants;
 import org.opensaml.saml.saml2.core.Advice;
@@ -183,6 +185,34 @@ public class AssertionTest extends XMLObjectProviderBaseTestCase {
         assertXMLEquals(expectedChildElementsDOM, assertion);
     }
     
+    @Test
+    public void testClone() throws Exception {
+        QName qname = new QName(SAMLConstants.SAML20_NS, Assertion.DEFAULT_ELEMENT_LOCAL_NAME, SAMLConstants.SAML20_PREFIX);
+        Assertion assertion = (Assertion) buildXMLObject(qname);
+        assertion.setIssueInstant(expectedIssueInstant);
+        assertion.setID(expectedID);
+        assertion.setVersion(expectedVersion);
+
+        Assertion clone = XMLObjectSupport.cloneXMLObject(assertion);
+        Assert.assertNotSame(clone, assertion);
+        Assert.assertNull(assertion.getDOM(), "Original assertion was marshalled");
+        Assert.assertNull(clone.getDOM());
+        assertXMLEquals(expectedOptionalAttributesDOM, clone);
+
+        assertion = (Assertion) unmarshallElement(childElementsFile);
+        Element assertionDOM = assertion.getDOM();
+
+        clone = XMLObjectSupport.cloneXMLObject(assertion);
+        Assert.assertNull(clone.getDOM());
+        Assert.assertSame(assertion.getDOM(), assertionDOM);
+        Assert.assertNotSame(clone.getSubject(), assertion.getSubject());
+        Assert.assertSame(clone.getSubject().getParent(), clone);
+        Assert.assertNull(clone.getConditions().getDOM());
+        Assert.assertEquals(clone.getStatements().size(), statementCount);
+        Assert.assertSame(clone.getAuthzDecisionStatements().get(0).getParent(), clone);
+        assertXMLEquals(expectedChildElementsDOM, clone);
+    }
+
     @Test(expectedExceptions=UnmarshallingException.class)
     public void testBadSAMLVersion() throws XMLParserException, UnmarshallingException {
         unmarshallElement("/org/opensaml/saml/saml2/core/impl/AssertionBadSAMLVersion.xml", true);
@@ -28,8 +28,11 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.Assert;
 import javax.xml.namespace.QName;
 
+import java.io.InputStream;
+
 import org.opensaml.core.xml.io.UnmarshallingException;
 import org.opensaml.core.xml.schema.XSBooleanValue;
+import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.opensaml.saml.common.xml.SAMLConstants;
 import org.opensaml.saml.saml2.core.AuthnRequest;
 import org.opensaml.saml.saml2.core.Conditions;
@@ -247,5 +250,58 @@ public class AuthnRequestTest extends RequestTestBase {
     public void testBadSAMLVersion() throws XMLParserException, UnmarshallingException {
         unmarshallElement("/org/opensaml/saml/saml2/core/impl/AuthnRequestBadSAMLVersion.xml", true);
     }
+
+    @Test(expectedExceptions=UnmarshallingException.class)
+    public void testStreamBadSAMLVersion() throws UnmarshallingException {
+        InputStream in = AuthnRequestTest.class.getResourceAsStream(
+                "/org/opensaml/saml/saml2/core/impl/AuthnRequestBadSAMLVersion.xml");
+        XMLObjectSupport.unmarshallFromInputStream(in, true);
+    }
+
+    /**
+     * Tests that a signed request read from a stream keeps a DOM for signature verification only if asked to.
+     * 
+     * @throws UnmarshallingException if something goes wrong
+     */
+    @Test
+    public void testStreamUnmarshallSigned() throws UnmarshallingException {
+        String file = "/org/opensaml/saml/security/Signed-AuthnRequest-Valid.xml";
+        
+        AuthnRequest req = (AuthnRequest) XMLObjectSupport.unmarshallFromInputStream(
+                AuthnRequestTest.class.getResourceAsStream(file), true);
+        Assert.assertNotNull(req.getDOM());
+        Assert.assertNotNull(req.getSignature());
+        Assert.assertSame(req.getSignature().getDOM().getParentNode(), req.getDOM());
+        Assert.assertEquals(req.getID(), "abc123");
+        
+        req = (AuthnRequest) XMLObjectSupport.unmarshallFromInputStream(
+                AuthnRequestTest.class.getResourceAsStream(file), false);
+        Assert.assertNull(req.getDOM());
+        Assert.assertNull(req.getIssuer().getDOM());
+        Assert.assertNotNull(req.getSignature());
+        Assert.assertNotNull(req.getSignature().getDOM());
+        Assert.assertEquals(req.getID(), "abc123");
+        Assert.assertEquals(req.getIssuer().getValue(), "SomeCoolIssuer");
+        Assert.assertEquals(req.getIssuer().getFormat(), "urn:oasis:names:tc:SAML:2.0:nameid-format:entity");
+    }
+
+    /**
+     * Tests that a signed request is cloned from its object graph, copying the cached DOM of the signature.
+     * 
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void testCloneSigned() throws Exception {
+        AuthnRequest req = (AuthnRequest) unmarshallElement("/org/opensaml/saml/security/Signed-AuthnRequest-Valid.xml");
+        
+        AuthnRequest clone = XMLObjectSupport.cloneXMLObject(req);
+        Assert.assertNull(clone.getDOM());
+        Assert.assertEquals(clone.getID(), "abc123");
+        Assert.assertEquals(clone.getIssuer().getValue(), "SomeCoolIssuer");
+        Assert.assertNotNull(clone.getSignature());
+        Assert.assertNotSame(clone.getSignature(), req.getSignature());
+        Assert.assertNull(clone.getSignature().getDOM());
+        Assert.assertSame(req.getSignature().getDOM().getParentNode(), req.getDOM());
+    }
     
-}
\ No newline at end of file
+}
@@ -23,14 +23,22 @@ package org.opensaml.saml.saml2.core.impl;
 import org.testng.annotations.Test;
 import org.testng.annotations.BeforeMethod;
 import org.testng.Assert;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
 import javax.xml.namespace.QName;
 
 import org.joda.time.DateTime;
 import org.joda.time.chrono.ISOChronology;
+import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.opensaml.saml.common.xml.SAMLConstants;
+import org.opensaml.saml.saml2.core.Extensions;
 import org.opensaml.saml.saml2.core.LogoutRequest;
 import org.opensaml.saml.saml2.core.NameID;
 import org.opensaml.saml.saml2.core.SessionIndex;
+import org.opensaml.xmlsec.signature.Signature;
+import org.w3c.dom.Element;
 
 /**
  *
@@ -139,5 +147,140 @@ public class LogoutRequestTest extends RequestTestBase {
         Assert.assertEquals(req.getSessionIndexes().size(), expectedNumSessionIndexes, "Number of unmarshalled SessionIndexes was not the expected value");
         super.helperTestChildElementsUnmarshall(req);
     }
-    
+
+    /**
+     * Tests that an unsigned request is written directly to a stream and reads back intact.
+     * 
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void testStreamMarshall() throws Exception {
+        QName qname = new QName(SAMLConstants.SAML20P_NS, LogoutRequest.DEFAULT_ELEMENT_LOCAL_NAME, SAMLConstants.SAML20P_PREFIX);
+        LogoutRequest req = (LogoutRequest) buildXMLObject(qname);
+        
+        super.populateRequiredAttributes(req);
+        super.populateOptionalAttributes(req);
+        super.populateChildElements(req);
+        req.setReason(expectedReason);
+        req.setNotOnOrAfter(expectedNotOnOrAfter);
+        req.getIssuer().setValue("https://sp.example.org");
+        
+        QName nameIDQName = new QName(SAMLConstants.SAML20_NS, NameID.DEFAULT_ELEMENT_LOCAL_NAME, SAMLConstants.SAML20_PREFIX);
+        NameID nameID = (NameID) buildXMLObject(nameIDQName);
+        nameID.setFormat(NameID.TRANSIENT);
+        nameID.setValue("foo & <bar>");
+        req.setNameID(nameID);
+        
+        QName sessionIndexQName = new QName(SAMLConstants.SAML20P_NS, SessionIndex.DEFAULT_ELEMENT_LOCAL_NAME, SAMLConstants.SAML20P_PREFIX);
+        for (int i=0; i<expectedNumSessionIndexes; i++){
+            SessionIndex sessionIndex = (SessionIndex) buildXMLObject(sessionIndexQName);
+            sessionIndex.setSessionIndex("session" + i);
+            req.getSessionIndexes().add(sessionIndex);
+        }
+        
+        Assert.assertTrue(XMLObjectSupport.isStreamable(req));
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLObjectSupport.marshallToOutputStream(req, out);
+        Assert.assertNull(req.getDOM(), "Streaming should not have cached a DOM");
+        
+        LogoutRequest parsed = (LogoutRequest) XMLObjectSupport.unmarshallFromInputStream(parserPool,
+                new ByteArrayInputStream(out.toByteArray()));
+        super.helperTestSingleElementOptionalAttributesUnmarshall(parsed);
+        Assert.assertEquals(parsed.getReason(), expectedReason);
+        Assert.assertEquals(expectedNotOnOrAfter.compareTo(parsed.getNotOnOrAfter()), 0);
+        Assert.assertEquals(parsed.getIssuer().getValue(), "https://sp.example.org");
+        Assert.assertEquals(parsed.getNameID().getFormat(), NameID.TRANSIENT);
+        Assert.assertEquals(parsed.getNameID().getValue(), "foo & <bar>");
+        Assert.assertEquals(parsed.getSessionIndexes().size(), expectedNumSessionIndexes);
+        Assert.assertEquals(parsed.getSessionIndexes().get(1).getSessionIndex(), "session1");
+    }
+
+    /**
+     * Tests that signed requests, and requests with children lacking stream support, use the DOM.
+     * 
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void testStreamFallback() throws Exception {
+        QName qname = new QName(SAMLConstants.SAML20P_NS, LogoutRequest.DEFAULT_ELEMENT_LOCAL_NAME, SAMLConstants.SAML20P_PREFIX);
+        LogoutRequest req = (LogoutRequest) buildXMLObject(qname);
+        super.populateRequiredAttributes(req);
+        
+        req.setSignature((Signature) buildXMLObject(Signature.DEFAULT_ELEMENT_NAME));
+        Assert.assertFalse(XMLObjectSupport.isStreamable(req));
+        req.setSignature(null);
+        Assert.assertTrue(XMLObjectSupport.isStreamable(req));
+        
+        req.setExtensions((Extensions) buildXMLObject(Extensions.DEFAULT_ELEMENT_NAME));
+        Assert.assertFalse(XMLObjectSupport.isStreamable(req));
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLObjectSupport.marshallToOutputStream(req, out);
+        Assert.assertNotNull(req.getDOM());
+        Assert.assertFalse(XMLObjectSupport.isStreamable(req));
+    }
+
+    /**
+     * Tests that an unsigned request is unmarshalled from a stream without DOM.
+     * 
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void testStreamUnmarshall() throws Exception {
+        LogoutRequest req = (LogoutRequest) XMLObjectSupport.unmarshallFromInputStream(
+                LogoutRequestTest.class.getResourceAsStream(singleElementOptionalAttributesFile), true);
+        
+        Assert.assertNull(req.getDOM());
+        Assert.assertEquals(req.getReason(), expectedReason);
+        Assert.assertEquals(expectedNotOnOrAfter.compareTo(req.getNotOnOrAfter()), 0);
+        super.helperTestSingleElementOptionalAttributesUnmarshall(req);
+        
+        req = (LogoutRequest) XMLObjectSupport.unmarshallFromInputStream(
+                LogoutRequestTest.class.getResourceAsStream(childElementsFile), true);
+        
+        Assert.assertNull(req.getDOM());
+        Assert.assertNotNull(req.getIssuer());
+        Assert.assertNull(req.getIssuer().getDOM());
+        Assert.assertNotNull(req.getNameID());
+        Assert.assertEquals(req.getSessionIndexes().size(), expectedNumSessionIndexes);
+        Assert.assertSame(req.getSessionIndexes().get(0).getParent(), req);
+        
+        assertXMLEquals(expectedChildElementsDOM, req);
+    }
+
+    /**
+     * Tests that a request is cloned without marshalling the original.
+     * 
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void testClone() throws Exception {
+        QName qname = new QName(SAMLConstants.SAML20P_NS, LogoutRequest.DEFAULT_ELEMENT_LOCAL_NAME, SAMLConstants.SAML20P_PREFIX);
+        LogoutRequest req = (LogoutRequest) buildXMLObject(qname);
+        super.populateRequiredAttributes(req);
+        super.populateOptionalAttributes(req);
+        req.setReason(expectedReason);
+        req.setNotOnOrAfter(expectedNotOnOrAfter);
+        
+        LogoutRequest clone = XMLObjectSupport.cloneXMLObject(req);
+        Assert.assertNotSame(clone, req);
+        Assert.assertNull(req.getDOM(), "Original request was marshalled");
+        Assert.assertNull(clone.getDOM());
+        assertXMLEquals(expectedOptionalAttributesDOM, clone);
+        
+        req = (LogoutRequest) unmarshallElement(childElementsFile);
+        Element reqDOM = req.getDOM();
+        
+        clone = XMLObjectSupport.cloneXMLObject(req);
+        Assert.assertNull(clone.getDOM());
+        Assert.assertSame(req.getDOM(), reqDOM);
+        Assert.assertNotSame(clone.getNameID(), req.getNameID());
+        Assert.assertSame(clone.getNameID().getParent(), clone);
+        Assert.assertNull(clone.getNameID().getDOM());
+        Assert.assertEquals(clone.getSessionIndexes().size(), expectedNumSessionIndexes);
+        Assert.assertSame(clone.getSessionIndexes().get(0).getParent(), clone);
+        assertXMLEquals(expectedChildElementsDOM, clone);
+    }
+
 }
@@ -23,6 +23,7 @@ import org.joda.time.DateTime;
 import org.joda.time.chrono.ISOChronology;
 import org.opensaml.core.xml.XMLObjectProviderBaseTestCase;
 import org.opensaml.core.xml.util.AttributeMap;
+import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.opensaml.saml.common.xml.SAMLConstants;
 import org.opensaml.saml.saml2.metadata.Extensions;
 import org.opensaml.saml.saml2.metadata.AdditionalMetadataLocation;
@@ -41,6 +42,7 @@ import org.opensaml.xmlsec.signature.support.SignatureConstants;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
+import org.w3c.dom.Element;
 
 /**
  * Test case for creating, marshalling, and unmarshalling
@@ -313,6 +315,37 @@ public class EntityDescriptorTest extends XMLObjectProviderBaseTestCase {
         assertXMLEquals(expectedChildElementsDOM, descriptor);
     }
 
+    @Test public void testClone() throws Exception {
+        QName qname =
+                new QName(SAMLConstants.SAML20MD_NS, EntityDescriptor.DEFAULT_ELEMENT_LOCAL_NAME,
+                        SAMLConstants.SAML20MD_PREFIX);
+        EntityDescriptor descriptor = (EntityDescriptor) buildXMLObject(qname);
+        descriptor.setEntityID(expectedEntityID);
+        descriptor.setID(expectedID);
+        descriptor.setValidUntil(expectedValidUntil);
+        descriptor.setCacheDuration(expectedCacheDuration);
+
+        EntityDescriptor clone = XMLObjectSupport.cloneXMLObject(descriptor);
+        Assert.assertNotSame(clone, descriptor);
+        Assert.assertNull(descriptor.getDOM(), "Original descriptor was marshalled");
+        Assert.assertNull(clone.getDOM());
+        assertXMLEquals(expectedOptionalAttributesDOM, clone);
+
+        descriptor = (EntityDescriptor) unmarshallElement(childElementsFile);
+        Element descriptorDOM = descriptor.getDOM();
+
+        clone = XMLObjectSupport.cloneXMLObject(descriptor);
+        Assert.assertNull(clone.getDOM());
+        Assert.assertSame(descriptor.getDOM(), descriptorDOM);
+        Assert.assertNotSame(clone.getSPSSODescriptor("foo"), descriptor.getSPSSODescriptor("foo"));
+        Assert.assertSame(clone.getSPSSODescriptor("foo").getParent(), clone);
+        Assert.assertNull(clone.getIDPSSODescriptor("foo").getDOM());
+        Assert.assertEquals(clone.getRoleDescriptors().size(), descriptor.getRoleDescriptors().size());
+        Assert.assertNotNull(clone.getPDPDescriptor("foo"), "PDPDescriptor (protocol)");
+        Assert.assertEquals(clone.getAdditionalMetadataLocations().size(), 3, "AdditionalMetadataLocation count");
+        assertXMLEquals(expectedChildElementsDOM, clone);
+    }
+
     /**
      * Build a Signature skeleton to use in marshalling unit tests.
      * 
@@ -0,0 +1,658 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.Map.Entry;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.Live;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.collection.Pair;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterables;
+
+
+/**
+ * Partial implementation of {@link StorageService} that stores data in-memory with no persistence
+ * in a number of maps, each guarded by its own lock.
+ * 
+ * <p>Abstract methods assign each record to a partition and supply the map of data and the lock for
+ * each partition. Operations on an entire context visit each partition in turn, and are not atomic
+ * with respect to concurrent operations on individual records in that context.</p>
+ * 
+ * <p>Batch operations acquire the lock of each affected partition once for the entire batch.</p>
+ * 
+ * @see AbstractMapBackedStorageService
+ */
+public abstract class AbstractPartitionedMapBackedStorageService extends AbstractStorageService
+        implements BatchStorageService {
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(AbstractPartitionedMapBackedStorageService.class);
+
+    /** Constructor. */
+    public AbstractPartitionedMapBackedStorageService() {
+        setContextSize(Integer.MAX_VALUE);
+        setKeySize(Integer.MAX_VALUE);
+        setValueSize(Integer.MAX_VALUE);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean create(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable final Long expiration) throws IOException {
+        final int partition = getPartition(context, key);
+        final Lock writeLock = getLock(partition).writeLock();
+        
+        try {
+            writeLock.lock();
+            
+            final Map<String,Map<String,MutableStorageRecord>> contextMap = getPartitionContextMap(partition);
+            
+            // Create new context if necessary.
+            Map<String, MutableStorageRecord> dataMap = contextMap.get(context);
+            if (dataMap == null) {
+                dataMap = new HashMap();
+                contextMap.put(context, dataMap);
+            }
+            
+            // Check for a duplicate.
+            final StorageRecord record = dataMap.get(key);
+            if (record != null) {
+                // Not yet expired?
+                final Long exp = record.getExpiration();
+                if (exp == null || System.currentTimeMillis() < exp) {
+                    return false;
+                }
+                
+                // It's dead, so we can just remove it now and create the new record.
+            }
+            
+            final MutableStorageRecord newRecord = new MutableStorageRecord(value, expiration);
+            dataMap.put(key, newRecord);
+            if (expiration != null) {
+                trackExpiration(context, key, newRecord);
+            }
+            log.trace("Inserted record '{}' in context '{}' with expiration '{}'",
+                    new Object[] { key, context, expiration });
+            
+            setDirty(context);
+            return true;
+            
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    @Nullable public StorageRecord read(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) throws IOException {
+        return readImpl(context, key, null).getSecond();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public Pair<Long, StorageRecord> read(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, final long version) throws IOException {
+        return readImpl(context, key, version);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean update(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable final Long expiration) throws IOException {
+        try {
+            return updateImpl(null, context, key, value, expiration) != null;
+        } catch (final VersionMismatchException e) {
+            throw new IOException("Unexpected exception thrown by update.", e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable public Long updateWithVersion(final long version, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value, @Nullable final Long expiration)
+                    throws IOException, VersionMismatchException {
+        return updateImpl(version, context, key, value, expiration);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean updateExpiration(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nullable final Long expiration) throws IOException {
+        try {
+            return updateImpl(null, context, key, null, expiration) != null;
+        } catch (final VersionMismatchException e) {
+            throw new IOException("Unexpected exception thrown by update.", e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean deleteWithVersion(final long version, final String context, final String key) throws IOException,
+            VersionMismatchException {
+        return deleteImpl(version, context, key);
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public boolean delete(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key)
+            throws IOException {
+        try {
+            return deleteImpl(null, context, key);
+        } catch (final VersionMismatchException e) {
+            throw new IOException("Unexpected exception thrown by delete.", e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull @NonnullElements public Set<String> createBatch(@Nonnull @NotEmpty final String context,
+            @Nonnull @NonnullElements final Map<String, String> values, @Nullable final Long expiration)
+                    throws IOException {
+        final Set<String> created = new HashSet<>(values.size());
+        for (final Map.Entry<Integer, Collection<String>> group
+                : groupByPartition(context, values.keySet()).entrySet()) {
+            final Lock writeLock = getLock(group.getKey()).writeLock();
+            
+            try {
+                writeLock.lock();
+                for (final String key : group.getValue()) {
+                    if (create(context, key, values.get(key), expiration)) {
+                        created.add(key);
+                    }
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        
+        return created;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull @NonnullElements public Map<String, StorageRecord> readBatch(@Nonnull @NotEmpty final String context,
+            @Nonnull @NonnullElements final Collection<String> keys) throws IOException {
+        final Map<String, StorageRecord> records = new HashMap<>(keys.size());
+        for (final Map.Entry<Integer, Collection<String>> group : groupByPartition(context, keys).entrySet()) {
+            final Lock readLock = getLock(group.getKey()).readLock();
+            
+            try {
+                readLock.lock();
+                for (final String key : group.getValue()) {
+                    final StorageRecord record = readImpl(context, key, null).getSecond();
+                    if (record != null) {
+                        records.put(key, record);
+                    }
+                }
+            } finally {
+                readLock.unlock();
+            }
+        }
+        
+        return records;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @NonNegative public int deleteBatch(@Nonnull @NotEmpty final String context,
+            @Nonnull @NonnullElements final Collection<String> keys) throws IOException {
+        int count = 0;
+        for (final Map.Entry<Integer, Collection<String>> group : groupByPartition(context, keys).entrySet()) {
+            final Lock writeLock = getLock(group.getKey()).writeLock();
+            
+            try {
+                writeLock.lock();
+                for (final String key : group.getValue()) {
+                    try {
+                        if (deleteImpl(null, context, key)) {
+                            count++;
+                        }
+                    } catch (final VersionMismatchException e) {
+                        throw new IOException("Unexpected exception thrown by delete.", e);
+                    }
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        
+        return count;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void updateContextExpiration(@Nonnull @NotEmpty final String context, @Nullable final Long expiration)
+            throws IOException {
+        
+        for (int partition = 0; partition < getPartitionCount(); partition++) {
+            final Lock writeLock = getLock(partition).writeLock();
+            
+            try {
+                writeLock.lock();
+                
+                final Map<String,Map<String,MutableStorageRecord>> contextMap = getPartitionContextMap(partition);
+    
+                final Map<String, MutableStorageRecord> dataMap = contextMap.get(context);
+                if (dataMap != null) {    
+                    setDirty(context);
+                    final Long now = System.currentTimeMillis();
+                    for (final Entry<String, MutableStorageRecord> entry : dataMap.entrySet()) {
+                        final MutableStorageRecord record = entry.getValue();
+                        final Long exp = record.getExpiration();
+                        if (exp == null || now < exp) {
+                            record.setExpiration(expiration);
+                            if (expiration != null) {
+                                trackExpiration(context, entry.getKey(), record);
+                            }
+                        }
+                    }
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        
+        log.debug("Updated expiration of valid records in context '{}' to '{}'", context, expiration);
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public void deleteContext(@Nonnull @NotEmpty final String context) throws IOException {
+        
+        for (int partition = 0; partition < getPartitionCount(); partition++) {
+            final Lock writeLock = getLock(partition).writeLock();
+            
+            try {
+                writeLock.lock();
+                setDirty(context);
+                getPartitionContextMap(partition).remove(context);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        
+        log.debug("Deleted context '{}'", context);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void reap(@Nonnull @NotEmpty final String context) throws IOException {
+
+        final long now = System.currentTimeMillis();
+        for (int partition = 0; partition < getPartitionCount(); partition++) {
+            final Lock writeLock = getLock(partition).writeLock();
+            
+            try {
+                writeLock.lock();
+                
+                final Map<String,Map<String,MutableStorageRecord>> contextMap = getPartitionContextMap(partition);
+                
+                final Map<String, MutableStorageRecord> dataMap = contextMap.get(context);
+                if (dataMap != null) {
+                    if (reapWithLock(dataMap, now)) {
+                        setDirty(context);
+                        if (dataMap.isEmpty()) {
+                            contextMap.remove(context);
+                        }
+                    }
+                }
+                
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Get the number of partitions the records are divided into.
+     * 
+     * @return number of partitions
+     */
+    @Positive protected abstract int getPartitionCount();
+    
+    /**
+     * Get the partition to which a record is assigned.
+     * 
+     * @param context   a storage context label
+     * @param key       a key unique to context
+     * 
+     * @return the partition, less than {@link #getPartitionCount()}
+     */
+    @NonNegative protected abstract int getPartition(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key);
+    
+    /**
+     * Get the lock guarding a partition.
+     * 
+     * @param partition the partition
+     * 
+     * @return lock guarding the partition
+     */
+    @Nonnull protected abstract ReadWriteLock getLock(@NonNegative final int partition);
+    
+    /**
+     * Get the map of contexts holding the records in a partition.
+     * 
+     * <p>This method is guaranteed to be called under cover the lock returned by {@link #getLock(int)}.</p>
+     * 
+     * @param partition the partition
+     * 
+     * @return map of contexts to manipulate
+     */
+    @Nonnull @NonnullElements @Live protected abstract Map<String, Map<String, MutableStorageRecord>> getContextMap(
+            @NonNegative final int partition);
+
+    /**
+     * A callback to indicate that data has been modified.
+     * 
+     * <p>This method is guaranteed to be called under cover the lock returned by {@link #getLock(int)}
+     * for the partition modified.</p>
+     */
+    protected void setDirty() {
+        
+    }
+
+    /**
+     * A callback to indicate that data in a particular context has been modified.
+     * 
+     * <p>This method is guaranteed to be called under cover the lock returned by {@link #getLock(int)}
+     * for the partition modified.</p>
+     * 
+     * <p>The default implementation calls {@link #setDirty()}, but subclasses may override it to track
+     * modifications on a per-context basis.</p>
+     * 
+     * @param context the context that was modified
+     */
+    protected void setDirty(@Nonnull @NotEmpty final String context) {
+        setDirty();
+    }
+    
+    /**
+     * A callback to indicate that a record has been stored with, or updated to, a non-null expiration,
+     * allowing subclasses to track expirations without scanning all records.
+     * 
+     * <p>This method is guaranteed to be called under cover the lock returned by {@link #getLock(int)}
+     * for the record's partition.</p>
+     * 
+     * @param context   the record's context
+     * @param key       the record's key
+     * @param record    the record, carrying its current expiration
+     */
+    protected void trackExpiration(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull final MutableStorageRecord record) {
+        
+    }
+    
+    /**
+     * Internal method to implement read functions.
+     *
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * @param version       only return record if newer than optionally supplied version
+     * 
+     * @return  a pair consisting of the version of the record read back, if any, and the record itself
+     * @throws IOException  if errors occur in the read process 
+     */
+    @Nonnull protected Pair<Long, StorageRecord> readImpl(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nullable final Long version) throws IOException {
+
+        final int partition = getPartition(context, key);
+        final Lock readLock = getLock(partition).readLock();
+        try {
+            readLock.lock();
+            
+            final Map<String,Map<String,MutableStorageRecord>> contextMap = getPartitionContextMap(partition);
+            
+            final Map<String, MutableStorageRecord> dataMap = contextMap.get(context);
+            if (dataMap == null) {
+                log.debug("Read failed, context '{}' not found", context);
+                return new Pair();
+            }
+
+            final StorageRecord record = dataMap.get(key);
+            if (record == null) {
+                log.debug("Read failed, key '{}' not found in context '{}'", key, context);
+                return new Pair();
+            } else {
+                final Long exp = record.getExpiration();
+                if (exp != null && System.currentTimeMillis() >= exp) {
+                    log.debug("Read failed, key '{}' expired in context '{}'", key, context);
+                    return new Pair();
+                }
+            }
+            
+            if (version != null && record.getVersion() == version) {
+                // Nothing's changed, so just echo back the version.
+                return new Pair(version, null);
+            }
+            
+            return new Pair(record.getVersion(), record);
+            
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Internal method to implement update functions.
+     * 
+     * @param version       only update if the current version matches this value
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * @param value         updated value
+     * @param expiration    expiration for record. or null
+     * 
+     * @return the version of the record after update, null if no record exists
+     * @throws IOException  if errors occur in the update process
+     * @throws VersionMismatchException if the record has already been updated to a newer version
+     */
+    @Nullable protected Long updateImpl(@Nullable final Long version, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nullable final String value, @Nullable final Long expiration)
+                    throws IOException, VersionMismatchException {
+
+        final int partition = getPartition(context, key);
+        final Lock writeLock = getLock(partition).writeLock();
+        
+        try {
+            writeLock.lock();
+            
+            final Map<String,Map<String,MutableStorageRecord>> contextMap = getPartitionContextMap(partition);
+
+            final Map<String, MutableStorageRecord> dataMap = contextMap.get(context);
+            if (dataMap == null) {
+                log.debug("Update failed, context '{}' not found", context);
+                return null;
+            }
+            
+            final MutableStorageRecord record = dataMap.get(key);
+            if (record == null) {
+                log.debug("Update failed, key '{}' not found in context '{}'", key, context);
+                return null;
+            } else {
+                final Long exp = record.getExpiration();
+                if (exp != null && System.currentTimeMillis() >= exp) {
+                    log.debug("Update failed, key '{}' expired in context '{}'", key, context);
+                    return null;
+                }
+            }
+    
+            if (version != null && version != record.getVersion()) {
+                // Caller is out of sync.
+                throw new VersionMismatchException();
+            }
+    
+            setDirty(context);
+            
+            if (value != null) {
+                record.setValue(value);
+                record.incrementVersion();
+            }
+    
+            record.setExpiration(expiration);
+            if (expiration != null) {
+                trackExpiration(context, key, record);
+            }
+    
+            log.trace("Updated record '{}' in context '{}' with expiration '{}'",
+                    new Object[] { key, context, expiration });
+
+            return record.getVersion();
+            
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Internal method to implement delete functions.
+     * 
+     * @param version       only update if the current version matches this value
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * 
+     * @return true iff the record existed and was deleted
+     * @throws IOException  if errors occur in the update process
+     * @throws VersionMismatchException if the record has already been updated to a newer version
+     */
+    protected boolean deleteImpl(@Nullable @Positive final Long version, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) throws IOException, VersionMismatchException {
+
+        final int partition = getPartition(context, key);
+        final Lock writeLock = getLock(partition).writeLock();
+        
+        try {
+            writeLock.lock();
+
+            final Map<String,Map<String,MutableStorageRecord>> contextMap = getPartitionContextMap(partition);
+            
+            final Map<String, MutableStorageRecord> dataMap = contextMap.get(context);
+            if (dataMap == null) {
+                log.debug("Deleting record '{}' in context '{}'....context not found", key, context);
+                return false;
+            }
+
+            final MutableStorageRecord record = dataMap.get(key);
+            if (record == null) {
+                log.debug("Deleting record '{}' in context '{}'....key not found", key, context);
+                return false;
+            } else if (version != null && record.getVersion() != version) {
+                throw new VersionMismatchException();
+            } else {
+                setDirty(context);
+                dataMap.remove(key);
+                log.trace("Deleted record '{}' in context '{}'", key, context);
+                if (dataMap.isEmpty()) {
+                    contextMap.remove(context);
+                }
+                return true;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Locates and removes expired records from the input map.
+     * 
+     * <p>This method <strong>MUST</strong> be called while holding a write lock, if locking is required.</p>
+     * 
+     * @param dataMap       the map to reap
+     * @param expiration    time at which to consider records expired
+     * 
+     * @return  true iff anything was purged
+     */
+    protected boolean reapWithLock(@Nonnull @NonnullElements final Map<String, MutableStorageRecord> dataMap,
+            final long expiration) {
+        
+        return Iterables.removeIf(dataMap.entrySet(), new Predicate<Entry<String, MutableStorageRecord>>() {
+                public boolean apply(@Nullable final Entry<String, MutableStorageRecord> entry) {
+                    final Long exp = entry.getValue().getExpiration();
+                    return exp != null && exp <= expiration;
+                }
+            }
+        );
+    }
+
+    /**
+     * Get the map of contexts holding the records in a partition, converting any failure to obtain it
+     * into an {@link IOException}.
+     * 
+     * @param partition the partition
+     * 
+     * @return map of contexts to manipulate
+     * @throws IOException if the map cannot be obtained
+     */
+    @Nonnull @NonnullElements @Live private Map<String, Map<String, MutableStorageRecord>> getPartitionContextMap(
+            @NonNegative final int partition) throws IOException {
+        try {
+            return getContextMap(partition);
+        } catch (final Exception e) {
+            throw new IOException(e);
+        }
+    }
+    
+    /**
+     * Group keys in a context by the partition to which their records are assigned.
+     * 
+     * @param context   a storage context label
+     * @param keys      keys unique to context
+     * 
+     * @return map of partitions to the keys assigned to them
+     */
+    @Nonnull @NonnullElements private Map<Integer, Collection<String>> groupByPartition(
+            @Nonnull @NotEmpty final String context, @Nonnull @NonnullElements final Collection<String> keys) {
+        if (getPartitionCount() == 1) {
+            return Collections.singletonMap(0, keys);
+        }
+        
+        final Map<Integer, Collection<String>> groups = new HashMap<>();
+        for (final String key : keys) {
+            final Integer partition = getPartition(context, key);
+            Collection<String> group = groups.get(partition);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(partition, group);
+            }
+            group.add(key);
+        }
+        return groups;
+    }
+
+}
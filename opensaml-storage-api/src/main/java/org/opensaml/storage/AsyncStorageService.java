@@ -0,0 +1,102 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.annotation.constraint.ThreadSafeAfterInit;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Optional extension to {@link StorageService} supporting asynchronous operations on individual records.
+ * 
+ * <p>Each method returns without waiting for the operation to complete, allowing callers to overlap storage
+ * I/O with other work. The result of the returned future is that of the corresponding synchronous method.
+ * If the operation fails, the future fails with the {@link java.io.IOException} that the synchronous method
+ * would have thrown.</p>
+ */
+@ThreadSafeAfterInit
+public interface AsyncStorageService extends StorageService {
+
+    /**
+     * Creates a new record in the store with an expiration.
+     * 
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * @param value         value to store
+     * @param expiration    expiration for record, or null
+     * 
+     * @return  future result, true iff record was inserted, false iff a duplicate was found
+     */
+    @Nonnull ListenableFuture<Boolean> createAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
+            @Nullable @Positive final Long expiration);
+
+    /**
+     * Returns an existing record from the store, if one exists.
+     *
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * 
+     * @return  future result, the record read back, if present, or null
+     */
+    @Nonnull ListenableFuture<StorageRecord> readAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key);
+
+    /**
+     * Updates an existing record in the store.
+     * 
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * @param value         updated value
+     * @param expiration    expiration for record, or null
+     * 
+     * @return  future result, true if the update succeeded, false if the record does not exist
+     */
+    @Nonnull ListenableFuture<Boolean> updateAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
+            @Nullable @Positive final Long expiration);
+
+    /**
+     * Updates expiration of an existing record in the store.
+     * 
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * @param expiration    expiration for record, or null
+     * 
+     * @return  future result, true if the update succeeded, false if the record does not exist
+     */
+    @Nonnull ListenableFuture<Boolean> updateExpirationAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nullable @Positive final Long expiration);
+
+    /**
+     * Deletes an existing record from the store.
+     * 
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * 
+     * @return  future result, true iff the record existed and was deleted
+     */
+    @Nonnull ListenableFuture<Boolean> deleteAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key);
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.annotation.constraint.ThreadSafeAfterInit;
+
+/**
+ * Optional extension to {@link StorageService} supporting operations on multiple records in a single context.
+ * 
+ * <p>Implementations are expected to perform each operation in substantially fewer round trips than the
+ * equivalent sequence of single-record operations, but are not required to perform them atomically. The
+ * result of each operation reflects the outcome for the individual records, exactly as if the corresponding
+ * single-record operation had been applied to each in turn.</p>
+ */
+@ThreadSafeAfterInit
+public interface BatchStorageService extends StorageService {
+
+    /**
+     * Creates new records in the store, all with the same expiration.
+     * 
+     * @param context       a storage context label
+     * @param values        map of keys unique to context to the values to store
+     * @param expiration    expiration for the records, or null
+     * 
+     * @return  the keys of the records inserted, excluding those for which a duplicate was found
+     * @throws IOException  if fatal errors occur in the insertion process
+     */
+    @Nonnull @NonnullElements Set<String> createBatch(@Nonnull @NotEmpty final String context,
+            @Nonnull @NonnullElements final Map<String, String> values, @Nullable @Positive final Long expiration)
+                    throws IOException;
+
+    /**
+     * Returns existing records from the store.
+     * 
+     * @param context       a storage context label
+     * @param keys          keys unique to context
+     * 
+     * @return  map of keys to the records read back, omitting any which are not present
+     * @throws IOException  if errors occur in the read process
+     */
+    @Nonnull @NonnullElements Map<String, StorageRecord> readBatch(@Nonnull @NotEmpty final String context,
+            @Nonnull @NonnullElements final Collection<String> keys) throws IOException;
+
+    /**
+     * Deletes existing records from the store.
+     * 
+     * @param context       a storage context label
+     * @param keys          keys unique to context
+     * 
+     * @return  the number of records which existed and were deleted
+     * @throws IOException  if errors occur in the deletion process
+     */
+    @NonNegative int deleteBatch(@Nonnull @NotEmpty final String context,
+            @Nonnull @NonnullElements final Collection<String> keys) throws IOException;
+
+}
@@ -24,6 +24,7 @@ import javax.annotation.Nonnull;
 
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
 import net.shibboleth.utilities.java.support.annotation.constraint.ThreadSafeAfterInit;
 import net.shibboleth.utilities.java.support.codec.StringDigester;
 import net.shibboleth.utilities.java.support.codec.StringDigester.OutputFormat;
@@ -38,8 +39,11 @@ import org.slf4j.LoggerFactory;
 /**
  * Tracks non-replayable values in order to detect replays of the values, commonly used to track message identifiers.
  * 
- * <p>This class is thread-safe and uses a synchronized method to prevent race conditions within the underlying
- * store (lacking an atomic "check and insert" operation).</p>
+ * <p>This class is thread-safe. By default it serializes checks using a single lock to prevent race conditions
+ * within the underlying store (lacking an atomic "check and insert" operation). The lock may be striped by
+ * context and value so that checks of different values proceed concurrently, or, for stores whose
+ * {@link StorageService#create(String, String, String, Long)} operation atomically refuses duplicates, locking
+ * may be dispensed with entirely.</p>
  */
 @ThreadSafeAfterInit
 public class ReplayCache extends AbstractIdentifiableInitializableComponent {
@@ -56,6 +60,20 @@ public class ReplayCache extends AbstractIdentifiableInitializableComponent {
     /** Flag controlling behavior on storage failure. */
     private boolean strict;
     
+    /** Flag indicating whether to rely on the atomicity of the storage create operation. */
+    private boolean atomicCreate;
+    
+    /** Number of locks to stripe checks across when not relying on atomic creation. */
+    @Positive private int lockStripes;
+    
+    /** Locks used to serialize checks when not relying on atomic creation. */
+    @NonnullAfterInit private Object[] locks;
+    
+    /** Constructor. */
+    public ReplayCache() {
+        lockStripes = 1;
+    }
+    
     /**
      * Get the backing store for the cache.
      * 
@@ -99,6 +117,57 @@ public class ReplayCache extends AbstractIdentifiableInitializableComponent {
         
         strict = flag;
     }
+    
+    /**
+     * Get whether to rely on the atomicity of the storage create operation to detect replays.
+     * 
+     * @return true iff replays are detected solely by the failure of an atomic create
+     */
+    public boolean isAtomicCreate() {
+        return atomicCreate;
+    }
+
+    /**
+     * Set whether to rely on the atomicity of the storage create operation to detect replays.
+     * 
+     * <p>If true, no locking is performed and a value is treated as a replay iff the underlying
+     * {@link StorageService#create(String, String, String, Long)} call reports an existing record.
+     * This must only be enabled for a store which guarantees that concurrent creates of the same
+     * record can't both succeed.</p>
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @param flag true iff replays should be detected solely by the failure of an atomic create
+     */
+    public void setAtomicCreate(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        atomicCreate = flag;
+    }
+    
+    /**
+     * Get the number of locks to stripe checks across when not relying on atomic creation.
+     * 
+     * @return number of locks
+     */
+    @Positive public int getLockStripes() {
+        return lockStripes;
+    }
+
+    /**
+     * Set the number of locks to stripe checks across when not relying on atomic creation.
+     * 
+     * <p>Checks of the same context and value always use the same lock.</p>
+     * 
+     * <p>Defaults to: 1.</p>
+     * 
+     * @param stripes number of locks
+     */
+    public void setLockStripes(@Positive final int stripes) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        lockStripes = (int) Constraint.isGreaterThan(0, stripes, "Lock stripes must be greater than 0");
+    }
 
 
     /** {@inheritDoc} */
@@ -113,6 +182,11 @@ public class ReplayCache extends AbstractIdentifiableInitializableComponent {
         } catch (final NoSuchAlgorithmException e) {
             throw new ComponentInitializationException(e);
         }
+        
+        locks = new Object[lockStripes];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
     }
 
     /**
@@ -124,7 +198,7 @@ public class ReplayCache extends AbstractIdentifiableInitializableComponent {
      * 
      * @return true iff the check value is not found in the cache
      */
-    public synchronized boolean check(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String s,
+    public boolean check(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String s,
             final long expires) {
 
         final String key;
@@ -140,19 +214,51 @@ public class ReplayCache extends AbstractIdentifiableInitializableComponent {
         }
 
         try {
-            final StorageRecord entry = storage.read(context, key);
-            if (entry == null) {
-                log.debug("Value '{}' was not a replay, adding to cache with expiration time {}", s, expires);
-                storage.create(context, key, "x", expires);
-                return true;
-            } else {
-                log.debug("Replay of value '{}' detected in cache, expires at {}", s, entry.getExpiration());
-                return false;
+            if (atomicCreate) {
+                if (storage.create(context, key, "x", expires)) {
+                    log.debug("Value '{}' was not a replay, added to cache with expiration time {}", s, expires);
+                    return true;
+                } else {
+                    log.debug("Replay of value '{}' detected in cache", s);
+                    return false;
+                }
+            }
+            
+            synchronized (getLock(context, key)) {
+                final StorageRecord entry = storage.read(context, key);
+                if (entry == null) {
+                    if (storage.create(context, key, "x", expires)) {
+                        log.debug("Value '{}' was not a replay, added to cache with expiration time {}", s, expires);
+                        return true;
+                    }
+                    // A value that could not be recorded could later be replayed undetected.
+                    log.warn("Value '{}' could not be added to cache, treating as a replay", s);
+                    return false;
+                } else {
+                    log.debug("Replay of value '{}' detected in cache, expires at {}", s, entry.getExpiration());
+                    return false;
+                }
             }
         } catch (final IOException e) {
             log.error("Exception reading/writing to storage service, returning {}", strict ? "failure" : "success", e);
             return !strict;
         }
     }
+    
+    /**
+     * Get the lock used to serialize checks of a value.
+     * 
+     * @param context   a context label to subdivide the cache
+     * @param key       storage key of the value to check
+     * 
+     * @return the lock
+     */
+    @Nonnull private Object getLock(@Nonnull final String context, @Nonnull final String key) {
+        if (locks.length == 1) {
+            return locks[0];
+        }
+        final int hash = 31 * context.hashCode() + key.hashCode();
+        return locks[(hash & Integer.MAX_VALUE) % locks.length];
+    }
 
 }
\ No newline at end of file
@@ -19,6 +19,11 @@ package org.opensaml.storage;
 
 import java.io.IOException;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
 
@@ -115,6 +120,43 @@ public abstract class StorageServiceTest {
         }
     }
 
+    @Test
+    public void batch() throws IOException {
+        if (!(shared instanceof BatchStorageService)) {
+            return;
+        }
+        threadInit();
+        
+        final BatchStorageService batch = (BatchStorageService) shared;
+        String context = Long.toString(random.nextLong());
+        
+        Assert.assertTrue(shared.create(context, "1", "existing", null));
+        
+        final Map<String, String> values = new HashMap<>();
+        final List<String> keys = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            values.put(Integer.toString(i), Integer.toString(i + 1));
+            keys.add(Integer.toString(i));
+        }
+        keys.add("missing");
+        
+        final Set<String> created = batch.createBatch(context, values, System.currentTimeMillis() + 300000);
+        Assert.assertEquals(created.size(), 99);
+        Assert.assertFalse(created.contains("1"));
+        
+        final Map<String, StorageRecord> records = batch.readBatch(context, keys);
+        Assert.assertEquals(records.size(), 100);
+        Assert.assertEquals(records.get("1").getValue(), "existing");
+        for (int i = 2; i <= 100; i++) {
+            Assert.assertEquals(records.get(Integer.toString(i)).getValue(), Integer.toString(i + 1));
+        }
+        Assert.assertFalse(records.containsKey("missing"));
+        
+        Assert.assertEquals(batch.deleteBatch(context, keys), 100);
+        Assert.assertTrue(batch.readBatch(context, keys).isEmpty());
+        Assert.assertEquals(batch.deleteBatch(context, keys), 0);
+    }
+
     @Test
     public void expiration() throws IOException, InterruptedException {
         threadInit();
@@ -0,0 +1,274 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opensaml.storage.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimerTask;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.Live;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.opensaml.storage.AbstractPartitionedMapBackedStorageService;
+import org.opensaml.storage.MutableStorageRecord;
+import org.opensaml.storage.StorageCapabilitiesEx;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of {@link org.opensaml.storage.StorageService} that stores data in-memory with no persistence,
+ * partitioned across independently locked segments.
+ * 
+ * <p>Unlike {@link MemoryStorageService}, which guards all of its data with a single lock, each record is
+ * assigned to a segment based on its context and key, so operations on records in different segments,
+ * including records in the same context, don't contend with one another. Operations on a single record
+ * have the same semantics as {@link MemoryStorageService}, including versioning.</p>
+ * 
+ * <p>Operations on an entire context, and the background cleanup task, visit each segment in turn, locking
+ * only one segment at a time. They are therefore not atomic with respect to concurrent operations on
+ * individual records in that context. The cleanup task uses an expiry-ordered index per segment, so its cost
+ * is proportional to the number of records expiring.</p>
+ * 
+ * <p>Batch operations group their keys by segment and lock each affected segment once.</p>
+ */
+public class ConcurrentMemoryStorageService extends AbstractPartitionedMapBackedStorageService
+        implements StorageCapabilitiesEx {
+
+    /** Maximum number of index entries examined by the cleanup task per acquisition of a segment lock. */
+    private static final int REAP_BATCH_SIZE = 1000;
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(ConcurrentMemoryStorageService.class);
+
+    /** Number of segments to partition records across. */
+    @Positive private int concurrencyLevel;
+    
+    /** The segments. */
+    @NonnullAfterInit @NonnullElements private Segment[] segments;
+    
+    /** Constructor. */
+    public ConcurrentMemoryStorageService() {
+        concurrencyLevel = 16;
+    }
+    
+    /**
+     * Get the number of segments to partition records across.
+     * 
+     * @return number of segments
+     */
+    @Positive public int getConcurrencyLevel() {
+        return concurrencyLevel;
+    }
+    
+    /**
+     * Set the number of segments to partition records across.
+     * 
+     * <p>The value is rounded up to the next power of two. Defaults to 16.</p>
+     * 
+     * @param level number of segments
+     */
+    public void setConcurrencyLevel(@Positive final int level) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        final int segmentCount = (int) Constraint.isGreaterThan(0, level, "Concurrency level must be greater than 0");
+        concurrencyLevel = Integer.highestOneBit(segmentCount) == segmentCount 
+                ? segmentCount : Integer.highestOneBit(segmentCount) << 1;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isServerSide() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isClustered() {
+        return false;
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        segments = new Segment[concurrencyLevel];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+        super.doInitialize();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        super.doDestroy();
+        segments = null;
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    @Positive protected int getPartitionCount() {
+        return getSegments().length;
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    @NonNegative protected int getPartition(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) {
+        int hash = 31 * context.hashCode() + key.hashCode();
+        // Spread higher bits downward, as the segment is selected using the low bits.
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return hash & (getSegments().length - 1);
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull protected ReadWriteLock getLock(@NonNegative final int partition) {
+        return getSegments()[partition].getLock();
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull @NonnullElements @Live protected Map<String, Map<String, MutableStorageRecord>> getContextMap(
+            @NonNegative final int partition) {
+        return getSegments()[partition].getContextMap();
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    protected void trackExpiration(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull final MutableStorageRecord record) {
+        getSegments()[getPartition(context, key)].getExpirationIndex().add(context, key, record);
+    }
+    
+// Checkstyle: AnonInnerLength OFF
+    /** {@inheritDoc} */
+    @Override
+    @Nullable protected TimerTask getCleanupTask() {
+        return new TimerTask() {
+            
+            /** {@inheritDoc} */
+            @Override
+            public void run() {
+                log.debug("Running cleanup task");
+                
+                final Segment[] current = segments;
+                if (current == null) {
+                    return;
+                }
+                
+                final long now = System.currentTimeMillis();
+                int purged = 0;
+                for (final Segment segment : current) {
+                    final Lock writeLock = segment.getLock().writeLock();
+                    boolean more = true;
+                    
+                    // Reap in batches, releasing the lock in between so readers aren't blocked for long.
+                    while (more) {
+                        try {
+                            writeLock.lock();
+                            purged += segment.getExpirationIndex().reap(now, REAP_BATCH_SIZE);
+                            more = segment.getExpirationIndex().hasDue(now);
+                        } finally {
+                            writeLock.unlock();
+                        }
+                    }
+                }
+                
+                if (purged > 0) {
+                    log.debug("Purged {} expired record(s) from storage", purged);
+                } else {
+                    log.debug("No expired records found in storage");
+                }
+            }
+        };
+    }
+// Checkstyle: AnonInnerLength ON
+    
+    /**
+     * Get the segments, failing if the service is not initialized.
+     * 
+     * @return the segments
+     */
+    @Nonnull @NonnullElements private Segment[] getSegments() {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        
+        return segments;
+    }
+    
+    /**
+     * A partition of the stored records, guarded by its own lock.
+     */
+    private static final class Segment {
+        
+        /** Lock guarding the segment. */
+        @Nonnull private final ReadWriteLock lock;
+        
+        /** Map of contexts to the records in this segment. */
+        @Nonnull @NonnullElements private final Map<String, Map<String, MutableStorageRecord>> contextMap;
+        
+        /** Expiry-ordered index of the records in this segment. */
+        @Nonnull private final ExpirationIndex expirationIndex;
+        
+        /** Constructor. */
+        Segment() {
+            lock = new ReentrantReadWriteLock();
+            contextMap = new HashMap<>();
+            expirationIndex = new ExpirationIndex(contextMap);
+        }
+        
+        /**
+         * Get the expiry-ordered index of the records in this segment.
+         * 
+         * @return the expiration index
+         */
+        @Nonnull ExpirationIndex getExpirationIndex() {
+            return expirationIndex;
+        }
+        
+        /**
+         * Get the lock guarding the segment.
+         * 
+         * @return the lock
+         */
+        @Nonnull ReadWriteLock getLock() {
+            return lock;
+        }
+        
+        /**
+         * Get the map of contexts to the records in this segment.
+         * 
+         * @return the context map
+         */
+        @Nonnull @NonnullElements Map<String, Map<String, MutableStorageRecord>> getContextMap() {
+            return contextMap;
+        }
+    }
+
+}
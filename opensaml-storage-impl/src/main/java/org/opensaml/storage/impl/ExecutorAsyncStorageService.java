@@ -0,0 +1,235 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.opensaml.storage.AbstractDelegatingStorageService;
+import org.opensaml.storage.AsyncStorageService;
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.StorageService;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Implementation of {@link AsyncStorageService} which runs the synchronous operations of an underlying
+ * {@link StorageService}, such as {@link JPAStorageService} or {@link LDAPStorageService}, on a bounded pool
+ * of threads.
+ * 
+ * <p>If the queue of pending operations is full, further operations are run by the calling thread, which
+ * limits the number of operations outstanding against the underlying service. Operations submitted once
+ * the service is being destroyed are not run, and their results fail with a
+ * {@link RejectedExecutionException}.</p>
+ */
+public class ExecutorAsyncStorageService extends AbstractDelegatingStorageService implements AsyncStorageService {
+
+    /** Number of threads. */
+    @Positive private int threads;
+
+    /** Maximum number of operations waiting for a thread. */
+    @Positive private int queueSize;
+
+    /** Executor running the operations. */
+    @NonnullAfterInit private volatile ListeningExecutorService executor;
+
+    /**
+     * Constructor.
+     * 
+     * @param storage the underlying service
+     */
+    public ExecutorAsyncStorageService(@Nonnull final StorageService storage) {
+        super(storage);
+        threads = 4;
+        queueSize = 1000;
+    }
+
+    /**
+     * Get the number of threads.
+     * 
+     * @return number of threads
+     */
+    @Positive public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Set the number of threads.
+     * 
+     * <p>Defaults to: 4.</p>
+     * 
+     * @param count number of threads
+     */
+    public void setThreads(@Positive final int count) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        threads = (int) Constraint.isGreaterThan(0, count, "Number of threads must be greater than 0");
+    }
+
+    /**
+     * Get the maximum number of operations waiting for a thread.
+     * 
+     * @return maximum number of waiting operations
+     */
+    @Positive public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * Set the maximum number of operations waiting for a thread.
+     * 
+     * <p>Defaults to: 1000.</p>
+     * 
+     * @param size maximum number of waiting operations
+     */
+    public void setQueueSize(@Positive final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        queueSize = (int) Constraint.isGreaterThan(0, size, "Queue size must be greater than 0");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize),
+                new ThreadFactoryBuilder().setNameFormat("AsyncStorage-" + getId() + "-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy() {
+                    public void rejectedExecution(final Runnable r, final ThreadPoolExecutor e) {
+                        // The default policy silently discards the operation, so its result would never complete.
+                        if (e.isShutdown()) {
+                            throw new RejectedExecutionException("Storage service " + getId() + " is shut down");
+                        }
+                        super.rejectedExecution(r, e);
+                    }
+                });
+        executor = MoreExecutors.listeningDecorator(pool);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        super.doDestroy();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public ListenableFuture<Boolean> createAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
+            @Nullable @Positive final Long expiration) {
+        return submit(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return getDelegate().create(context, key, value, expiration);
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public ListenableFuture<StorageRecord> readAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) {
+        return submit(new Callable<StorageRecord>() {
+            public StorageRecord call() throws Exception {
+                return getDelegate().read(context, key);
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public ListenableFuture<Boolean> updateAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
+            @Nullable @Positive final Long expiration) {
+        return submit(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return getDelegate().update(context, key, value, expiration);
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public ListenableFuture<Boolean> updateExpirationAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nullable @Positive final Long expiration) {
+        return submit(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return getDelegate().updateExpiration(context, key, expiration);
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public ListenableFuture<Boolean> deleteAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) {
+        return submit(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return getDelegate().delete(context, key);
+            }
+        });
+    }
+
+    /**
+     * Submit an operation to the executor.
+     * 
+     * @param <T> type of result
+     * @param operation the operation
+     * 
+     * @return future result of the operation, failed if the operation was rejected
+     */
+    @Nonnull private <T> ListenableFuture<T> submit(@Nonnull final Callable<T> operation) {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+
+        final ListeningExecutorService current = executor;
+        if (current == null) {
+            return Futures.immediateFailedFuture(
+                    new RejectedExecutionException("Storage service " + getId() + " is shut down"));
+        }
+        
+        try {
+            return current.submit(operation);
+        } catch (final RejectedExecutionException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+}
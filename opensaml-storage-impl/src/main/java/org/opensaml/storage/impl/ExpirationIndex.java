@@ -0,0 +1,242 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl;
+
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.Live;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+
+import org.opensaml.storage.MutableStorageRecord;
+
+/**
+ * An expiry-ordered index of the records in a map of contexts, used by in-memory storage services to reap
+ * expired records at a cost proportional to the number of records actually expiring, rather than the
+ * number of records stored.
+ * 
+ * <p>Entries are added whenever a record is stored with an expiration, and are never removed when the
+ * record is later deleted, replaced or has its expiration changed. Instead, each entry is validated against
+ * the current state of the map when it comes due, and discarded if it no longer describes an expired record.
+ * The index is rebuilt from the map if such stale entries come to dominate it.</p>
+ * 
+ * <p>This class is not thread-safe, and must be guarded by the same lock as the map it indexes.</p>
+ */
+@NotThreadSafe
+final class ExpirationIndex {
+    
+    /** Minimum number of entries before the index is considered for rebuilding. */
+    private static final int MIN_REBUILD_SIZE = 1024;
+
+    /** The indexed map of contexts. */
+    @Nonnull @NonnullElements @Live private final Map<String, Map<String, MutableStorageRecord>> contextMap;
+    
+    /** Queue of entries, ordered by expiration. */
+    @Nonnull @NonnullElements private final PriorityQueue<Entry> queue;
+    
+    /** Size of the queue at which it will next be considered for rebuilding. */
+    private int rebuildSize;
+    
+    /**
+     * Constructor.
+     *
+     * @param map the map of contexts to index
+     */
+    ExpirationIndex(@Nonnull @NonnullElements @Live final Map<String, Map<String, MutableStorageRecord>> map) {
+        contextMap = map;
+        queue = new PriorityQueue<>();
+        rebuildSize = MIN_REBUILD_SIZE;
+    }
+    
+    /**
+     * Get the number of entries in the index, including stale entries.
+     * 
+     * @return number of entries
+     */
+    @NonNegative int size() {
+        return queue.size();
+    }
+    
+    /**
+     * Index a record which has been stored with, or updated to, its current expiration.
+     * 
+     * @param context the record's context
+     * @param key the record's key
+     * @param record the record
+     */
+    void add(@Nonnull final String context, @Nonnull final String key, @Nonnull final MutableStorageRecord record) {
+        final Long expiration = record.getExpiration();
+        if (expiration == null) {
+            return;
+        }
+        
+        queue.add(new Entry(expiration, context, key, record));
+        if (queue.size() >= rebuildSize) {
+            rebuild();
+        }
+    }
+    
+    /**
+     * Check whether any entry has come due.
+     * 
+     * @param now the current time
+     * @return true iff at least one entry has come due
+     */
+    boolean hasDue(final long now) {
+        final Entry head = queue.peek();
+        return head != null && head.getExpiration() <= now;
+    }
+    
+    /**
+     * Remove expired records from the indexed map, examining at most the specified number of due entries.
+     * 
+     * @param now the current time
+     * @param limit maximum number of due entries to examine
+     * @return number of records removed
+     */
+    @NonNegative int reap(final long now, @NonNegative final int limit) {
+        int examined = 0;
+        int purged = 0;
+        while (examined < limit && hasDue(now)) {
+            final Entry entry = queue.poll();
+            examined++;
+            
+            final Map<String, MutableStorageRecord> dataMap = contextMap.get(entry.getContext());
+            if (dataMap == null || dataMap.get(entry.getKey()) != entry.getRecord()) {
+                // Deleted or replaced since indexed.
+                continue;
+            }
+            final Long exp = entry.getRecord().getExpiration();
+            if (exp == null || exp > now) {
+                // Expiration changed since indexed, any later expiration has its own entry.
+                continue;
+            }
+            
+            dataMap.remove(entry.getKey());
+            if (dataMap.isEmpty()) {
+                contextMap.remove(entry.getContext());
+            }
+            purged++;
+        }
+        return purged;
+    }
+    
+    /**
+     * Rebuild the index from the current state of the indexed map, if stale entries dominate it.
+     */
+    private void rebuild() {
+        int live = 0;
+        for (final Map<String, MutableStorageRecord> dataMap : contextMap.values()) {
+            live += dataMap.size();
+        }
+        
+        if (queue.size() > 2 * live) {
+            queue.clear();
+            for (final Map.Entry<String, Map<String, MutableStorageRecord>> context : contextMap.entrySet()) {
+                for (final Map.Entry<String, MutableStorageRecord> record : context.getValue().entrySet()) {
+                    final Long expiration = record.getValue().getExpiration();
+                    if (expiration != null) {
+                        queue.add(new Entry(expiration, context.getKey(), record.getKey(), record.getValue()));
+                    }
+                }
+            }
+        }
+        
+        rebuildSize = Math.max(MIN_REBUILD_SIZE, 2 * queue.size());
+    }
+    
+    /**
+     * An indexed record and the expiration it had when indexed.
+     */
+    private static final class Entry implements Comparable<Entry> {
+        
+        /** Expiration of the record when indexed. */
+        private final long expiration;
+        
+        /** The record's context. */
+        @Nonnull private final String context;
+        
+        /** The record's key. */
+        @Nonnull private final String key;
+        
+        /** The record. */
+        @Nonnull private final MutableStorageRecord record;
+        
+        /**
+         * Constructor.
+         *
+         * @param exp expiration of the record when indexed
+         * @param ctx the record's context
+         * @param k the record's key
+         * @param rec the record
+         */
+        Entry(final long exp, @Nonnull final String ctx, @Nonnull final String k, 
+                @Nonnull final MutableStorageRecord rec) {
+            expiration = exp;
+            context = ctx;
+            key = k;
+            record = rec;
+        }
+        
+        /**
+         * Get the expiration of the record when indexed.
+         * 
+         * @return the expiration
+         */
+        long getExpiration() {
+            return expiration;
+        }
+        
+        /**
+         * Get the record's context.
+         * 
+         * @return the context
+         */
+        @Nonnull String getContext() {
+            return context;
+        }
+        
+        /**
+         * Get the record's key.
+         * 
+         * @return the key
+         */
+        @Nonnull String getKey() {
+            return key;
+        }
+        
+        /**
+         * Get the record.
+         * 
+         * @return the record
+         */
+        @Nonnull MutableStorageRecord getRecord() {
+            return record;
+        }
+
+        /** {@inheritDoc} */
+        public int compareTo(final Entry other) {
+            return Long.compare(expiration, other.expiration);
+        }
+    }
+    
+}
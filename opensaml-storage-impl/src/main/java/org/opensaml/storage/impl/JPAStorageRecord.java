@@ -48,11 +48,17 @@ import org.opensaml.storage.MutableStorageRecord;
             query = "SELECT distinct r.context FROM JPAStorageRecord r"),
     @NamedQuery(name = "JPAStorageRecord.findByContext",
             query = "SELECT r FROM JPAStorageRecord r WHERE r.context = :context"),
+    @NamedQuery(name = "JPAStorageRecord.findByContextAndKeys",
+            query = "SELECT r FROM JPAStorageRecord r WHERE r.context = :context AND r.key IN :keys"),
+    @NamedQuery(name = "JPAStorageRecord.findByExpiration",
+            query = "SELECT r FROM JPAStorageRecord r WHERE r.expiration <= :exp"),
     @NamedQuery(name = "JPAStorageRecord.updateExpirationByContext",
             query =
               "UPDATE JPAStorageRecord r SET r.expiration = :exp WHERE r.context = :context AND r.expiration >= :now"),
     @NamedQuery(name = "JPAStorageRecord.deleteByContext",
             query = "DELETE FROM JPAStorageRecord r WHERE r.context = :context"),
+    @NamedQuery(name = "JPAStorageRecord.deleteByContextAndKeys",
+            query = "DELETE FROM JPAStorageRecord r WHERE r.context = :context AND r.key IN :keys"),
     @NamedQuery(name = "JPAStorageRecord.deleteByContextAndExpiration",
             query = "DELETE FROM JPAStorageRecord r WHERE r.context = :context AND r.expiration <= :exp"),
     @NamedQuery(name = "JPAStorageRecord.deleteByExpiration",
@@ -19,10 +19,15 @@ package org.opensaml.storage.impl;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimerTask;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -33,26 +38,75 @@ import javax.persistence.EntityTransaction;
 import javax.persistence.LockModeType;
 import javax.persistence.Query;
 import javax.persistence.RollbackException;
+import javax.persistence.TypedQuery;
 
 import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
 import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
 import net.shibboleth.utilities.java.support.collection.Pair;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 
+import org.opensaml.core.metrics.MetricsSupport;
 import org.opensaml.storage.AbstractStorageService;
+import org.opensaml.storage.BatchStorageService;
 import org.opensaml.storage.StorageCapabilitiesEx;
 import org.opensaml.storage.StorageRecord;
 import org.opensaml.storage.VersionMismatchException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
+import com.google.common.collect.Iterables;
+
 /**
  * Implementation of {@link org.opensaml.storage.StorageService} that uses JPA to persist to a database.
+ * 
+ * <p>Batch operations are performed in a single transaction, using one query per
+ * {@link #BATCH_QUERY_SIZE} keys. Creating records in a batch benefits from JDBC batching, if it is enabled
+ * in the persistence unit (e.g. with the <code>hibernate.jdbc.batch_size</code> property).</p>
+ * 
+ * <p>Entity managers may optionally be reused across operations from a bounded pool of idle managers, rather
+ * than being created for each operation, and the cleanup task may optionally remove expired records in batches, each in its own
+ * transaction, rather than in a single bulk delete.</p>
  */
-public class JPAStorageService extends AbstractStorageService implements StorageCapabilitiesEx {
+public class JPAStorageService extends AbstractStorageService
+        implements BatchStorageService, StorageCapabilitiesEx {
+
+    /** Maximum number of keys bound to a single query by the batch operations. */
+    public static final int BATCH_QUERY_SIZE = 500;
+
+    /** Name of the timer for record creation. */
+    @Nonnull @NotEmpty public static final String METRIC_TIMER_CREATE = "timer.create";
+
+    /** Name of the timer for record reads. */
+    @Nonnull @NotEmpty public static final String METRIC_TIMER_READ = "timer.read";
+
+    /** Name of the timer for record updates. */
+    @Nonnull @NotEmpty public static final String METRIC_TIMER_UPDATE = "timer.update";
+
+    /** Name of the timer for record deletion. */
+    @Nonnull @NotEmpty public static final String METRIC_TIMER_DELETE = "timer.delete";
+
+    /** Name of the timer for batch operations. */
+    @Nonnull @NotEmpty public static final String METRIC_TIMER_BATCH = "timer.batch";
+
+    /** Name of the timer for updating the expiration of an entire context. */
+    @Nonnull @NotEmpty public static final String METRIC_TIMER_UPDATE_CONTEXT = "timer.updateContext";
+
+    /** Name of the timer for deleting an entire context. */
+    @Nonnull @NotEmpty public static final String METRIC_TIMER_DELETE_CONTEXT = "timer.deleteContext";
+
+    /** Name of the timer for the cleanup task. */
+    @Nonnull @NotEmpty public static final String METRIC_TIMER_CLEANUP = "timer.cleanup";
+
+    /** Name of the meter for transaction retries. */
+    @Nonnull @NotEmpty public static final String METRIC_METER_RETRIES = "meter.retries";
 
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(JPAStorageService.class);
@@ -63,6 +117,42 @@ public class JPAStorageService extends AbstractStorageService implements Storage
     /** Number of times to retry a transaction if it rolls back. */
     @NonNegative private int transactionRetry;
 
+    /** Maximum number of idle entity managers kept for reuse, or 0 for no reuse. */
+    @NonNegative private int entityManagerPoolSize;
+
+    /** Maximum number of expired records removed per transaction by the cleanup task, or 0 for no limit. */
+    @NonNegative private int cleanupBatchSize;
+
+    /** Idle entity managers available for reuse, or null if entity managers are not reused. */
+    @Nullable private volatile BlockingQueue<EntityManager> entityManagerPool;
+
+    /** Timer for record creation. */
+    @Nullable private Timer timerCreate;
+
+    /** Timer for record reads. */
+    @Nullable private Timer timerRead;
+
+    /** Timer for record updates. */
+    @Nullable private Timer timerUpdate;
+
+    /** Timer for record deletion. */
+    @Nullable private Timer timerDelete;
+
+    /** Timer for batch operations. */
+    @Nullable private Timer timerBatch;
+
+    /** Timer for updating the expiration of an entire context. */
+    @Nullable private Timer timerUpdateContext;
+
+    /** Timer for deleting an entire context. */
+    @Nullable private Timer timerDeleteContext;
+
+    /** Timer for the cleanup task. */
+    @Nullable private Timer timerCleanup;
+
+    /** Meter for transaction retries. */
+    @Nullable private Meter meterRetries;
+
     /**
      * Creates a new JPA storage service.
      * 
@@ -98,6 +188,57 @@ public class JPAStorageService extends AbstractStorageService implements Storage
                         "Transaction retry must be greater than or equal to zero");
     }
 
+    /**
+     * Returns the maximum number of idle entity managers kept for reuse across operations.
+     * 
+     * @return maximum number of idle entity managers, or 0 if entity managers are not reused
+     */
+    @NonNegative public int getEntityManagerPoolSize() {
+        return entityManagerPoolSize;
+    }
+
+    /**
+     * Sets the maximum number of idle entity managers kept for reuse across operations (default is 0).
+     * 
+     * <p>If 0, an entity manager is created for each operation and closed when it completes. Otherwise an
+     * operation takes an idle entity manager from the pool, if one is available, and returns it when it
+     * completes. An entity manager belongs to a single operation while in use, is cleared before it is
+     * returned so entities are never shared between operations, and is closed instead if the pool is full or
+     * it is left with an active transaction.</p>
+     * 
+     * @param size maximum number of idle entity managers, or 0 for no reuse
+     */
+    public void setEntityManagerPoolSize(@NonNegative final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        entityManagerPoolSize =
+                (int) Constraint.isGreaterThanOrEqual(0, size,
+                        "Entity manager pool size must be greater than or equal to zero");
+    }
+
+    /**
+     * Returns the maximum number of expired records removed per transaction by the cleanup task.
+     * 
+     * @return maximum number of records per transaction, or 0 for no limit
+     */
+    @NonNegative public int getCleanupBatchSize() {
+        return cleanupBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of expired records removed per transaction by the cleanup task (default is 0).
+     * 
+     * <p>If 0, expired records are removed by a single bulk delete. Otherwise they are loaded and removed
+     * in batches of at most this size, which keeps transactions and the locks they hold short.</p>
+     * 
+     * @param size maximum number of records per transaction, or 0 for no limit
+     */
+    public void setCleanupBatchSize(@NonNegative final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        cleanupBatchSize =
+                (int) Constraint.isGreaterThanOrEqual(0, size,
+                        "Cleanup batch size must be greater than or equal to zero");
+    }
+
     /** {@inheritDoc} */
     public boolean isServerSide() {
         return true;
@@ -108,8 +249,41 @@ public class JPAStorageService extends AbstractStorageService implements Storage
         return true;
     }
     
+    /** {@inheritDoc} */
+    @Override protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+
+        if (entityManagerPoolSize > 0) {
+            entityManagerPool = new ArrayBlockingQueue<>(entityManagerPoolSize);
+        }
+
+        final MetricRegistry metricRegistry = MetricsSupport.getMetricRegistry();
+        if (metricRegistry != null) {
+            final String baseName = MetricRegistry.name(getClass(), getId());
+            timerCreate = metricRegistry.timer(MetricRegistry.name(baseName, METRIC_TIMER_CREATE));
+            timerRead = metricRegistry.timer(MetricRegistry.name(baseName, METRIC_TIMER_READ));
+            timerUpdate = metricRegistry.timer(MetricRegistry.name(baseName, METRIC_TIMER_UPDATE));
+            timerDelete = metricRegistry.timer(MetricRegistry.name(baseName, METRIC_TIMER_DELETE));
+            timerBatch = metricRegistry.timer(MetricRegistry.name(baseName, METRIC_TIMER_BATCH));
+            timerUpdateContext = metricRegistry.timer(MetricRegistry.name(baseName, METRIC_TIMER_UPDATE_CONTEXT));
+            timerDeleteContext = metricRegistry.timer(MetricRegistry.name(baseName, METRIC_TIMER_DELETE_CONTEXT));
+            timerCleanup = metricRegistry.timer(MetricRegistry.name(baseName, METRIC_TIMER_CLEANUP));
+            meterRetries = metricRegistry.meter(MetricRegistry.name(baseName, METRIC_METER_RETRIES));
+        }
+    }
+
     /** {@inheritDoc} */
     @Override protected void doDestroy() {
+        // Managers in use by operations still running are closed when those operations release them
+        final BlockingQueue<EntityManager> pool = entityManagerPool;
+        entityManagerPool = null;
+        if (pool != null) {
+            EntityManager manager = pool.poll();
+            while (manager != null) {
+                closeEntityManager(manager);
+                manager = pool.poll();
+            }
+        }
         if (entityManagerFactory.isOpen()) {
             entityManagerFactory.close();
         }
@@ -121,6 +295,7 @@ public class JPAStorageService extends AbstractStorageService implements Storage
     /** {@inheritDoc} */
     @Override public boolean create(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
             @Nonnull @NotEmpty final String value, @Nullable @Positive final Long expiration) throws IOException {
+        final Context timerContext = MetricsSupport.startTimer(timerCreate);
         EntityManager manager = null;
         try {
             int retry = -1;
@@ -128,7 +303,7 @@ public class JPAStorageService extends AbstractStorageService implements Storage
             do {
                 EntityTransaction transaction = null;
                 try {
-                    manager = entityManagerFactory.createEntityManager();
+                    manager = getEntityManager(manager);
                     transaction = manager.getTransaction();
                     transaction.begin();
                     JPAStorageRecord entity =
@@ -170,6 +345,7 @@ public class JPAStorageService extends AbstractStorageService implements Storage
                 } catch (final RollbackException e) {
                     lastThrown = e;
                     retry++;
+                    markRetry();
                 } catch (final Exception e) {
                     if (transaction != null && transaction.isActive()) {
                         try {
@@ -193,13 +369,8 @@ public class JPAStorageService extends AbstractStorageService implements Storage
             } while (retry < transactionRetry);
             throw lastThrown;
         } finally {
-            if (manager != null && manager.isOpen()) {
-                try {
-                    manager.close();
-                } catch (final Exception e) {
-                    log.error("Error closing entity manager", e);
-                }
-            }
+            releaseEntityManager(manager);
+            MetricsSupport.stopTimer(timerContext);
         }
     }
 
@@ -215,17 +386,11 @@ public class JPAStorageService extends AbstractStorageService implements Storage
     @Nonnull @NonnullElements public List<StorageRecord> readAll() throws IOException {
         EntityManager manager = null;
         try {
-            manager = entityManagerFactory.createEntityManager();
+            manager = getEntityManager(null);
             return executeNamedQuery(manager, "JPAStorageRecord.findAll", null, StorageRecord.class,
                     LockModeType.PESSIMISTIC_READ);
         } finally {
-            if (manager != null && manager.isOpen()) {
-                try {
-                    manager.close();
-                } catch (final Exception e) {
-                    log.error("Error closing entity manager", e);
-                }
-            }
+            releaseEntityManager(manager);
         }
     }
 
@@ -241,19 +406,13 @@ public class JPAStorageService extends AbstractStorageService implements Storage
             throws IOException {
         EntityManager manager = null;
         try {
-            manager = entityManagerFactory.createEntityManager();
+            manager = getEntityManager(null);
             final Map<String, Object> params = new HashMap<>();
             params.put("context", context);
             return executeNamedQuery(manager, "JPAStorageRecord.findByContext", params, StorageRecord.class,
                     LockModeType.PESSIMISTIC_READ);
         } finally {
-            if (manager != null && manager.isOpen()) {
-                try {
-                    manager.close();
-                } catch (final Exception e) {
-                    log.error("Error closing entity manager", e);
-                }
-            }
+            releaseEntityManager(manager);
         }
     }
 
@@ -266,18 +425,12 @@ public class JPAStorageService extends AbstractStorageService implements Storage
     @Nonnull @NonnullElements public List<String> readContexts() throws IOException {
         EntityManager manager = null;
         try {
-            manager = entityManagerFactory.createEntityManager();
+            manager = getEntityManager(null);
             // this query uses the distinct keyword, it must use optimistic locking
             return executeNamedQuery(manager, "JPAStorageRecord.findAllContexts", null, String.class,
                     LockModeType.OPTIMISTIC);
         } finally {
-            if (manager != null && manager.isOpen()) {
-                try {
-                    manager.close();
-                } catch (final Exception e) {
-                    log.error("Error closing entity manager", e);
-                }
-            }
+            releaseEntityManager(manager);
         }
     }
 
@@ -307,10 +460,11 @@ public class JPAStorageService extends AbstractStorageService implements Storage
      */
     @Nonnull protected Pair<Long, StorageRecord> readImpl(@Nonnull @NotEmpty final String context,
             @Nonnull @NotEmpty final String key, @Positive final Long version) throws IOException {
+        final Context timerContext = MetricsSupport.startTimer(timerRead);
         EntityManager manager = null;
         EntityTransaction transaction = null;
         try {
-            manager = entityManagerFactory.createEntityManager();
+            manager = getEntityManager(null);
             transaction = manager.getTransaction();
             transaction.begin();
             final JPAStorageRecord entity =
@@ -349,13 +503,8 @@ public class JPAStorageService extends AbstractStorageService implements Storage
                     log.error("Error committing transaction", e);
                 }
             }
-            if (manager != null && manager.isOpen()) {
-                try {
-                    manager.close();
-                } catch (final Exception e) {
-                    log.error("Error closing entity manager", e);
-                }
-            }
+            releaseEntityManager(manager);
+            MetricsSupport.stopTimer(timerContext);
         }
     }
 
@@ -407,6 +556,7 @@ public class JPAStorageService extends AbstractStorageService implements Storage
     @Nullable protected Long updateImpl(@Nullable final Long version, @Nonnull @NotEmpty final String context,
             @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
             @Nullable @Positive final Long expiration) throws IOException, VersionMismatchException {
+        final Context timerContext = MetricsSupport.startTimer(timerUpdate);
         EntityManager manager = null;
         try {
             int retry = -1;
@@ -414,7 +564,7 @@ public class JPAStorageService extends AbstractStorageService implements Storage
             do {
                 EntityTransaction transaction = null;
                 try {
-                    manager = entityManagerFactory.createEntityManager();
+                    manager = getEntityManager(manager);
                     transaction = manager.getTransaction();
                     transaction.begin();
                     final JPAStorageRecord entity =
@@ -451,6 +601,7 @@ public class JPAStorageService extends AbstractStorageService implements Storage
                 } catch (final RollbackException e) {
                     lastThrown = e;
                     retry++;
+                    markRetry();
                 } catch (final Exception e) {
                     log.error("Error updating record '{}' in context '{}'", key, context, e);
                     if (transaction != null && transaction.isActive()) {
@@ -473,13 +624,8 @@ public class JPAStorageService extends AbstractStorageService implements Storage
             } while (retry < transactionRetry);
             throw lastThrown;
         } finally {
-            if (manager != null && manager.isOpen()) {
-                try {
-                    manager.close();
-                } catch (final Exception e) {
-                    log.error("Error closing entity manager", e);
-                }
-            }
+            releaseEntityManager(manager);
+            MetricsSupport.stopTimer(timerContext);
         }
     }
 
@@ -516,6 +662,7 @@ public class JPAStorageService extends AbstractStorageService implements Storage
      */
     protected boolean deleteImpl(@Nullable @Positive final Long version, @Nonnull @NotEmpty final String context,
             @Nonnull @NotEmpty final String key) throws IOException, VersionMismatchException {
+        final Context timerContext = MetricsSupport.startTimer(timerDelete);
         EntityManager manager = null;
         try {
             int retry = -1;
@@ -523,7 +670,7 @@ public class JPAStorageService extends AbstractStorageService implements Storage
             do {
                 EntityTransaction transaction = null;
                 try {
-                    manager = entityManagerFactory.createEntityManager();
+                    manager = getEntityManager(manager);
                     transaction = manager.getTransaction();
                     transaction.begin();
                     final JPAStorageRecord entity =
@@ -545,6 +692,7 @@ public class JPAStorageService extends AbstractStorageService implements Storage
                 } catch (final RollbackException e) {
                     lastThrown = e;
                     retry++;
+                    markRetry();
                 } catch (final Exception e) {
                     log.error("Error deleting record '{}' in context '{}'", key, context, e);
                     if (transaction != null && transaction.isActive()) {
@@ -567,13 +715,208 @@ public class JPAStorageService extends AbstractStorageService implements Storage
             } while (retry < transactionRetry);
             throw lastThrown;
         } finally {
-            if (manager != null && manager.isOpen()) {
+            releaseEntityManager(manager);
+            MetricsSupport.stopTimer(timerContext);
+        }
+    }
+
+    // Checkstyle: CyclomaticComplexity ON
+
+    // Checkstyle: MethodLength OFF
+    // Checkstyle: CyclomaticComplexity OFF
+    /** {@inheritDoc} */
+    @Override @Nonnull @NonnullElements public Set<String> createBatch(@Nonnull @NotEmpty final String context,
+            @Nonnull @NonnullElements final Map<String, String> values, @Nullable @Positive final Long expiration)
+                    throws IOException {
+        if (values.isEmpty()) {
+            return new HashSet<>();
+        }
+        final Context timerContext = MetricsSupport.startTimer(timerBatch);
+        EntityManager manager = null;
+        try {
+            int retry = -1;
+            RollbackException lastThrown = null;
+            do {
+                EntityTransaction transaction = null;
                 try {
-                    manager.close();
+                    manager = getEntityManager(manager);
+                    transaction = manager.getTransaction();
+                    transaction.begin();
+                    final Map<String, JPAStorageRecord> existing =
+                            findByContextAndKeys(manager, context, values.keySet(), LockModeType.PESSIMISTIC_WRITE);
+                    final Set<String> created = new HashSet<>(values.size());
+                    final long now = System.currentTimeMillis();
+                    for (final Map.Entry<String, String> entry : values.entrySet()) {
+                        JPAStorageRecord entity = existing.get(entry.getKey());
+                        if (entity != null) {
+                            // Not yet expired?
+                            final Long exp = entity.getExpiration();
+                            if (exp == null || now < exp) {
+                                log.debug("Duplicate record '{}' in context '{}'", entry.getKey(), context);
+                                continue;
+                            }
+
+                            // It's dead, reset the version for merge.
+                            entity.resetVersion();
+                        } else {
+                            entity = new JPAStorageRecord();
+                            entity.setContext(context);
+                            entity.setKey(entry.getKey());
+                        }
+
+                        entity.setValue(entry.getValue());
+                        entity.setExpiration(expiration);
+                        manager.merge(entity);
+                        created.add(entry.getKey());
+                    }
+                    transaction.commit();
+                    log.debug("Created {} of {} record(s) in context '{}' with expiration '{}'",
+                            new Object[] {created.size(), values.size(), context, expiration,});
+                    return created;
+                } catch (final RollbackException e) {
+                    lastThrown = e;
+                    retry++;
+                    markRetry();
                 } catch (final Exception e) {
-                    log.error("Error closing entity manager", e);
+                    if (transaction != null && transaction.isActive()) {
+                        try {
+                            transaction.rollback();
+                        } catch (final Exception ex) {
+                            log.error("Error rolling back transaction", e);
+                        }
+                    }
+                    log.error("Error creating {} record(s) in context '{}' with expiration '{}'", values.size(),
+                            context, expiration, e);
+                    throw new IOException(e);
+                } finally {
+                    if (transaction != null && transaction.isActive() && !transaction.getRollbackOnly()) {
+                        try {
+                            transaction.commit();
+                        } catch (final Exception e) {
+                            log.error("Error committing transaction", e);
+                        }
+                    }
+                }
+            } while (retry < transactionRetry);
+            throw lastThrown;
+        } finally {
+            releaseEntityManager(manager);
+            MetricsSupport.stopTimer(timerContext);
+        }
+    }
+
+    // Checkstyle: CyclomaticComplexity ON
+    // Checkstyle: MethodLength ON
+
+    // Checkstyle: CyclomaticComplexity OFF
+    /** {@inheritDoc} */
+    @Override @Nonnull @NonnullElements public Map<String, StorageRecord> readBatch(
+            @Nonnull @NotEmpty final String context, @Nonnull @NonnullElements final Collection<String> keys)
+                    throws IOException {
+        if (keys.isEmpty()) {
+            return new HashMap<>();
+        }
+        final Context timerContext = MetricsSupport.startTimer(timerBatch);
+        EntityManager manager = null;
+        EntityTransaction transaction = null;
+        try {
+            manager = getEntityManager(null);
+            transaction = manager.getTransaction();
+            transaction.begin();
+            final Map<String, JPAStorageRecord> entities =
+                    findByContextAndKeys(manager, context, keys, LockModeType.PESSIMISTIC_READ);
+            final Map<String, StorageRecord> records = new HashMap<>(entities.size());
+            final long now = System.currentTimeMillis();
+            for (final Map.Entry<String, JPAStorageRecord> entry : entities.entrySet()) {
+                final Long exp = entry.getValue().getExpiration();
+                if (exp == null || now < exp) {
+                    records.put(entry.getKey(), entry.getValue());
                 }
             }
+            log.debug("Read {} of {} record(s) in context '{}'", records.size(), keys.size(), context);
+            return records;
+        } catch (final Exception e) {
+            log.error("Error reading {} record(s) in context '{}'", keys.size(), context, e);
+            if (transaction != null && transaction.isActive()) {
+                try {
+                    transaction.rollback();
+                } catch (final Exception ex) {
+                    log.error("Error rolling back transaction", e);
+                }
+            }
+            throw new IOException(e);
+        } finally {
+            if (transaction != null && transaction.isActive() && !transaction.getRollbackOnly()) {
+                try {
+                    transaction.commit();
+                } catch (final Exception e) {
+                    log.error("Error committing transaction", e);
+                }
+            }
+            releaseEntityManager(manager);
+            MetricsSupport.stopTimer(timerContext);
+        }
+    }
+
+    // Checkstyle: CyclomaticComplexity ON
+
+    // Checkstyle: CyclomaticComplexity OFF
+    /** {@inheritDoc} */
+    @Override @NonNegative public int deleteBatch(@Nonnull @NotEmpty final String context,
+            @Nonnull @NonnullElements final Collection<String> keys) throws IOException {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        final Context timerContext = MetricsSupport.startTimer(timerBatch);
+        EntityManager manager = null;
+        try {
+            int retry = -1;
+            RollbackException lastThrown = null;
+            do {
+                EntityTransaction transaction = null;
+                try {
+                    manager = getEntityManager(manager);
+                    transaction = manager.getTransaction();
+                    transaction.begin();
+                    int count = 0;
+                    for (final List<String> chunk : Iterables.partition(keys, BATCH_QUERY_SIZE)) {
+                        // cannot set lock mode on a non-select query
+                        final Query queryResults = manager.createNamedQuery("JPAStorageRecord.deleteByContextAndKeys");
+                        queryResults.setParameter("context", context);
+                        queryResults.setParameter("keys", chunk);
+                        count += queryResults.executeUpdate();
+                    }
+                    transaction.commit();
+                    log.debug("Deleted {} of {} record(s) in context '{}'", count, keys.size(), context);
+                    return count;
+                } catch (final RollbackException e) {
+                    lastThrown = e;
+                    retry++;
+                    markRetry();
+                } catch (final Exception e) {
+                    log.error("Error deleting {} record(s) in context '{}'", keys.size(), context, e);
+                    if (transaction != null && transaction.isActive()) {
+                        try {
+                            transaction.rollback();
+                        } catch (final Exception ex) {
+                            log.error("Error rolling back transaction", e);
+                        }
+                    }
+                    throw new IOException(e);
+                } finally {
+                    if (transaction != null && transaction.isActive() && !transaction.getRollbackOnly()) {
+                        try {
+                            transaction.commit();
+                        } catch (final Exception e) {
+                            log.error("Error committing transaction", e);
+                        }
+                    }
+                }
+            } while (retry < transactionRetry);
+            throw lastThrown;
+        } finally {
+            releaseEntityManager(manager);
+            MetricsSupport.stopTimer(timerContext);
         }
     }
 
@@ -583,6 +926,7 @@ public class JPAStorageService extends AbstractStorageService implements Storage
     /** {@inheritDoc} */
     @Override public void updateContextExpiration(@Nonnull @NotEmpty final String context,
             @Nullable @Positive final Long expiration) throws IOException {
+        final Context timerContext = MetricsSupport.startTimer(timerUpdateContext);
         EntityManager manager = null;
         try {
             int retry = -1;
@@ -590,7 +934,7 @@ public class JPAStorageService extends AbstractStorageService implements Storage
             do {
                 EntityTransaction transaction = null;
                 try {
-                    manager = entityManagerFactory.createEntityManager();
+                    manager = getEntityManager(manager);
                     transaction = manager.getTransaction();
                     transaction.begin();
                     // cannot set lock mode on a non-select query
@@ -605,6 +949,7 @@ public class JPAStorageService extends AbstractStorageService implements Storage
                 } catch (final RollbackException e) {
                     lastThrown = e;
                     retry++;
+                    markRetry();
                 } catch (final Exception e) {
                     log.error("Error updating context expiration in context '{}'", context, e);
                     if (transaction != null && transaction.isActive()) {
@@ -627,13 +972,8 @@ public class JPAStorageService extends AbstractStorageService implements Storage
             } while (retry < transactionRetry);
             throw lastThrown;
         } finally {
-            if (manager != null && manager.isOpen()) {
-                try {
-                    manager.close();
-                } catch (final Exception e) {
-                    log.error("Error closing entity manager", e);
-                }
-            }
+            releaseEntityManager(manager);
+            MetricsSupport.stopTimer(timerContext);
         }
     }
 
@@ -663,6 +1003,7 @@ public class JPAStorageService extends AbstractStorageService implements Storage
      */
     protected void deleteContextImpl(@Nonnull @NotEmpty final String context, @Nonnull final Long expiration)
             throws IOException {
+        final Context timerContext = MetricsSupport.startTimer(timerDeleteContext);
         EntityManager manager = null;
         try {
             int retry = -1;
@@ -670,7 +1011,7 @@ public class JPAStorageService extends AbstractStorageService implements Storage
             do {
                 EntityTransaction transaction = null;
                 try {
-                    manager = entityManagerFactory.createEntityManager();
+                    manager = getEntityManager(manager);
                     transaction = manager.getTransaction();
                     transaction.begin();
                     // cannot set lock mode on a non-select query
@@ -689,6 +1030,7 @@ public class JPAStorageService extends AbstractStorageService implements Storage
                 } catch (final RollbackException e) {
                     lastThrown = e;
                     retry++;
+                    markRetry();
                 } catch (final Exception e) {
                     log.error("Error deleting context '{}'", context, e);
                     if (transaction != null && transaction.isActive()) {
@@ -711,13 +1053,8 @@ public class JPAStorageService extends AbstractStorageService implements Storage
             } while (retry < transactionRetry);
             throw lastThrown;
         } finally {
-            if (manager != null && manager.isOpen()) {
-                try {
-                    manager.close();
-                } catch (final Exception e) {
-                    log.error("Error closing entity manager", e);
-                }
-            }
+            releaseEntityManager(manager);
+            MetricsSupport.stopTimer(timerContext);
         }
     }
 
@@ -732,6 +1069,11 @@ public class JPAStorageService extends AbstractStorageService implements Storage
      * @throws IOException if errors occur in the cleanup process
      */
     protected void deleteImpl(@Nonnull final Long expiration) throws IOException {
+        if (cleanupBatchSize > 0) {
+            deleteExpiredInBatches(expiration);
+            return;
+        }
+        final Context timerContext = MetricsSupport.startTimer(timerCleanup);
         EntityManager manager = null;
         try {
             int retry = -1;
@@ -739,7 +1081,7 @@ public class JPAStorageService extends AbstractStorageService implements Storage
             do {
                 EntityTransaction transaction = null;
                 try {
-                    manager = entityManagerFactory.createEntityManager();
+                    manager = getEntityManager(manager);
                     transaction = manager.getTransaction();
                     transaction.begin();
                     // cannot set lock mode on a non-select query
@@ -752,6 +1094,7 @@ public class JPAStorageService extends AbstractStorageService implements Storage
                 } catch (final RollbackException e) {
                     lastThrown = e;
                     retry++;
+                    markRetry();
                 } catch (final Exception e) {
                     log.error("Error deleting with expiration '{}'", expiration, e);
                     if (transaction != null && transaction.isActive()) {
@@ -774,17 +1117,158 @@ public class JPAStorageService extends AbstractStorageService implements Storage
             } while (retry < transactionRetry);
             throw lastThrown;
         } finally {
-            if (manager != null && manager.isOpen()) {
+            releaseEntityManager(manager);
+            MetricsSupport.stopTimer(timerContext);
+        }
+    }
+
+    // Checkstyle: CyclomaticComplexity ON
+
+    // Checkstyle: CyclomaticComplexity OFF
+    /**
+     * Deletes every record with an expiration before the supplied expiration, in batches of at most
+     * {@link #getCleanupBatchSize()} records, each in its own transaction.
+     * 
+     * @param expiration of records to delete
+     * 
+     * @throws IOException if errors occur in the cleanup process
+     */
+    private void deleteExpiredInBatches(@Nonnull final Long expiration) throws IOException {
+        final Context timerContext = MetricsSupport.startTimer(timerCleanup);
+        EntityManager manager = null;
+        int total = 0;
+        try {
+            int count;
+            do {
+                EntityTransaction transaction = null;
+                try {
+                    manager = getEntityManager(manager);
+                    transaction = manager.getTransaction();
+                    transaction.begin();
+                    final TypedQuery<JPAStorageRecord> query =
+                            manager.createNamedQuery("JPAStorageRecord.findByExpiration", JPAStorageRecord.class);
+                    query.setLockMode(LockModeType.PESSIMISTIC_WRITE);
+                    query.setParameter("exp", expiration);
+                    query.setMaxResults(cleanupBatchSize);
+                    final List<JPAStorageRecord> entities = query.getResultList();
+                    for (final JPAStorageRecord entity : entities) {
+                        manager.remove(entity);
+                    }
+                    transaction.commit();
+                    count = entities.size();
+                    total += count;
+                } catch (final Exception e) {
+                    log.error("Error deleting with expiration '{}'", expiration, e);
+                    if (transaction != null && transaction.isActive()) {
+                        try {
+                            transaction.rollback();
+                        } catch (final Exception ex) {
+                            log.error("Error rolling back transaction", e);
+                        }
+                    }
+                    throw new IOException(e);
+                }
+            } while (count == cleanupBatchSize);
+            log.debug("Deleted {} record(s) with expiration '{}'", total, expiration);
+        } finally {
+            releaseEntityManager(manager);
+            MetricsSupport.stopTimer(timerContext);
+        }
+    }
+
+    // Checkstyle: CyclomaticComplexity ON
+
+    /**
+     * Returns an entity manager for an operation.
+     * 
+     * <p>The entity manager of a previous attempt at the operation is cleared and used again if entity managers
+     * are reused, and is otherwise closed. Failing that, an idle entity manager is taken from the pool, if
+     * entity managers are reused and one is available, or a new one is created.</p>
+     * 
+     * @param previous entity manager used by a previous attempt at the operation, or null
+     * 
+     * @return entity manager
+     */
+    @Nonnull private EntityManager getEntityManager(@Nullable final EntityManager previous) {
+        final BlockingQueue<EntityManager> pool = entityManagerPool;
+        if (previous != null) {
+            if (pool != null && previous.isOpen()) {
                 try {
-                    manager.close();
+                    previous.clear();
+                    return previous;
                 } catch (final Exception e) {
-                    log.error("Error closing entity manager", e);
+                    log.error("Error clearing entity manager", e);
+                }
+            }
+            closeEntityManager(previous);
+        }
+
+        if (pool != null) {
+            EntityManager manager = pool.poll();
+            while (manager != null) {
+                if (manager.isOpen()) {
+                    return manager;
                 }
+                manager = pool.poll();
             }
         }
+        return entityManagerFactory.createEntityManager();
     }
 
-    // Checkstyle: CyclomaticComplexity ON
+    /**
+     * Releases an entity manager at the end of an operation.
+     * 
+     * <p>If entity managers are reused, the entity manager is cleared and returned to the pool, unless the pool
+     * is full or a transaction is unexpectedly still active. Otherwise it is closed.</p>
+     * 
+     * @param manager entity manager to release, or null
+     */
+    private void releaseEntityManager(@Nullable final EntityManager manager) {
+        if (manager == null || !manager.isOpen()) {
+            return;
+        }
+
+        final BlockingQueue<EntityManager> pool = entityManagerPool;
+        if (pool != null) {
+            try {
+                if (!manager.getTransaction().isActive()) {
+                    manager.clear();
+                    if (pool.offer(manager)) {
+                        // The service may have been destroyed since the pool was obtained
+                        if (entityManagerPool == null && pool.remove(manager)) {
+                            closeEntityManager(manager);
+                        }
+                        return;
+                    }
+                }
+            } catch (final Exception e) {
+                log.error("Error clearing entity manager", e);
+            }
+        }
+        closeEntityManager(manager);
+    }
+
+    /**
+     * Closes an entity manager, logging any error.
+     * 
+     * @param manager entity manager to close
+     */
+    private void closeEntityManager(@Nonnull final EntityManager manager) {
+        if (manager.isOpen()) {
+            try {
+                manager.close();
+            } catch (final Exception e) {
+                log.error("Error closing entity manager", e);
+            }
+        }
+    }
+
+    /** Records a transaction retry. */
+    private void markRetry() {
+        if (meterRetries != null) {
+            meterRetries.mark();
+        }
+    }
 
     // Checkstyle: CyclomaticComplexity OFF
     /**
@@ -840,6 +1324,33 @@ public class JPAStorageService extends AbstractStorageService implements Storage
 
     // Checkstyle: CyclomaticComplexity ON
 
+    /**
+     * Finds the records with the supplied context and keys, within the current transaction.
+     * 
+     * @param manager to execute the queries
+     * @param context to search for
+     * @param keys to search for
+     * @param lockMode of the queries
+     * 
+     * @return map of keys to the records found, including any which are expired
+     */
+    @Nonnull @NonnullElements private Map<String, JPAStorageRecord> findByContextAndKeys(
+            @Nonnull final EntityManager manager, @Nonnull @NotEmpty final String context,
+            @Nonnull @NonnullElements final Collection<String> keys, @Nonnull final LockModeType lockMode) {
+        final Map<String, JPAStorageRecord> results = new HashMap<>(keys.size());
+        for (final List<String> chunk : Iterables.partition(keys, BATCH_QUERY_SIZE)) {
+            final TypedQuery<JPAStorageRecord> query =
+                    manager.createNamedQuery("JPAStorageRecord.findByContextAndKeys", JPAStorageRecord.class);
+            query.setLockMode(lockMode);
+            query.setParameter("context", context);
+            query.setParameter("keys", chunk);
+            for (final JPAStorageRecord entity : query.getResultList()) {
+                results.put(entity.getKey(), entity);
+            }
+        }
+        return results;
+    }
+
     /** {@inheritDoc} */
     @Override @Nullable protected TimerTask getCleanupTask() {
         return new TimerTask() {
@@ -17,11 +17,17 @@
 
 package org.opensaml.storage.impl;
 
+import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -30,21 +36,64 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import net.shibboleth.utilities.java.support.annotation.constraint.Live;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+import net.shibboleth.utilities.java.support.collection.Pair;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
 
+import org.opensaml.core.metrics.MetricsSupport;
 import org.opensaml.storage.AbstractMapBackedStorageService;
 import org.opensaml.storage.MutableStorageRecord;
 import org.opensaml.storage.StorageCapabilitiesEx;
+import org.opensaml.storage.VersionMismatchException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
 /**
  * Implementation of {@link AbstractMapBackedStorageService} that stores data in-memory in a shared data structure 
  * with no persistence.
+ * 
+ * <p>Expired records are reaped by the cleanup task using an expiry-ordered index, in batches which each hold
+ * the lock only briefly, so the cost of a cleanup is proportional to the number of records expiring.</p>
+ * 
+ * <p>The number of records may optionally be bounded, both in total and per context. When a limit would be
+ * exceeded by a new record, expired records are reaped first. If the total limit would still be exceeded, the
+ * configured {@link EvictionPolicy} determines whether existing records are evicted to make room; otherwise,
+ * and always for the per-context limit, the new record is refused and {@link #create(String, String, String, Long)}
+ * returns false.</p>
+ * 
+ * <p>Records are never evicted unless their context has been explicitly designated as evictable, so that
+ * records used for replay detection, whose loss would allow a replay to go undetected, are protected without
+ * any configuration. Since a {@link org.opensaml.storage.ReplayCache} treats a refused record as a replay,
+ * refusal is the safe behavior for such contexts.</p>
  */
 public class MemoryStorageService extends AbstractMapBackedStorageService implements StorageCapabilitiesEx {
+    
+    /** Name of the gauge tracking the number of records, when bounded. */
+    @Nonnull @NotEmpty public static final String METRIC_GAUGE_SIZE = "gauge.size";
+    
+    /** Name of the gauge tracking the number of records evicted, when bounded. */
+    @Nonnull @NotEmpty public static final String METRIC_GAUGE_EVICTIONS = "gauge.evictions";
+    
+    /** Name of the gauge tracking the number of records refused for lack of capacity, when bounded. */
+    @Nonnull @NotEmpty public static final String METRIC_GAUGE_REJECTIONS = "gauge.rejections";
+
+    /** Maximum number of index entries examined by the cleanup task per acquisition of the lock. */
+    private static final int REAP_BATCH_SIZE = 1000;
+    
+    /** Minimum size of the creation order before it is considered for compaction. */
+    private static final int MIN_CREATION_ORDER_COMPACTION_SIZE = 1024;
 
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(MemoryStorageService.class);
@@ -54,6 +103,53 @@ public class MemoryStorageService extends AbstractMapBackedStorageService implem
     
     /** A shared lock to synchronize access. */
     @NonnullAfterInit private ReadWriteLock lock;
+    
+    /** Expiry-ordered index of the records. */
+    @NonnullAfterInit private ExpirationIndex expirationIndex;
+    
+    /** Maximum number of records, or 0 for no limit. */
+    @NonNegative private int maxRecords;
+    
+    /** Maximum number of records per context, or 0 for no limit. */
+    @NonNegative private int maxContextRecords;
+    
+    /** Policy for evicting records when the total limit is reached. */
+    @Nonnull private EvictionPolicy evictionPolicy;
+    
+    /** Contexts whose records may be evicted. */
+    @Nonnull @NonnullElements private Set<String> evictableContexts;
+    
+    /** Evictable records in order of creation, when evicting. */
+    @Nullable private LinkedHashMap<Pair<String, String>, MutableStorageRecord> creationOrder;
+    
+    /** Number of records, maintained when bounded. */
+    private volatile int recordCount;
+    
+    /** Number of records evicted. */
+    @Nonnull private final AtomicLong evictions;
+    
+    /** Number of records refused for lack of capacity. */
+    @Nonnull private final AtomicLong rejections;
+    
+    /** Base name for metrics. */
+    @NonnullAfterInit private String metricsBaseName;
+    
+    /** Gauge for the number of records. */
+    @Nullable private Gauge<Integer> gaugeSize;
+    
+    /** Gauge for the number of records evicted. */
+    @Nullable private Gauge<Long> gaugeEvictions;
+    
+    /** Gauge for the number of records refused. */
+    @Nullable private Gauge<Long> gaugeRejections;
+    
+    /** Constructor. */
+    public MemoryStorageService() {
+        evictionPolicy = EvictionPolicy.NONE;
+        evictableContexts = Collections.emptySet();
+        evictions = new AtomicLong();
+        rejections = new AtomicLong();
+    }
 
     /** {@inheritDoc} */
     public boolean isServerSide() {
@@ -65,23 +161,188 @@ public class MemoryStorageService extends AbstractMapBackedStorageService implem
         return false;
     }
     
+    /**
+     * Get the maximum number of records.
+     * 
+     * @return maximum number of records, or 0 for no limit
+     */
+    @NonNegative public int getMaxRecords() {
+        return maxRecords;
+    }
+    
+    /**
+     * Set the maximum number of records.
+     * 
+     * <p>Defaults to: 0 (no limit).</p>
+     * 
+     * @param max maximum number of records, or 0 for no limit
+     */
+    public void setMaxRecords(@NonNegative final int max) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        maxRecords = (int) Constraint.isGreaterThanOrEqual(0, max, 
+                "Maximum number of records must be greater than or equal to 0");
+    }
+    
+    /**
+     * Get the maximum number of records per context.
+     * 
+     * @return maximum number of records per context, or 0 for no limit
+     */
+    @NonNegative public int getMaxContextRecords() {
+        return maxContextRecords;
+    }
+    
+    /**
+     * Set the maximum number of records per context.
+     * 
+     * <p>Defaults to: 0 (no limit).</p>
+     * 
+     * @param max maximum number of records per context, or 0 for no limit
+     */
+    public void setMaxContextRecords(@NonNegative final int max) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        maxContextRecords = (int) Constraint.isGreaterThanOrEqual(0, max, 
+                "Maximum number of records per context must be greater than or equal to 0");
+    }
+    
+    /**
+     * Get the policy for evicting records when the total limit is reached.
+     * 
+     * @return eviction policy
+     */
+    @Nonnull public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+    
+    /**
+     * Set the policy for evicting records when the total limit is reached.
+     * 
+     * <p>Defaults to: {@link EvictionPolicy#NONE}.</p>
+     * 
+     * @param policy eviction policy
+     */
+    public void setEvictionPolicy(@Nonnull final EvictionPolicy policy) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        evictionPolicy = Constraint.isNotNull(policy, "Eviction policy cannot be null");
+    }
+    
+    /**
+     * Get the contexts whose records may be evicted.
+     * 
+     * @return evictable contexts
+     */
+    @Nonnull @NonnullElements @NotLive @Unmodifiable public Set<String> getEvictableContexts() {
+        return Collections.unmodifiableSet(evictableContexts);
+    }
+    
+    /**
+     * Set the contexts whose records may be evicted when the total limit is reached.
+     * 
+     * <p>Records in any other context are never evicted. Contexts used for replay detection
+     * <strong>MUST NOT</strong> be included.</p>
+     * 
+     * <p>Defaults to: none.</p>
+     * 
+     * @param contexts evictable contexts
+     */
+    public void setEvictableContexts(@Nullable @NonnullElements final Collection<String> contexts) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        final Set<String> newContexts = new HashSet<>();
+        if (contexts != null) {
+            for (final String context : contexts) {
+                final String trimmed = StringSupport.trimOrNull(context);
+                if (trimmed != null) {
+                    newContexts.add(trimmed);
+                }
+            }
+        }
+        evictableContexts = newContexts;
+    }
+    
+    /**
+     * Get the number of records, if the number of records is bounded.
+     * 
+     * @return number of records, or 0 if not bounded
+     */
+    @NonNegative public int getRecordCount() {
+        return recordCount;
+    }
+    
+    /**
+     * Get the number of records evicted.
+     * 
+     * @return number of records evicted
+     */
+    @NonNegative public long getEvictions() {
+        return evictions.get();
+    }
+    
+    /**
+     * Get the number of records refused for lack of capacity.
+     * 
+     * @return number of records refused
+     */
+    @NonNegative public long getRejections() {
+        return rejections.get();
+    }
+    
+    /**
+     * Get whether the number of records is bounded.
+     * 
+     * @return true iff either record limit is set
+     */
+    public boolean isBounded() {
+        return maxRecords > 0 || maxContextRecords > 0;
+    }
+    
     /** {@inheritDoc} */
     @Override
     protected void doInitialize() throws ComponentInitializationException {
         super.doInitialize();
         contextMap = new HashMap<>();
         lock = new ReentrantReadWriteLock(true);
+        expirationIndex = new ExpirationIndex(contextMap);
+        if (maxRecords > 0 && evictionPolicy == EvictionPolicy.FIFO) {
+            if (evictableContexts.isEmpty()) {
+                log.warn("Eviction is enabled for storage service '{}' but no contexts are evictable, "
+                        + "records will be refused instead", getId());
+            } else {
+                creationOrder = new LinkedHashMap<>();
+            }
+        }
+        
+        if (isBounded()) {
+            initializeMetricsInstrumentation();
+        }
     }
 
     /** {@inheritDoc} */
     @Override
     protected void doDestroy() {
+        if (gaugeSize != null) {
+            MetricsSupport.remove(MetricRegistry.name(metricsBaseName, METRIC_GAUGE_SIZE), gaugeSize);
+        }
+        if (gaugeEvictions != null) {
+            MetricsSupport.remove(MetricRegistry.name(metricsBaseName, METRIC_GAUGE_EVICTIONS), gaugeEvictions);
+        }
+        if (gaugeRejections != null) {
+            MetricsSupport.remove(MetricRegistry.name(metricsBaseName, METRIC_GAUGE_REJECTIONS), gaugeRejections);
+        }
+        gaugeSize = null;
+        gaugeEvictions = null;
+        gaugeRejections = null;
+        
+        super.doDestroy();
         contextMap = null;
         lock = null;
-        super.doDestroy();
+        expirationIndex = null;
+        creationOrder = null;
     }
 
-
     /** {@inheritDoc} */
     @Override
     @Nonnull @NonnullElements @Live protected Map<String, Map<String, MutableStorageRecord>> getContextMap() {
@@ -94,6 +355,134 @@ public class MemoryStorageService extends AbstractMapBackedStorageService implem
         return lock;
     }
     
+    /** {@inheritDoc} */
+    @Override
+    protected void trackExpiration(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull final MutableStorageRecord record) {
+        expirationIndex.add(context, key, record);
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public boolean create(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable final Long expiration) throws IOException {
+        if (!isBounded()) {
+            return super.create(context, key, value, expiration);
+        }
+        
+        final Lock writeLock = getLock().writeLock();
+        
+        try {
+            writeLock.lock();
+            
+            final long now = System.currentTimeMillis();
+            final Map<String, MutableStorageRecord> dataMap = contextMap.get(context);
+            final MutableStorageRecord existing = dataMap != null ? dataMap.get(key) : null;
+            if (existing != null) {
+                final Long exp = existing.getExpiration();
+                if (exp == null || now < exp) {
+                    return false;
+                }
+                // An expired record is replaced in place, so no capacity is needed.
+            } else if (!ensureCapacity(context, dataMap, now)) {
+                rejections.incrementAndGet();
+                log.warn("Refused to create record '{}' in context '{}', storage is at capacity", key, context);
+                return false;
+            }
+            
+            if (!super.create(context, key, value, expiration)) {
+                return false;
+            }
+            
+            if (existing == null) {
+                recordCount++;
+            }
+            if (creationOrder != null && evictableContexts.contains(context)) {
+                final Pair<String, String> recordKey = new Pair<>(context, key);
+                creationOrder.remove(recordKey);
+                creationOrder.put(recordKey, contextMap.get(context).get(key));
+                if (creationOrder.size() > Math.max(MIN_CREATION_ORDER_COMPACTION_SIZE, 2 * recordCount)) {
+                    compactCreationOrder();
+                }
+            }
+            return true;
+            
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    protected boolean deleteImpl(@Nullable @Positive final Long version, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) throws IOException, VersionMismatchException {
+        if (!isBounded()) {
+            return super.deleteImpl(version, context, key);
+        }
+        
+        final Lock writeLock = getLock().writeLock();
+        
+        try {
+            writeLock.lock();
+            
+            if (super.deleteImpl(version, context, key)) {
+                recordCount--;
+                if (creationOrder != null) {
+                    creationOrder.remove(new Pair<>(context, key));
+                }
+                return true;
+            }
+            return false;
+            
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public void deleteContext(@Nonnull @NotEmpty final String context) throws IOException {
+        if (!isBounded()) {
+            super.deleteContext(context);
+            return;
+        }
+        
+        final Lock writeLock = getLock().writeLock();
+        
+        try {
+            writeLock.lock();
+            
+            final int before = getContextSize(context);
+            super.deleteContext(context);
+            recordCount -= before;
+            
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public void reap(@Nonnull @NotEmpty final String context) throws IOException {
+        if (!isBounded()) {
+            super.reap(context);
+            return;
+        }
+        
+        final Lock writeLock = getLock().writeLock();
+        
+        try {
+            writeLock.lock();
+            
+            final int before = getContextSize(context);
+            super.reap(context);
+            recordCount -= before - getContextSize(context);
+            
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
 // Checkstyle: AnonInnerLength OFF
     /** {@inheritDoc} */
     @Override
@@ -105,31 +494,28 @@ public class MemoryStorageService extends AbstractMapBackedStorageService implem
             public void run() {
                 log.debug("Running cleanup task");
                 
-                final Long now = System.currentTimeMillis();
+                final long now = System.currentTimeMillis();
                 final Lock writeLock = getLock().writeLock();
-                boolean purged = false;
+                int purged = 0;
+                boolean more = true;
                 
-                try {
-                    writeLock.lock();
-                    
-                    final Collection<Map<String, MutableStorageRecord>> contexts = getContextMap().values();
-                    final Iterator<Map<String, MutableStorageRecord>> i = contexts.iterator();
-                    while (i.hasNext()) {
-                        final Map<String, MutableStorageRecord> context = i.next(); 
-                        if (reapWithLock(context, now)) {
-                            purged = true;
-                            if (context.isEmpty()) {
-                                i.remove();
-                            }
+                // Reap in batches, releasing the lock in between so readers aren't blocked for long.
+                while (more) {
+                    try {
+                        writeLock.lock();
+                        final int batch = expirationIndex.reap(now, REAP_BATCH_SIZE);
+                        if (isBounded()) {
+                            recordCount -= batch;
                         }
+                        purged += batch;
+                        more = expirationIndex.hasDue(now);
+                    } finally {
+                        writeLock.unlock();
                     }
-                    
-                } finally {
-                    writeLock.unlock();
                 }
                 
-                if (purged) {
-                    log.debug("Purged expired record(s) from storage");
+                if (purged > 0) {
+                    log.debug("Purged {} expired record(s) from storage", purged);
                 } else {
                     log.debug("No expired records found in storage");
                 }
@@ -137,5 +523,154 @@ public class MemoryStorageService extends AbstractMapBackedStorageService implem
         };
     }
 // Checkstyle: AnonInnerLength ON
+    
+    /**
+     * Make room for a new record in the specified context, reaping and evicting records as necessary.
+     * 
+     * <p>This method <strong>MUST</strong> be called while holding the write lock.</p>
+     * 
+     * @param context the context of the new record
+     * @param dataMap the records in the context, if any
+     * @param now the current time
+     * 
+     * @return true iff there is room for the new record
+     */
+    private boolean ensureCapacity(@Nonnull final String context, 
+            @Nullable final Map<String, MutableStorageRecord> dataMap, final long now) {
+        
+        if (maxContextRecords > 0 && dataMap != null && dataMap.size() >= maxContextRecords) {
+            final int before = dataMap.size();
+            if (reapWithLock(dataMap, now)) {
+                setDirty(context);
+                recordCount -= before - dataMap.size();
+                if (dataMap.isEmpty()) {
+                    contextMap.remove(context);
+                }
+            }
+            if (dataMap.size() >= maxContextRecords) {
+                return false;
+            }
+        }
+        
+        if (maxRecords > 0 && recordCount >= maxRecords) {
+            recordCount -= expirationIndex.reap(now, Integer.MAX_VALUE);
+            while (recordCount >= maxRecords) {
+                if (!evictOldest()) {
+                    return false;
+                }
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Evict the oldest evictable record, if eviction is enabled.
+     * 
+     * <p>This method <strong>MUST</strong> be called while holding the write lock.</p>
+     * 
+     * @return true iff a record was evicted
+     */
+    private boolean evictOldest() {
+        if (creationOrder == null) {
+            return false;
+        }
+        
+        final Iterator<Map.Entry<Pair<String, String>, MutableStorageRecord>> i = 
+                creationOrder.entrySet().iterator();
+        while (i.hasNext()) {
+            final Map.Entry<Pair<String, String>, MutableStorageRecord> entry = i.next();
+            i.remove();
+            
+            final String context = entry.getKey().getFirst();
+            final String key = entry.getKey().getSecond();
+            final Map<String, MutableStorageRecord> dataMap = contextMap.get(context);
+            if (dataMap != null && dataMap.get(key) == entry.getValue()) {
+                dataMap.remove(key);
+                if (dataMap.isEmpty()) {
+                    contextMap.remove(context);
+                }
+                setDirty(context);
+                recordCount--;
+                evictions.incrementAndGet();
+                log.debug("Evicted record '{}' in context '{}'", key, context);
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Remove entries from the creation order which no longer refer to a stored record.
+     * 
+     * <p>This method <strong>MUST</strong> be called while holding the write lock.</p>
+     */
+    private void compactCreationOrder() {
+        final Iterator<Map.Entry<Pair<String, String>, MutableStorageRecord>> i = 
+                creationOrder.entrySet().iterator();
+        while (i.hasNext()) {
+            final Map.Entry<Pair<String, String>, MutableStorageRecord> entry = i.next();
+            final Map<String, MutableStorageRecord> dataMap = contextMap.get(entry.getKey().getFirst());
+            if (dataMap == null || dataMap.get(entry.getKey().getSecond()) != entry.getValue()) {
+                i.remove();
+            }
+        }
+    }
+    
+    /**
+     * Get the number of records in a context.
+     * 
+     * <p>This method <strong>MUST</strong> be called while holding the lock.</p>
+     * 
+     * @param context the context
+     * @return number of records in the context
+     */
+    @NonNegative private int getContextSize(@Nonnull final String context) {
+        final Map<String, MutableStorageRecord> dataMap = contextMap.get(context);
+        return dataMap != null ? dataMap.size() : 0;
+    }
+    
+    /** Initialize metrics instrumentation. */
+    private void initializeMetricsInstrumentation() {
+        metricsBaseName = MetricRegistry.name(getClass(), getId());
+        
+        if (MetricsSupport.getMetricRegistry() != null) {
+            // Note that these gauges must use the support method to register in a synchronized fashion,
+            // and also must store off the instances for later use in destroy.
+            gaugeSize = MetricsSupport.register(
+                    MetricRegistry.name(metricsBaseName, METRIC_GAUGE_SIZE),
+                    new Gauge<Integer>() {
+                        public Integer getValue() {
+                            return getRecordCount();
+                        }},
+                    true);
+            
+            gaugeEvictions = MetricsSupport.register(
+                    MetricRegistry.name(metricsBaseName, METRIC_GAUGE_EVICTIONS),
+                    new Gauge<Long>() {
+                        public Long getValue() {
+                            return getEvictions();
+                        }},
+                    true);
+            
+            gaugeRejections = MetricsSupport.register(
+                    MetricRegistry.name(metricsBaseName, METRIC_GAUGE_REJECTIONS),
+                    new Gauge<Long>() {
+                        public Long getValue() {
+                            return getRejections();
+                        }},
+                    true);
+        }
+    }
+    
+    /** Policies for evicting records when the total limit is reached. */
+    public enum EvictionPolicy {
+        
+        /** Never evict unexpired records, refuse new records instead. */
+        NONE,
+        
+        /** Evict the oldest records in evictable contexts first, by time of creation. */
+        FIFO,
+    }
 
-}
\ No newline at end of file
+}
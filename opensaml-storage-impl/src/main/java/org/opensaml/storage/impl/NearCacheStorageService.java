@@ -0,0 +1,467 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+import net.shibboleth.utilities.java.support.collection.Pair;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+
+import org.opensaml.storage.AbstractDelegatingStorageService;
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.StorageService;
+import org.opensaml.storage.VersionMismatchException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decorator for a remote {@link StorageService} which keeps a bounded local cache of records read
+ * from selected contexts.
+ * 
+ * <p>Caching is enabled per context, each with a time to live. Within its time to live, a cached record is
+ * returned without consulting the underlying service. Once it has elapsed, the record is revalidated by
+ * reading it from the underlying service only if its version has changed, using
+ * {@link StorageService#read(String, String, long)}. Records which are modified through this service
+ * are removed from the cache, so the time to live bounds how long changes made elsewhere may go unseen.
+ * Since changing only the expiration of a record does not change its version, such changes made elsewhere
+ * may not be seen until the record is removed from the cache.</p>
+ * 
+ * <p>The cache holds at most a fixed number of records, discarding the least recently used. A record read
+ * from the underlying service is not cached if the cache was invalidated while it was being read, so that a
+ * concurrent modification cannot be masked by the record it replaced. Callers are given their own copy of each
+ * cached record.</p>
+ */
+public class NearCacheStorageService extends AbstractDelegatingStorageService {
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(NearCacheStorageService.class);
+
+    /** Time to live of cached records, by context. */
+    @Nonnull @NonnullElements private Map<String, Long> cachedContexts;
+
+    /** Maximum number of cached records. */
+    @Positive private int maxCacheSize;
+
+    /** Cached records, guarded by its own monitor. */
+    @NonnullAfterInit private Map<Pair<String, String>, CachedRecord> cache;
+
+    /** Count of invalidations of the cache, guarded by the monitor of the cache. */
+    private long invalidationStamp;
+
+    /**
+     * Constructor.
+     * 
+     * @param storage the underlying service
+     */
+    public NearCacheStorageService(@Nonnull final StorageService storage) {
+        super(storage);
+        cachedContexts = Collections.emptyMap();
+        maxCacheSize = 1000;
+    }
+
+    /**
+     * Get the time to live of cached records, by context.
+     * 
+     * @return time to live of cached records in milliseconds, by context
+     */
+    @Nonnull @NonnullElements @NotLive @Unmodifiable public Map<String, Long> getCachedContexts() {
+        return Collections.unmodifiableMap(cachedContexts);
+    }
+
+    /**
+     * Set the contexts whose records are cached, and the time to live of the records in each.
+     * 
+     * @param contexts time to live of cached records in milliseconds, by context
+     */
+    public void setCachedContexts(@Nullable @NonnullElements final Map<String, Long> contexts) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        final Map<String, Long> newContexts = new HashMap<>();
+        if (contexts != null) {
+            for (final Map.Entry<String, Long> entry : contexts.entrySet()) {
+                final String context = StringSupport.trimOrNull(entry.getKey());
+                if (context != null) {
+                    Constraint.isNotNull(entry.getValue(), "Time to live cannot be null");
+                    newContexts.put(context, Constraint.isGreaterThan(0, entry.getValue(),
+                            "Time to live must be greater than 0"));
+                }
+            }
+        }
+        cachedContexts = newContexts;
+    }
+
+    /**
+     * Get the maximum number of cached records.
+     * 
+     * @return maximum number of cached records
+     */
+    @Positive public int getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    /**
+     * Set the maximum number of cached records.
+     * 
+     * <p>Defaults to: 1000.</p>
+     * 
+     * @param size maximum number of cached records
+     */
+    public void setMaxCacheSize(@Positive final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        maxCacheSize = (int) Constraint.isGreaterThan(0, size, "Maximum cache size must be greater than 0");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+
+        cache = new BoundedCache(maxCacheSize);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        cache = null;
+        super.doDestroy();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean create(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable @Positive final Long expiration) throws IOException {
+        try {
+            return super.create(context, key, value, expiration);
+        } finally {
+            invalidate(context, key);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable public StorageRecord read(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key)
+            throws IOException {
+        final Long timeToLive = cachedContexts.get(context);
+        if (timeToLive == null) {
+            return super.read(context, key);
+        }
+
+        final Pair<String, String> cacheKey = new Pair<>(context, key);
+        final long now = System.currentTimeMillis();
+        final CachedRecord cached;
+        final long stamp;
+        synchronized (cache) {
+            cached = cache.get(cacheKey);
+            stamp = invalidationStamp;
+        }
+
+        if (cached != null) {
+            if (cached.isExpired(now)) {
+                remove(cacheKey, cached);
+            } else if (now < cached.getValidUntil()) {
+                log.trace("Returning cached record '{}' in context '{}'", key, context);
+                return cached.copy();
+            } else {
+                final Pair<Long, StorageRecord> current = getDelegate().read(context, key, cached.getVersion());
+                if (current.getFirst() == null) {
+                    log.debug("Cached record '{}' in context '{}' no longer exists", key, context);
+                    remove(cacheKey, cached);
+                    return null;
+                } else if (current.getSecond() == null) {
+                    log.trace("Revalidated cached record '{}' in context '{}'", key, context);
+                    return put(cacheKey, cached, now + timeToLive, stamp);
+                } else {
+                    log.debug("Cached record '{}' in context '{}' has changed", key, context);
+                    return put(cacheKey, current.getSecond(), now + timeToLive, stamp);
+                }
+            }
+        }
+
+        final StorageRecord record = getDelegate().read(context, key);
+        if (record == null) {
+            return null;
+        }
+        return put(cacheKey, record, now + timeToLive, stamp);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public Pair<Long, StorageRecord> read(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Positive final long version) throws IOException {
+        if (!cachedContexts.containsKey(context)) {
+            return super.read(context, key, version);
+        }
+
+        final StorageRecord record = read(context, key);
+        if (record == null) {
+            return new Pair<>();
+        } else if (record.getVersion() == version) {
+            // Nothing's changed, so just echo back the version.
+            return new Pair<>(version, null);
+        }
+        return new Pair<>(record.getVersion(), record);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean update(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable @Positive final Long expiration) throws IOException {
+        try {
+            return super.update(context, key, value, expiration);
+        } finally {
+            invalidate(context, key);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable public Long updateWithVersion(@Positive final long version, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
+            @Nullable @Positive final Long expiration) throws IOException, VersionMismatchException {
+        try {
+            return super.updateWithVersion(version, context, key, value, expiration);
+        } finally {
+            invalidate(context, key);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean updateExpiration(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nullable @Positive final Long expiration) throws IOException {
+        try {
+            return super.updateExpiration(context, key, expiration);
+        } finally {
+            invalidate(context, key);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean delete(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key)
+            throws IOException {
+        try {
+            return super.delete(context, key);
+        } finally {
+            invalidate(context, key);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean deleteWithVersion(@Positive final long version, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) throws IOException, VersionMismatchException {
+        try {
+            return super.deleteWithVersion(version, context, key);
+        } finally {
+            invalidate(context, key);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void updateContextExpiration(@Nonnull @NotEmpty final String context, @Nullable final Long expiration)
+            throws IOException {
+        try {
+            super.updateContextExpiration(context, expiration);
+        } finally {
+            invalidate(context);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void deleteContext(@Nonnull @NotEmpty final String context) throws IOException {
+        try {
+            super.deleteContext(context);
+        } finally {
+            invalidate(context);
+        }
+    }
+
+    /**
+     * Cache a copy of a record read from the underlying service, unless the cache has been invalidated since
+     * the record was read, in which case it may already have been modified.
+     * 
+     * @param cacheKey the context and key of the record
+     * @param record the record
+     * @param validUntil time until which the record may be returned without revalidation
+     * @param stamp the count of invalidations of the cache before the record was read
+     * 
+     * @return a copy of the record for the caller
+     */
+    @Nonnull private StorageRecord put(@Nonnull final Pair<String, String> cacheKey,
+            @Nonnull final StorageRecord record, final long validUntil, final long stamp) {
+        final CachedRecord cached = new CachedRecord(record, validUntil);
+        synchronized (cache) {
+            if (invalidationStamp == stamp) {
+                cache.put(cacheKey, cached);
+            } else {
+                log.trace("Cache was invalidated while reading record '{}' in context '{}', not caching it",
+                        cacheKey.getSecond(), cacheKey.getFirst());
+            }
+        }
+        return cached.copy();
+    }
+
+    /**
+     * Remove a record from the cache, if it has not since been replaced.
+     * 
+     * @param cacheKey the context and key of the record
+     * @param cached the cached record
+     */
+    private void remove(@Nonnull final Pair<String, String> cacheKey, @Nonnull final CachedRecord cached) {
+        synchronized (cache) {
+            if (cache.get(cacheKey) == cached) {
+                cache.remove(cacheKey);
+            }
+        }
+    }
+
+    /**
+     * Remove a record from the cache.
+     * 
+     * @param context the context of the record
+     * @param key the key of the record
+     */
+    private void invalidate(@Nonnull final String context, @Nonnull final String key) {
+        if (cachedContexts.containsKey(context)) {
+            synchronized (cache) {
+                invalidationStamp++;
+                cache.remove(new Pair<>(context, key));
+            }
+        }
+    }
+
+    /**
+     * Remove all the records in a context from the cache.
+     * 
+     * @param context the context
+     */
+    private void invalidate(@Nonnull final String context) {
+        if (cachedContexts.containsKey(context)) {
+            synchronized (cache) {
+                invalidationStamp++;
+                final Iterator<Pair<String, String>> i = cache.keySet().iterator();
+                while (i.hasNext()) {
+                    if (context.equals(i.next().getFirst())) {
+                        i.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy of a record read from the underlying service.
+     */
+    private static final class CachedRecord extends StorageRecord {
+
+        /** Time until which the record may be returned without revalidation. */
+        private final long validUntil;
+
+        /**
+         * Constructor.
+         * 
+         * @param record the record to copy
+         * @param until time until which the record may be returned without revalidation
+         */
+        CachedRecord(@Nonnull final StorageRecord record, final long until) {
+            super(record.getValue(), record.getExpiration());
+            setVersion(record.getVersion());
+            validUntil = until;
+        }
+
+        /**
+         * Get the time until which the record may be returned without revalidation.
+         * 
+         * @return time until which the record may be returned without revalidation
+         */
+        long getValidUntil() {
+            return validUntil;
+        }
+
+        /**
+         * Copy the record, so that the cached instance is never shared with a caller.
+         * 
+         * @return the copy
+         */
+        @Nonnull CachedRecord copy() {
+            return new CachedRecord(this, validUntil);
+        }
+
+        /**
+         * Get whether the record has expired.
+         * 
+         * @param now the current time
+         * 
+         * @return true iff the record has expired
+         */
+        boolean isExpired(final long now) {
+            final Long exp = getExpiration();
+            return exp != null && now >= exp;
+        }
+    }
+
+    /**
+     * Map of cached records which discards the least recently used record when full.
+     */
+    private static final class BoundedCache extends LinkedHashMap<Pair<String, String>, CachedRecord> {
+
+        /** Serial version UID. */
+        private static final long serialVersionUID = -3207735862146364585L;
+
+        /** Maximum number of records. */
+        private final int maxSize;
+
+        /**
+         * Constructor.
+         * 
+         * @param size maximum number of records
+         */
+        BoundedCache(final int size) {
+            super(16, 0.75f, true);
+            maxSize = size;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Pair<String, String>, CachedRecord> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+}
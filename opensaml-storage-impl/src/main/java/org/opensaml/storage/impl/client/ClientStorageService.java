@@ -20,8 +20,11 @@ package org.opensaml.storage.impl.client;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TimerTask;
 import java.util.concurrent.locks.Lock;
@@ -46,6 +49,10 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.hash.Hashing;
+
 import net.shibboleth.utilities.java.support.annotation.constraint.Live;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
@@ -73,7 +80,17 @@ import org.slf4j.LoggerFactory;
  * <p>The data for this service is managed in a {@link ClientStorageServiceStore} object, which must
  * be created by some operation within the container for this implementation to function. Actual
  * load/store of the data to/from that object is driven via companion classes. The serialization
- * of data via JSON is inside the storage object class, but the encryption/decryption is here.</p>
+ * of data is inside the storage object class, but the encryption/decryption is here.</p>
+ * 
+ * <p>Data is serialized either as JSON or, if {@link #setCompactEncoding(boolean)} is enabled, in the
+ * more compact binary form implemented by {@link ClientStorageServiceCodec}, optionally compressed.
+ * Either form is accepted when loading, regardless of the setting.</p>
+ * 
+ * <p>If {@link #setIncrementalSealing(boolean)} is enabled, each context is sealed separately and the
+ * sealed chunks are concatenated, so that a save only reseals the contexts modified since the data
+ * was loaded. The chunks are preceded by a manifest, resealed on every save, that carries a digest of
+ * the chunks saved with it, so that chunks from different saves cannot be combined. Data in either
+ * layout is accepted when loading.</p>
  */
 public class ClientStorageService extends AbstractMapBackedStorageService implements Filter, StorageCapabilitiesEx {
 
@@ -94,6 +111,15 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
         HTML_LOCAL_STORAGE,
     }
 
+    /** Separator between independently sealed chunks of data. */
+    private static final char CHUNK_SEPARATOR = '.';
+
+    /** Prefix of the manifest that precedes a number of separately sealed chunks. */
+    @Nonnull @NotEmpty private static final String MANIFEST_PREFIX = "!manifest:";
+
+    /** Prefix of each separately sealed chunk, which is only valid when preceded by its manifest. */
+    @Nonnull @NotEmpty private static final String CHUNK_PREFIX = "!chunk:";
+
     /** Default label for storage tracking. */
     @Nonnull @NotEmpty private static final String DEFAULT_STORAGE_NAME = "shib_idp_client_ss";
     
@@ -118,6 +144,15 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
     /** KeyStrategy enabling us to detect whether data has been sealed with an older key. */
     @Nullable private DataSealerKeyStrategy keyStrategy;
 
+    /** Whether to serialize data in the compact binary form. */
+    private boolean compactEncoding;
+    
+    /** Whether to compress data serialized in the compact binary form. */
+    private boolean compressData;
+    
+    /** Whether to seal each context separately, resealing only those that are modified. */
+    private boolean incrementalSealing;
+
     /** Constructor. */
     public ClientStorageService() {
         storageName = DEFAULT_STORAGE_NAME;
@@ -241,6 +276,85 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
         keyStrategy = strategy;
     }
 
+    /**
+     * Get whether to serialize data in the compact binary form rather than JSON.
+     * 
+     * @return whether to use the compact binary form
+     */
+    public boolean isCompactEncoding() {
+        return compactEncoding;
+    }
+    
+    /**
+     * Set whether to serialize data in the compact binary form rather than JSON.
+     * 
+     * <p>Data in either form is accepted when loading, but older versions of this service can only
+     * read JSON, so this should only be enabled once every node sharing the data has been upgraded.</p>
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @param flag flag to set
+     */
+    public void setCompactEncoding(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        compactEncoding = flag;
+    }
+
+    /**
+     * Get whether to DEFLATE data serialized in the compact binary form.
+     * 
+     * @return whether to compress data
+     */
+    public boolean isCompressData() {
+        return compressData;
+    }
+    
+    /**
+     * Set whether to DEFLATE data serialized in the compact binary form.
+     * 
+     * <p>This has no effect unless {@link #setCompactEncoding(boolean)} is enabled. The {@link DataSealer}
+     * compresses the data it seals in any case, so this rarely reduces the size of the sealed data
+     * further.</p>
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @param flag flag to set
+     */
+    public void setCompressData(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        compressData = flag;
+    }
+
+    /**
+     * Get whether to seal each context separately, resealing only those that are modified.
+     * 
+     * @return whether to seal contexts separately
+     */
+    public boolean isIncrementalSealing() {
+        return incrementalSealing;
+    }
+    
+    /**
+     * Set whether to seal each context separately, resealing only those that are modified.
+     * 
+     * <p>This reduces the serialization and encryption done when only some contexts change, at the
+     * cost of some size overhead per context. Contexts containing records without an expiration are
+     * resealed on every save, so that their data does not outlive the sealed form. Older versions of
+     * this service cannot read data sealed this way, so this should only be enabled once every node
+     * sharing the data has been upgraded.</p>
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @param flag flag to set
+     */
+    public void setIncrementalSealing(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        incrementalSealing = flag;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void init(final FilterConfig filterConfig) throws ServletException {
@@ -334,7 +448,18 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
         
         final Object store = session.getAttribute(STORAGE_ATTRIBUTE + '.' + storageName);
         if (store != null && store instanceof ClientStorageServiceStore) {
-            ((ClientStorageServiceStore) store).setDirty(true);
+            ((ClientStorageServiceStore) store).invalidate();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void setDirty(@Nonnull @NotEmpty final String context) {
+        final HttpSession session = Constraint.isNotNull(httpServletRequest.getSession(), "HttpSession cannot be null");
+        
+        final Object store = session.getAttribute(STORAGE_ATTRIBUTE + '.' + storageName);
+        if (store != null && store instanceof ClientStorageServiceStore) {
+            ((ClientStorageServiceStore) store).setDirty(context);
         }
     }
     
@@ -387,6 +512,9 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
     /**
      * Reconstitute stored data and inject it into the session.
      * 
+     * <p>The data may consist of a manifest followed by a number of separately sealed chunks, each of
+     * which is loaded independently once the manifest has been checked against them.</p>
+     * 
      * <p>This method should <strong>not</strong> be called while holding the session lock
      * returned by {@link #getLock()}.</p>
      * 
@@ -395,46 +523,33 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
      */
     void load(@Nullable @NotEmpty final String raw, @Nonnull final ClientStorageSource source) {
 
-        ClientStorageServiceStore storageObject;
+        final ClientStorageServiceStore storageObject = new ClientStorageServiceStore(source);
         
         if (raw != null) {
             log.trace("{} Loading storage state into session", getLogPrefix());
-            try {
-                final StringBuffer keyAliasUsed = new StringBuffer();
-                final String decrypted = dataSealer.unwrap(raw, keyAliasUsed);
-                
-                log.trace("{} Data after decryption: {}", getLogPrefix(), decrypted);
-                
-                storageObject = new ClientStorageServiceStore(decrypted, source);
-                
-                if (keyStrategy != null) {
-                    try {
-                        if (!keyStrategy.getDefaultKey().getFirst().equals(keyAliasUsed.toString())) {
-                            storageObject.setDirty(true);
-                        }
-                    } catch (final KeyException e) {
-                        log.error("{} Exception while accessing default key during stale key detection",
-                                getLogPrefix(), e);
+            final List<String> chunks = new ArrayList<>();
+            for (final String chunk : Splitter.on(CHUNK_SEPARATOR).omitEmptyStrings().split(raw)) {
+                chunks.add(chunk);
+            }
+            if (chunks.size() == 1) {
+                loadChunk(storageObject, chunks.get(0), false);
+            } else if (!chunks.isEmpty()) {
+                final List<String> sealedChunks = chunks.subList(1, chunks.size());
+                if (checkManifest(storageObject, chunks.get(0), sealedChunks)) {
+                    for (final String chunk : sealedChunks) {
+                        loadChunk(storageObject, chunk, true);
                     }
+                } else {
+                    storageObject.setDirty(true);
                 }
-                
-                log.debug("{} Successfully decrypted and loaded storage state from client", getLogPrefix());
-            } catch (final DataExpiredException e) {
-                log.debug("{} Secured data or key has expired", getLogPrefix());
-                storageObject = new ClientStorageServiceStore(null, source);
-                storageObject.setDirty(true);
-            } catch (final DataSealerException e) {
-                log.error("{} Exception unwrapping secured data", getLogPrefix(), e);
-                storageObject = new ClientStorageServiceStore(null, source);
-                storageObject.setDirty(true);
             }
         } else {
             log.trace("{} Initializing empty storage state into session", getLogPrefix());
-            storageObject = new ClientStorageServiceStore(null, source);
         }
         
         // The object should be loaded, and marked "clean", or in the event of just about any failure
-        // it should be empty and marked "dirty" to force an overwrite of the expired or corrupted data.
+        // the affected data should be dropped and the object marked "dirty" to force an overwrite of the
+        // expired or corrupted data.
         
         final Lock lock = getLock().writeLock();
         try {
@@ -448,6 +563,119 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
         }
     }
     
+    /**
+     * Decrypt a sealed manifest and check that it matches the chunks of data that follow it.
+     * 
+     * @param storageObject the object the chunks are to be loaded into
+     * @param sealed the sealed manifest
+     * @param chunks the sealed chunks of data
+     * 
+     * @return true iff the manifest is valid and matches the chunks
+     */
+    private boolean checkManifest(@Nonnull final ClientStorageServiceStore storageObject,
+            @Nonnull @NotEmpty final String sealed, @Nonnull @NonnullElements final List<String> chunks) {
+        try {
+            final StringBuffer keyAliasUsed = new StringBuffer();
+            final String decrypted = dataSealer.unwrap(sealed, keyAliasUsed);
+            
+            if (!decrypted.startsWith(MANIFEST_PREFIX)) {
+                log.error("{} Secured data did not begin with a manifest", getLogPrefix());
+                return false;
+            } else if (!decrypted.substring(MANIFEST_PREFIX.length()).equals(digest(chunks))) {
+                log.error("{} Secured data did not match its manifest", getLogPrefix());
+                return false;
+            }
+            
+            if (isStale(keyAliasUsed.toString())) {
+                storageObject.setDirty(true);
+            }
+            return true;
+        } catch (final DataExpiredException e) {
+            log.debug("{} Secured manifest or key has expired", getLogPrefix());
+            return false;
+        } catch (final DataSealerException e) {
+            log.error("{} Exception unwrapping secured manifest", getLogPrefix(), e);
+            return false;
+        }
+    }
+    
+    /**
+     * Decrypt a sealed chunk of data and load it into a storage object.
+     * 
+     * <p>Data sealed as one of a number of chunks is only accepted when it was checked against a
+     * manifest, so that a client cannot drop the manifest and replay an individual chunk as if it
+     * were the whole of the data.</p>
+     * 
+     * @param storageObject the object to load into
+     * @param sealed the sealed data
+     * @param chunked whether the data was preceded by a valid manifest
+     */
+    private void loadChunk(@Nonnull final ClientStorageServiceStore storageObject,
+            @Nonnull @NotEmpty final String sealed, final boolean chunked) {
+        try {
+            final StringBuffer keyAliasUsed = new StringBuffer();
+            String decrypted = dataSealer.unwrap(sealed, keyAliasUsed);
+            
+            log.trace("{} Data after decryption: {}", getLogPrefix(), decrypted);
+            
+            if (decrypted.startsWith(CHUNK_PREFIX) != chunked) {
+                log.error("{} Secured data {} a manifest", getLogPrefix(),
+                        chunked ? "was not sealed for use with" : "was missing its");
+                storageObject.setDirty(true);
+                return;
+            } else if (chunked) {
+                decrypted = decrypted.substring(CHUNK_PREFIX.length());
+            }
+            
+            final boolean stale = isStale(keyAliasUsed.toString());
+            
+            // Only chunks may be reused when sealing incrementally.
+            if (storageObject.load(decrypted, stale || !chunked ? null : sealed)) {
+                if (stale) {
+                    storageObject.setDirty(true);
+                }
+                log.debug("{} Successfully decrypted and loaded storage state from client", getLogPrefix());
+            }
+        } catch (final DataExpiredException e) {
+            log.debug("{} Secured data or key has expired", getLogPrefix());
+            storageObject.setDirty(true);
+        } catch (final DataSealerException e) {
+            log.error("{} Exception unwrapping secured data", getLogPrefix(), e);
+            storageObject.setDirty(true);
+        }
+    }
+    
+    /**
+     * Check whether data was sealed with a key other than the current default key.
+     * 
+     * @param keyAlias alias of the key used to seal the data
+     * 
+     * @return true iff the data should be resealed with the default key
+     */
+    private boolean isStale(@Nonnull final String keyAlias) {
+        if (keyStrategy != null) {
+            try {
+                return !keyStrategy.getDefaultKey().getFirst().equals(keyAlias);
+            } catch (final KeyException e) {
+                log.error("{} Exception while accessing default key during stale key detection",
+                        getLogPrefix(), e);
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Compute the digest of a sequence of sealed chunks of data that is carried in their manifest.
+     * 
+     * @param chunks the sealed chunks
+     * 
+     * @return the digest
+     */
+    @Nonnull @NotEmpty private static String digest(@Nonnull @NonnullElements final List<String> chunks) {
+        return Hashing.sha256().hashString(Joiner.on(CHUNK_SEPARATOR).join(chunks),
+                StandardCharsets.UTF_8).toString();
+    }
+    
     /**
      * Serialize the stored data if it's in a "modified/dirty" state.
      * 
@@ -501,6 +729,9 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
         /** The underlying map of data records. */
         @Nonnull @NonnullElements private final Map<String, Map<String, MutableStorageRecord>> contextMap;
         
+        /** Sealed data for contexts that have not been modified since loading or saving. */
+        @Nonnull @NonnullElements private final Map<String, String> sealedContexts;
+        
         /** Data source. */
         @Nonnull private final ClientStorageSource source; 
         
@@ -508,63 +739,67 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
         private boolean dirty;
         
         /**
-         * Reconstitute stored data.
+         * Constructor.
          * 
-         * <p>The dirty bit is set based on the result. If successful, the bit is cleared,
-         * but if an error occurs, it will be set.</p>
-         * 
-         * @param raw serialized data to load
          * @param src data source
          */
-        ClientStorageServiceStore(@Nullable @NotEmpty final String raw, @Nonnull final ClientStorageSource src) {
+        ClientStorageServiceStore(@Nonnull final ClientStorageSource src) {
             contextMap = new HashMap<>();
+            sealedContexts = new HashMap<>();
             source = Constraint.isNotNull(src, "Data source cannot be null");
+        }
+        
+        /**
+         * Add a unit of serialized data to the store.
+         * 
+         * <p>If the data is invalid, it is discarded and the dirty bit is set, which should force
+         * the corrupt data in the client to be overwritten.</p>
+         * 
+         * @param raw serialized data to load
+         * @param sealed the sealed form of the data, if it may be reused when saving
+         * 
+         * @return true iff the data was loaded
+         */
+        boolean load(@Nonnull @NotEmpty final String raw, @Nullable final String sealed) {
             
-            if (raw == null) {
-                return;
-            }
+            final Map<String, Map<String, MutableStorageRecord>> loaded = new HashMap<>();
             
             try {
-                final JsonReader reader = Json.createReader(new StringReader(raw));
-                final JsonStructure st = reader.read();
-                if (!(st instanceof JsonObject)) {
-                    throw new JsonException("Found invalid data structure while parsing context map");
-                }
-                final JsonObject obj = (JsonObject) st;
-                
-                for (final Map.Entry<String,JsonValue> context : obj.entrySet()) {
-                    if (context.getValue().getValueType() != JsonValue.ValueType.OBJECT) {
-                        throw new JsonException("Found invalid data structure while parsing context map");
-                    }
-                    
-                    // Create new context if necessary.
-                    Map<String,MutableStorageRecord> dataMap = contextMap.get(context);
-                    if (dataMap == null) {
-                        dataMap = new HashMap<>();
-                        contextMap.put(context.getKey(), dataMap);
-                    }
-                    
-                    final JsonObject contextRecords = (JsonObject) context.getValue();
-                    for (final Map.Entry<String,JsonValue> record : contextRecords.entrySet()) {
-                    
-                        final JsonObject fields = (JsonObject) record.getValue();
-                        Long exp = null;
-                        if (fields.containsKey("x")) {
-                            exp = fields.getJsonNumber("x").longValueExact();
-                        }
-                        
-                        dataMap.put(record.getKey(), new MutableStorageRecord(fields.getString("v"), exp));
-                    }
+                if (ClientStorageServiceCodec.isCompact(raw)) {
+                    ClientStorageServiceCodec.decode(raw, loaded);
+                } else {
+                    parseJSON(raw, loaded);
                 }
-                setDirty(false);
-            } catch (final NullPointerException | ClassCastException | ArithmeticException | JsonException e) {
-                contextMap.clear();
-                // Setting this should force corrupt data in the client to be overwritten.
+            } catch (final IOException | IllegalArgumentException | NullPointerException | ClassCastException
+                    | ArithmeticException | JsonException e) {
                 setDirty(true);
                 log.error("{} Found invalid data structure while parsing context map", getLogPrefix(), e);
+                return false;
             }
+            
+            // Sealed data is only reusable if it holds exactly one context and every record in it
+            // expires, since its own expiration is then no later than that of the records.
+            if (sealed != null && loaded.size() == 1) {
+                final Map.Entry<String, Map<String, MutableStorageRecord>> context =
+                        loaded.entrySet().iterator().next();
+                if (!contextMap.containsKey(context.getKey()) && isAllExpiring(context.getValue())) {
+                    sealedContexts.put(context.getKey(), sealed);
+                }
+            }
+            
+            for (final Map.Entry<String, Map<String, MutableStorageRecord>> context : loaded.entrySet()) {
+                final Map<String, MutableStorageRecord> dataMap = contextMap.get(context.getKey());
+                if (dataMap == null) {
+                    contextMap.put(context.getKey(), context.getValue());
+                } else {
+                    dataMap.putAll(context.getValue());
+                    sealedContexts.remove(context.getKey());
+                }
+            }
+            
+            return true;
         }
-
+        
         /**
          * Get the map of contexts to manipulate during operations.
          * 
@@ -600,6 +835,24 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
         void setDirty(final boolean flag) {
             dirty = flag;
         }
+        
+        /**
+         * Set the dirty bit and discard any sealed data for a modified context.
+         * 
+         * @param context the modified context
+         */
+        void setDirty(@Nonnull @NotEmpty final String context) {
+            dirty = true;
+            sealedContexts.remove(context);
+        }
+        
+        /**
+         * Set the dirty bit and discard all sealed data, if the extent of a modification is unknown.
+         */
+        void invalidate() {
+            dirty = true;
+            sealedContexts.clear();
+        }
 
 // Checkstyle: CyclomaticComplexity OFF        
         /**
@@ -621,58 +874,260 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
                 return new ClientStorageServiceOperation(getId(), getStorageName(), null, source);
             }
 
-            long exp = 0L;
             final long now = System.currentTimeMillis();
-            boolean empty = true;
+            
+            final String wrapped;
+            if (incrementalSealing) {
+                wrapped = sealContexts(now);
+            } else {
+                wrapped = seal(contextMap, now, null);
+            }
+
+            if (wrapped == null) {
+                log.trace("{} Data is empty", getLogPrefix());
+                return new ClientStorageServiceOperation(getId(), getStorageName(), null, source);
+            }
+            
+            setDirty(false);
+            return new ClientStorageServiceOperation(getId(), getStorageName(), wrapped, source);
+        }
+
+        /**
+         * Seal each context separately, reusing the sealed data for any context not modified since
+         * it was last loaded or saved, and precede the chunks with a freshly sealed manifest.
+         * 
+         * @param now the current time
+         * 
+         * @return the combined sealed data, or null if there are no unexpired records
+         * 
+         * @throws IOException if an error occurs
+         */
+        @Nullable private String sealContexts(final long now) throws IOException {
+            
+            final List<String> chunks = new ArrayList<>(contextMap.size());
+            final Map<String, Map<String, MutableStorageRecord>> single = new HashMap<>(1);
+            
+            for (final Map.Entry<String, Map<String, MutableStorageRecord>> context : contextMap.entrySet()) {
+                String chunk = sealedContexts.get(context.getKey());
+                if (chunk != null) {
+                    if (isAnyLive(context.getValue(), now)) {
+                        log.trace("{} Context '{}' not modified, reusing sealed data", getLogPrefix(),
+                                context.getKey());
+                        chunks.add(chunk);
+                    } else {
+                        sealedContexts.remove(context.getKey());
+                    }
+                    continue;
+                }
+                
+                single.clear();
+                single.put(context.getKey(), context.getValue());
+                chunk = seal(single, now, CHUNK_PREFIX);
+                if (chunk != null) {
+                    chunks.add(chunk);
+                    if (isAllExpiring(context.getValue())) {
+                        sealedContexts.put(context.getKey(), chunk);
+                    }
+                }
+            }
+            
+            sealedContexts.keySet().retainAll(contextMap.keySet());
+            
+            if (chunks.isEmpty()) {
+                return null;
+            }
+            
+            try {
+                chunks.add(0, dataSealer.wrap(MANIFEST_PREFIX + digest(chunks), getExpiration(contextMap, now)));
+            } catch (final DataSealerException e) {
+                throw new IOException(e);
+            }
+            return Joiner.on(CHUNK_SEPARATOR).join(chunks);
+        }
+        
+        /**
+         * Serialize and seal the unexpired records in a map of contexts.
+         * 
+         * @param contexts the contexts to seal
+         * @param now the current time
+         * @param prefix prefix to seal along with the serialized data, if any
+         * 
+         * @return the sealed data, or null if there are no unexpired records
+         * 
+         * @throws IOException if an error occurs
+         */
+        @Nullable private String seal(@Nonnull @NonnullElements final Map<String, Map<String, MutableStorageRecord>>
+                contexts, final long now, @Nullable final String prefix) throws IOException {
+            
+            final long exp = getExpiration(contexts, now);
+            if (exp == 0) {
+                return null;
+            }
 
             try {
-                final StringWriter sink = new StringWriter(128);
-                final JsonGenerator gen = Json.createGenerator(sink);
+                final String raw;
+                if (compactEncoding) {
+                    raw = ClientStorageServiceCodec.encode(contexts, compressData, now);
+                } else {
+                    raw = serializeJSON(contexts, now);
+                }
                 
-                gen.writeStartObject();
-                for (final Map.Entry<String,Map<String, MutableStorageRecord>> context : contextMap.entrySet()) {
-                    if (!context.getValue().isEmpty()) {
-                        gen.writeStartObject(context.getKey());
-                        for (final Map.Entry<String,MutableStorageRecord> entry : context.getValue().entrySet()) {
-                            final MutableStorageRecord record = entry.getValue();
-                            final Long recexp = record.getExpiration();
-                            if (recexp == null || recexp > now) {
-                                empty = false;
-                                gen.writeStartObject(entry.getKey())
-                                    .write("v", record.getValue());
-                                if (recexp != null) {
-                                    gen.write("x", record.getExpiration());
-                                    exp = Math.max(exp, recexp);
-                                }
-                                gen.writeEnd();
-                            }
+                log.trace("{} Size of data before encryption is {}", getLogPrefix(), raw.length());
+                log.trace("{} Data before encryption is {}", getLogPrefix(), raw);
+                final String wrapped = dataSealer.wrap(prefix != null ? prefix + raw : raw, exp);
+                log.trace("{} Size of data after encryption is {}", getLogPrefix(), wrapped.length());
+                return wrapped;
+            } catch (final DataSealerException | JsonException e) {
+                throw new IOException(e);
+            }
+        }
+        
+        /**
+         * Get the expiration to seal a map of contexts with, the latest expiration of its unexpired
+         * records or, if none of them expire, a day from now.
+         * 
+         * @param contexts the contexts to seal
+         * @param now the current time
+         * 
+         * @return the expiration, or 0 if there are no unexpired records
+         */
+        private long getExpiration(@Nonnull @NonnullElements final Map<String, Map<String, MutableStorageRecord>>
+                contexts, final long now) {
+            
+            long exp = 0L;
+            boolean empty = true;
+
+            for (final Map<String, MutableStorageRecord> records : contexts.values()) {
+                for (final MutableStorageRecord record : records.values()) {
+                    final Long recexp = record.getExpiration();
+                    if (recexp == null || recexp > now) {
+                        empty = false;
+                        if (recexp != null) {
+                            exp = Math.max(exp, recexp);
                         }
-                        gen.writeEnd();
                     }
                 }
-                gen.writeEnd().close();
+            }
+            
+            if (empty) {
+                return 0L;
+            }
+            return exp > 0 ? exp : System.currentTimeMillis() + 24 * 60 * 60 * 1000;
+        }
+        
+        /**
+         * Check whether every record in a context carries an expiration.
+         * 
+         * @param records the records to check
+         * 
+         * @return true iff no record is free of an expiration
+         */
+        private boolean isAllExpiring(@Nonnull @NonnullElements final Map<String, MutableStorageRecord> records) {
+            for (final MutableStorageRecord record : records.values()) {
+                if (record.getExpiration() == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
 
-                if (empty) {
-                    log.trace("{} Data is empty", getLogPrefix());
-                    return new ClientStorageServiceOperation(getId(), getStorageName(), null, source);
+        /**
+         * Check whether any record in a context is unexpired.
+         * 
+         * @param records the records to check
+         * @param now the current time
+         * 
+         * @return true iff any record is unexpired
+         */
+        private boolean isAnyLive(@Nonnull @NonnullElements final Map<String, MutableStorageRecord> records,
+                final long now) {
+            for (final MutableStorageRecord record : records.values()) {
+                final Long exp = record.getExpiration();
+                if (exp == null || exp > now) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        /**
+         * Parse data serialized as JSON.
+         * 
+         * @param raw serialized data
+         * @param contexts map to populate
+         */
+        private void parseJSON(@Nonnull @NotEmpty final String raw,
+                @Nonnull @NonnullElements @Live final Map<String, Map<String, MutableStorageRecord>> contexts) {
+            
+            final JsonReader reader = Json.createReader(new StringReader(raw));
+            final JsonStructure st = reader.read();
+            if (!(st instanceof JsonObject)) {
+                throw new JsonException("Found invalid data structure while parsing context map");
+            }
+            final JsonObject obj = (JsonObject) st;
+            
+            for (final Map.Entry<String,JsonValue> context : obj.entrySet()) {
+                if (context.getValue().getValueType() != JsonValue.ValueType.OBJECT) {
+                    throw new JsonException("Found invalid data structure while parsing context map");
                 }
                 
-                final String raw = sink.toString();
+                // Create new context if necessary.
+                Map<String,MutableStorageRecord> dataMap = contexts.get(context.getKey());
+                if (dataMap == null) {
+                    dataMap = new HashMap<>();
+                    contexts.put(context.getKey(), dataMap);
+                }
                 
-                log.trace("{} Size of data before encryption is {}", getLogPrefix(), raw.length());
-                log.trace("{} Data before encryption is {}", getLogPrefix(), raw);
-                try {
-                    final String wrapped = dataSealer.wrap(raw,
-                            exp > 0 ? exp : System.currentTimeMillis() + 24 * 60 * 60 * 1000);
-                    log.trace("{} Size of data after encryption is {}", getLogPrefix(), wrapped.length());
-                    setDirty(false);
-                    return new ClientStorageServiceOperation(getId(), getStorageName(), wrapped, source);
-                } catch (final DataSealerException e) {
-                    throw new IOException(e);
+                final JsonObject contextRecords = (JsonObject) context.getValue();
+                for (final Map.Entry<String,JsonValue> record : contextRecords.entrySet()) {
+                
+                    final JsonObject fields = (JsonObject) record.getValue();
+                    Long exp = null;
+                    if (fields.containsKey("x")) {
+                        exp = fields.getJsonNumber("x").longValueExact();
+                    }
+                    
+                    dataMap.put(record.getKey(), new MutableStorageRecord(fields.getString("v"), exp));
+                }
+            }
+        }
+        
+        /**
+         * Serialize the unexpired records in a map of contexts as JSON.
+         * 
+         * @param contexts the contexts to serialize
+         * @param now the current time
+         * 
+         * @return the serialized data
+         */
+        @Nonnull @NotEmpty private String serializeJSON(
+                @Nonnull @NonnullElements final Map<String, Map<String, MutableStorageRecord>> contexts,
+                final long now) {
+            final StringWriter sink = new StringWriter(128);
+            final JsonGenerator gen = Json.createGenerator(sink);
+            
+            gen.writeStartObject();
+            for (final Map.Entry<String,Map<String, MutableStorageRecord>> context : contexts.entrySet()) {
+                if (!context.getValue().isEmpty()) {
+                    gen.writeStartObject(context.getKey());
+                    for (final Map.Entry<String,MutableStorageRecord> entry : context.getValue().entrySet()) {
+                        final MutableStorageRecord record = entry.getValue();
+                        final Long recexp = record.getExpiration();
+                        if (recexp == null || recexp > now) {
+                            gen.writeStartObject(entry.getKey())
+                                .write("v", record.getValue());
+                            if (recexp != null) {
+                                gen.write("x", recexp);
+                            }
+                            gen.writeEnd();
+                        }
+                    }
+                    gen.writeEnd();
                 }
-            } catch (final JsonException e) {
-                throw new IOException(e);
             }
+            gen.writeEnd().close();
+            
+            return sink.toString();
         }
     }
 // Checkstyle: CyclomaticComplexity ON
@@ -0,0 +1,337 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.Live;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+
+import org.opensaml.storage.MutableStorageRecord;
+
+/**
+ * Compact binary encoding of the data managed by a {@link ClientStorageService}.
+ * 
+ * <p>The encoded form is a version byte, a flags byte, and a body that may be DEFLATE-compressed.
+ * The body carries an expiration baseline, followed by each context name (written once) and the
+ * key, value, and expiration offset of each of its records. All lengths, counts, and expirations
+ * are unsigned variable-length integers. The result is handed to a
+ * {@link net.shibboleth.utilities.java.support.security.DataSealer} as a string of ISO-8859-1
+ * characters, one per byte, rather than base64-encoded, since the sealer compresses its input and
+ * base64 would largely defeat that compression.</p>
+ * 
+ * <p>The encoded form always begins with the version byte, never a '{' character, so it can be
+ * distinguished from the JSON form used by earlier versions of the service with
+ * {@link #isCompact(String)}.</p>
+ */
+final class ClientStorageServiceCodec {
+
+    /** Current format version. */
+    static final byte VERSION = 1;
+    
+    /** Flag indicating the body is DEFLATE-compressed. */
+    static final int FLAG_DEFLATE = 0x01;
+    
+    /** Upper bound on the size of an inflated body. */
+    private static final int MAX_INFLATED_SIZE = 16 * 1024 * 1024;
+    
+    /** Constructor. */
+    private ClientStorageServiceCodec() {
+        
+    }
+
+    /**
+     * Check whether serialized data is in the compact form rather than JSON.
+     * 
+     * @param raw serialized data
+     * 
+     * @return true iff the data is not JSON
+     */
+    static boolean isCompact(@Nonnull @NotEmpty final String raw) {
+        for (int i = 0; i < raw.length(); i++) {
+            if (!Character.isWhitespace(raw.charAt(i))) {
+                return raw.charAt(i) != '{';
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Encode the unexpired records in a context map.
+     * 
+     * @param contextMap data to encode
+     * @param compress whether to DEFLATE the body
+     * @param now the current time, used to skip expired records
+     * 
+     * @return the encoded data
+     * 
+     * @throws IOException if an error occurs
+     */
+    @Nonnull @NotEmpty static String encode(
+            @Nonnull @NonnullElements final Map<String,Map<String,MutableStorageRecord>> contextMap,
+            final boolean compress, final long now) throws IOException {
+        
+        long base = Long.MAX_VALUE;
+        int contexts = 0;
+        for (final Map<String,MutableStorageRecord> records : contextMap.values()) {
+            boolean live = false;
+            for (final MutableStorageRecord record : records.values()) {
+                final Long exp = record.getExpiration();
+                if (exp == null) {
+                    live = true;
+                } else if (exp > now) {
+                    live = true;
+                    base = Math.min(base, exp);
+                }
+            }
+            if (live) {
+                contexts++;
+            }
+        }
+        if (base == Long.MAX_VALUE) {
+            base = 0;
+        }
+        
+        final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+        writeVarLong(body, base);
+        writeVarLong(body, contexts);
+        for (final Map.Entry<String,Map<String,MutableStorageRecord>> context : contextMap.entrySet()) {
+            int count = 0;
+            for (final MutableStorageRecord record : context.getValue().values()) {
+                if (record.getExpiration() == null || record.getExpiration() > now) {
+                    count++;
+                }
+            }
+            if (count == 0) {
+                continue;
+            }
+            writeString(body, context.getKey());
+            writeVarLong(body, count);
+            for (final Map.Entry<String,MutableStorageRecord> entry : context.getValue().entrySet()) {
+                final Long exp = entry.getValue().getExpiration();
+                if (exp == null || exp > now) {
+                    writeString(body, entry.getKey());
+                    writeString(body, entry.getValue().getValue());
+                    writeVarLong(body, exp != null ? exp - base + 1 : 0);
+                }
+            }
+        }
+        
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(body.size() + 2);
+        out.write(VERSION);
+        if (compress) {
+            out.write(FLAG_DEFLATE);
+            final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+            try (final DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater)) {
+                body.writeTo(deflated);
+            } finally {
+                deflater.end();
+            }
+        } else {
+            out.write(0);
+            body.writeTo(out);
+        }
+        
+        return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+    
+    /**
+     * Decode data produced by {@link #encode(Map, boolean, long)} into a context map.
+     * 
+     * <p>Context names are interned, since the same small set recurs in every session.</p>
+     * 
+     * @param raw encoded data
+     * @param contextMap map to populate
+     * 
+     * @throws IOException if the data is malformed or of an unsupported version
+     */
+    static void decode(@Nonnull @NotEmpty final String raw,
+            @Nonnull @NonnullElements @Live final Map<String,Map<String,MutableStorageRecord>> contextMap)
+                    throws IOException {
+        
+        final byte[] decoded = raw.getBytes(StandardCharsets.ISO_8859_1);
+        if (decoded.length < 2) {
+            throw new IOException("Encoded data was truncated");
+        } else if (decoded[0] != VERSION) {
+            throw new IOException("Unsupported encoding version " + decoded[0]);
+        }
+        
+        final Cursor in;
+        if ((decoded[1] & FLAG_DEFLATE) != 0) {
+            in = new Cursor(inflate(decoded, 2));
+        } else {
+            in = new Cursor(decoded);
+            in.position = 2;
+        }
+        
+        final long base = in.readVarLong();
+        final long contexts = in.readVarLong();
+        for (long i = 0; i < contexts; i++) {
+            final String context = in.readString().intern();
+            Map<String,MutableStorageRecord> dataMap = contextMap.get(context);
+            if (dataMap == null) {
+                dataMap = new HashMap<>();
+                contextMap.put(context, dataMap);
+            }
+            
+            final long records = in.readVarLong();
+            for (long j = 0; j < records; j++) {
+                final String key = in.readString();
+                final String value = in.readString();
+                final long offset = in.readVarLong();
+                dataMap.put(key, new MutableStorageRecord(value, offset != 0 ? base + offset - 1 : null));
+            }
+        }
+        
+        if (in.position != in.data.length) {
+            throw new IOException("Found trailing data after encoded records");
+        }
+    }
+
+    /**
+     * Inflate a DEFLATE-compressed body.
+     * 
+     * @param data buffer containing the compressed body
+     * @param offset offset of the body in the buffer
+     * 
+     * @return the inflated body
+     * 
+     * @throws IOException if the body is malformed or too large
+     */
+    @Nonnull private static byte[] inflate(@Nonnull final byte[] data, final int offset) throws IOException {
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data, offset, data.length - offset);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            final byte[] buf = new byte[1024];
+            while (!inflater.finished()) {
+                final int n = inflater.inflate(buf);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Compressed data was truncated");
+                }
+                out.write(buf, 0, n);
+                if (out.size() > MAX_INFLATED_SIZE) {
+                    throw new IOException("Compressed data exceeded maximum size");
+                }
+            }
+            return out.toByteArray();
+        } catch (final DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+    
+    /**
+     * Write an unsigned variable-length integer.
+     * 
+     * @param out output stream
+     * @param value value to write
+     */
+    private static void writeVarLong(@Nonnull final ByteArrayOutputStream out, final long value) {
+        long v = value;
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+    
+    /**
+     * Write a length-prefixed UTF-8 string.
+     * 
+     * @param out output stream
+     * @param value value to write
+     */
+    private static void writeString(@Nonnull final ByteArrayOutputStream out, @Nullable final String value) {
+        final byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+    
+    /** Read position over a decoded buffer. */
+    private static final class Cursor {
+        
+        /** Underlying data. */
+        @Nonnull private final byte[] data;
+        
+        /** Current position. */
+        private int position;
+        
+        /**
+         * Constructor.
+         *
+         * @param input underlying data
+         */
+        Cursor(@Nonnull final byte[] input) {
+            data = input;
+        }
+        
+        /**
+         * Read an unsigned variable-length integer.
+         * 
+         * @return the value
+         * 
+         * @throws IOException if the data is truncated or the value overflows
+         */
+        long readVarLong() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= data.length) {
+                    throw new IOException("Encoded data was truncated");
+                }
+                final byte b = data[position++];
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Malformed variable-length integer");
+        }
+        
+        /**
+         * Read a length-prefixed UTF-8 string.
+         * 
+         * @return the value
+         * 
+         * @throws IOException if the data is truncated
+         */
+        @Nonnull String readString() throws IOException {
+            final long length = readVarLong();
+            if (length > data.length - position) {
+                throw new IOException("Encoded data was truncated");
+            }
+            final String value = new String(data, position, (int) length, StandardCharsets.UTF_8);
+            position += (int) length;
+            return value;
+        }
+    }
+    
+}
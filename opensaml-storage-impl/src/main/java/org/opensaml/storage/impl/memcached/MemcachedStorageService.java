@@ -26,27 +26,39 @@ import net.shibboleth.utilities.java.support.primitive.StringSupport;
 import net.spy.memcached.CASResponse;
 import net.spy.memcached.CASValue;
 import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.internal.OperationCompletionListener;
 import net.spy.memcached.internal.OperationFuture;
 import net.spy.memcached.transcoders.Transcoder;
 import org.cryptacular.util.ByteUtil;
 import org.cryptacular.util.CodecUtil;
 import org.cryptacular.util.HashUtil;
+import org.opensaml.storage.AsyncStorageService;
+import org.opensaml.storage.BatchStorageService;
 import org.opensaml.storage.StorageCapabilities;
 import org.opensaml.storage.StorageRecord;
 import org.opensaml.storage.StorageSerializer;
-import org.opensaml.storage.StorageService;
 import org.opensaml.storage.VersionMismatchException;
 import org.opensaml.storage.annotation.AnnotationSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -76,6 +88,14 @@ import java.util.concurrent.TimeoutException;
  * slab size, which decreases overall cache memory consumption efficiency. When key tracking is disabled, there is no
  * limit on the number of keys per context other than overall cache capacity.
  * <p>
+ * Batch operations look up the context namespace once and pipeline the operations on the individual keys,
+ * issuing all of them before waiting for any of the results.
+ * <p>
+ * Asynchronous operations return as soon as the memcached operation has been issued, after looking up the
+ * context namespace. They are bounded by the operation timeout of the client rather than the timeout supplied
+ * to this service. When context key tracking is enabled, asynchronous creates and deletes require further
+ * operations to maintain the context key lists, so they are performed synchronously.
+ * <p>
  * <strong>Limitations and requirements</strong>
  * <ol>
  *     <li>The memcached binary protocol is strong recommended for efficiency and full versioning support.
@@ -88,7 +108,8 @@ import java.util.concurrent.TimeoutException;
  *
  * @author Marvin S. Addison
  */
-public class MemcachedStorageService extends AbstractIdentifiableInitializableComponent implements StorageService {
+public class MemcachedStorageService extends AbstractIdentifiableInitializableComponent
+        implements AsyncStorageService, BatchStorageService {
 
     /** Key suffix for entry that contains a list of context keys. */
     protected static final String CTX_KEY_LIST_SUFFIX = ":contextKeyList";
@@ -503,6 +524,263 @@ public class MemcachedStorageService extends AbstractIdentifiableInitializableCo
                 AnnotationSupport.getKey(value));
     }
 
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public ListenableFuture<Boolean> createAsync(@Nonnull @NotEmpty final String context,
+                                                          @Nonnull @NotEmpty final String key,
+                                                          @Nonnull @NotEmpty final String value,
+                                                          @Nullable @Positive final Long expiration) {
+        try {
+            if (trackContextKeys) {
+                return Futures.immediateFuture(create(context, key, value, expiration));
+            }
+            Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+            Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+            Constraint.isNotNull(StringSupport.trimOrNull(value), "Value cannot be null or empty");
+            final MemcachedStorageRecord record = new MemcachedStorageRecord(value, expiration);
+            final int expiry = record.getExpiry();
+            Constraint.isGreaterThan(-1, expiry, "Expiration must be null or positive");
+            String namespace = lookupNamespace(context);
+            if (namespace == null) {
+                namespace = createNamespace(context);
+            }
+            final String cacheKey = memcachedKey(namespace, key);
+            logger.debug("Creating new entry at {} for context={}, key={}, exp={}", cacheKey, context, key, expiry);
+            return toListenableFuture(memcacheClient.add(cacheKey, expiry, record, storageRecordTranscoder),
+                    Functions.<Boolean>identity());
+        } catch (final IOException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public ListenableFuture<StorageRecord> readAsync(@Nonnull @NotEmpty final String context,
+                                                              @Nonnull @NotEmpty final String key) {
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+        try {
+            final String namespace = lookupNamespace(context);
+            if (namespace == null) {
+                logger.debug("Namespace for context {} does not exist", context);
+                return Futures.immediateFuture(null);
+            }
+            final String cacheKey = memcachedKey(namespace, key);
+            logger.debug("Reading entry at {} for context={}, key={}", cacheKey, context, key);
+            return toListenableFuture(memcacheClient.asyncGets(cacheKey, storageRecordTranscoder),
+                    new Function<CASValue<MemcachedStorageRecord>, StorageRecord>() {
+                        public StorageRecord apply(final CASValue<MemcachedStorageRecord> record) {
+                            if (record == null) {
+                                return null;
+                            }
+                            record.getValue().setVersion(record.getCas());
+                            return record.getValue();
+                        }
+                    });
+        } catch (final IOException e) {
+            return Futures.immediateFailedFuture(e);
+        } catch (final RuntimeException e) {
+            return Futures.immediateFailedFuture(new IOException("Memcached operation failed", e));
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public ListenableFuture<Boolean> updateAsync(@Nonnull @NotEmpty final String context,
+                                                          @Nonnull @NotEmpty final String key,
+                                                          @Nonnull @NotEmpty final String value,
+                                                          @Nullable @Positive final Long expiration) {
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(value), "Value cannot be null or empty");
+        final MemcachedStorageRecord record = new MemcachedStorageRecord(value, expiration);
+        final int expiry = record.getExpiry();
+        Constraint.isGreaterThan(-1, expiry, "Expiration must be null or positive");
+        try {
+            final String namespace = lookupNamespace(context);
+            if (namespace == null) {
+                logger.debug("Namespace for context {} does not exist", context);
+                return Futures.immediateFuture(false);
+            }
+            final String cacheKey = memcachedKey(namespace, key);
+            logger.debug("Updating entry at {} for context={}, key={}, exp={}", cacheKey, context, key, expiry);
+            return toListenableFuture(memcacheClient.replace(cacheKey, expiry, record, storageRecordTranscoder),
+                    Functions.<Boolean>identity());
+        } catch (final IOException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public ListenableFuture<Boolean> updateExpirationAsync(@Nonnull @NotEmpty final String context,
+                                                                    @Nonnull @NotEmpty final String key,
+                                                                    @Nullable @Positive final Long expiration) {
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+        final int expiry = MemcachedStorageRecord.expiry(expiration);
+        Constraint.isGreaterThan(-1, expiry, "Expiration must be null or positive");
+        try {
+            final String namespace = lookupNamespace(context);
+            if (namespace == null) {
+                logger.debug("Namespace for context {} does not exist", context);
+                return Futures.immediateFuture(false);
+            }
+            final String cacheKey = memcachedKey(namespace, key);
+            logger.debug("Updating expiration for entry at {} for context={}, key={}", cacheKey, context, key);
+            return toListenableFuture(memcacheClient.touch(cacheKey, expiry), Functions.<Boolean>identity());
+        } catch (final IOException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public ListenableFuture<Boolean> deleteAsync(@Nonnull @NotEmpty final String context,
+                                                          @Nonnull @NotEmpty final String key) {
+        try {
+            if (trackContextKeys) {
+                return Futures.immediateFuture(delete(context, key));
+            }
+            Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+            Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+            final String namespace = lookupNamespace(context);
+            if (namespace == null) {
+                logger.debug("Namespace for context {} does not exist", context);
+                return Futures.immediateFuture(false);
+            }
+            final String cacheKey = memcachedKey(namespace, key);
+            logger.debug("Deleting entry at {} for context={}, key={}", cacheKey, context, key);
+            return toListenableFuture(memcacheClient.delete(cacheKey), Functions.<Boolean>identity());
+        } catch (final IOException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public Set<String> createBatch(@Nonnull @NotEmpty final String context,
+                                         @Nonnull final Map<String, String> values,
+                                         @Nullable @Positive final Long expiration) throws IOException {
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        Constraint.isNotNull(values, "Values cannot be null");
+        final Set<String> created = new HashSet<>(values.size());
+        if (values.isEmpty()) {
+            return created;
+        }
+        final int expiry = MemcachedStorageRecord.expiry(expiration);
+        Constraint.isGreaterThan(-1, expiry, "Expiration must be null or positive");
+        String namespace = lookupNamespace(context);
+        if (namespace == null) {
+            namespace = createNamespace(context);
+        }
+        final Map<String, OperationFuture<Boolean>> results = new LinkedHashMap<>(values.size());
+        for (final Map.Entry<String, String> entry : values.entrySet()) {
+            Constraint.isNotNull(StringSupport.trimOrNull(entry.getKey()), "Key cannot be null or empty");
+            Constraint.isNotNull(StringSupport.trimOrNull(entry.getValue()), "Value cannot be null or empty");
+            final String cacheKey = memcachedKey(namespace, entry.getKey());
+            logger.debug("Creating new entry at {} for context={}, key={}, exp={}",
+                    cacheKey, context, entry.getKey(), expiry);
+            results.put(entry.getKey(), memcacheClient.add(cacheKey, expiry,
+                    new MemcachedStorageRecord(entry.getValue(), expiration), storageRecordTranscoder));
+        }
+        for (final Map.Entry<String, OperationFuture<Boolean>> result : results.entrySet()) {
+            if (!handleAsyncResult(result.getValue())) {
+                continue;
+            }
+            if (trackContextKeys) {
+                final String cacheKey = memcachedKey(namespace, result.getKey());
+                logger.debug("Tracking key {} for context {}", cacheKey, context);
+                if (!updateContextKeyList(CTX_KEY_LIST_SUFFIX, namespace, cacheKey)) {
+                    logger.debug("Failed appending {} to list of keys for context {}", cacheKey, context);
+                    // Try to clean up record we just created
+                    // Cache entry expiration will clean it up regardless
+                    handleAsyncResult(memcacheClient.delete(cacheKey));
+                    continue;
+                }
+            }
+            created.add(result.getKey());
+        }
+        return created;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public Map<String, StorageRecord> readBatch(@Nonnull @NotEmpty final String context,
+                                                        @Nonnull final Collection<String> keys) throws IOException {
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        Constraint.isNotNull(keys, "Keys cannot be null");
+        final Map<String, StorageRecord> records = new HashMap<>(keys.size());
+        if (keys.isEmpty()) {
+            return records;
+        }
+        final String namespace = lookupNamespace(context);
+        if (namespace == null) {
+            logger.debug("Namespace for context {} does not exist", context);
+            return records;
+        }
+        // Individual gets are used rather than a bulk get since the latter does not return the CAS value
+        // used as the record version. The client pipelines them regardless.
+        final Map<String, OperationFuture<CASValue<MemcachedStorageRecord>>> results =
+                new LinkedHashMap<>(keys.size());
+        try {
+            for (final String key : keys) {
+                Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+                final String cacheKey = memcachedKey(namespace, key);
+                logger.debug("Reading entry at {} for context={}, key={}", cacheKey, context, key);
+                results.put(key, memcacheClient.asyncGets(cacheKey, storageRecordTranscoder));
+            }
+            for (final Map.Entry<String, OperationFuture<CASValue<MemcachedStorageRecord>>> result
+                    : results.entrySet()) {
+                final CASValue<MemcachedStorageRecord> record = handleAsyncResult(result.getValue());
+                if (record != null) {
+                    record.getValue().setVersion(record.getCas());
+                    records.put(result.getKey(), record.getValue());
+                }
+            }
+        } catch (final RuntimeException e) {
+            throw new IOException("Memcached operation failed", e);
+        }
+        return records;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int deleteBatch(@Nonnull @NotEmpty final String context, @Nonnull final Collection<String> keys)
+            throws IOException {
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        Constraint.isNotNull(keys, "Keys cannot be null");
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        final String namespace = lookupNamespace(context);
+        if (namespace == null) {
+            logger.debug("Namespace for context {} does not exist", context);
+            return 0;
+        }
+        final Map<String, OperationFuture<Boolean>> results = new LinkedHashMap<>(keys.size());
+        for (final String key : keys) {
+            Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+            final String cacheKey = memcachedKey(namespace, key);
+            logger.debug("Deleting entry at {} for context={}, key={}", cacheKey, context, key);
+            results.put(cacheKey, memcacheClient.delete(cacheKey));
+        }
+        int count = 0;
+        for (final Map.Entry<String, OperationFuture<Boolean>> result : results.entrySet()) {
+            if (handleAsyncResult(result.getValue())) {
+                count++;
+                if (trackContextKeys) {
+                    logger.debug("Blacklisting key {} for context {}", result.getKey(), context);
+                    if (!updateContextKeyList(CTX_KEY_BLACKLIST_SUFFIX, namespace, result.getKey())) {
+                        logger.debug("Failed appending {} to list of blacklisted keys for context {}",
+                                result.getKey(), context);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void reap(@Nonnull @NotEmpty final String context) throws IOException {
@@ -670,6 +948,34 @@ public class MemcachedStorageService extends AbstractIdentifiableInitializableCo
         }
     }
 
+    /**
+     * Adapt the result of an asynchronous memcached operation to a {@link ListenableFuture}, without blocking.
+     * 
+     * @param result the result
+     * @param transform function applied to the result on completion
+     * @param <T> type of result
+     * @param <R> type of transformed result
+     * @return the transformed result
+     */
+    private <T, R> ListenableFuture<R> toListenableFuture(final OperationFuture<T> result,
+            final Function<T, R> transform) {
+        final SettableFuture<R> future = SettableFuture.create();
+        result.addListener(new OperationCompletionListener() {
+            public void onComplete(final OperationFuture<?> completed) {
+                try {
+                    future.set(transform.apply(result.get()));
+                } catch (final InterruptedException e) {
+                    future.setException(new IOException("Memcached operation interrupted"));
+                } catch (final ExecutionException e) {
+                    future.setException(new IOException("Memcached operation error", e));
+                } catch (final RuntimeException e) {
+                    future.setException(new IOException("Memcached operation failed", e));
+                }
+            }
+        });
+        return future;
+    }
+
     /**
      * Update context key list.
      * 
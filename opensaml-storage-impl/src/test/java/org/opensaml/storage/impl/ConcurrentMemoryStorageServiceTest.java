@@ -0,0 +1,75 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+import org.opensaml.storage.StorageService;
+import org.opensaml.storage.StorageServiceTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test of {@link ConcurrentMemoryStorageService} implementation.
+ */
+public class ConcurrentMemoryStorageServiceTest extends StorageServiceTest {
+    
+    private final AtomicInteger created = new AtomicInteger();
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull protected StorageService getStorageService() {
+        ConcurrentMemoryStorageService ss = new ConcurrentMemoryStorageService();
+        ss.setId("test");
+        ss.setCleanupInterval(1000);
+        return ss;
+    }
+        
+    @Test
+    public void validConfig() throws ComponentInitializationException {
+        ConcurrentMemoryStorageService ss = new ConcurrentMemoryStorageService();
+        ss.setId("test");
+        ss.setConcurrencyLevel(5);
+        Assert.assertEquals(ss.getConcurrencyLevel(), 8);
+        ss.initialize();
+        ss.destroy();
+    }
+    
+    @Test(threadPoolSize = 10, invocationCount = 100)
+    public void concurrentCreate() throws IOException {
+        // Every invocation competes to create the same records, only one may succeed for each.
+        for (int i = 0; i < 100; i++) {
+            if (shared.create("concurrentCreate", Integer.toString(i), "value", null)) {
+                created.incrementAndGet();
+            }
+        }
+    }
+    
+    @Test(dependsOnMethods = "concurrentCreate")
+    public void concurrentCreateResult() throws IOException {
+        Assert.assertEquals(created.get(), 100);
+        shared.deleteContext("concurrentCreate");
+        Assert.assertNull(shared.read("concurrentCreate", "0"));
+    }
+    
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl;
+
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+import org.opensaml.storage.StorageService;
+import org.opensaml.storage.StorageServiceTest;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Test of {@link ExecutorAsyncStorageService} implementation.
+ */
+public class ExecutorAsyncStorageServiceTest extends StorageServiceTest {
+
+    private MemoryStorageService delegate;
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull protected StorageService getStorageService() {
+        delegate = new MemoryStorageService();
+        delegate.setId("test");
+        try {
+            delegate.initialize();
+        } catch (final ComponentInitializationException e) {
+            throw new RuntimeException(e);
+        }
+        final ExecutorAsyncStorageService ss = new ExecutorAsyncStorageService(delegate);
+        ss.setId("test");
+        ss.setThreads(2);
+        ss.setQueueSize(10);
+        return ss;
+    }
+
+    @AfterClass
+    protected void destroyDelegate() {
+        delegate.destroy();
+    }
+
+    @Test
+    public void async() throws InterruptedException, ExecutionException {
+        final ExecutorAsyncStorageService ss = (ExecutorAsyncStorageService) shared;
+        final String context = Long.toString(random.nextLong());
+
+        final ListenableFuture<Boolean> created = ss.createAsync(context, "key", "value", null);
+        Assert.assertTrue(created.get());
+        Assert.assertFalse(ss.createAsync(context, "key", "value", null).get());
+        Assert.assertEquals(ss.readAsync(context, "key").get().getValue(), "value");
+        Assert.assertTrue(ss.updateAsync(context, "key", "value2", null).get());
+        Assert.assertEquals(ss.readAsync(context, "key").get().getValue(), "value2");
+        Assert.assertTrue(ss.updateExpirationAsync(context, "key", System.currentTimeMillis() + 300000).get());
+        Assert.assertTrue(ss.deleteAsync(context, "key").get());
+        Assert.assertNull(ss.readAsync(context, "key").get());
+        Assert.assertFalse(ss.deleteAsync(context, "key").get());
+    }
+
+}
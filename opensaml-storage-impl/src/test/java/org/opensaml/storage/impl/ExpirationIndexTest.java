@@ -0,0 +1,125 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.opensaml.storage.MutableStorageRecord;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for {@link ExpirationIndex}.
+ */
+public class ExpirationIndexTest {
+    
+    private Map<String, Map<String, MutableStorageRecord>> contextMap;
+    
+    private ExpirationIndex index;
+    
+    @BeforeMethod
+    public void setUp() {
+        contextMap = new HashMap<>();
+        index = new ExpirationIndex(contextMap);
+    }
+    
+    @Test
+    public void testReap() {
+        put("ctx", "a", 100L);
+        put("ctx", "b", 200L);
+        put("ctx", "c", null);
+        put("ctx2", "a", 150L);
+        
+        Assert.assertFalse(index.hasDue(99));
+        Assert.assertEquals(index.reap(99, 10), 0);
+        
+        Assert.assertTrue(index.hasDue(150));
+        Assert.assertEquals(index.reap(150, 10), 2);
+        Assert.assertFalse(contextMap.get("ctx").containsKey("a"));
+        Assert.assertFalse(contextMap.containsKey("ctx2"));
+        
+        Assert.assertEquals(index.reap(1000, 10), 1);
+        Assert.assertEquals(contextMap.get("ctx").keySet().size(), 1);
+        Assert.assertTrue(contextMap.get("ctx").containsKey("c"));
+        Assert.assertEquals(index.size(), 0);
+    }
+    
+    @Test
+    public void testReapLimit() {
+        for (int i = 0; i < 10; i++) {
+            put("ctx", Integer.toString(i), 100L);
+        }
+        
+        Assert.assertEquals(index.reap(100, 4), 4);
+        Assert.assertTrue(index.hasDue(100));
+        Assert.assertEquals(index.reap(100, 10), 6);
+        Assert.assertFalse(index.hasDue(100));
+        Assert.assertTrue(contextMap.isEmpty());
+    }
+    
+    @Test
+    public void testStaleEntries() {
+        final MutableStorageRecord extended = put("ctx", "extended", 100L);
+        extended.setExpiration(300L);
+        index.add("ctx", "extended", extended);
+        
+        put("ctx", "replaced", 100L);
+        put("ctx", "replaced", 400L);
+        
+        put("ctx", "deleted", 100L);
+        contextMap.get("ctx").remove("deleted");
+        
+        // All the entries due at 100 are stale.
+        Assert.assertEquals(index.reap(200, 10), 0);
+        Assert.assertEquals(contextMap.get("ctx").size(), 2);
+        
+        Assert.assertEquals(index.reap(300, 10), 1);
+        Assert.assertEquals(index.reap(400, 10), 1);
+        Assert.assertTrue(contextMap.isEmpty());
+    }
+    
+    @Test
+    public void testRebuild() {
+        final MutableStorageRecord record = put("ctx", "a", 100L);
+        for (long i = 0; i < 5000; i++) {
+            record.setExpiration(100L + i);
+            index.add("ctx", "a", record);
+        }
+        
+        // Stale entries for the repeatedly updated record were discarded.
+        Assert.assertTrue(index.size() < 2048);
+        Assert.assertEquals(index.reap(5098, 10000), 0);
+        Assert.assertEquals(index.reap(5099, 10000), 1);
+        Assert.assertTrue(contextMap.isEmpty());
+    }
+    
+    private MutableStorageRecord put(String context, String key, Long expiration) {
+        Map<String, MutableStorageRecord> dataMap = contextMap.get(context);
+        if (dataMap == null) {
+            dataMap = new HashMap<>();
+            contextMap.put(context, dataMap);
+        }
+        final MutableStorageRecord record = new MutableStorageRecord("value", expiration);
+        dataMap.put(key, record);
+        index.add(context, key, record);
+        return record;
+    }
+
+}
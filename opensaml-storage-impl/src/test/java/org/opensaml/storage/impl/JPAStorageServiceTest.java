@@ -125,6 +125,31 @@ public class JPAStorageServiceTest extends StorageServiceTest {
         Assert.assertEquals(recs.size(), 0);
     }
 
+    @Test
+    public void cleanupInBatches() throws ComponentInitializationException, IOException {
+        final JPAStorageService batchService = new JPAStorageService(createEntityManagerFactory());
+        batchService.setId("batch");
+        batchService.setCleanupInterval(0);
+        batchService.setEntityManagerPoolSize(2);
+        batchService.setCleanupBatchSize(7);
+        batchService.initialize();
+        try {
+            String context = Long.toString(random.nextLong());
+            for (int i = 1; i <= 20; i++) {
+                Assert.assertTrue(batchService.create(context, Integer.toString(i), Integer.toString(i + 1),
+                        System.currentTimeMillis() - 1));
+            }
+            Assert.assertTrue(batchService.create(context, "live", "value", null));
+            batchService.deleteImpl(System.currentTimeMillis());
+            List<StorageRecord> recs = batchService.readAll(context);
+            Assert.assertEquals(recs.size(), 1);
+            Assert.assertEquals(batchService.read(context, "live").getValue(), "value");
+            Assert.assertTrue(batchService.delete(context, "live"));
+        } finally {
+            batchService.destroy();
+        }
+    }
+
     @DataProvider(name = "contexts")
     public Object[][] contexts() throws Exception {
         return contexts;
@@ -17,13 +17,18 @@
 
 package org.opensaml.storage.impl;
 
+import java.io.IOException;
+import java.util.Collections;
+
 import javax.annotation.Nonnull;
 
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 
+import org.opensaml.storage.ReplayCache;
 import org.opensaml.storage.StorageService;
 import org.opensaml.storage.StorageServiceTest;
 import org.opensaml.storage.impl.MemoryStorageService;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
 /**
@@ -48,4 +53,112 @@ public class MemoryStorageServiceTest extends StorageServiceTest {
         ss.destroy();
     }
     
-}
\ No newline at end of file
+    @Test
+    public void testBoundedRefuse() throws ComponentInitializationException, IOException {
+        MemoryStorageService ss = new MemoryStorageService();
+        ss.setId("test");
+        ss.setMaxRecords(2);
+        ss.initialize();
+        
+        try {
+            Assert.assertTrue(ss.create("context", "a", "value", null));
+            Assert.assertTrue(ss.create("context", "b", "value", null));
+            Assert.assertFalse(ss.create("context", "c", "value", null));
+            Assert.assertNull(ss.read("context", "c"));
+            Assert.assertEquals(ss.getRecordCount(), 2);
+            Assert.assertEquals(ss.getRejections(), 1);
+            
+            // Room is made by deleting or expiring a record.
+            Assert.assertTrue(ss.delete("context", "a"));
+            Assert.assertTrue(ss.create("context", "c", "value", System.currentTimeMillis() - 1));
+            Assert.assertTrue(ss.create("context", "d", "value", null));
+            Assert.assertEquals(ss.getRecordCount(), 2);
+            Assert.assertNotNull(ss.read("context", "b"));
+            Assert.assertNotNull(ss.read("context", "d"));
+            Assert.assertEquals(ss.getEvictions(), 0);
+        } finally {
+            ss.destroy();
+        }
+    }
+    
+    @Test
+    public void testBoundedEvict() throws ComponentInitializationException, IOException {
+        MemoryStorageService ss = new MemoryStorageService();
+        ss.setId("test");
+        ss.setMaxRecords(2);
+        ss.setEvictionPolicy(MemoryStorageService.EvictionPolicy.FIFO);
+        ss.setEvictableContexts(Collections.singletonList("context"));
+        ss.initialize();
+        
+        try {
+            Assert.assertTrue(ss.create("replay", "a", "value", null));
+            Assert.assertTrue(ss.create("context", "b", "value", null));
+            Assert.assertTrue(ss.create("context", "c", "value", null));
+            Assert.assertNotNull(ss.read("replay", "a"));
+            Assert.assertNull(ss.read("context", "b"));
+            Assert.assertNotNull(ss.read("context", "c"));
+            Assert.assertEquals(ss.getEvictions(), 1);
+            
+            // Only non-evictable records remain, so the next one is refused.
+            ss.deleteContext("context");
+            Assert.assertTrue(ss.create("replay", "b", "value", null));
+            Assert.assertFalse(ss.create("context", "d", "value", null));
+            Assert.assertEquals(ss.getRecordCount(), 2);
+            Assert.assertEquals(ss.getRejections(), 1);
+        } finally {
+            ss.destroy();
+        }
+    }
+    
+    @Test
+    public void testBoundedReplay() throws ComponentInitializationException, IOException {
+        MemoryStorageService ss = new MemoryStorageService();
+        ss.setId("test");
+        ss.setMaxRecords(2);
+        ss.setEvictionPolicy(MemoryStorageService.EvictionPolicy.FIFO);
+        ss.initialize();
+        
+        final ReplayCache replayCache = new ReplayCache();
+        replayCache.setId("test");
+        replayCache.setStorage(ss);
+        replayCache.initialize();
+        
+        try {
+            final long expiration = System.currentTimeMillis() + 180000;
+            Assert.assertTrue(replayCache.check("replay", "a", expiration));
+            Assert.assertTrue(replayCache.check("replay", "b", expiration));
+            
+            // At capacity, nothing is evictable by default, so a new value can't be recorded and is refused...
+            Assert.assertFalse(replayCache.check("replay", "c", expiration));
+            Assert.assertEquals(ss.getEvictions(), 0);
+            Assert.assertEquals(ss.getRejections(), 1);
+            
+            // ...and replays of recorded values are still detected.
+            Assert.assertFalse(replayCache.check("replay", "a", expiration));
+            Assert.assertFalse(replayCache.check("replay", "b", expiration));
+        } finally {
+            replayCache.destroy();
+            ss.destroy();
+        }
+    }
+    
+    @Test
+    public void testBoundedContext() throws ComponentInitializationException, IOException {
+        MemoryStorageService ss = new MemoryStorageService();
+        ss.setId("test");
+        ss.setMaxContextRecords(1);
+        ss.initialize();
+        
+        try {
+            Assert.assertTrue(ss.create("context1", "a", "value", System.currentTimeMillis() - 1));
+            Assert.assertTrue(ss.create("context1", "b", "value", null));
+            Assert.assertFalse(ss.create("context1", "c", "value", null));
+            Assert.assertTrue(ss.create("context2", "c", "value", null));
+            Assert.assertEquals(ss.getRecordCount(), 2);
+            Assert.assertEquals(ss.getRejections(), 1);
+        } finally {
+            ss.destroy();
+        }
+    }
+    
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+import org.opensaml.storage.StorageRecord;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test of {@link NearCacheStorageService} implementation.
+ */
+public class NearCacheStorageServiceTest {
+
+    private MemoryStorageService remote;
+
+    private NearCacheStorageService near;
+
+    @BeforeMethod
+    public void setUp() throws ComponentInitializationException {
+        remote = new MemoryStorageService();
+        remote.setId("remote");
+        remote.initialize();
+
+        near = new NearCacheStorageService(remote);
+        near.setId("near");
+        near.setCachedContexts(Collections.singletonMap("cached", 200L));
+        near.setMaxCacheSize(2);
+        near.initialize();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        near.destroy();
+        remote.destroy();
+    }
+
+    @Test
+    public void testCachedUntilRevalidated() throws IOException, InterruptedException {
+        Assert.assertTrue(near.create("cached", "key", "value", null));
+        Assert.assertEquals(near.read("cached", "key").getValue(), "value");
+
+        // A change made elsewhere is not seen until the record is revalidated.
+        Assert.assertTrue(remote.update("cached", "key", "changed", null));
+        Assert.assertEquals(near.read("cached", "key").getValue(), "value");
+
+        Thread.sleep(300);
+        final StorageRecord record = near.read("cached", "key");
+        Assert.assertEquals(record.getValue(), "changed");
+        Assert.assertEquals(record.getVersion(), 2);
+        Assert.assertEquals(near.read("cached", "key", 2).getFirst(), Long.valueOf(2));
+        Assert.assertNull(near.read("cached", "key", 2).getSecond());
+
+        Assert.assertTrue(remote.delete("cached", "key"));
+        Thread.sleep(300);
+        Assert.assertNull(near.read("cached", "key"));
+    }
+
+    @Test
+    public void testInvalidation() throws IOException {
+        Assert.assertTrue(near.create("cached", "key", "value", null));
+        Assert.assertEquals(near.read("cached", "key").getValue(), "value");
+
+        Assert.assertTrue(near.update("cached", "key", "changed", null));
+        Assert.assertEquals(near.read("cached", "key").getValue(), "changed");
+
+        near.deleteContext("cached");
+        Assert.assertNull(near.read("cached", "key"));
+    }
+
+    @Test
+    public void testInvalidatedDuringRead() throws IOException, ComponentInitializationException {
+        final MemoryStorageService racing = new MemoryStorageService() {
+            private boolean raced;
+            public StorageRecord read(String context, String key) throws IOException {
+                // Copy the record, since this service returns the instance it modifies on update.
+                final StorageRecord live = super.read(context, key);
+                final StorageRecord record = new StorageRecord(live.getValue(), live.getExpiration());
+                if (!raced) {
+                    // Another writer modifies the record after it has been read, but before it is cached.
+                    raced = true;
+                    Assert.assertTrue(near.update(context, key, "changed", null));
+                }
+                return record;
+            }
+        };
+        racing.setId("racing");
+        racing.initialize();
+        near.destroy();
+        near = new NearCacheStorageService(racing);
+        near.setId("near");
+        near.setCachedContexts(Collections.singletonMap("cached", 60000L));
+        near.initialize();
+        
+        try {
+            Assert.assertTrue(racing.create("cached", "key", "value", null));
+            Assert.assertEquals(near.read("cached", "key").getValue(), "value");
+            
+            // The record read before the change must not have been cached.
+            final StorageRecord record = near.read("cached", "key");
+            Assert.assertEquals(record.getValue(), "changed");
+            Assert.assertNotSame(near.read("cached", "key"), record);
+        } finally {
+            racing.destroy();
+        }
+    }
+
+    @Test
+    public void testUncachedContext() throws IOException {
+        Assert.assertTrue(near.create("uncached", "key", "value", null));
+        Assert.assertEquals(near.read("uncached", "key").getValue(), "value");
+
+        Assert.assertTrue(remote.update("uncached", "key", "changed", null));
+        Assert.assertEquals(near.read("uncached", "key").getValue(), "changed");
+    }
+
+    @Test
+    public void testExpiration() throws IOException, InterruptedException {
+        Assert.assertTrue(near.create("cached", "key", "value", System.currentTimeMillis() + 100));
+        Assert.assertNotNull(near.read("cached", "key"));
+
+        Thread.sleep(150);
+        Assert.assertNull(near.read("cached", "key"));
+    }
+
+    @Test
+    public void testBounded() throws IOException {
+        for (int i = 1; i <= 3; i++) {
+            Assert.assertTrue(near.create("cached", Integer.toString(i), "value", null));
+            Assert.assertNotNull(near.read("cached", Integer.toString(i)));
+        }
+
+        // The first record has been discarded, so a change made elsewhere is seen at once.
+        Assert.assertTrue(remote.update("cached", "1", "changed", null));
+        Assert.assertTrue(remote.update("cached", "3", "changed", null));
+        Assert.assertEquals(near.read("cached", "1").getValue(), "changed");
+        Assert.assertEquals(near.read("cached", "3").getValue(), "value");
+    }
+
+}
@@ -130,4 +130,46 @@ public class ReplayCacheTest {
         Assert.assertTrue(replayCache.check(context, messageID, System.currentTimeMillis() + 1000),
                 "Message was not replay, previous cache entry should have expired");
     }
-}
\ No newline at end of file
+    
+    /**
+     * Test replay detection relying on atomic creation.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testReplayAtomicCreate() throws Exception {
+        replayCache.destroy();
+        replayCache = new ReplayCache();
+        replayCache.setStorage(storageService);
+        replayCache.setAtomicCreate(true);
+        replayCache.initialize();
+        
+        Assert.assertTrue(replayCache.check(context, messageID, expiration),
+                "Message was not replay, insert into empty cache");
+        Assert.assertTrue(replayCache.check(context, "IDWhichIsNot" + messageID, expiration),
+                "Message was not replay, insert into empty cache");
+        Assert.assertFalse(replayCache.check(context, messageID, expiration),
+                "Message was replay");
+    }
+
+    /**
+     * Test replay detection using striped locks.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testReplayStriped() throws Exception {
+        replayCache.destroy();
+        replayCache = new ReplayCache();
+        replayCache.setStorage(storageService);
+        replayCache.setLockStripes(16);
+        replayCache.initialize();
+        
+        Assert.assertTrue(replayCache.check(context, messageID, expiration),
+                "Message was not replay, insert into empty cache");
+        Assert.assertTrue(replayCache.check(context, "IDWhichIsNot" + messageID, expiration),
+                "Message was not replay, insert into empty cache");
+        Assert.assertFalse(replayCache.check(context, messageID, expiration),
+                "Message was replay");
+    }
+}
@@ -48,6 +48,13 @@ public class AbstractBaseClientStorageServiceTest {
     }
 
     protected ClientStorageService getStorageService() throws ComponentInitializationException {
+        final ClientStorageService ss = buildStorageService();
+        ss.initialize();
+        
+        return ss;
+    }
+
+    protected ClientStorageService buildStorageService() throws ComponentInitializationException {
         final ClientStorageService ss = new ClientStorageService();
         ss.setId("test");
         ss.setStorageName(STORAGE_NAME);
@@ -78,7 +85,6 @@ public class AbstractBaseClientStorageServiceTest {
         ss.setDataSealer(sealer);
         
         ss.setHttpServletRequest(new ThreadLocalHttpServletRequestProxy());
-        ss.initialize();
         
         return ss;
     }
@@ -0,0 +1,283 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.opensaml.storage.MutableStorageRecord;
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.impl.client.ClientStorageService.ClientStorageSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Joiner;
+
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.net.HttpServletRequestResponseContext;
+
+/** Unit test for {@link ClientStorageService} serialization. */
+public class ClientStorageServiceTest extends AbstractBaseClientStorageServiceTest {
+
+    @BeforeClass public void setUpClass() throws ComponentInitializationException {
+        init();
+    }
+
+    @BeforeMethod public void setUp() {
+        HttpServletRequestResponseContext.loadCurrent(new MockHttpServletRequest(), new MockHttpServletResponse());
+    }
+    
+    @Test public void testJSON() throws ComponentInitializationException, IOException {
+        final ClientStorageService ss = getStorageService();
+        final String raw = populate(ss);
+        
+        ss.load(raw, ClientStorageSource.COOKIE);
+        verify(ss);
+    }
+
+    @Test public void testCompact() throws ComponentInitializationException, IOException {
+        final ClientStorageService ss = buildStorageService();
+        ss.setCompactEncoding(true);
+        ss.initialize();
+        final String raw = populate(ss);
+        
+        final ClientStorageService json = getStorageService();
+        final String jsonRaw = populate(json);
+        Assert.assertTrue(raw.length() < jsonRaw.length());
+        
+        ss.load(raw, ClientStorageSource.COOKIE);
+        verify(ss);
+    }
+
+    @Test public void testCompressed() throws ComponentInitializationException, IOException {
+        final ClientStorageService ss = buildStorageService();
+        ss.setCompactEncoding(true);
+        ss.setCompressData(true);
+        ss.initialize();
+        final String raw = populate(ss);
+        
+        ss.load(raw, ClientStorageSource.COOKIE);
+        verify(ss);
+    }
+
+    @Test public void testLegacyJSON() throws ComponentInitializationException, IOException {
+        final String raw = populate(getStorageService());
+
+        final ClientStorageService ss = buildStorageService();
+        ss.setCompactEncoding(true);
+        ss.initialize();
+        
+        ss.load(raw, ClientStorageSource.COOKIE);
+        verify(ss);
+    }
+
+    @Test public void testIncremental() throws ComponentInitializationException, IOException {
+        final ClientStorageService ss = buildStorageService();
+        ss.setIncrementalSealing(true);
+        ss.setCompactEncoding(true);
+        ss.initialize();
+        final String raw = populate(ss);
+        Assert.assertEquals(raw.split("\\.").length, 3);
+        
+        ss.load(raw, ClientStorageSource.COOKIE);
+        verify(ss);
+        
+        // Load the data written by the non-incremental form.
+        ss.load(populate(getStorageService()), ClientStorageSource.COOKIE);
+        verify(ss);
+    }
+
+    @Test public void testIncrementalReuse() throws ComponentInitializationException, IOException {
+        final ClientStorageService ss = buildStorageService();
+        ss.setIncrementalSealing(true);
+        ss.initialize();
+        
+        final long exp = System.currentTimeMillis() + 60000;
+        ss.load(null, ClientStorageSource.COOKIE);
+        ss.create("context1", "key1", "value1", exp);
+        ss.create("context2", "key1", "value1", exp);
+        ss.create("context3", "key1", "value1", null);
+        final String before = ss.save().getValue();
+        Assert.assertEquals(before.split("\\.").length, 4);
+        
+        ss.load(before, ClientStorageSource.COOKIE);
+        ss.update("context2", "key1", "value2", exp);
+        final String after = ss.save().getValue();
+        Assert.assertEquals(after.split("\\.").length, 4);
+        
+        // Only the unmodified context with expiring records should be passed through.
+        final Set<String> reused = new HashSet<>(Arrays.asList(after.split("\\.")));
+        reused.retainAll(Arrays.asList(before.split("\\.")));
+        Assert.assertEquals(reused.size(), 1);
+        
+        ss.load(before, ClientStorageSource.COOKIE);
+        Assert.assertEquals(ss.read("context1", "key1").getValue(), "value1");
+        Assert.assertEquals(ss.read("context2", "key1").getValue(), "value1");
+        Assert.assertEquals(ss.read("context3", "key1").getValue(), "value1");
+        
+        ss.deleteContext("context1");
+        final String deleted = ss.save().getValue();
+        Assert.assertEquals(deleted.split("\\.").length, 3);
+        ss.load(deleted, ClientStorageSource.COOKIE);
+        Assert.assertNull(ss.read("context1", "key1"));
+        Assert.assertEquals(ss.read("context2", "key1").getValue(), "value1");
+    }
+
+    @Test public void testIncrementalMixed() throws ComponentInitializationException, IOException {
+        final ClientStorageService ss = buildStorageService();
+        ss.setIncrementalSealing(true);
+        ss.initialize();
+        
+        final long exp = System.currentTimeMillis() + 60000;
+        ss.load(null, ClientStorageSource.COOKIE);
+        ss.create("context1", "key1", "value1", exp);
+        ss.create("context2", "key1", "value1", exp);
+        final List<String> before = Arrays.asList(ss.save().getValue().split("\\."));
+        
+        ss.load(Joiner.on('.').join(before), ClientStorageSource.COOKIE);
+        ss.update("context2", "key1", "value2", exp);
+        final List<String> after = Arrays.asList(ss.save().getValue().split("\\."));
+        Assert.assertNotEquals(after.get(0), before.get(0));
+        
+        // Substitute the earlier chunks for the current ones, keeping the current manifest.
+        final List<String> mixed = new ArrayList<>(after);
+        for (int i = 1; i < mixed.size(); i++) {
+            if (!before.contains(mixed.get(i))) {
+                for (final String chunk : before.subList(1, before.size())) {
+                    if (!after.contains(chunk)) {
+                        mixed.set(i, chunk);
+                    }
+                }
+            }
+        }
+        Assert.assertNotEquals(mixed, after);
+        
+        ss.load(Joiner.on('.').join(mixed), ClientStorageSource.COOKIE);
+        Assert.assertNull(ss.read("context1", "key1"));
+        Assert.assertNull(ss.read("context2", "key1"));
+        Assert.assertNull(ss.save().getValue());
+        
+        // Chunks without their manifest are rejected too.
+        ss.load(Joiner.on('.').join(after.subList(1, after.size())), ClientStorageSource.COOKIE);
+        Assert.assertNull(ss.read("context1", "key1"));
+        Assert.assertNull(ss.read("context2", "key1"));
+        
+        ss.load(Joiner.on('.').join(after), ClientStorageSource.COOKIE);
+        Assert.assertEquals(ss.read("context1", "key1").getValue(), "value1");
+        Assert.assertEquals(ss.read("context2", "key1").getValue(), "value2");
+    }
+
+    @Test public void testIncrementalSingle() throws ComponentInitializationException, IOException {
+        final ClientStorageService ss = buildStorageService();
+        ss.setIncrementalSealing(true);
+        ss.initialize();
+        
+        final long exp = System.currentTimeMillis() + 60000;
+        ss.load(null, ClientStorageSource.COOKIE);
+        ss.create("context1", "key1", "value1", exp);
+        final List<String> before = Arrays.asList(ss.save().getValue().split("\\."));
+        Assert.assertEquals(before.size(), 2);
+        
+        ss.load(Joiner.on('.').join(before), ClientStorageSource.COOKIE);
+        ss.update("context1", "key1", "value2", exp);
+        final String after = ss.save().getValue();
+        
+        // A lone chunk without its manifest must not be mistaken for the non-incremental form.
+        ss.load(before.get(1), ClientStorageSource.COOKIE);
+        Assert.assertNull(ss.read("context1", "key1"));
+        Assert.assertNull(ss.save().getValue());
+        
+        ss.load(after, ClientStorageSource.COOKIE);
+        Assert.assertEquals(ss.read("context1", "key1").getValue(), "value2");
+    }
+
+    @Test public void testCodecCorrupt() {
+        Assert.assertTrue(ClientStorageServiceCodec.isCompact("\u0001\u0000"));
+        Assert.assertFalse(ClientStorageServiceCodec.isCompact(" {}"));
+        
+        try {
+            ClientStorageServiceCodec.decode("\u0001\u0000\u0001", new HashMap<String,Map<String,MutableStorageRecord>>());
+            Assert.fail("Truncated data should have been rejected");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Load an empty store, populate it, and save it.
+     * 
+     * @param ss storage service
+     * 
+     * @return the sealed data
+     * 
+     * @throws IOException on error
+     */
+    private String populate(final ClientStorageService ss) throws IOException {
+        ss.load(null, ClientStorageSource.COOKIE);
+        
+        final long exp = System.currentTimeMillis() + 60000;
+        ss.create("context1", "key1", "value1", null);
+        ss.create("context1", "key2", "value2", exp);
+        ss.create("context2", "key1", "value\u00e9", exp + 1000);
+        ss.create("context2", "expired", "value", System.currentTimeMillis() - 1000);
+        
+        final ClientStorageServiceOperation op = ss.save();
+        Assert.assertNotNull(op);
+        Assert.assertNotNull(op.getValue());
+        return op.getValue();
+    }
+    
+    /**
+     * Verify the data created by {@link #populate(ClientStorageService)} was reloaded.
+     * 
+     * @param ss storage service
+     * 
+     * @throws IOException on error
+     */
+    private void verify(final ClientStorageService ss) throws IOException {
+        Assert.assertNull(ss.save());
+        
+        StorageRecord<?> record = ss.read("context1", "key1");
+        Assert.assertNotNull(record);
+        Assert.assertEquals(record.getValue(), "value1");
+        Assert.assertNull(record.getExpiration());
+
+        record = ss.read("context1", "key2");
+        Assert.assertNotNull(record);
+        Assert.assertEquals(record.getValue(), "value2");
+        Assert.assertNotNull(record.getExpiration());
+
+        record = ss.read("context2", "key1");
+        Assert.assertNotNull(record);
+        Assert.assertEquals(record.getValue(), "value\u00e9");
+        Assert.assertEquals(record.getExpiration(), Long.valueOf(ss.read("context1", "key2").getExpiration() + 1000));
+        
+        Assert.assertNull(ss.read("context2", "expired"));
+    }
+    
+}